@@ -0,0 +1,168 @@
+package com.example.gatilogo_ridebook;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Parcel;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark of handing a ride to AddEditRideActivity and back, run on an Android device.
+ *
+ * Compares the old way, a Ride put into the intent extras as a Serializable in both directions,
+ * with the new way, a ride ID going out and a RideDelta coming back. Each round-trip writes the
+ * extras to a Parcel and reads them back, as happens when an activity is started.
+ * Timings are written to the log under the tag "RideHandoffBenchmark".
+ */
+@RunWith(AndroidJUnit4.class)
+public class RideHandoffBenchmark {
+
+    private static final String TAG = "RideHandoffBenchmark";
+    private static final int WARMUP = 2000;
+    private static final int ITERATIONS = 20000;
+
+    private File dir;
+    private RideStore store;
+    private long rideId;
+
+    @Before
+    public void setUp() throws IOException {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        dir = new File(context.getCacheDir(), "handoff-benchmark");
+        deleteDir(dir);
+        assertTrue(dir.mkdirs());
+        store = RideStore.open(dir);
+        rideId = store.add(new Ride("2019-09-11", "20:36", 12.5f, 21.3f, 85, "along the river"));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        deleteDir(dir);
+    }
+
+    @Test
+    public void serializableVersusDelta() {
+        for (int i = 0; i < WARMUP; i++) {
+            serializableRoundTrip();
+            deltaRoundTrip();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            serializableRoundTrip();
+        }
+        long serializableNanos = (System.nanoTime() - start) / ITERATIONS;
+
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            deltaRoundTrip();
+        }
+        long deltaNanos = (System.nanoTime() - start) / ITERATIONS;
+
+        Log.i(TAG, "Serializable round-trip: " + serializableNanos + " ns, "
+                + serializedSize() + " bytes out and back");
+        Log.i(TAG, "ID and RideDelta round-trip: " + deltaNanos + " ns, "
+                + deltaSize() + " bytes out and back");
+    }
+
+    // The old path: the whole ride goes out and an edited copy comes back.
+    private void serializableRoundTrip() {
+        Bundle out = new Bundle();
+        out.putSerializable("selectedRide", store.getRide(rideId));
+        out.putLong("rideId", rideId);
+        Ride ride = (Ride) copy(out).getSerializable("selectedRide");
+
+        Ride edited = new Ride(ride.getDate(), ride.getTime(), ride.getDistance() + 1,
+                ride.getAvgSpeed(), ride.getAvgCadence(), ride.getComment());
+        Bundle back = new Bundle();
+        back.putSerializable("editRide", edited);
+        back.putLong("rideId", rideId);
+        Bundle result = copy(back);
+        assertNotNull(result.getSerializable("editRide"));
+    }
+
+    // The new path: the ID goes out, the editor reads the ride from the store and sends back
+    // only the changed distance.
+    private void deltaRoundTrip() {
+        Bundle out = new Bundle();
+        out.putLong("rideId", rideId);
+        long id = copy(out).getLong("rideId");
+
+        RideRecord before = new RideRecord();
+        assertTrue(store.read(id, before));
+        RideRecord after = new RideRecord();
+        store.read(id, after);
+        after.distance += 1;
+        Bundle back = new Bundle();
+        back.putParcelable("rideDelta", RideDelta.between(id, before, after));
+        RideDelta delta = copy(back).getParcelable("rideDelta");
+        assertEquals(RideDelta.DISTANCE, delta.getFields());
+    }
+
+    private int serializedSize() {
+        Bundle out = new Bundle();
+        out.putSerializable("selectedRide", store.getRide(rideId));
+        out.putLong("rideId", rideId);
+        return parcelSize(out) * 2;
+    }
+
+    private int deltaSize() {
+        Bundle out = new Bundle();
+        out.putLong("rideId", rideId);
+        RideRecord before = new RideRecord();
+        store.read(rideId, before);
+        RideRecord after = new RideRecord();
+        store.read(rideId, after);
+        after.distance += 1;
+        Bundle back = new Bundle();
+        back.putParcelable("rideDelta", RideDelta.between(rideId, before, after));
+        return parcelSize(out) + parcelSize(back);
+    }
+
+    // Writes a bundle to a parcel and reads it back, unparcelling all of its values.
+    private static Bundle copy(Bundle bundle) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            bundle.writeToParcel(parcel, 0);
+            parcel.setDataPosition(0);
+            Bundle copy = parcel.readBundle(RideHandoffBenchmark.class.getClassLoader());
+            copy.size();
+            return copy;
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static int parcelSize(Bundle bundle) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            bundle.writeToParcel(parcel, 0);
+            return parcel.dataSize();
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
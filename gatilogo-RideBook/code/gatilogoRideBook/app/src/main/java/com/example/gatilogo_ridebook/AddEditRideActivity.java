@@ -7,15 +7,18 @@ import android.app.DatePickerDialog;
 import android.app.TimePickerDialog;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.DatePicker;
 import android.widget.EditText;
 import android.widget.TextView;
 import android.widget.TimePicker;
+import android.widget.Toast;
 
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.Calendar;
 
 /**
@@ -24,7 +27,11 @@ import java.util.Calendar;
  * Contains logic for handling inputs from the user.
  * This class is used for when adding or editing a ride. If the user is editing a ride, they are
  * also given an option to delete the ride.
- * Before adding a new ride or saving any changes, this class also validates the user input.
+ * Before adding a new ride or saving any changes, this class also validates the user input with
+ * RideCodec, which reads the text of the fields in place, and shows the error on the field it is about.
+ * The ride to edit is read from the shared RideStore by its ID, and only the changed fields are
+ * sent back to MainActivity as a RideDelta. If the store is still loading, it is waited for in the
+ * background and the fields stay disabled until the ride is shown.
  */
 public class AddEditRideActivity extends AppCompatActivity {
 
@@ -38,12 +45,16 @@ public class AddEditRideActivity extends AppCompatActivity {
     private TextView deleteRide;
     private Button saveButton;
 
-    private ArrayList<EditText> emptyFields;    // Keep an array of empty editText views
+    private EditText[] fields;                  // The fields in RideValidator order
+    private final CharSequence[] texts = new CharSequence[RideValidator.FIELD_COUNT];
     private Boolean edit;                       // True if user is editing a ride, otherwise false
-    private int position;                       // Keeps track of the ride to delete from list
+    private long rideId;                        // ID of the ride being edited or deleted
+    private RideRecord originalRide;            // The ride as it was before editing
+
+    private static final String TAG = "AddEditRideActivity";
 
     @Override
-    protected void onCreate(Bundle savedInstanceState) {
+    protected void onCreate(final Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_add_edit_ride);
 
@@ -56,19 +67,40 @@ public class AddEditRideActivity extends AppCompatActivity {
         rideComment = findViewById(R.id.commentField);
         deleteRide = findViewById(R.id.deleteRide);
         saveButton = findViewById(R.id.saveButton);
+        fields = new EditText[] {rideDate, rideTime, rideDistance, rideAvgSpeed, rideAvgCadence, rideComment};
 
         Bundle extras = getIntent().getExtras();
         // If data is passed from main activity, user is editing a ride.
         if (extras != null) {
-            Ride currentRide = (Ride) extras.getSerializable("selectedRide");
-            position = extras.getInt("position");
+            rideId = extras.getLong("rideId");
+            originalRide = new RideRecord();
+
+            // Read the ride from the shared store, once it has loaded
+            RideStore store = RideRepository.peek();
+            if (store != null) {
+                showRide(store, true);
+            } else {
+                setFieldsEnabled(false);
+                RideRepository.load(this, AsyncTask.THREAD_POOL_EXECUTOR, MainActivity.MAIN_THREAD,
+                        new RideRepository.Callback() {
+                            // Fields the user typed into before the activity was recreated are
+                            // restored by then and kept.
+                            @Override
+                            public void onStoreLoaded(RideStore loaded) {
+                                if (!isFinishing()) {
+                                    showRide(loaded, savedInstanceState == null || rideDate.length() == 0);
+                                    setFieldsEnabled(true);
+                                }
+                            }
 
-            rideDate.setText(currentRide.getDate());
-            rideTime.setText(currentRide.getTime());
-            rideDistance.setText(Float.toString(currentRide.getDistance()));
-            rideAvgSpeed.setText(Float.toString(currentRide.getAvgSpeed()));
-            rideAvgCadence.setText(Integer.toString(currentRide.getAvgCadence()));
-            rideComment.setText(currentRide.getComment());
+                            @Override
+                            public void onStoreFailed(IOException error) {
+                                Log.e(TAG, "Could not load rides", error);
+                                Toast.makeText(AddEditRideActivity.this, R.string.load_error, Toast.LENGTH_LONG).show();
+                                finish();
+                            }
+                        });
+            }
 
             setTitle(R.string.edit_ride_activity_title);    // Change title to "Edit Ride"
             deleteRide.setVisibility(View.VISIBLE);         // Show the "delete ride" view
@@ -89,12 +121,13 @@ public class AddEditRideActivity extends AppCompatActivity {
                 int month;
                 int day;
 
-                // If date field is not empty, set the year, month and day to specified date.
-                if (rideDate.length() != 0) {
-                    String[] myDate = rideDate.getText().toString().trim().split("-");
-                    year = Integer.parseInt(myDate[0]);
-                    month = Integer.parseInt(myDate[1]) - 1;
-                    day = Integer.parseInt(myDate[2]);
+                // If date field holds a valid date, set the year, month and day to specified date.
+                CharSequence text = rideDate.getText();
+                int date = RideCodec.parseYearMonthDay(text, RideCodec.trimStart(text), RideCodec.trimEnd(text));
+                if (date >= 0) {
+                    year = date / 10000;
+                    month = date / 100 % 100 - 1;
+                    day = date % 100;
                 }
                 // Otherwise, set date to today's date.
                 else {
@@ -133,11 +166,12 @@ public class AddEditRideActivity extends AppCompatActivity {
                 int hour;
                 int minute;
 
-                // If time field is not empty, set the hour and minute to specified time.
-                if (rideTime.length() != 0) {
-                    String[] myTime = rideTime.getText().toString().trim().split(":");
-                    hour = Integer.parseInt(myTime[0]);
-                    minute = Integer.parseInt(myTime[1]);
+                // If time field holds a valid time, set the hour and minute to specified time.
+                CharSequence text = rideTime.getText();
+                int minuteOfDay = RideCodec.parseTime(text, RideCodec.trimStart(text), RideCodec.trimEnd(text));
+                if (minuteOfDay >= 0) {
+                    hour = minuteOfDay / 60;
+                    minute = minuteOfDay % 60;
                 }
                 // Otherwise, set time to current time.
                 else {
@@ -168,34 +202,32 @@ public class AddEditRideActivity extends AppCompatActivity {
         });
 
         // Validates the entered input before adding/editing a ride
-        // If valid, it sends the ride data back to MainActivity
+        // If valid, it sends the changes back to MainActivity
         saveButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
                 // If ride is valid
-                if (validateRide()) {
-                    // Create a new instance of the ride
-                    Ride ride = new Ride(
-                            rideDate.getText().toString(),
-                            rideTime.getText().toString(),
-                            Float.parseFloat(rideDistance.getText().toString()),
-                            Float.parseFloat(rideAvgSpeed.getText().toString()),
-                            Integer.parseInt(rideAvgCadence.getText().toString()),
-                            rideComment.getText().toString()
-                    );
-                    Intent intent = new Intent(AddEditRideActivity.this, MainActivity.class);
+                RideRecord ride = new RideRecord();
+                if (validateRide(ride)) {
+                    RideDelta delta;
 
-                    // If user is editing, pass the ride data and position of item to edit back
-                    // into MainActivity
+                    // If user is editing, only pass the changed fields and the ID of the ride
+                    // back into MainActivity
                     if (edit) {
-                        intent.putExtra("editRide", ride);
-                        intent.putExtra("position", position);
+                        delta = RideDelta.between(rideId, originalRide, ride);
+                        if (delta.isEmpty()) {
+                            setResult(RESULT_CANCELED);
+                            finish();
+                            return;
+                        }
                     }
-                    // If user is adding a new ride, pass the ride data back into MainActivity
+                    // If user is adding a new ride, pass all fields back into MainActivity
                     else {
-                        intent.putExtra("addRide", ride);
+                        delta = RideDelta.forNewRide(ride);
                     }
 
+                    Intent intent = new Intent(AddEditRideActivity.this, MainActivity.class);
+                    intent.putExtra("rideDelta", delta);
                     setResult(RESULT_OK, intent);
                     finish();
                 }
@@ -211,12 +243,12 @@ public class AddEditRideActivity extends AppCompatActivity {
                 builder.setMessage(getString(R.string.delete_message));
                 builder.setCancelable(true);
 
-                // If user confirms deletion, pass the position of the item to delete back
+                // If user confirms deletion, pass the ID of the ride to delete back
                 // in MainActivity
                 builder.setPositiveButton(getString(R.string.yes), new DialogInterface.OnClickListener() {
                     public void onClick(DialogInterface dialog, int id) {
                         Intent intent = new Intent(AddEditRideActivity.this, MainActivity.class);
-                        intent.putExtra("deleteRidePosition", position);
+                        intent.putExtra("deleteRideId", rideId);
                         setResult(RESULT_OK, intent);
                         finish();
                     }
@@ -235,42 +267,77 @@ public class AddEditRideActivity extends AppCompatActivity {
         });
     }
 
-    // Checks if an editText field is empty, and adds the empty editText field in an array
-    // for later use.
-    private void checkIfEmpty(EditText editText) {
-        if (editText.length() == 0) {
-            emptyFields.add(editText);
+    // Reads the ride to edit from the store and, if fill is true, shows it in the fields.
+    // Closes the page if the ride was deleted meanwhile.
+    private void showRide(RideStore store, boolean fill) {
+        if (!store.read(rideId, originalRide)) {
+            finish();
+            return;
+        }
+        if (fill) {
+            rideDate.setText(RideTime.formatDate(originalRide.epochMinute));
+            rideTime.setText(RideTime.formatTime(originalRide.epochMinute));
+            rideDistance.setText(RideFormat.toPlainString(originalRide.distance));
+            rideAvgSpeed.setText(RideFormat.toPlainString(originalRide.avgSpeed));
+            rideAvgCadence.setText(Integer.toString(originalRide.avgCadence));
+            rideComment.setText(originalRide.comment, 0, originalRide.commentLength);
+        }
+    }
+
+    // Lets the user edit, save and delete the ride, or not while it is still being read.
+    private void setFieldsEnabled(boolean enabled) {
+        for (EditText field : fields) {
+            field.setEnabled(enabled);
         }
+        saveButton.setEnabled(enabled);
+        deleteRide.setEnabled(enabled);
     }
 
-    // Validates the inputs by checking if fields are empty.
-    // For each empty field, it also sets an error to show to users.
-    // This method also checks if the comment field is more than 20 characters.
-    private Boolean validateRide() {
-        emptyFields = new ArrayList<>();
-
-        // Check if fields are empty
-        checkIfEmpty(rideDate);
-        checkIfEmpty(rideTime);
-        checkIfEmpty(rideDistance);
-        checkIfEmpty(rideAvgSpeed);
-        checkIfEmpty(rideAvgCadence);
-
-        // If a field is empty, set an error message
-        if (!emptyFields.isEmpty()) {
-            for (EditText editText: emptyFields) {
-                editText.setError(getString(R.string.empty_field));
+    // Validates the inputs and, if they are valid, writes the ride into the given record.
+    // Every empty field gets an error to show to users. Otherwise the first field that doesn't
+    // parse, is out of range, or is a comment of more than 20 characters gets one.
+    private boolean validateRide(RideRecord ride) {
+        boolean empty = false;
+        for (int i = 0; i < RideValidator.COMMENT; i++) {
+            if (RideCodec.isBlank(fields[i].getText())) {
+                fields[i].setError(getString(R.string.empty_field));
+                empty = true;
             }
-
+        }
+        if (empty) {
             return false;
         }
 
-        // If the comment field contains more than 20 characters, set an error message
-        if (rideComment.getText().toString().length() > 20) {
-            rideComment.setError(getString(R.string.comment_error));
-            return false;
+        for (int i = 0; i < RideValidator.FIELD_COUNT; i++) {
+            texts[i] = fields[i].getText();
+        }
+        int result = RideCodec.decode(texts, ride);
+        for (int i = 0; i < RideValidator.FIELD_COUNT; i++) {
+            texts[i] = null;
+        }
+        if (result == RideValidator.OK) {
+            return true;
         }
+        int field = RideCodec.fieldOf(result);
+        fields[field].setError(getString(errorMessage(field, RideCodec.errorOf(result))));
+        return false;
+    }
 
-        return true;
+    // Returns the message shown on a field for a RideValidator error code.
+    private static int errorMessage(int field, int error) {
+        switch (error) {
+            case RideValidator.EMPTY_FIELD:
+                return R.string.empty_field;
+            case RideValidator.COMMENT_TOO_LONG:
+                return R.string.comment_error;
+            case RideValidator.BAD_DATE:
+                return R.string.bad_date;
+            case RideValidator.BAD_TIME:
+                return R.string.bad_time;
+            case RideValidator.OUT_OF_RANGE:
+                return field == RideValidator.DATE ? R.string.date_out_of_range : R.string.out_of_range;
+            default:
+                return R.string.bad_number;
+        }
     }
 }
@@ -0,0 +1,263 @@
+package com.example.gatilogo_ridebook;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * CommentIndex class (data structure)
+ *
+ * Finds rides by text in their comment, ignoring case.
+ * Every comment is cut into trigrams, one starting at each of its characters, with '\0' standing in
+ * for the characters past its end. For each trigram the index keeps the sorted IDs of the rides
+ * whose comment contains it.
+ * A query of three or more characters looks up each of its trigrams and intersects their ID lists.
+ * Shorter queries take the union of all trigrams that start with them, which the padding makes
+ * exact. Since intersecting trigrams can also match comments where the trigrams are apart, callers
+ * should check queries longer than three characters against the comment with contains().
+ * Adding a ride appends to the end of its ID lists, since IDs grow; edits and deletes cost a
+ * binary search and an array copy per trigram.
+ */
+final class CommentIndex {
+
+    private final TreeMap<Long, Postings> postings = new TreeMap<>();
+    private final char[] lowered = new char[RideRecord.MAX_COMMENT_LENGTH];
+
+    // Returns the number of different trigrams in the index.
+    int trigramCount() {
+        return postings.size();
+    }
+
+    // Adds the comment of the ride with the given ID.
+    void add(long id, char[] comment, int length) {
+        int n = lower(comment, length);
+        for (int i = 0; i < n; i++) {
+            long key = trigram(lowered, i, n);
+            Postings ids = postings.get(key);
+            if (ids == null) {
+                ids = new Postings();
+                postings.put(key, ids);
+            }
+            ids.add(id);
+        }
+    }
+
+    // Removes the comment of the ride with the given ID. It must be the comment it was added with.
+    void remove(long id, char[] comment, int length) {
+        int n = lower(comment, length);
+        for (int i = 0; i < n; i++) {
+            long key = trigram(lowered, i, n);
+            Postings ids = postings.get(key);
+            if (ids != null && ids.remove(id) && ids.size == 0) {
+                postings.remove(key);
+            }
+        }
+    }
+
+    // Returns the sorted IDs of the rides whose comment may contain the query, or null if the query
+    // is empty. If isExact() is false for the query, matches must be checked with contains().
+    long[] find(CharSequence query) {
+        int m = query.length();
+        if (m == 0) {
+            return null;
+        }
+        if (m < 3) {
+            long from = trigram(Character.toLowerCase(query.charAt(0)),
+                    m > 1 ? Character.toLowerCase(query.charAt(1)) : 0, 0);
+            long to = m > 1 ? from | 0xFFFFL : from | 0xFFFFFFFFL;
+            return union(postings.subMap(from, true, to, true));
+        }
+
+        // Start from the shortest ID list and keep the IDs that are in all others
+        Postings[] lists = new Postings[m - 2];
+        int shortest = 0;
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = postings.get(trigram(Character.toLowerCase(query.charAt(i)),
+                    Character.toLowerCase(query.charAt(i + 1)), Character.toLowerCase(query.charAt(i + 2))));
+            if (lists[i] == null) {
+                return new long[0];
+            }
+            if (lists[i].size < lists[shortest].size) {
+                shortest = i;
+            }
+        }
+        // All lists are sorted, so each one is walked once from front to back
+        int[] next = new int[lists.length];
+        long[] result = new long[lists[shortest].size];
+        int count = 0;
+        for (int j = 0; j < lists[shortest].size; j++) {
+            long id = lists[shortest].ids[j];
+            boolean inAll = true;
+            for (int i = 0; i < lists.length && inAll; i++) {
+                if (i == shortest) {
+                    continue;
+                }
+                long[] ids = lists[i].ids;
+                int k = next[i];
+                while (k < lists[i].size && ids[k] < id) {
+                    k++;
+                }
+                next[i] = k;
+                inAll = k < lists[i].size && ids[k] == id;
+            }
+            if (inAll) {
+                result[count++] = id;
+            }
+        }
+        return trim(result, count);
+    }
+
+    // Returns true if find() returns exactly the matching rides for the query, so they don't need
+    // to be checked with contains().
+    static boolean isExact(CharSequence query) {
+        return query.length() <= 3;
+    }
+
+    // Returns true if the comment contains the query, ignoring case the same way as the index.
+    static boolean contains(String comment, CharSequence query) {
+        int m = query.length();
+        for (int start = 0; start + m <= comment.length(); start++) {
+            int i = 0;
+            while (i < m && Character.toLowerCase(comment.charAt(start + i))
+                    == Character.toLowerCase(query.charAt(i))) {
+                i++;
+            }
+            if (i == m) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int lower(char[] comment, int length) {
+        for (int i = 0; i < length; i++) {
+            lowered[i] = Character.toLowerCase(comment[i]);
+        }
+        return length;
+    }
+
+    private static long trigram(char[] chars, int i, int length) {
+        return trigram(chars[i], i + 1 < length ? chars[i + 1] : 0, i + 2 < length ? chars[i + 2] : 0);
+    }
+
+    private static long trigram(int a, int b, int c) {
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    // Merges the ID lists of all given trigrams into one sorted list without duplicates,
+    // merging them pairwise so each ID is copied O(log k) times for k lists.
+    private static long[] union(Map<Long, Postings> lists) {
+        List<long[]> runs = new ArrayList<>(lists.size());
+        for (Postings ids : lists.values()) {
+            long[] run = new long[ids.size];
+            System.arraycopy(ids.ids, 0, run, 0, ids.size);
+            runs.add(run);
+        }
+        if (runs.isEmpty()) {
+            return new long[0];
+        }
+        while (runs.size() > 1) {
+            List<long[]> merged = new ArrayList<>((runs.size() + 1) / 2);
+            for (int i = 0; i + 1 < runs.size(); i += 2) {
+                merged.add(merge(runs.get(i), runs.get(i + 1)));
+            }
+            if (runs.size() % 2 == 1) {
+                merged.add(runs.get(runs.size() - 1));
+            }
+            runs = merged;
+        }
+        return runs.get(0);
+    }
+
+    private static long[] merge(long[] a, long[] b) {
+        long[] merged = new long[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                merged[count++] = a[i++];
+            } else if (a[i] > b[j]) {
+                merged[count++] = b[j++];
+            } else {
+                merged[count++] = a[i++];
+                j++;
+            }
+        }
+        while (i < a.length) {
+            merged[count++] = a[i++];
+        }
+        while (j < b.length) {
+            merged[count++] = b[j++];
+        }
+        return trim(merged, count);
+    }
+
+    private static long[] trim(long[] array, int length) {
+        if (array.length == length) {
+            return array;
+        }
+        long[] trimmed = new long[length];
+        System.arraycopy(array, 0, trimmed, 0, length);
+        return trimmed;
+    }
+
+    /**
+     * Sorted IDs of the rides containing one trigram.
+     */
+    private static final class Postings {
+
+        long[] ids = new long[4];
+        int size;
+
+        // Adds an ID, unless it's already there. Returns without searching when it's the largest.
+        void add(long id) {
+            int index;
+            if (size == 0 || ids[size - 1] < id) {
+                index = size;
+            } else {
+                index = indexOf(id);
+                if (index >= 0) {
+                    return;
+                }
+                index = -index - 1;
+            }
+            if (size == ids.length) {
+                long[] larger = new long[size * 2];
+                System.arraycopy(ids, 0, larger, 0, size);
+                ids = larger;
+            }
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            ids[index] = id;
+            size++;
+        }
+
+        boolean remove(long id) {
+            int index = indexOf(id);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            size--;
+            return true;
+        }
+
+        // Returns the index of id, or -(insertion point) - 1 like Arrays.binarySearch.
+        int indexOf(long id) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (ids[middle] < id) {
+                    low = middle + 1;
+                } else if (ids[middle] > id) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -low - 1;
+        }
+    }
+}
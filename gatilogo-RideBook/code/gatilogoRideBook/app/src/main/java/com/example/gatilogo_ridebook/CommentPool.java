@@ -0,0 +1,184 @@
+package com.example.gatilogo_ridebook;
+
+/**
+ * CommentPool class
+ *
+ * Stores each distinct ride comment once and hands out an int reference to it.
+ * Rides with the same comment share one String, and the pool counts references so a comment is
+ * dropped once no ride uses it anymore.
+ * Comments can be looked up straight from a char array, so loading rides doesn't create a String
+ * for comments that are already in the pool.
+ * Reference 0 is always the empty comment.
+ */
+final class CommentPool {
+
+    static final int EMPTY = 0;
+
+    private String[] strings = new String[16];
+    private int[] refCounts = new int[16];
+    private int[] freeRefs = new int[16];   // Stack of unused references
+    private int freeCount;
+    private int nextRef = 1;                // References below this have been handed out before
+
+    private int[] table = new int[32];      // Open addressing hash table of reference + 1, 0 = empty
+    private int live;
+
+    CommentPool() {
+        strings[EMPTY] = "";
+    }
+
+    // Returns the reference for the comment in chars[0, length) and adds a use to it.
+    int acquire(char[] chars, int length) {
+        if (length == 0) {
+            return EMPTY;
+        }
+
+        int hash = hash(chars, length);
+        int mask = table.length - 1;
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int ref = table[i] - 1;
+            if (ref < 0) {
+                break;
+            }
+            if (matches(strings[ref], chars, length)) {
+                refCounts[ref]++;
+                return ref;
+            }
+        }
+
+        int ref = newRef();
+        strings[ref] = new String(chars, 0, length);
+        refCounts[ref] = 1;
+        insert(ref, hash);
+        return ref;
+    }
+
+    // Returns the reference for the given comment and adds a use to it.
+    int acquire(String comment) {
+        char[] chars = comment.toCharArray();
+        return acquire(chars, chars.length);
+    }
+
+    // Removes a use of the given reference.
+    void release(int ref) {
+        if (ref == EMPTY) {
+            return;
+        }
+        if (--refCounts[ref] == 0) {
+            remove(ref);
+            strings[ref] = null;
+            if (freeCount == freeRefs.length) {
+                freeRefs = grow(freeRefs);
+            }
+            freeRefs[freeCount++] = ref;
+        }
+    }
+
+    String get(int ref) {
+        return strings[ref];
+    }
+
+    // Returns the number of distinct comments in the pool.
+    int size() {
+        return live;
+    }
+
+    private int newRef() {
+        if (freeCount > 0) {
+            return freeRefs[--freeCount];
+        }
+        if (nextRef == strings.length) {
+            String[] largerStrings = new String[strings.length * 2];
+            System.arraycopy(strings, 0, largerStrings, 0, strings.length);
+            strings = largerStrings;
+            refCounts = grow(refCounts);
+        }
+        return nextRef++;
+    }
+
+    private void insert(int ref, int hash) {
+        if ((live + 1) * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        int mask = table.length - 1;
+        int i = hash & mask;
+        while (table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        table[i] = ref + 1;
+        live++;
+    }
+
+    // Removes ref from the hash table, shifting later entries of the probe run back so lookups
+    // don't stop early.
+    private void remove(int ref) {
+        int mask = table.length - 1;
+        int i = hash(strings[ref]) & mask;
+        while (table[i] != ref + 1) {
+            i = (i + 1) & mask;
+        }
+        table[i] = 0;
+        live--;
+
+        for (int j = (i + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+            int home = hash(strings[table[j] - 1]) & mask;
+            // Move the entry into the hole if the hole lies between its home slot and j
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                table[i] = table[j];
+                table[j] = 0;
+                i = j;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        int[] oldTable = table;
+        table = new int[capacity];
+        int mask = capacity - 1;
+        for (int entry : oldTable) {
+            if (entry != 0) {
+                int i = hash(strings[entry - 1]) & mask;
+                while (table[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = entry;
+            }
+        }
+    }
+
+    private static boolean matches(String string, char[] chars, int length) {
+        if (string.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (string.charAt(i) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Same as String.hashCode(), spread so that linear probing works on the low bits.
+    private static int hash(char[] chars, int length) {
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + chars[i];
+        }
+        return spread(h);
+    }
+
+    private static int hash(String string) {
+        return spread(string.hashCode());
+    }
+
+    private static int spread(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int[] grow(int[] array) {
+        int[] larger = new int[array.length * 2];
+        System.arraycopy(array, 0, larger, 0, array.length);
+        return larger;
+    }
+}
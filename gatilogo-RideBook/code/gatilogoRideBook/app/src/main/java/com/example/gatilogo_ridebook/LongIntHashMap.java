@@ -0,0 +1,112 @@
+package com.example.gatilogo_ridebook;
+
+/**
+ * LongIntHashMap class (data structure)
+ *
+ * Hash map from positive long keys to int values, stored in two primitive arrays with linear
+ * probing, so lookups don't box the key or allocate.
+ * Key 0 marks an empty slot and can't be stored.
+ */
+final class LongIntHashMap {
+
+    private long[] keys = new long[16];
+    private int[] values = new int[16];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    // Returns the bytes taken by the map's arrays.
+    long memoryBytes() {
+        return keys.length * 12L;
+    }
+
+    // Returns the value for key, or missing if the key isn't in the map.
+    int get(long key, int missing) {
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; keys[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return missing;
+    }
+
+    void put(long key, int value) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("Key must be positive: " + key);
+        }
+        if ((size + 1) * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != 0) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+    }
+
+    // Removes key from the map. Later entries of the probe run are shifted back into the hole,
+    // so no tombstones are left behind.
+    void remove(long key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != key) {
+            if (keys[i] == 0) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = 0;
+        size--;
+
+        for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+            int home = hash(keys[j]) & mask;
+            // Move the entry into the hole if the hole lies between its home slot and j
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                keys[j] = 0;
+                i = j;
+            }
+        }
+    }
+
+    void clear() {
+        keys = new long[16];
+        values = new int[16];
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != 0) {
+                int i = hash(oldKeys[j]) & mask;
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -2,20 +2,42 @@ package com.example.gatilogo_ridebook;
 
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SearchView;
+import androidx.recyclerview.widget.DividerItemDecoration;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import android.app.AlertDialog;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Xml;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
-import android.widget.ListView;
+import android.view.ViewTreeObserver;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
+import com.google.android.material.snackbar.Snackbar;
 
-import java.util.ArrayList;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.text.DecimalFormatSymbols;
+import java.util.concurrent.Executor;
 
 /**
  * MainActivity class
@@ -25,52 +47,113 @@ import java.util.ArrayList;
  * It also directs users to AddEditRideActivity in "edit ride mode" when an item from the ride list
  * is clicked.
  * This class receives data from AddEditRideActivity and determines what to do with the data.
+ * Rides are kept in a RideStore, so they are saved across restarts of the app.
+ * The store is loaded in the background the first time the app starts. Meanwhile the list already
+ * shows the latest rides and the total distance from the head file, and older rides of the snapshot
+ * file, read page by page as the user scrolls. The list opens at the latest rides, and the time to
+ * the first frame and to the loaded store are logged.
+ * The menu imports rides from CSV or GPX files and exports them. Files are read and written on a
+ * background thread, and imported rides appear in the list batch by batch. After an import, all
+ * statistics are recomputed from the rides in parallel in the background.
+ * The search box in the action bar shows only the rides whose comment contains the typed text.
+ * Adds, edits and deletes can be undone and redone from the menu, and a deleted ride can also be
+ * brought back right away from the message shown after the delete.
+ * A long click on the total distance opens RideMetricsActivity, a debug screen with timings.
  */
 public class MainActivity extends AppCompatActivity {
 
     // Declare views for later use.
-    private ListView rideListView;
+    private RecyclerView rideListView;
     private TextView emptyListView;
     private TextView totalDistance;
     private FloatingActionButton addRideButton;
+    private final char[] totalDistanceText = new char[RideFormat.MAX_NUMBER_LENGTH];    // Shown by totalDistance
+    private char decimalSeparator;                  // Of the user's locale, for totalDistance
 
+    private static final String TAG = "MainActivity";
+    private static final int SORT_NONE = -2;        // Not a RideSortIndex field
     private static final int ADD_EDIT_RIDE_REQUEST_CODE = 0;        // Request code to identify result from AddEditActivity
-    private static ArrayList<Ride> rideList = new ArrayList<>();    // Contains list of rides
-    private ArrayAdapter<Ride> rideAdapter;                         // Adapter for rideListView
+    private static final int IMPORT_REQUEST_CODE = 1;               // Request codes for picking a file
+    private static final int EXPORT_CSV_REQUEST_CODE = 2;
+    private static final int EXPORT_GPX_REQUEST_CODE = 3;
+    private static final int MAX_LOGGED_REJECTS = 100;              // Lines to log per import
+    private static final String PENDING_RESULT = "pendingResult";   // Saved state key of pendingResult
+
+    // Runs transfer and load callbacks on the main thread
+    static final Executor MAIN_THREAD = new Executor() {
+        private final Handler handler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            handler.post(command);
+        }
+    };
+    private static RideTransfer transfer;                           // Running import or export, kept across recreation
+    private static RideRecompute recompute;                         // Running recompute of the statistics, kept across recreation
+    private RideStore rideStore;                                    // Contains list of rides, shared through RideRepository. Null until loaded
+    private RideHead head;                                          // Latest rides shown while the store loads, or null
+    private RideJournal.SnapshotReader snapshot;                    // Older rides shown while the store loads, or null
+    private long createdAt;                                         // Uptime when onCreate() started
+    private RideListAdapter rideAdapter;                            // Adapter for rideListView
+    private int loggedRejects;                                      // Lines of the current import logged so far
+    private String searchQuery = "";                                // Text typed into the search box
+    private Intent pendingResult;                                   // Result of AddEditRideActivity waiting for the store, or null
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        createdAt = SystemClock.uptimeMillis();
         setContentView(R.layout.activity_main);
+        if (savedInstanceState != null) {
+            pendingResult = savedInstanceState.getParcelable(PENDING_RESULT);
+        }
 
         // Assign views by their respective ids
         rideListView = findViewById(R.id.ridesList);
         emptyListView = findViewById(R.id.emptyRidesList);
         totalDistance = findViewById(R.id.totalDistanceNum);
         addRideButton = findViewById(R.id.addRideButton);
+        decimalSeparator = DecimalFormatSymbols.getInstance().getDecimalSeparator();
+
+        // Get the saved rides. They are only loaded the first time in a process, and until then the
+        // latest rides come from the head file and older ones are read straight from the snapshot.
+        RideStore loadedStore = RideRepository.peek();
+        if (loadedStore == null) {
+            try {
+                head = RideRepository.openHead(this);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not read head", e);
+            }
+            try {
+                snapshot = RideRepository.openSnapshot(this);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not read snapshot, waiting for the rides to load", e);
+            }
+        }
+        RidePager.Source firstSource = RidePager.EMPTY;
+        if (head != null) {
+            firstSource = head.source(snapshot);
+        } else if (snapshot != null) {
+            firstSource = snapshot;
+        }
+        RidePager ridePager = new RidePager(firstSource, AsyncTask.SERIAL_EXECUTOR, MAIN_THREAD);
 
         // Initialize adapter for the list view
-        rideAdapter = new RideArrayAdapter(this, rideList);
-        rideListView.setAdapter(rideAdapter);
-        // Display emptyListView if ride list is empty
-        rideListView.setEmptyView(emptyListView);
-        // When a user single-clicks on an item, it directs users to AddEditActivity in
-        // "edit ride mode" and passes the data of the selected ride
-        rideListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        rideAdapter = new RideListAdapter(ridePager, new RideListAdapter.OnRideClickListener() {
+            // When a user single-clicks on an item, it directs users to AddEditActivity in
+            // "edit ride mode" and passes the ID of the selected ride. AddEditRideActivity reads
+            // the ride from the shared store.
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int i, long l) {
-                Ride selectedRide = rideList.get(i);
+            public void onRideClick(long rideId) {
                 Intent intent = new Intent(MainActivity.this, AddEditRideActivity.class);
-                intent.putExtra("selectedRide", selectedRide);
-                intent.putExtra("position", i);
+                intent.putExtra("rideId", rideId);
                 startActivityForResult(intent, ADD_EDIT_RIDE_REQUEST_CODE);
             }
-        });
-        // When a user long-clicks on an item, an alert dialog will display a "Delete ride?" message
-        // and prompts the user to confirm deletion.
-        rideListView.setOnItemLongClickListener(new AdapterView.OnItemLongClickListener() {
+
+            // When a user long-clicks on an item, an alert dialog will display a "Delete ride?"
+            // message and prompts the user to confirm deletion.
             @Override
-            public boolean onItemLongClick(AdapterView<?> parent, View view, final int position, long id) {
+            public void onRideLongClick(final long rideId) {
                 AlertDialog.Builder builder = new AlertDialog.Builder(MainActivity.this);
                 builder.setMessage(getString(R.string.delete_message_2));
                 builder.setCancelable(true);
@@ -78,9 +161,7 @@ public class MainActivity extends AppCompatActivity {
                 // Delete ride if user clicks on "Yes" button
                 builder.setPositiveButton(getString(R.string.yes), new DialogInterface.OnClickListener() {
                     public void onClick(DialogInterface dialog, int id) {
-                        rideList.remove(position);
-                        rideAdapter.notifyDataSetChanged();
-                        updateTotalDistance();
+                        deleteRide(rideId);
                     }
                 });
 
@@ -93,9 +174,51 @@ public class MainActivity extends AppCompatActivity {
 
                 AlertDialog alertDialog = builder.create();
                 alertDialog.show();
-                return true;
             }
         });
+        rideListView.setLayoutManager(new LinearLayoutManager(this));
+        rideListView.addItemDecoration(new DividerItemDecoration(this, DividerItemDecoration.VERTICAL));
+        rideListView.setHasFixedSize(true);
+        rideListView.setAdapter(rideAdapter);
+        rideListView.getViewTreeObserver().addOnPreDrawListener(firstFrameListener);
+
+        updateEmptyView();
+        updateTotalDistance();
+        if (loadedStore != null) {
+            onStoreLoaded(loadedStore);
+        } else {
+            RideRepository.load(this, AsyncTask.THREAD_POOL_EXECUTOR, MAIN_THREAD, new RideRepository.Callback() {
+                @Override
+                public void onStoreLoaded(RideStore store) {
+                    Log.i(TAG, "Rides loaded after " + (SystemClock.uptimeMillis() - createdAt) + " ms");
+                    MainActivity.this.onStoreLoaded(store);
+                }
+
+                @Override
+                public void onStoreFailed(IOException error) {
+                    Log.e(TAG, "Could not load rides", error);
+                    Toast.makeText(MainActivity.this, R.string.load_error, Toast.LENGTH_LONG).show();
+                    finish();
+                }
+            });
+        }
+
+        // Open the list at the latest rides, which are the first ones there to show
+        if (savedInstanceState == null && rideAdapter.getItemCount() > 0) {
+            rideListView.scrollToPosition(rideAdapter.getItemCount() - 1);
+        }
+
+        // Keep showing the progress of an import or export started before the activity was recreated
+        if (transfer != null && transfer.isFinished()) {
+            transfer = null;
+        } else if (transfer != null) {
+            transfer.setListener(transferListener);
+        }
+        if (recompute != null && recompute.isFinished()) {
+            recompute = null;
+        } else if (recompute != null) {
+            recompute.setListener(recomputeListener);
+        }
 
         // If user clicks on the add button, direct user to AddEditRideActivity in "add ride mode"
         addRideButton.setOnClickListener(new View.OnClickListener() {
@@ -106,6 +229,205 @@ public class MainActivity extends AppCompatActivity {
                         AddEditRideActivity.class), ADD_EDIT_RIDE_REQUEST_CODE);
             }
         });
+
+        // A long click on the total distance opens the debug screen with the app's RideMetrics
+        totalDistance.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                startActivity(new Intent(MainActivity.this, RideMetricsActivity.class));
+                return true;
+            }
+        });
+    }
+
+    // Keeps a ride added while the store was loading, so it is still added after recreation.
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putParcelable(PENDING_RESULT, pendingResult);
+    }
+
+    // Stops the running transfer from calling back into this activity.
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (transfer != null) {
+            transfer.setListener(null);
+        }
+        if (recompute != null) {
+            recompute.setListener(null);
+        }
+        closeSnapshot();
+    }
+
+    // Logs how long it took from onCreate() to the first frame, and what the list showed in it.
+    private final ViewTreeObserver.OnPreDrawListener firstFrameListener = new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            rideListView.getViewTreeObserver().removeOnPreDrawListener(this);
+            String shown = rideStore != null ? "store" : head != null ? "head" : snapshot != null ? "snapshot" : "nothing";
+            Log.i(TAG, "First frame after " + (SystemClock.uptimeMillis() - createdAt) + " ms, showing " + shown);
+            return true;
+        }
+    };
+
+    // Switches the list from the head and snapshot to the loaded store. The store may already have
+    // been loaded by AddEditRideActivity, in which case this is called before the load callback.
+    // If the head is still current, the store has the same rides in the same places, so only the
+    // rows between the snapshot part and the head are rebound. A ride saved in the editor while
+    // the store was loading is added now.
+    private void onStoreLoaded(RideStore store) {
+        if (rideStore != null) {
+            return;
+        }
+        rideStore = store;
+        if (head != null && store.size() == head.rideCount) {
+            int missingFrom = snapshot != null ? head.snapshotPrefix : 0;
+            rideAdapter.mergeStore(store, missingFrom, Math.max(missingFrom, head.firstPosition()));
+        } else {
+            rideAdapter.setStore(store);
+        }
+        head = null;
+        closeSnapshot();
+        if (!searchQuery.isEmpty()) {
+            runSearch();
+        }
+        updateEmptyView();
+        updateTotalDistance();
+        if (pendingResult != null) {
+            Intent data = pendingResult;
+            pendingResult = null;
+            applyEditorResult(data);
+        }
+    }
+
+    private void closeSnapshot() {
+        if (snapshot != null) {
+            try {
+                snapshot.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Could not close snapshot", e);
+            }
+            snapshot = null;
+        }
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.main_menu, menu);
+
+        // Filter the list as the user types. Closing the search box clears the text.
+        SearchView searchView = (SearchView) menu.findItem(R.id.searchRides).getActionView();
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                return onQueryTextChange(query);
+            }
+
+            @Override
+            public boolean onQueryTextChange(String query) {
+                searchQuery = query.trim();
+                runSearch();
+                return true;
+            }
+        });
+
+        // Creating a file to export to needs the storage access framework
+        boolean canExport = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+        menu.findItem(R.id.exportCsv).setVisible(canExport);
+        menu.findItem(R.id.exportGpx).setVisible(canExport);
+        return true;
+    }
+
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(R.id.undoChange).setEnabled(rideStore != null && rideStore.canUndo());
+        menu.findItem(R.id.redoChange).setEnabled(rideStore != null && rideStore.canRedo());
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    // Lets the user pick a file to import from or create a file to export to, sort the list, or
+    // undo and redo changes.
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int itemId = item.getItemId();
+        if (itemId == R.id.undoChange || itemId == R.id.redoChange) {
+            undoOrRedo(itemId == R.id.undoChange);
+            return true;
+        }
+        int sortField = toSortField(itemId);
+        if (itemId != R.id.importRides && itemId != R.id.exportCsv && itemId != R.id.exportGpx
+                && sortField == SORT_NONE) {
+            return super.onOptionsItemSelected(item);
+        }
+        if (rideStore == null) {
+            Toast.makeText(this, R.string.still_loading, Toast.LENGTH_SHORT).show();
+            return true;
+        }
+        if (sortField != SORT_NONE) {
+            sortRides(sortField);
+            item.setChecked(true);
+            return true;
+        }
+        if (transfer != null) {
+            Toast.makeText(this, R.string.transfer_busy, Toast.LENGTH_SHORT).show();
+            return true;
+        }
+
+        if (itemId == R.id.importRides) {
+            Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType("*/*");
+            startActivityForResult(intent, IMPORT_REQUEST_CODE);
+        } else {
+            boolean csv = itemId == R.id.exportCsv;
+            Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType(csv ? "text/csv" : "application/gpx+xml");
+            intent.putExtra(Intent.EXTRA_TITLE, csv ? "rides.csv" : "rides.gpx");
+            startActivityForResult(intent, csv ? EXPORT_CSV_REQUEST_CODE : EXPORT_GPX_REQUEST_CODE);
+        }
+        return true;
+    }
+
+    // Returns the RideSortIndex field of a sort menu item, or SORT_NONE for other items.
+    private static int toSortField(int itemId) {
+        if (itemId == R.id.sortAdded) {
+            return RideSortIndex.ADDED;
+        } else if (itemId == R.id.sortDate) {
+            return RideSortIndex.DATE;
+        } else if (itemId == R.id.sortDistance) {
+            return RideSortIndex.DISTANCE;
+        } else if (itemId == R.id.sortSpeed) {
+            return RideSortIndex.SPEED;
+        } else if (itemId == R.id.sortCadence) {
+            return RideSortIndex.CADENCE;
+        }
+        return SORT_NONE;
+    }
+
+    // Sorts the list by the given field, or reverses it if it's already sorted by that field.
+    // The first pick sorts ascending, like the list order, and shows the end of the list.
+    private void sortRides(int field) {
+        boolean descending = field == rideAdapter.getSortField() && !rideAdapter.isSortDescending();
+        long startTime = SystemClock.uptimeMillis();
+        rideAdapter.setSortOrder(field, descending);
+        Log.i(TAG, "Sorted " + rideStore.size() + " rides in " + (SystemClock.uptimeMillis() - startTime) + " ms");
+        rideListView.scrollToPosition(descending ? 0 : Math.max(0, rideAdapter.getItemCount() - 1));
+    }
+
+    // Changes are written to disk in the background. Start writing the waiting ones as soon as the
+    // activity leaves the screen, since the process may be killed after that.
+    @Override
+    protected void onPause() {
+        super.onPause();
+        RideRepository.flush();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        RideRepository.flush();
     }
 
     // Updates the total distance if user clicks on the back button from the add/edit page.
@@ -113,7 +435,10 @@ public class MainActivity extends AppCompatActivity {
     protected void onResume() {
         super.onResume();
 
-        updateTotalDistance();
+        if (rideStore != null) {
+            updateEmptyView();
+            updateTotalDistance();
+        }
     }
 
     // Handles the data received from AddEditRideActivity
@@ -122,39 +447,327 @@ public class MainActivity extends AppCompatActivity {
         super.onActivityResult(requestCode, resultCode, data);
 
         if (requestCode == ADD_EDIT_RIDE_REQUEST_CODE) {
-            if (resultCode == RESULT_OK) {
-                Bundle extras = data.getExtras();
-                // If user was editing a ride
-                if (extras.containsKey("editRide")) {
-                    Ride ride = (Ride) extras.getSerializable("editRide");
-                    int position = extras.getInt("position");
-                    rideList.set(position, ride);   // Update the ride
-                }
-                // If user was adding a ride
-                else if (extras.containsKey("addRide")) {
-                    Ride ride = (Ride) extras.getSerializable("addRide");
-                    rideList.add(ride);             // Add a new ride
-                }
-                // If user was removing a ride from the edit page
-                else if (extras.containsKey("deleteRidePosition")) {
-                    int deleteRide = extras.getInt("deleteRidePosition");
-                    rideList.remove(deleteRide);    // Delete the specified ride
+            if (resultCode != RESULT_OK) {
+                return;
+            }
+            // The store may have loaded while the editor was open, with its callback still on its
+            // way. A ride added while it is still loading waits for onStoreLoaded(), so the main
+            // thread never blocks on the load.
+            if (rideStore == null && RideRepository.peek() != null) {
+                onStoreLoaded(RideRepository.peek());
+            }
+            if (rideStore == null) {
+                pendingResult = data;
+            } else {
+                applyEditorResult(data);
+            }
+        }
+        // If user picked a file to import from or export to
+        else if (resultCode == RESULT_OK && data != null && data.getData() != null && transfer == null) {
+            try {
+                startTransfer(requestCode, data.getData());
+            } catch (IOException e) {
+                Log.e(TAG, "Could not open " + data.getData(), e);
+                Toast.makeText(this, R.string.transfer_error, Toast.LENGTH_LONG).show();
+            }
+        }
+    }
+
+    // Adds, changes or deletes the ride the user saved or deleted in AddEditRideActivity.
+    // The store must have loaded.
+    private void applyEditorResult(Intent data) {
+        long start = System.nanoTime();
+        Bundle extras = data.getExtras();
+        // If user was adding or editing a ride
+        if (extras.containsKey("rideDelta")) {
+            RideDelta delta = extras.getParcelable("rideDelta");
+            if (delta.isNewRide()) {
+                addRide(delta);
+            } else {
+                editRide(delta);
+            }
+        }
+        // If user was removing a ride from the edit page
+        else if (extras.containsKey("deleteRideId")) {
+            deleteRide(extras.getLong("deleteRideId"));
+        }
+
+        updateEmptyView();
+        updateTotalDistance();
+        RideMetrics.CHANGE.recordSince(start);
+    }
+
+    // Opens the picked file and starts importing or exporting on a background thread.
+    private void startTransfer(int requestCode, Uri uri) throws IOException {
+        if (requestCode == IMPORT_REQUEST_CODE) {
+            InputStream in = getContentResolver().openInputStream(uri);
+            if (in == null) {
+                throw new IOException("No content");
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+            transfer = new RideImporter(rideStore, MAIN_THREAD, openReader(reader));
+            loggedRejects = 0;
+        } else {
+            OutputStream out = getContentResolver().openOutputStream(uri);
+            if (out == null) {
+                throw new IOException("No content");
+            }
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+            transfer = new RideExporter(rideStore, MAIN_THREAD, requestCode == EXPORT_CSV_REQUEST_CODE
+                    ? new RideCsvWriter(writer) : new RideGpxWriter(writer));
+        }
+        transfer.setListener(transferListener);
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(transfer);
+    }
+
+    // Picks a GPX or CSV reader by whether the file starts with '<'.
+    private static RideReader openReader(BufferedReader reader) throws IOException {
+        reader.mark(1024);
+        int c = reader.read();
+        while (c == ' ' || c == '\t' || c == '\r' || c == '\n' || c == '\uFEFF') {
+            c = reader.read();
+        }
+        reader.reset();
+        return c == '<' ? new RideGpxReader(Xml.newPullParser(), reader) : new RideCsvReader(reader);
+    }
+
+    // Receives the progress of imports and exports on the main thread.
+    private final RideTransfer.Listener transferListener = new RideTransfer.Listener() {
+        // One notification per batch of imported rides
+        @Override
+        public void onRidesAdded(int position, int count) {
+            if (rideAdapter.isFiltered()) {
+                runSearch();
+            } else if (rideAdapter.isSorted()) {
+                // The new rides are spread all over a sorted list
+                rideAdapter.onRidesChanged();
+            } else {
+                rideAdapter.onRidesInserted(position, count);
+            }
+            updateEmptyView();
+            updateTotalDistance();
+        }
+
+        @Override
+        public void onLineRejected(long line, int field, int error) {
+            if (loggedRejects++ < MAX_LOGGED_REJECTS) {
+                Log.w(TAG, "Skipped line " + line + ": " + RideValidator.describe(error));
+            }
+        }
+
+        @Override
+        public void onTransferFinished(RideTransfer finished, int rides, int rejected, IOException error) {
+            transfer = null;
+            if (error != null) {
+                Log.e(TAG, "Import or export failed", error);
+                Toast.makeText(MainActivity.this, R.string.transfer_error, Toast.LENGTH_LONG).show();
+            } else if (finished instanceof RideImporter) {
+                Toast.makeText(MainActivity.this, getString(R.string.import_done, rides, rejected),
+                        Toast.LENGTH_LONG).show();
+                if (rides > 0) {
+                    startRecompute();
                 }
+            } else {
+                Toast.makeText(MainActivity.this, getString(R.string.export_done, rides),
+                        Toast.LENGTH_LONG).show();
             }
         }
+    };
 
-        rideAdapter.notifyDataSetChanged(); // Update the ride list view
-        updateTotalDistance();              // Update the total distance
+    // Rebuilds all statistics on the worker threads, replacing a recompute that is still running.
+    private void startRecompute() {
+        if (recompute != null) {
+            recompute.setListener(null);
+            recompute.cancel();
+        }
+        recompute = new RideRecompute(rideStore, AsyncTask.THREAD_POOL_EXECUTOR,
+                Runtime.getRuntime().availableProcessors(), MAIN_THREAD);
+        recompute.setListener(recomputeListener);
+        recompute.start();
     }
 
-    // Adds the total distance of all rides and displays the number at the bottom of the page.
-    private void updateTotalDistance() {
-        float totalDistanceValue = 0;
+    // Receives the progress of recomputing statistics on the main thread.
+    private final RideRecompute.Listener recomputeListener = new RideRecompute.Listener() {
+        @Override
+        public void onRecomputeProgress(int done, int total) {
+            Log.d(TAG, "Recomputed statistics of " + done + " of " + total + " rides");
+        }
+
+        @Override
+        public void onRecomputeFinished(boolean applied) {
+            recompute = null;
+            if (applied) {
+                updateTotalDistance();
+            }
+        }
+    };
+
+    // Adds the ride sent back by AddEditRideActivity and scrolls to it.
+    private void addRide(RideDelta delta) {
+        long rideId = 0;
+        try {
+            rideId = rideStore.add(delta.applyTo(new RideRecord()));
+        } catch (IOException e) {
+            onSaveError(e);
+        }
+        if (rideAdapter.isFiltered()) {
+            runSearch();
+        } else {
+            // If the ride failed to save, its ID isn't known, so rebind all rows
+            int position = rideAdapter.positionOf(rideId);
+            if (position < 0) {
+                rideAdapter.onRidesChanged();
+            } else {
+                rideAdapter.onRidesInserted(position, 1);
+                rideListView.scrollToPosition(position);
+            }
+        }
+    }
+
+    // Applies the changed fields of a ride to the stored ride and updates its row.
+    // Nothing happens if the ride was deleted in the meantime.
+    private void editRide(RideDelta delta) {
+        long rideId = delta.getRideId();
+        RideRecord record = new RideRecord();
+        if (!rideStore.read(rideId, record)) {
+            return;
+        }
+        int from = rideAdapter.positionOf(rideId);
+        try {
+            rideStore.edit(rideId, delta.applyTo(record));
+        } catch (IOException e) {
+            onSaveError(e);
+        }
+        if (rideAdapter.isFiltered()) {
+            runSearch();
+        } else {
+            // In a sorted list, the ride moves if the field it's sorted by changed
+            int to = rideAdapter.positionOf(rideId);
+            if (to == from) {
+                rideAdapter.onRideChanged(to);
+            } else {
+                rideAdapter.onRideMoved(from, to);
+            }
+        }
+    }
+
+    // Deletes the ride with the given ID and removes its row from the list.
+    // Nothing happens if the ride was already deleted. Rows shown from the head or snapshot can
+    // only be deleted once the store has loaded.
+    private void deleteRide(long rideId) {
+        if (rideStore == null) {
+            Toast.makeText(this, R.string.still_loading, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        int position = rideAdapter.positionOf(rideId);
+        if (position < 0) {
+            return;
+        }
+        try {
+            rideStore.delete(rideId);
+        } catch (IOException e) {
+            onSaveError(e);
+        }
+        if (rideAdapter.isFiltered()) {
+            runSearch();
+        } else {
+            rideAdapter.onRideRemoved(position);
+        }
+        updateEmptyView();
+        updateTotalDistance();
+        final long deletedId = rideId;
+        Snackbar.make(rideListView, R.string.ride_deleted, Snackbar.LENGTH_LONG)
+                .setAction(R.string.undo, new View.OnClickListener() {
+                    @Override
+                    public void onClick(View view) {
+                        undoDelete(deletedId);
+                    }
+                })
+                .show();
+    }
 
-        for (Ride ride: rideList) {
-            totalDistanceValue += ride.getDistance();
+    // Brings back the ride deleted from the list, unless a later change that wasn't undone came in
+    // between, since undo would take back that change instead.
+    private void undoDelete(long rideId) {
+        boolean undone = false;
+        try {
+            undone = rideStore.undoDelete(rideId);
+        } catch (IOException e) {
+            onSaveError(e);
         }
+        if (undone) {
+            showChangedRide(rideId);
+        }
+    }
+
+    // Takes back the last change, or makes the last change that was taken back again, and shows
+    // the ride it changed. The list finds the rows that changed by comparing snapshots.
+    private void undoOrRedo(boolean undo) {
+        if (rideStore == null || !(undo ? rideStore.canUndo() : rideStore.canRedo())) {
+            return;
+        }
+        long rideId = 0;
+        try {
+            rideId = undo ? rideStore.undo() : rideStore.redo();
+        } catch (IOException e) {
+            onSaveError(e);
+        }
+        showChangedRide(rideId);
+    }
+
+    // Updates the list after an undo or redo and scrolls to the ride it changed.
+    private void showChangedRide(long rideId) {
+        if (rideAdapter.isFiltered()) {
+            runSearch();
+        } else {
+            rideAdapter.onRidesChanged();
+            int position = rideAdapter.positionOf(rideId);
+            if (position >= 0) {
+                rideListView.scrollToPosition(position);
+            }
+        }
+        updateEmptyView();
+        updateTotalDistance();
+    }
+
+    // Shows the rides matching the search text, or all rides if there is none.
+    // The comment index answers in well under a millisecond, so this runs on every keystroke.
+    private void runSearch() {
+        if (rideStore == null) {
+            return;
+        }
+        rideAdapter.setFilter(searchQuery.isEmpty() ? null : rideStore.search(searchQuery));
+        updateEmptyView();
+    }
+
+    // Displays emptyListView if ride list is empty. While loading, the list may just not be read yet,
+    // unless the head tells how many rides there are.
+    private void updateEmptyView() {
+        boolean known = rideStore != null || head != null;
+        emptyListView.setVisibility(known && rideAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
+    }
+
+    // Displays the total distance of all rides at the bottom of the page.
+    // The total is kept up to date by the ride store, so this does not depend on the number of rides.
+    // While the store loads, the total saved in the head is shown. The text is written into a
+    // buffer the view shows, so this allocates nothing, with the decimal separator of the locale.
+    private void updateTotalDistance() {
+        double total;
+        if (rideStore != null) {
+            total = rideStore.getAggregates().getTotalDistance();
+        } else if (head != null) {
+            total = head.totalDistance;
+        } else {
+            return;
+        }
+        int length = RideFormat.appendNumber(totalDistanceText, 0, total, 1, decimalSeparator);
+        totalDistance.setText(totalDistanceText, 0, length);
+    }
 
-        totalDistance.setText(String.format("%.1f", totalDistanceValue));
+    // Lets the user know a change could not be written to storage.
+    // The change is still shown, but will be lost when the app is closed.
+    private void onSaveError(IOException e) {
+        Log.e(TAG, "Could not save rides", e);
+        Toast.makeText(this, R.string.save_error, Toast.LENGTH_LONG).show();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,211 @@
+package com.example.gatilogo_ridebook;
+
+/**
+ * RideAggregates class
+ *
+ * Keeps running statistics over a set of rides: ride count, total distance, distance-weighted
+ * average speed, time-weighted average cadence, and the smallest and largest distance, speed
+ * and cadence.
+ * Adding or removing a ride updates the statistics without looking at the other rides, and
+ * allocates nothing. Sums are compensated (Kahan-Babuska) so they don't drift over long histories,
+ * even when rides are removed again.
+ * The smallest and largest values are plain fields. Removing a ride that holds one of them marks
+ * them stale, and they are found again from the rides of the RideTable the next time one is
+ * asked for.
+ * Statistics over separate sets of rides can be merged, so they can be built in parallel.
+ */
+class RideAggregates {
+
+    private int count;
+    private final CompensatedSum totalDistance = new CompensatedSum();         // sum of d
+    private final CompensatedSum totalDistanceSpeed = new CompensatedSum();    // sum of d * v
+    private final CompensatedSum totalHours = new CompensatedSum();            // sum of t = d / v
+    private final CompensatedSum totalHoursCadence = new CompensatedSum();     // sum of t * c
+
+    private float minDistance;
+    private float maxDistance;
+    private float minAvgSpeed;
+    private float maxAvgSpeed;
+    private int minAvgCadence;
+    private int maxAvgCadence;
+    private boolean extremesStale;      // A ride holding a smallest or largest value was removed
+    private RideTable rides;            // Where stale min/max values are found again, or null
+
+    // Sets the table holding the rides of these statistics, for finding the smallest and largest
+    // values again after a ride holding one of them was removed.
+    void setRides(RideTable rides) {
+        this.rides = rides;
+    }
+
+    void add(float distance, float avgSpeed, int avgCadence) {
+        apply(distance, avgSpeed, avgCadence, 1);
+    }
+
+    void remove(float distance, float avgSpeed, int avgCadence) {
+        apply(distance, avgSpeed, avgCadence, -1);
+    }
+
+    // Adds the rides of another instance, as if they had been added one by one.
+    void merge(RideAggregates other) {
+        count += other.count;
+        totalDistance.merge(other.totalDistance);
+        totalDistanceSpeed.merge(other.totalDistanceSpeed);
+        totalHours.merge(other.totalHours);
+        totalHoursCadence.merge(other.totalHoursCadence);
+        extremesStale |= other.extremesStale;
+        if (other.count > 0) {
+            include(other.minDistance, other.minAvgSpeed, other.minAvgCadence, count == other.count);
+            include(other.maxDistance, other.maxAvgSpeed, other.maxAvgCadence, false);
+        }
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    double getTotalDistance() {
+        return totalDistance.get();
+    }
+
+    // Average speed where every ride counts in proportion to its distance.
+    double getAverageSpeed() {
+        double total = totalDistance.get();
+        return total > 0 ? totalDistanceSpeed.get() / total : 0;
+    }
+
+    // Average cadence where every ride counts in proportion to the time it took.
+    double getAverageCadence() {
+        double total = totalHours.get();
+        return total > 0 ? totalHoursCadence.get() / total : 0;
+    }
+
+    float getMinDistance() {
+        findExtremes();
+        return minDistance;
+    }
+
+    float getMaxDistance() {
+        findExtremes();
+        return maxDistance;
+    }
+
+    float getMinAvgSpeed() {
+        findExtremes();
+        return minAvgSpeed;
+    }
+
+    float getMaxAvgSpeed() {
+        findExtremes();
+        return maxAvgSpeed;
+    }
+
+    int getMinAvgCadence() {
+        findExtremes();
+        return minAvgCadence;
+    }
+
+    int getMaxAvgCadence() {
+        findExtremes();
+        return maxAvgCadence;
+    }
+
+    // Adds (sign = 1) or removes (sign = -1) a ride's contribution.
+    private void apply(float distance, float avgSpeed, int avgCadence, int sign) {
+        double d = distance;
+        double v = avgSpeed;
+        double t = v > 0 ? d / v : 0;
+
+        count += sign;
+        if (count == 0) {
+            // Nothing left, so start over from exactly zero
+            totalDistance.reset();
+            totalDistanceSpeed.reset();
+            totalHours.reset();
+            totalHoursCadence.reset();
+            include(0, 0, 0, true);
+            extremesStale = false;
+        } else {
+            totalDistance.add(sign * d);
+            totalDistanceSpeed.add(sign * d * v);
+            totalHours.add(sign * t);
+            totalHoursCadence.add(sign * t * avgCadence);
+        }
+
+        if (sign > 0) {
+            include(distance, avgSpeed, avgCadence, count == 1);
+        } else if (count > 0 && (distance <= minDistance || distance >= maxDistance
+                || avgSpeed <= minAvgSpeed || avgSpeed >= maxAvgSpeed
+                || avgCadence <= minAvgCadence || avgCadence >= maxAvgCadence)) {
+            extremesStale = true;
+        }
+    }
+
+    // Widens the smallest and largest values to the given ones, or sets them if first is true.
+    private void include(float distance, float avgSpeed, int avgCadence, boolean first) {
+        if (first) {
+            minDistance = maxDistance = distance;
+            minAvgSpeed = maxAvgSpeed = avgSpeed;
+            minAvgCadence = maxAvgCadence = avgCadence;
+            return;
+        }
+        minDistance = Math.min(minDistance, distance);
+        maxDistance = Math.max(maxDistance, distance);
+        minAvgSpeed = Math.min(minAvgSpeed, avgSpeed);
+        maxAvgSpeed = Math.max(maxAvgSpeed, avgSpeed);
+        minAvgCadence = Math.min(minAvgCadence, avgCadence);
+        maxAvgCadence = Math.max(maxAvgCadence, avgCadence);
+    }
+
+    // Finds the smallest and largest values again by a pass over the rides, if they are stale.
+    private void findExtremes() {
+        if (!extremesStale) {
+            return;
+        }
+        if (rides == null) {
+            throw new IllegalStateException("No rides to find the smallest and largest values in");
+        }
+        boolean first = true;
+        for (int slot = 0; slot < rides.slotCount(); slot++) {
+            if (rides.isLive(slot)) {
+                include(rides.getDistance(slot), rides.getAvgSpeed(slot), rides.getAvgCadence(slot), first);
+                first = false;
+            }
+        }
+        extremesStale = false;
+    }
+
+    /**
+     * Sum of doubles with Neumaier's improvement of Kahan summation, which also stays accurate
+     * when the terms have mixed signs.
+     */
+    static final class CompensatedSum {
+
+        private double sum;
+        private double compensation;
+
+        void add(double value) {
+            double t = sum + value;
+            if (Math.abs(sum) >= Math.abs(value)) {
+                compensation += (sum - t) + value;
+            } else {
+                compensation += (value - t) + sum;
+            }
+            sum = t;
+        }
+
+        // Adds another sum, keeping the compensation of both.
+        void merge(CompensatedSum other) {
+            add(other.sum);
+            add(other.compensation);
+        }
+
+        double get() {
+            return sum + compensation;
+        }
+
+        void reset() {
+            sum = 0;
+            compensation = 0;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.gatilogo_ridebook;
+
+/**
+ * RideBatch class (data structure)
+ *
+ * A fixed number of rides, and the lines that were rejected while reading them, handed between
+ * the thread reading or writing a file and the main thread that owns the RideStore.
+ * Batches are reused, so a transfer of any size only ever holds a couple of them.
+ */
+final class RideBatch {
+
+    static final int CAPACITY = 512;
+
+    final RideRecord[] records = new RideRecord[CAPACITY];
+    int size;
+
+    // Lines rejected while reading, with the field and RideValidator error code of each
+    final long[] errorLines = new long[CAPACITY];
+    final int[] errorFields = new int[CAPACITY];
+    final int[] errorCodes = new int[CAPACITY];
+    int errorCount;
+
+    RideBatch() {
+        for (int i = 0; i < CAPACITY; i++) {
+            records[i] = new RideRecord();
+        }
+    }
+
+    void clear() {
+        size = 0;
+        errorCount = 0;
+    }
+
+    // Returns true if no more rides or errors fit into the batch.
+    boolean isFull() {
+        return size == CAPACITY || errorCount == CAPACITY;
+    }
+
+    void addError(long line, int field, int code) {
+        errorLines[errorCount] = line;
+        errorFields[errorCount] = field;
+        errorCodes[errorCount] = code;
+        errorCount++;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.gatilogo_ridebook;
+
+/**
+ * RideBests class (data structure)
+ *
+ * Personal bests over a set of rides: the longest distance, the fastest average speed and the
+ * highest average cadence, each with the ID of the ride that holds it. Of rides with the same
+ * value, the one added first holds the best.
+ * Bests over separate sets of rides can be merged. A ride can only take a best over, so once the
+ * ride holding one is changed or deleted, the bests have to be found again from all rides.
+ */
+final class RideBests {
+
+    private long longestId;         // 0 = no rides
+    private float longestDistance;
+    private long fastestId;
+    private float fastestSpeed;
+    private long highestCadenceId;
+    private int highestCadence;
+
+    void add(long id, float distance, float avgSpeed, int avgCadence) {
+        if (isBetter(distance, id, longestDistance, longestId)) {
+            longestDistance = distance;
+            longestId = id;
+        }
+        if (isBetter(avgSpeed, id, fastestSpeed, fastestId)) {
+            fastestSpeed = avgSpeed;
+            fastestId = id;
+        }
+        if (isBetter(avgCadence, id, highestCadence, highestCadenceId)) {
+            highestCadence = avgCadence;
+            highestCadenceId = id;
+        }
+    }
+
+    // Takes the bests of another instance where they are better.
+    void merge(RideBests other) {
+        if (other.longestId != 0 && isBetter(other.longestDistance, other.longestId, longestDistance, longestId)) {
+            longestDistance = other.longestDistance;
+            longestId = other.longestId;
+        }
+        if (other.fastestId != 0 && isBetter(other.fastestSpeed, other.fastestId, fastestSpeed, fastestId)) {
+            fastestSpeed = other.fastestSpeed;
+            fastestId = other.fastestId;
+        }
+        if (other.highestCadenceId != 0
+                && isBetter(other.highestCadence, other.highestCadenceId, highestCadence, highestCadenceId)) {
+            highestCadence = other.highestCadence;
+            highestCadenceId = other.highestCadenceId;
+        }
+    }
+
+    // Returns true if the ride with the given ID holds one of the bests.
+    boolean isHeldBy(long id) {
+        return id == longestId || id == fastestId || id == highestCadenceId;
+    }
+
+    void clear() {
+        longestId = 0;
+        longestDistance = 0;
+        fastestId = 0;
+        fastestSpeed = 0;
+        highestCadenceId = 0;
+        highestCadence = 0;
+    }
+
+    long getLongestId() {
+        return longestId;
+    }
+
+    float getLongestDistance() {
+        return longestDistance;
+    }
+
+    long getFastestId() {
+        return fastestId;
+    }
+
+    float getFastestSpeed() {
+        return fastestSpeed;
+    }
+
+    long getHighestCadenceId() {
+        return highestCadenceId;
+    }
+
+    int getHighestCadence() {
+        return highestCadence;
+    }
+
+    private static boolean isBetter(float value, long id, float best, long bestId) {
+        return bestId == 0 || value > best || (value == best && id < bestId);
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.gatilogo_ridebook;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * RideChange class (data structure)
+ *
+ * The latest version of one ride as RideSync sends it to the server and receives it back: the
+ * ride's sync key, its RideClock, whether it was deleted, and its fields unless it was.
+ * Sync keys are the same on every device, unlike ride IDs, see RideSyncLog.
+ * Changes are reused for every ride of a batch, so a sync of any size allocates only the clocks.
+ *
+ * Change layout (big endian, before compression):
+ *   key (long)   flags (byte)   clock length (byte)   clock (longs)
+ *   and unless deleted: epoch minute (int)   distance (float)   avg speed (float)
+ *   avg cadence (int)   comment length (byte)   comment (chars)
+ */
+final class RideChange {
+
+    static final int MAX_CLOCK_LENGTH = 255;
+
+    private static final int FLAG_DELETED = 1;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    long key;
+    long[] clock = RideClock.EMPTY;
+    boolean deleted;
+    final RideRecord record = new RideRecord();
+
+    void write(DataOutputStream out) throws IOException {
+        if (clock.length > MAX_CLOCK_LENGTH) {
+            throw new IOException("Ride " + key + " was changed on too many devices");
+        }
+        out.writeLong(key);
+        out.writeByte(deleted ? FLAG_DELETED : 0);
+        out.writeByte(clock.length);
+        for (long entry : clock) {
+            out.writeLong(entry);
+        }
+        if (!deleted) {
+            out.writeInt(record.epochMinute);
+            out.writeFloat(record.distance);
+            out.writeFloat(record.avgSpeed);
+            out.writeInt(record.avgCadence);
+            out.writeByte(record.commentLength);
+            for (int i = 0; i < record.commentLength; i++) {
+                out.writeChar(record.comment[i]);
+            }
+        }
+    }
+
+    // Reads a change written by write(). Throws an IOException if it can't be a change.
+    void read(DataInputStream in) throws IOException {
+        key = in.readLong();
+        int flags = in.readUnsignedByte();
+        int clockLength = in.readUnsignedByte();
+        if (key <= 0 || (flags & ~FLAG_DELETED) != 0) {
+            throw new IOException("Bad change of ride " + key);
+        }
+        deleted = flags == FLAG_DELETED;
+        clock = clockLength == 0 ? RideClock.EMPTY : new long[clockLength];
+        for (int i = 0; i < clockLength; i++) {
+            clock[i] = in.readLong();
+            if (RideClock.deviceOf(clock[i]) <= 0
+                    || (i > 0 && RideClock.deviceOf(clock[i]) <= RideClock.deviceOf(clock[i - 1]))) {
+                throw new IOException("Bad clock of ride " + key);
+            }
+        }
+        if (!deleted) {
+            record.epochMinute = in.readInt();
+            record.distance = in.readFloat();
+            record.avgSpeed = in.readFloat();
+            record.avgCadence = in.readInt();
+            int commentLength = in.readUnsignedByte();
+            if (commentLength > RideRecord.MAX_COMMENT_LENGTH) {
+                throw new IOException("Comment of ride " + key + " too long");
+            }
+            for (int i = 0; i < commentLength; i++) {
+                record.comment[i] = in.readChar();
+            }
+            record.commentLength = commentLength;
+        }
+    }
+
+    // Returns the hash of the ride's fields, or 0 if it was deleted.
+    long hash() {
+        return deleted ? 0 : hash(record);
+    }
+
+    // Returns true if this version of the ride should be kept over another version with the given
+    // clock that was changed concurrently, see RideClock.compare(). Every device decides the same
+    // way: a ride that exists wins over a delete, so no edit is lost, then the version with the
+    // most changes, then the one with the larger hash.
+    boolean winsOver(long[] otherClock, boolean otherDeleted, long otherHash) {
+        if (deleted != otherDeleted) {
+            return !deleted;
+        }
+        long changes = RideClock.sum(clock);
+        long otherChanges = RideClock.sum(otherClock);
+        if (changes != otherChanges) {
+            return changes > otherChanges;
+        }
+        return hash() >= otherHash;
+    }
+
+    // Returns a 64-bit FNV-1a hash of the fields of a ride, which is never 0. Two versions of a
+    // ride with the same hash are taken to be the same.
+    static long hash(RideRecord record) {
+        long hash = FNV_OFFSET;
+        hash = (hash ^ record.epochMinute) * FNV_PRIME;
+        hash = (hash ^ Float.floatToIntBits(record.distance)) * FNV_PRIME;
+        hash = (hash ^ Float.floatToIntBits(record.avgSpeed)) * FNV_PRIME;
+        hash = (hash ^ record.avgCadence) * FNV_PRIME;
+        hash = (hash ^ record.commentLength) * FNV_PRIME;
+        for (int i = 0; i < record.commentLength; i++) {
+            hash = (hash ^ record.comment[i]) * FNV_PRIME;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+}
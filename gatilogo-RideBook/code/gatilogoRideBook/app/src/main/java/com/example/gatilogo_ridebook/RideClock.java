@@ -0,0 +1,117 @@
+package com.example.gatilogo_ridebook;
+
+/**
+ * RideClock class (utility)
+ *
+ * Version vectors for RideSync, which tell whether one version of a ride came after another or
+ * whether both were changed independently on different devices.
+ * A clock is an array of longs, one per device that changed the ride, sorted by device. Each long
+ * holds the device in its upper 32 bits and the number of changes made there in its lower 32 bits.
+ * Clocks are never changed in place; increment() and merge() return new arrays, so a clock can be
+ * shared between versions.
+ */
+final class RideClock {
+
+    // Results of compare()
+    static final int EQUAL = 0;
+    static final int BEFORE = 1;        // The first clock comes before the second
+    static final int AFTER = 2;         // The first clock comes after the second
+    static final int CONCURRENT = 3;    // Neither comes before the other
+
+    static final long[] EMPTY = new long[0];
+
+    private static final long COUNTER_MASK = 0xFFFFFFFFL;
+
+    private RideClock() {
+    }
+
+    static int deviceOf(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    static long counterOf(long entry) {
+        return entry & COUNTER_MASK;
+    }
+
+    // Returns the clock after one more change on the given device, which must be positive.
+    static long[] increment(long[] clock, int device) {
+        int low = 0;
+        int high = clock.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (deviceOf(clock[middle]) < device) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low < clock.length && deviceOf(clock[low]) == device) {
+            long[] next = clock.clone();
+            next[low]++;
+            return next;
+        }
+        long[] next = new long[clock.length + 1];
+        System.arraycopy(clock, 0, next, 0, low);
+        next[low] = (long) device << 32 | 1;
+        System.arraycopy(clock, low, next, low + 1, clock.length - low);
+        return next;
+    }
+
+    // Returns the clock that has, for every device, the larger count of the two clocks.
+    static long[] merge(long[] a, long[] b) {
+        long[] merged = new long[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && deviceOf(a[i]) < deviceOf(b[j]))) {
+                merged[n++] = a[i++];
+            } else if (i == a.length || deviceOf(b[j]) < deviceOf(a[i])) {
+                merged[n++] = b[j++];
+            } else {
+                merged[n++] = Math.max(a[i++], b[j++]);
+            }
+        }
+        if (n == merged.length) {
+            return merged;
+        }
+        long[] trimmed = new long[n];
+        System.arraycopy(merged, 0, trimmed, 0, n);
+        return trimmed;
+    }
+
+    // Compares two clocks. Returns EQUAL, BEFORE, AFTER or CONCURRENT.
+    static int compare(long[] a, long[] b) {
+        boolean aAhead = false;
+        boolean bAhead = false;
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && deviceOf(a[i]) < deviceOf(b[j]))) {
+                aAhead = true;
+                i++;
+            } else if (i == a.length || deviceOf(b[j]) < deviceOf(a[i])) {
+                bAhead = true;
+                j++;
+            } else {
+                aAhead |= a[i] > b[j];
+                bAhead |= b[j] > a[i];
+                i++;
+                j++;
+            }
+        }
+        if (aAhead) {
+            return bAhead ? CONCURRENT : AFTER;
+        }
+        return bAhead ? BEFORE : EQUAL;
+    }
+
+    // Returns the number of changes the clock counts over all devices.
+    static long sum(long[] clock) {
+        long sum = 0;
+        for (long entry : clock) {
+            sum += counterOf(entry);
+        }
+        return sum;
+    }
+}
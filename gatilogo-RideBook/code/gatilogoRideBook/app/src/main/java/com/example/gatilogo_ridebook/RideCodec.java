@@ -0,0 +1,284 @@
+package com.example.gatilogo_ridebook;
+
+/**
+ * RideCodec class (utility)
+ *
+ * Turns the fields of a ride, as typed into the editor or read from a file, into a RideRecord, and
+ * checks them on the way. Fields are read from any CharSequence, such as the Editable of an
+ * EditText or the buffers of RideValidator, character by character, so no substring or String is
+ * created and nothing is allocated.
+ * decode() follows the rules of the editor: date, time, distance, average speed and average
+ * cadence must not be empty, and the comment must not be longer than RideRecord.MAX_COMMENT_LENGTH.
+ * Spaces around the other fields are ignored. Then every field has to parse, the date and time
+ * must fit in the minutes of RideTime, which end at 6053-01-23 02:07, and distance, speed and
+ * cadence can't be negative. Errors are RideValidator codes, packed with the field they are
+ * about into one int. The other way round, RideTime and RideFormat write rides as text.
+ */
+final class RideCodec {
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+
+    private RideCodec() {
+    }
+
+    // Checks the fields of a ride, indexed by RideValidator field, and if they are valid, writes
+    // the ride into record. Returns RideValidator.OK, or an error to read with errorOf() and
+    // fieldOf(); the record may then be partly written.
+    static int decode(CharSequence[] fields, RideRecord record) {
+        for (int field = RideValidator.DATE; field < RideValidator.COMMENT; field++) {
+            if (isBlank(fields[field])) {
+                return error(field, RideValidator.EMPTY_FIELD);
+            }
+        }
+        CharSequence comment = fields[RideValidator.COMMENT];
+        if (comment.length() > RideRecord.MAX_COMMENT_LENGTH) {
+            return error(RideValidator.COMMENT, RideValidator.COMMENT_TOO_LONG);
+        }
+
+        CharSequence text = fields[RideValidator.DATE];
+        int day = parseDate(text, trimStart(text), trimEnd(text));
+        if (day == Integer.MIN_VALUE) {
+            return error(RideValidator.DATE, RideValidator.BAD_DATE);
+        }
+        text = fields[RideValidator.TIME];
+        int minuteOfDay = parseTime(text, trimStart(text), trimEnd(text));
+        if (minuteOfDay < 0) {
+            return error(RideValidator.TIME, RideValidator.BAD_TIME);
+        }
+        long epochMinute = (long) day * RideTime.MINUTES_PER_DAY + minuteOfDay;
+        if (epochMinute < Integer.MIN_VALUE || epochMinute > Integer.MAX_VALUE) {
+            return error(RideValidator.DATE, RideValidator.OUT_OF_RANGE);
+        }
+        text = fields[RideValidator.DISTANCE];
+        float distance = parseFloat(text, trimStart(text), trimEnd(text));
+        int result = checkAmount(RideValidator.DISTANCE, distance);
+        if (result != RideValidator.OK) {
+            return result;
+        }
+        text = fields[RideValidator.AVG_SPEED];
+        float avgSpeed = parseFloat(text, trimStart(text), trimEnd(text));
+        result = checkAmount(RideValidator.AVG_SPEED, avgSpeed);
+        if (result != RideValidator.OK) {
+            return result;
+        }
+        text = fields[RideValidator.AVG_CADENCE];
+        long avgCadence = parseInt(text, trimStart(text), trimEnd(text));
+        if (avgCadence == Long.MIN_VALUE) {
+            return error(RideValidator.AVG_CADENCE, RideValidator.BAD_NUMBER);
+        }
+        if (avgCadence < 0) {
+            return error(RideValidator.AVG_CADENCE, RideValidator.OUT_OF_RANGE);
+        }
+
+        record.epochMinute = (int) epochMinute;
+        record.distance = distance;
+        record.avgSpeed = avgSpeed;
+        record.avgCadence = (int) avgCadence;
+        int length = comment.length();
+        for (int i = 0; i < length; i++) {
+            record.comment[i] = comment.charAt(i);
+        }
+        record.commentLength = length;
+        return RideValidator.OK;
+    }
+
+    // Returns the RideValidator error code of a result of decode().
+    static int errorOf(int result) {
+        return result & 0xFF;
+    }
+
+    // Returns the RideValidator field of a result of decode(), or -1 if it is OK.
+    static int fieldOf(int result) {
+        return result == RideValidator.OK ? -1 : result >>> 8;
+    }
+
+    // Returns true if the text is empty or only spaces.
+    static boolean isBlank(CharSequence text) {
+        return trimStart(text) == text.length();
+    }
+
+    // Returns the index of the first character of text that isn't a space or control character,
+    // or its length if there is none.
+    static int trimStart(CharSequence text) {
+        int length = text.length();
+        int start = 0;
+        while (start < length && text.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    // Returns the index after the last character of text that isn't a space or control character,
+    // or 0 if there is none.
+    static int trimEnd(CharSequence text) {
+        int end = text.length();
+        while (end > 0 && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    // Parses a "yyyy-M-d" date in text[start, end) into days since 1970-01-01, or returns
+    // Integer.MIN_VALUE.
+    static int parseDate(CharSequence text, int start, int end) {
+        int date = parseYearMonthDay(text, start, end);
+        return date < 0 ? Integer.MIN_VALUE : RideTime.epochDay(date / 10000, date / 100 % 100, date % 100);
+    }
+
+    // Parses a "yyyy-M-d" date in text[start, end) into year * 10000 + month * 100 + day, or
+    // returns -1. The date must exist.
+    static int parseYearMonthDay(CharSequence text, int start, int end) {
+        int firstDash = indexOf(text, start, end, '-');
+        int secondDash = firstDash < 0 ? -1 : indexOf(text, firstDash + 1, end, '-');
+        if (firstDash - start != 4 || secondDash < 0) {
+            return -1;
+        }
+        int year = parseDigits(text, start, firstDash, 4);
+        int month = parseDigits(text, firstDash + 1, secondDash, 2);
+        int day = parseDigits(text, secondDash + 1, end, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            return -1;
+        }
+        return year * 10000 + month * 100 + day;
+    }
+
+    // Parses a "H:mm" time in text[start, end) into minutes since midnight, or returns -1.
+    static int parseTime(CharSequence text, int start, int end) {
+        int colon = indexOf(text, start, end, ':');
+        if (colon < 0 || end - colon != 3) {
+            return -1;
+        }
+        int hour = parseDigits(text, start, colon, 2);
+        int minute = parseDigits(text, colon + 1, end, 2);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59) {
+            return -1;
+        }
+        return hour * 60 + minute;
+    }
+
+    // Parses a decimal number like "-12.75" in text[start, end), or returns NaN.
+    // Up to 18 significant digits are used, which is far more than a float can hold.
+    static float parseFloat(CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;              // Digits after the point that went into the mantissa
+        int dropped = 0;            // Digits before the point that didn't fit into the mantissa
+        boolean point = false;
+        boolean any = false;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && !point) {
+                point = true;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                return Float.NaN;
+            }
+            any = true;
+            if (digits < 18) {
+                if (mantissa != 0 || c != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (point) {
+                    scale++;
+                }
+            } else if (!point) {
+                dropped++;
+            }
+        }
+        if (!any) {
+            return Float.NaN;
+        }
+
+        double value = mantissa;
+        if (dropped > 0) {
+            value *= Math.pow(10, dropped);
+        }
+        value = scale < POWERS_OF_TEN.length ? value / POWERS_OF_TEN[scale] : value / Math.pow(10, scale);
+        return (float) (negative ? -value : value);
+    }
+
+    // Parses an integer in text[start, end) that fits in an int, or returns Long.MIN_VALUE.
+    static long parseInt(CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        if (i == end || end - i > 10) {
+            return Long.MIN_VALUE;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return Long.MIN_VALUE;
+            }
+            value = value * 10 + (c - '0');
+        }
+        value = negative ? -value : value;
+        return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? Long.MIN_VALUE : value;
+    }
+
+    // Packs an error code and the field it is about into a result of decode().
+    private static int error(int field, int error) {
+        return field << 8 | error;
+    }
+
+    // Checks a distance or speed: it must have parsed, and be neither negative nor too large for a
+    // float.
+    private static int checkAmount(int field, float value) {
+        if (Float.isNaN(value)) {
+            return error(field, RideValidator.BAD_NUMBER);
+        }
+        if (value < 0 || Float.isInfinite(value)) {
+            return error(field, RideValidator.OUT_OF_RANGE);
+        }
+        return RideValidator.OK;
+    }
+
+    // Parses 1 to maxDigits digits, or returns -1.
+    private static int parseDigits(CharSequence text, int start, int end, int maxDigits) {
+        if (end <= start || end - start > maxDigits) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int indexOf(CharSequence text, int start, int end, char c) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+            return leap ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.gatilogo_ridebook;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * RideCsvReader class
+ *
+ * Reads rides from CSV with the columns date, time, distance, average speed, average cadence and
+ * an optional comment, as written by RideCsvWriter. A first line starting with a letter is taken
+ * as a header and skipped, and so are empty lines.
+ * Fields may be quoted, with "" for a quote inside a quoted field.
+ * The input is read through one fixed-size buffer and parsed character by character.
+ */
+final class RideCsvReader implements RideReader {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private long line;              // Lines read so far
+    private long rideLine;
+    private int errorField = -1;
+    private boolean started;
+    private final RideValidator validator = new RideValidator();
+
+    RideCsvReader(Reader in) {
+        this.in = in;
+    }
+
+    @Override
+    public int read(RideRecord record) throws IOException {
+        if (!started) {
+            started = true;
+            int first = peek();
+            if ((first >= 'a' && first <= 'z') || (first >= 'A' && first <= 'Z')) {
+                readLine();
+            }
+        }
+
+        while (true) {
+            rideLine = line + 1;
+            int fields = readLine();
+            if (fields < 0) {
+                return END;
+            }
+            if (fields == 0) {
+                continue;
+            }
+            if (fields < RideValidator.COMMENT || fields > RideValidator.FIELD_COUNT) {
+                errorField = -1;
+                return RideValidator.BAD_FORMAT;
+            }
+            int result = validator.validate(record);
+            errorField = validator.getErrorField();
+            return result;
+        }
+    }
+
+    @Override
+    public long getLine() {
+        return rideLine;
+    }
+
+    @Override
+    public int getErrorField() {
+        return errorField;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // Reads one line into the validator. Returns the number of fields on the line, 0 for an empty
+    // line, or -1 at the end of the input.
+    private int readLine() throws IOException {
+        validator.clear();
+        int c = next();
+        if (c < 0) {
+            return -1;
+        }
+        if (c == '\n' || c == '\r') {
+            endLine(c);
+            return 0;
+        }
+
+        int field = 0;
+        boolean quoted = false;
+        boolean fieldStart = true;
+        while (c >= 0) {
+            if (quoted) {
+                if (c == '"') {
+                    if (peek() == '"') {
+                        next();
+                        append(field, '"');
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    append(field, (char) c);
+                }
+            } else if (c == '"' && fieldStart) {
+                quoted = true;
+            } else if (c == ',') {
+                field++;
+                fieldStart = true;
+                c = next();
+                continue;
+            } else if (c == '\n' || c == '\r') {
+                endLine(c);
+                break;
+            } else {
+                append(field, (char) c);
+            }
+            fieldStart = false;
+            c = next();
+        }
+        if (c < 0) {
+            line++;
+        }
+        return field + 1;
+    }
+
+    // Counts a line ending, treating "\r\n" as one.
+    private void endLine(int c) throws IOException {
+        if (c == '\r' && peek() == '\n') {
+            next();
+        }
+        line++;
+    }
+
+    private void append(int field, char c) {
+        if (field < RideValidator.FIELD_COUNT) {
+            validator.append(field, c);
+        }
+    }
+
+    private int next() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    private boolean fill() throws IOException {
+        int read = in.read(buffer, 0, BUFFER_SIZE);
+        if (read <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+}
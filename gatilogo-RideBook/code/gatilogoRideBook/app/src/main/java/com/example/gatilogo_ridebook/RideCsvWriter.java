@@ -0,0 +1,84 @@
+package com.example.gatilogo_ridebook;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * RideCsvWriter class
+ *
+ * Writes rides as CSV that RideCsvReader can read back: a header line, then one line per ride with
+ * date, time, distance, average speed, average cadence and comment.
+ * Comments containing a comma, quote or line break are quoted.
+ */
+final class RideCsvWriter implements RideWriter {
+
+    static final String HEADER = "date,time,distance,avg_speed,avg_cadence,comment";
+
+    private final Writer out;
+    private boolean started;
+
+    // The writer should be buffered, since rides are written in small pieces.
+    RideCsvWriter(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(RideRecord record) throws IOException {
+        if (!started) {
+            started = true;
+            out.write(HEADER);
+            out.write('\n');
+        }
+        out.write(RideTime.formatDate(record.epochMinute));
+        out.write(',');
+        out.write(RideTime.formatTime(record.epochMinute));
+        out.write(',');
+        out.write(RideFormat.toPlainString(record.distance));
+        out.write(',');
+        out.write(RideFormat.toPlainString(record.avgSpeed));
+        out.write(',');
+        out.write(Integer.toString(record.avgCadence));
+        out.write(',');
+        writeComment(record);
+        out.write('\n');
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (!started) {
+            started = true;
+            out.write(HEADER);
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeComment(RideRecord record) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < record.commentLength; i++) {
+            char c = record.comment[i];
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                quote = true;
+                break;
+            }
+        }
+        if (!quote) {
+            out.write(record.comment, 0, record.commentLength);
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < record.commentLength; i++) {
+            char c = record.comment[i];
+            if (c == '"') {
+                out.write('"');
+            }
+            out.write(c);
+        }
+        out.write('"');
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.gatilogo_ridebook;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * RideDelta class (data structure)
+ *
+ * The changes AddEditRideActivity made to a ride, sent back to MainActivity as a Parcelable.
+ * A bit mask says which fields changed, and only those fields are written to the parcel, so
+ * saving an edited ride sends a few bytes instead of a serialized copy of the whole Ride.
+ * A delta for a new ride has ride ID 0 and contains every field.
+ */
+public final class RideDelta implements Parcelable {
+
+    // Bits of the field mask
+    static final int EPOCH_MINUTE = 1;
+    static final int DISTANCE = 1 << 1;
+    static final int AVG_SPEED = 1 << 2;
+    static final int AVG_CADENCE = 1 << 3;
+    static final int COMMENT = 1 << 4;
+    static final int ALL_FIELDS = EPOCH_MINUTE | DISTANCE | AVG_SPEED | AVG_CADENCE | COMMENT;
+
+    private final long rideId;
+    private final int fields;
+    private int epochMinute;
+    private float distance;
+    private float avgSpeed;
+    private int avgCadence;
+    private String comment;
+
+    private RideDelta(long rideId, int fields) {
+        this.rideId = rideId;
+        this.fields = fields;
+    }
+
+    // Creates a delta that adds the ride in the given record.
+    static RideDelta forNewRide(RideRecord record) {
+        RideDelta delta = new RideDelta(0, ALL_FIELDS);
+        delta.copyFrom(record);
+        return delta;
+    }
+
+    // Creates a delta holding the fields that differ between before and after.
+    static RideDelta between(long rideId, RideRecord before, RideRecord after) {
+        int fields = 0;
+        if (before.epochMinute != after.epochMinute) {
+            fields |= EPOCH_MINUTE;
+        }
+        if (Float.floatToIntBits(before.distance) != Float.floatToIntBits(after.distance)) {
+            fields |= DISTANCE;
+        }
+        if (Float.floatToIntBits(before.avgSpeed) != Float.floatToIntBits(after.avgSpeed)) {
+            fields |= AVG_SPEED;
+        }
+        if (before.avgCadence != after.avgCadence) {
+            fields |= AVG_CADENCE;
+        }
+        if (!sameComment(before, after)) {
+            fields |= COMMENT;
+        }
+        RideDelta delta = new RideDelta(rideId, fields);
+        delta.copyFrom(after);
+        return delta;
+    }
+
+    // Returns the ID of the edited ride, or 0 if the delta adds a new ride.
+    long getRideId() {
+        return rideId;
+    }
+
+    boolean isNewRide() {
+        return rideId == 0;
+    }
+
+    // Returns true if nothing was changed.
+    boolean isEmpty() {
+        return fields == 0;
+    }
+
+    // Returns the mask of changed fields.
+    int getFields() {
+        return fields;
+    }
+
+    // Writes the changed fields into a record holding the ride as it was before.
+    RideRecord applyTo(RideRecord record) {
+        if ((fields & EPOCH_MINUTE) != 0) {
+            record.epochMinute = epochMinute;
+        }
+        if ((fields & DISTANCE) != 0) {
+            record.distance = distance;
+        }
+        if ((fields & AVG_SPEED) != 0) {
+            record.avgSpeed = avgSpeed;
+        }
+        if ((fields & AVG_CADENCE) != 0) {
+            record.avgCadence = avgCadence;
+        }
+        if ((fields & COMMENT) != 0) {
+            comment.getChars(0, comment.length(), record.comment, 0);
+            record.commentLength = comment.length();
+        }
+        return record;
+    }
+
+    private void copyFrom(RideRecord record) {
+        epochMinute = record.epochMinute;
+        distance = record.distance;
+        avgSpeed = record.avgSpeed;
+        avgCadence = record.avgCadence;
+        comment = (fields & COMMENT) != 0 ? new String(record.comment, 0, record.commentLength) : null;
+    }
+
+    private static boolean sameComment(RideRecord a, RideRecord b) {
+        if (a.commentLength != b.commentLength) {
+            return false;
+        }
+        for (int i = 0; i < a.commentLength; i++) {
+            if (a.comment[i] != b.comment[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    // Writes the ride ID, the field mask and then only the changed fields.
+    @Override
+    public void writeToParcel(Parcel out, int flags) {
+        out.writeLong(rideId);
+        out.writeInt(fields);
+        if ((fields & EPOCH_MINUTE) != 0) {
+            out.writeInt(epochMinute);
+        }
+        if ((fields & DISTANCE) != 0) {
+            out.writeFloat(distance);
+        }
+        if ((fields & AVG_SPEED) != 0) {
+            out.writeFloat(avgSpeed);
+        }
+        if ((fields & AVG_CADENCE) != 0) {
+            out.writeInt(avgCadence);
+        }
+        if ((fields & COMMENT) != 0) {
+            out.writeString(comment);
+        }
+    }
+
+    public static final Parcelable.Creator<RideDelta> CREATOR = new Parcelable.Creator<RideDelta>() {
+        @Override
+        public RideDelta createFromParcel(Parcel in) {
+            RideDelta delta = new RideDelta(in.readLong(), in.readInt());
+            if ((delta.fields & EPOCH_MINUTE) != 0) {
+                delta.epochMinute = in.readInt();
+            }
+            if ((delta.fields & DISTANCE) != 0) {
+                delta.distance = in.readFloat();
+            }
+            if ((delta.fields & AVG_SPEED) != 0) {
+                delta.avgSpeed = in.readFloat();
+            }
+            if ((delta.fields & AVG_CADENCE) != 0) {
+                delta.avgCadence = in.readInt();
+            }
+            if ((delta.fields & COMMENT) != 0) {
+                delta.comment = in.readString();
+            }
+            return delta;
+        }
+
+        @Override
+        public RideDelta[] newArray(int size) {
+            return new RideDelta[size];
+        }
+    };
+}
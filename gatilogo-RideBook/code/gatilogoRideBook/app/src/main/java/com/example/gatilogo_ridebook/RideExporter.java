@@ -0,0 +1,57 @@
+package com.example.gatilogo_ridebook;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+/**
+ * RideExporter class
+ *
+ * Writes all rides of a RideStore to a RideWriter on a background thread.
+ * The rides are read from a RideSnapshot taken when the exporter is created, so the export has the
+ * rides as they were at that moment, while the main thread goes on adding, editing and deleting
+ * rides without waiting for it.
+ */
+final class RideExporter extends RideTransfer {
+
+    private final RideWriter writer;
+    private final RideSnapshot snapshot;
+    private final RideBatch batch = new RideBatch();
+    private final long[] ids = new long[RideBatch.CAPACITY];
+
+    // Must be called on the main thread.
+    RideExporter(RideStore store, Executor mainThread, RideWriter writer) {
+        super(store, mainThread);
+        this.writer = writer;
+        this.snapshot = store.snapshot();
+    }
+
+    @Override
+    public void run() {
+        IOException error = null;
+        int exported = 0;
+        try {
+            while (!isCancelled()) {
+                batch.size = snapshot.read(exported, RideBatch.CAPACITY, ids, batch.records);
+                if (batch.size == 0) {
+                    break;
+                }
+                for (int i = 0; i < batch.size; i++) {
+                    writer.write(batch.records[i]);
+                }
+                exported += batch.size;
+            }
+            writer.finish();
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        finish(exported, 0, error);
+    }
+}
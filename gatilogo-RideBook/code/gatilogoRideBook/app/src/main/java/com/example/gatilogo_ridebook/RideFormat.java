@@ -0,0 +1,144 @@
+package com.example.gatilogo_ridebook;
+
+import java.math.BigDecimal;
+
+/**
+ * RideFormat class (utility)
+ *
+ * Writes numbers as text into char arrays, for views that are updated often, like the rows of the
+ * ride list while it scrolls. Unlike Float.toString() or String.format(), nothing is allocated:
+ * the digits are worked out with integer arithmetic and written straight into the caller's buffer.
+ * Numbers are rounded to a fixed number of decimals, and trailing zeros are dropped down to one
+ * decimal, so 12.5 shows as "12.5" and 12.75 as "12.75" but 12 as "12.0". The decimal separator is
+ * a point, like in the files rides are imported from, unless the caller passes the one of its locale.
+ * toPlainString() writes a float in full for the editor and exported files, without the exponent
+ * that Float.toString() uses for small and large numbers, so RideCodec can read it back.
+ */
+final class RideFormat {
+
+    // Longest text appendNumber() and appendInt() write
+    static final int MAX_NUMBER_LENGTH = 24;
+
+    // Larger numbers don't fit a long once scaled, and are written by Double.toString()
+    private static final double MAX_EXACT = 1e15;
+    private static final long[] POWERS_OF_TEN = {1, 10, 100, 1000, 10000, 100000, 1000000};
+
+    private RideFormat() {
+    }
+
+    // Writes value rounded half up to the given number of decimals (at most 6) into out at offset,
+    // and returns the offset after it.
+    static int appendNumber(char[] out, int offset, double value, int decimals) {
+        return appendNumber(out, offset, value, decimals, '.');
+    }
+
+    // Same as appendNumber(), with the given decimal separator instead of a point.
+    static int appendNumber(char[] out, int offset, double value, int decimals, char separator) {
+        if (Double.isNaN(value) || Double.isInfinite(value) || Math.abs(value) >= MAX_EXACT) {
+            return append(out, offset, Double.toString(value));
+        }
+        long scale = POWERS_OF_TEN[decimals];
+        long scaled = Math.round(Math.abs(value) * scale);
+        if (value < 0 && scaled != 0) {
+            out[offset++] = '-';
+        }
+        offset = appendDigits(out, offset, scaled / scale);
+        if (decimals == 0) {
+            return offset;
+        }
+        long fraction = scaled % scale;
+        int shown = decimals;
+        while (shown > 1 && fraction % 10 == 0) {
+            fraction /= 10;
+            shown--;
+        }
+        out[offset++] = separator;
+        for (int i = offset + shown - 1; i >= offset; i--) {
+            out[i] = (char) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        return offset + shown;
+    }
+
+    // Returns the same digits as Float.toString(value), but never in exponent form, so 5.0E-4 is
+    // "0.0005" and 1.5E7 is "15000000.0".
+    static String toPlainString(float value) {
+        String text = Float.toString(value);
+        if (text.indexOf('E') < 0) {
+            return text;
+        }
+        String plain = new BigDecimal(text).stripTrailingZeros().toPlainString();
+        return plain.indexOf('.') < 0 ? plain + ".0" : plain;
+    }
+
+    // Writes value as a whole number into out at offset, and returns the offset after it.
+    static int appendInt(char[] out, int offset, long value) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                return append(out, offset, Long.toString(value));
+            }
+            out[offset++] = '-';
+            value = -value;
+        }
+        return appendDigits(out, offset, value);
+    }
+
+    // Copies text into out at offset, and returns the offset after it.
+    static int append(char[] out, int offset, String text) {
+        text.getChars(0, text.length(), out, offset);
+        return offset + text.length();
+    }
+
+    private static int appendDigits(char[] out, int offset, long value) {
+        int length = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            length++;
+        }
+        for (int i = offset + length - 1; i >= offset; i--) {
+            out[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return offset + length;
+    }
+
+    /**
+     * A number with a unit, like "12.5 km", taken from a string resource like "%s km".
+     * The resource is split once into the text before and after the number, so a value can be
+     * written with its unit without formatting the resource again.
+     */
+    static final class Unit {
+
+        private final String prefix;
+        private final String suffix;
+
+        Unit(String template) {
+            String placeholder = template.contains("%1$s") ? "%1$s" : "%s";
+            int at = template.indexOf(placeholder);
+            if (at < 0) {
+                throw new IllegalArgumentException("No placeholder in " + template);
+            }
+            prefix = template.substring(0, at);
+            suffix = template.substring(at + placeholder.length());
+        }
+
+        // Returns the length of the longest text this unit writes.
+        int maxLength() {
+            return prefix.length() + MAX_NUMBER_LENGTH + suffix.length();
+        }
+
+        // Writes value with the given number of decimals and the unit into out at offset, and
+        // returns the offset after it.
+        int append(char[] out, int offset, double value, int decimals) {
+            offset = RideFormat.append(out, offset, prefix);
+            offset = appendNumber(out, offset, value, decimals);
+            return RideFormat.append(out, offset, suffix);
+        }
+
+        // Same as append(char[], int, double, int), for a whole number.
+        int append(char[] out, int offset, long value) {
+            offset = RideFormat.append(out, offset, prefix);
+            offset = appendInt(out, offset, value);
+            return RideFormat.append(out, offset, suffix);
+        }
+    }
+}
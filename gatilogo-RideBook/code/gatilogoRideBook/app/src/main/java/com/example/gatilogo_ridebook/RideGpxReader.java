@@ -0,0 +1,108 @@
+package com.example.gatilogo_ridebook;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * RideGpxReader class
+ *
+ * Reads ride summaries from GPX in the form written by RideGpxWriter: one track per ride, with the
+ * comment as the track's name and the other fields in a "ride" extension element.
+ * The file is read with a streaming XmlPullParser, and element text is handed to the validator
+ * straight from the parser's character buffer.
+ */
+final class RideGpxReader implements RideReader {
+
+    private final XmlPullParser parser;
+    private final Reader in;
+    private final RideValidator validator = new RideValidator();
+    private final int[] textRange = new int[2];
+    private long rideLine;
+    private int errorField = -1;
+
+    // The parser is passed in, since the platform provides it; see android.util.Xml.
+    RideGpxReader(XmlPullParser parser, Reader in) throws IOException {
+        this.parser = parser;
+        this.in = in;
+        try {
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+            parser.setInput(in);
+        } catch (XmlPullParserException e) {
+            throw new IOException("Could not start GPX parser", e);
+        }
+    }
+
+    @Override
+    public int read(RideRecord record) throws IOException {
+        try {
+            int trackDepth = -1;
+            int field = -1;
+            for (int event = parser.next(); event != XmlPullParser.END_DOCUMENT; event = parser.next()) {
+                if (event == XmlPullParser.START_TAG) {
+                    if (trackDepth < 0) {
+                        if ("trk".equals(parser.getName())
+                                && RideGpxWriter.GPX_NAMESPACE.equals(parser.getNamespace())) {
+                            trackDepth = parser.getDepth();
+                            rideLine = parser.getLineNumber();
+                            validator.clear();
+                        }
+                    } else {
+                        field = fieldOf(trackDepth);
+                    }
+                } else if (event == XmlPullParser.TEXT && field >= 0) {
+                    char[] chars = parser.getTextCharacters(textRange);
+                    validator.append(field, chars, textRange[0], textRange[1]);
+                } else if (event == XmlPullParser.END_TAG) {
+                    field = -1;
+                    if (trackDepth == parser.getDepth()) {
+                        int result = validator.validate(record);
+                        errorField = validator.getErrorField();
+                        return result;
+                    }
+                }
+            }
+            return END;
+        } catch (XmlPullParserException e) {
+            throw new IOException("Bad GPX at line " + parser.getLineNumber(), e);
+        }
+    }
+
+    @Override
+    public long getLine() {
+        return rideLine;
+    }
+
+    @Override
+    public int getErrorField() {
+        return errorField;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // Returns the RideValidator field of the element the parser is on, or -1.
+    private int fieldOf(int trackDepth) {
+        String name = parser.getName();
+        if (RideGpxWriter.RIDE_NAMESPACE.equals(parser.getNamespace())) {
+            if ("date".equals(name)) {
+                return RideValidator.DATE;
+            } else if ("time".equals(name)) {
+                return RideValidator.TIME;
+            } else if ("distance".equals(name)) {
+                return RideValidator.DISTANCE;
+            } else if ("avgSpeed".equals(name)) {
+                return RideValidator.AVG_SPEED;
+            } else if ("avgCadence".equals(name)) {
+                return RideValidator.AVG_CADENCE;
+            }
+        } else if (parser.getDepth() == trackDepth + 1 && "name".equals(name)) {
+            return RideValidator.COMMENT;
+        }
+        return -1;
+    }
+}
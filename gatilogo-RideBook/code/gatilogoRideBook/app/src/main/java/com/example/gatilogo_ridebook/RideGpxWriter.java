@@ -0,0 +1,104 @@
+package com.example.gatilogo_ridebook;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * RideGpxWriter class
+ *
+ * Writes a summary of each ride as a GPX 1.1 track without points, which RideGpxReader can read
+ * back. The comment becomes the track's name, and the other fields go into a "ride" element in
+ * the track's extensions:
+ *
+ *   <trk>
+ *     <name>To work</name>
+ *     <type>cycling</type>
+ *     <extensions>
+ *       <rb:ride>
+ *         <rb:date>2019-09-11</rb:date>
+ *         <rb:time>20:36</rb:time>
+ *         <rb:distance>12.5</rb:distance>
+ *         <rb:avgSpeed>21.3</rb:avgSpeed>
+ *         <rb:avgCadence>85</rb:avgCadence>
+ *       </rb:ride>
+ *     </extensions>
+ *   </trk>
+ */
+final class RideGpxWriter implements RideWriter {
+
+    static final String GPX_NAMESPACE = "http://www.topografix.com/GPX/1/1";
+    static final String RIDE_NAMESPACE = "urn:gatilogo:ridebook:gpx:1";
+
+    private final Writer out;
+    private boolean started;
+
+    // The writer should be buffered and encode UTF-8, since rides are written in small pieces.
+    RideGpxWriter(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(RideRecord record) throws IOException {
+        start();
+        out.write("  <trk>\n");
+        if (record.commentLength > 0) {
+            out.write("    <name>");
+            writeEscaped(record.comment, record.commentLength);
+            out.write("</name>\n");
+        }
+        out.write("    <type>cycling</type>\n    <extensions>\n      <rb:ride>\n");
+        writeElement("date", RideTime.formatDate(record.epochMinute));
+        writeElement("time", RideTime.formatTime(record.epochMinute));
+        writeElement("distance", RideFormat.toPlainString(record.distance));
+        writeElement("avgSpeed", RideFormat.toPlainString(record.avgSpeed));
+        writeElement("avgCadence", Integer.toString(record.avgCadence));
+        out.write("      </rb:ride>\n    </extensions>\n  </trk>\n");
+    }
+
+    @Override
+    public void finish() throws IOException {
+        start();
+        out.write("</gpx>\n");
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void start() throws IOException {
+        if (started) {
+            return;
+        }
+        started = true;
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<gpx version=\"1.1\" creator=\"RideBook\" xmlns=\"" + GPX_NAMESPACE
+                + "\" xmlns:rb=\"" + RIDE_NAMESPACE + "\">\n");
+    }
+
+    private void writeElement(String name, String value) throws IOException {
+        out.write("        <rb:");
+        out.write(name);
+        out.write('>');
+        out.write(value);
+        out.write("</rb:");
+        out.write(name);
+        out.write(">\n");
+    }
+
+    private void writeEscaped(char[] chars, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            char c = chars[i];
+            if (c == '<') {
+                out.write("&lt;");
+            } else if (c == '>') {
+                out.write("&gt;");
+            } else if (c == '&') {
+                out.write("&amp;");
+            } else {
+                out.write(c);
+            }
+        }
+    }
+}
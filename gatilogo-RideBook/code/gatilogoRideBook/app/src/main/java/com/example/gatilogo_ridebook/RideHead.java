@@ -0,0 +1,76 @@
+package com.example.gatilogo_ridebook;
+
+import java.io.IOException;
+
+/**
+ * RideHead class (data structure)
+ *
+ * The latest rides and the totals of a RideStore, kept in a small file next to the journal so the
+ * ride list can show something useful before the whole history is loaded.
+ * The store writes it whenever it is flushed, and RideJournal only reads it back while it still
+ * matches the journal, so a head is never older than the rides on disk.
+ * It also tells how many of the first rides are still exactly as in the snapshot file. Together
+ * with a SnapshotReader, it can then show both ends of the list while the store loads.
+ * Since it's only read back while it matches the journal, it's also where the RideUndoLog is kept.
+ */
+final class RideHead {
+
+    static final int SIZE = RidePager.PAGE_SIZE;        // Latest rides kept
+
+    final int rideCount;
+    final double totalDistance;
+    final int snapshotPrefix;           // First rides that are the same as in the snapshot file
+    final long[] ids;
+    final RideRecord[] records;
+    final RideUndoLog undoLog;          // Owned by the head, not shared with the store
+
+    RideHead(int rideCount, double totalDistance, int snapshotPrefix, long[] ids, RideRecord[] records,
+             RideUndoLog undoLog) {
+        this.rideCount = rideCount;
+        this.totalDistance = totalDistance;
+        this.snapshotPrefix = snapshotPrefix;
+        this.ids = ids;
+        this.records = records;
+        this.undoLog = undoLog;
+    }
+
+    // Returns the position of the first ride kept in the head.
+    int firstPosition() {
+        return rideCount - ids.length;
+    }
+
+    // Returns a source for a RidePager with all rides of the store. The latest rides are read from
+    // the head, the first ones from the snapshot, if there is one, and the others are missing.
+    RidePager.Source source(final RidePager.Source snapshot) {
+        return new RidePager.Source() {
+            @Override
+            public int size() {
+                return rideCount;
+            }
+
+            @Override
+            public boolean isInMemory(int position, int count) {
+                return snapshot == null || position >= snapshotPrefix;
+            }
+
+            @Override
+            public int read(int position, int count, long[] ids, RideRecord[] records) throws IOException {
+                int n = Math.max(0, Math.min(count, rideCount - position));
+                int read = 0;
+                if (snapshot != null && position < snapshotPrefix) {
+                    read = snapshot.read(position, Math.min(n, snapshotPrefix - position), ids, records);
+                }
+                for (int i = read; i < n; i++) {
+                    int index = position + i - firstPosition();
+                    if (index >= 0) {
+                        ids[i] = RideHead.this.ids[index];
+                        records[i].set(RideHead.this.records[index]);
+                    } else {
+                        ids[i] = 0;
+                    }
+                }
+                return n;
+            }
+        };
+    }
+}
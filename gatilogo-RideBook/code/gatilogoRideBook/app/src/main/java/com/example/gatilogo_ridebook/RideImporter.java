@@ -0,0 +1,120 @@
+package com.example.gatilogo_ridebook;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * RideImporter class
+ *
+ * Reads rides from a RideReader on a background thread and adds them to a RideStore in batches.
+ * Each batch is added on the main thread with one RideStore.addAll() call, which writes it to the
+ * journal at once, and is reported to the listener with one onRidesAdded() call.
+ * Only two batches exist: while the main thread adds one, the reader fills the other, and the
+ * reader waits if the main thread falls behind.
+ */
+final class RideImporter extends RideTransfer {
+
+    private final RideReader reader;
+    private final BlockingQueue<RideBatch> freeBatches = new ArrayBlockingQueue<>(2);
+
+    // Counted on the main thread
+    private int imported;
+    private int rejected;
+    private IOException storeError;
+
+    RideImporter(RideStore store, Executor mainThread, RideReader reader) {
+        super(store, mainThread);
+        this.reader = reader;
+        freeBatches.add(new RideBatch());
+        freeBatches.add(new RideBatch());
+    }
+
+    @Override
+    public void run() {
+        IOException readError = null;
+        try {
+            RideBatch batch = freeBatches.take();
+            while (!isCancelled()) {
+                int result = reader.read(batch.records[batch.size]);
+                if (result == RideReader.END) {
+                    break;
+                }
+                if (result == RideValidator.OK) {
+                    batch.size++;
+                } else {
+                    batch.addError(reader.getLine(), reader.getErrorField(), result);
+                }
+                if (batch.isFull()) {
+                    post(batch);
+                    batch = freeBatches.take();
+                }
+            }
+            post(batch);
+        } catch (IOException e) {
+            readError = e;
+        } catch (InterruptedException e) {
+            cancel();
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                if (readError == null) {
+                    readError = e;
+                }
+            }
+        }
+
+        final IOException error = readError;
+        mainThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                finish(imported, rejected, storeError != null ? storeError : error);
+            }
+        });
+    }
+
+    // Hands a batch to the main thread, which adds its rides and puts it back into freeBatches.
+    private void post(final RideBatch batch) {
+        mainThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    apply(batch);
+                } finally {
+                    batch.clear();
+                    freeBatches.add(batch);
+                }
+            }
+        });
+    }
+
+    // Runs on the main thread.
+    private void apply(RideBatch batch) {
+        if (storeError != null) {
+            return;
+        }
+        Listener listener = getListener();
+        if (batch.size > 0) {
+            int position = store.size();
+            try {
+                store.addAll(batch.records, batch.size);
+            } catch (IOException e) {
+                // The rides are in memory but may not be saved, so stop reading more
+                storeError = e;
+                cancel();
+            }
+            imported += batch.size;
+            if (listener != null) {
+                listener.onRidesAdded(position, batch.size);
+            }
+        }
+        rejected += batch.errorCount;
+        if (listener != null) {
+            for (int i = 0; i < batch.errorCount; i++) {
+                listener.onLineRejected(batch.errorLines[i], batch.errorFields[i], batch.errorCodes[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,707 @@
+package com.example.gatilogo_ridebook;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * RideJournal class
+ *
+ * Keeps rides on disk as an append-only log of fixed-width binary records.
+ * Every add, edit and delete appends one record, so saving costs the same no matter how many rides
+ * there are. Each record ends with a CRC so a record torn by a crash is detected and dropped.
+ * Once the log grows large enough, the current rides are written to a snapshot file and the log
+ * is started over (compaction). The snapshot also keeps the next key the store will hand out, so
+ * the key of a deleted ride isn't given out again after its records were compacted away.
+ * Loading maps the snapshot and the log and scans them sequentially.
+ * While that happens, a SnapshotReader can already read pages of the snapshot for the ride list.
+ * Whenever the store is flushed, a small head file is written with its latest rides and totals.
+ * It records the generation and length of the journal it was written for, so readHead() can tell
+ * whether it is still current. The head also carries the RideUndoLog, so undo survives a restart
+ * exactly when the rides it refers to are the ones on disk.
+ *
+ * Record layout (RECORD_SIZE bytes, big endian):
+ *   0  op (byte)             1  comment length (byte)   2  flags (short)
+ *   4  epoch minute (int)    8  key (long)              16 distance (float)
+ *   20 avg speed (float)     24 avg cadence (int)       28 comment (RideRecord.MAX_COMMENT_LENGTH chars)
+ *   68 CRC32 of bytes 0..67 (int)
+ * Journal records have no flags. Undo entries in the head file use the same layout, with the kind
+ * of entry in place of the op and its field mask as flags.
+ */
+final class RideJournal {
+
+    static final byte OP_ADD = 1;
+    static final byte OP_EDIT = 2;
+    static final byte OP_DELETE = 3;
+    static final byte OP_RESTORE = 4;   // Puts back a deleted ride with its old ID
+
+    static final int RECORD_SIZE = 72;
+
+    private static final int JOURNAL_MAGIC = 0x52424A4C;    // "RBJL"
+    private static final int SNAPSHOT_MAGIC = 0x52425350;   // "RBSP"
+    // 2: keys are ride IDs instead of positions. 3: the snapshot keeps the next key as a long.
+    // Journals of version 2 are the same, and its snapshots are still read.
+    private static final int VERSION = 3;
+    private static final int ID_KEYS_VERSION = 2;
+    private static final int JOURNAL_HEADER_SIZE = 16;      // magic, version, generation
+    private static final int SNAPSHOT_HEADER_SIZE = 28;     // magic, version, generation, count, next key
+    private static final int MIN_SNAPSHOT_HEADER_SIZE = 24; // Version 2, with an int next key
+    private static final int PAYLOAD_SIZE = RECORD_SIZE - 4;
+
+    static final String JOURNAL_FILE = "rides.journal";
+    static final String SNAPSHOT_FILE = "rides.snapshot";
+    private static final String SNAPSHOT_TEMP_FILE = "rides.snapshot.tmp";
+    static final String HEAD_FILE = "rides.head";
+    private static final String HEAD_TEMP_FILE = "rides.head.tmp";
+    private static final int HEAD_MAGIC = 0x52424844;       // "RBHD"
+    // magic, version, generation, journal length, ride count, snapshot prefix, total distance,
+    // head count, undo count, undo cursor, unused
+    private static final int HEAD_HEADER_SIZE = 56;
+
+    /**
+     * Receives the records read back by load(), in the order they were written.
+     * The same RideRecord is reused for every call, so it must be copied if it's kept.
+     */
+    interface Replay {
+        void add(long key, RideRecord record) throws IOException;
+        void edit(long key, RideRecord record) throws IOException;
+        void delete(long key) throws IOException;
+        void restore(long key, RideRecord record) throws IOException;
+    }
+
+    private final File dir;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private final byte[] scratch = new byte[RECORD_SIZE];
+    private final CRC32 crc = new CRC32();
+    private final RideRecord decoded = new RideRecord();
+
+    private RandomAccessFile journalFile;
+    private FileChannel journal;
+    private long generation;    // Pairs the journal with the snapshot it applies on top of
+    private long journalSize;   // Offset where the next record is appended
+    private int recordCount;    // Records in the journal since the last compaction
+    private int snapshotCount;  // Rides in the snapshot
+    private long nextKey;       // Next key as of the snapshot, or 0 if it didn't say
+    private boolean changedSinceSnapshot;   // The journal edits or deletes rides of the snapshot
+
+    RideJournal(File dir) {
+        this.dir = dir;
+    }
+
+    // Reads the snapshot and then the journal, passing every record to replay.
+    // A torn or corrupt record at the end of the journal is cut off so appends continue after the
+    // last good record.
+    void load(Replay replay) throws IOException {
+        generation = 0;
+        snapshotCount = 0;
+        nextKey = 0;
+        changedSinceSnapshot = false;
+        File snapshot = new File(dir, SNAPSHOT_FILE);
+        if (snapshot.exists()) {
+            generation = loadSnapshot(snapshot, replay);
+        }
+
+        journalFile = new RandomAccessFile(new File(dir, JOURNAL_FILE), "rw");
+        journal = journalFile.getChannel();
+        recordCount = 0;
+
+        if (!readJournalHeader()) {
+            // Missing, unreadable or left over from before the last compaction
+            resetJournal();
+            return;
+        }
+
+        long end = JOURNAL_HEADER_SIZE;
+        long length = journal.size();
+        if (length >= JOURNAL_HEADER_SIZE + RECORD_SIZE) {
+            MappedByteBuffer buffer = journal.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            buffer.position(JOURNAL_HEADER_SIZE);
+            while (buffer.remaining() >= RECORD_SIZE && readRecord(buffer)) {
+                changedSinceSnapshot |= scratch[0] != OP_ADD;
+                applyRecord(replay);
+                end += RECORD_SIZE;
+                recordCount++;
+            }
+        }
+
+        if (end != length) {
+            journal.truncate(end);
+            journal.force(false);
+        }
+        journalSize = end;
+    }
+
+    // Appends a single record to the journal and forces it to disk.
+    // The record is ignored for deletes and may be null.
+    void append(byte op, long key, RideRecord ride) throws IOException {
+        changedSinceSnapshot |= op != OP_ADD;
+        encode(op, key, ride);
+        record.flip();
+        while (record.hasRemaining()) {
+            journal.write(record, journalSize + record.position());
+        }
+        journal.force(false);
+        journalSize += RECORD_SIZE;
+        recordCount++;
+        RideMetrics.RECORDS_WRITTEN.increment();
+    }
+
+    // Appends an add record for each of the given rides, with keys counting up from firstKey, and
+    // forces them to disk once at the end. Records are written in chunks of up to 64.
+    void appendAdds(long firstKey, RideRecord[] rides, int count) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(RECORD_SIZE * Math.min(count, 64));
+        long position = journalSize;
+        for (int i = 0; i < count; i++) {
+            encode(OP_ADD, firstKey + i, rides[i]);
+            record.flip();
+            chunk.put(record);
+            if (!chunk.hasRemaining() || i == count - 1) {
+                position = writeChunk(chunk, position);
+            }
+        }
+        journal.force(false);
+        journalSize += (long) RECORD_SIZE * count;
+        recordCount += count;
+        RideMetrics.RECORDS_WRITTEN.add(count);
+    }
+
+    // Appends a record for each change from index from to index to, skipping changes whose op is 0,
+    // without forcing them to disk. Records are written in chunks of up to 64.
+    void appendAll(byte[] ops, long[] keys, RideRecord[] rides, int from, int to) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(RECORD_SIZE * 64);
+        long position = journalSize;
+        int written = 0;
+        for (int i = from; i < to; i++) {
+            if (ops[i] == 0) {
+                continue;
+            }
+            changedSinceSnapshot |= ops[i] != OP_ADD;
+            encode(ops[i], keys[i], ops[i] == OP_DELETE ? null : rides[i]);
+            record.flip();
+            chunk.put(record);
+            written++;
+            if (!chunk.hasRemaining()) {
+                position = writeChunk(chunk, position);
+            }
+        }
+        writeChunk(chunk, position);
+        journalSize += (long) RECORD_SIZE * written;
+        recordCount += written;
+        RideMetrics.RECORDS_WRITTEN.add(written);
+    }
+
+    // Forces everything appended so far to disk.
+    void force() throws IOException {
+        journal.force(false);
+    }
+
+    // Returns the key the store was to hand out next when the loaded snapshot was written, or 0 if
+    // it isn't known. Keys in the journal on top of it can be higher.
+    long getNextKey() {
+        return nextKey;
+    }
+
+    // Returns the number of records appended since the last compaction.
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    // Writes the rides read from the given source as a new snapshot and starts an empty journal on
+    // top of it. Rides are written in list order, each with its ID as the key. nextKey is the key
+    // the next added ride will get.
+    // The snapshot is written to a temporary file and renamed into place, so a crash at any point
+    // leaves either the old snapshot with its journal or the new snapshot.
+    void compact(RidePager.Source rides, long nextKey) throws IOException {
+        long start = System.nanoTime();
+        long nextGeneration = generation + 1;
+        File temp = new File(dir, SNAPSHOT_TEMP_FILE);
+
+        RandomAccessFile file = new RandomAccessFile(temp, "rw");
+        try {
+            FileChannel channel = file.getChannel();
+            channel.truncate(0);
+
+            ByteBuffer buffer = ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE + RECORD_SIZE * 256);
+            buffer.putInt(SNAPSHOT_MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putLong(nextGeneration);
+            int count = rides.size();
+            buffer.putInt(count);
+            buffer.putLong(nextKey);
+
+            long[] ids = new long[RidePager.PAGE_SIZE];
+            RideRecord[] page = new RideRecord[RidePager.PAGE_SIZE];
+            for (int i = 0; i < page.length; i++) {
+                page[i] = new RideRecord();
+            }
+            for (int position = 0; position < count; position += RidePager.PAGE_SIZE) {
+                int n = rides.read(position, RidePager.PAGE_SIZE, ids, page);
+                for (int i = 0; i < n; i++) {
+                    if (buffer.remaining() < RECORD_SIZE) {
+                        writeFully(channel, buffer);
+                    }
+                    encode(OP_ADD, ids[i], page[i]);
+                    buffer.put(record.array(), 0, RECORD_SIZE);
+                }
+            }
+            writeFully(channel, buffer);
+            channel.force(true);
+        } finally {
+            file.close();
+        }
+
+        if (!temp.renameTo(new File(dir, SNAPSHOT_FILE))) {
+            throw new IOException("Could not replace " + SNAPSHOT_FILE);
+        }
+
+        generation = nextGeneration;
+        snapshotCount = rides.size();
+        this.nextKey = nextKey;
+        resetJournal();
+        RideMetrics.COMPACT.recordSince(start);
+    }
+
+    // Writes the head file for the journal as it is now. Everything appended must have been forced
+    // to disk, or the head could describe rides that are lost in a crash.
+    // The file is renamed into place, and a torn file fails its CRC, so it isn't forced.
+    void writeHead(RideHead head) throws IOException {
+        long start = System.nanoTime();
+        int count = head.ids.length;
+        RideUndoLog undoLog = head.undoLog;
+        int undoCount = undoLog.size();
+        ByteBuffer buffer = ByteBuffer.allocate(HEAD_HEADER_SIZE + (count + undoCount) * RECORD_SIZE + 4);
+        buffer.putInt(HEAD_MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(generation);
+        buffer.putLong(journalSize);
+        buffer.putInt(head.rideCount);
+        buffer.putInt(changedSinceSnapshot ? 0 : snapshotCount);
+        buffer.putDouble(head.totalDistance);
+        buffer.putInt(count);
+        buffer.putInt(undoCount);
+        buffer.putInt(undoLog.getCursor());
+        buffer.putInt(0);
+        for (int i = 0; i < count; i++) {
+            encode(OP_ADD, head.ids[i], head.records[i]);
+            buffer.put(record.array(), 0, RECORD_SIZE);
+        }
+        for (int i = 0; i < undoCount; i++) {
+            int entry = undoLog.entry(i);
+            encode(undoLog.getKind(entry), (short) undoLog.getMask(entry), undoLog.getId(entry),
+                    undoLog.getValues(entry));
+            buffer.put(record.array(), 0, RECORD_SIZE);
+        }
+        crc.reset();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+
+        File temp = new File(dir, HEAD_TEMP_FILE);
+        RandomAccessFile file = new RandomAccessFile(temp, "rw");
+        try {
+            FileChannel channel = file.getChannel();
+            channel.truncate(0);
+            writeFully(channel, buffer);
+        } finally {
+            file.close();
+        }
+        if (!temp.renameTo(new File(dir, HEAD_FILE))) {
+            throw new IOException("Could not replace " + HEAD_FILE);
+        }
+        RideMetrics.HEAD.recordSince(start);
+    }
+
+    // Reads the head file in the given directory. Returns null if there is none, or if the journal
+    // has changed since it was written, or if it is damaged.
+    static RideHead readHead(File dir) throws IOException {
+        File headFile = new File(dir, HEAD_FILE);
+        File journalFile = new File(dir, JOURNAL_FILE);
+        if (!headFile.exists() || !journalFile.exists()) {
+            return null;
+        }
+
+        byte[] bytes = readFully(headFile, (int) Math.min(headFile.length(),
+                HEAD_HEADER_SIZE + (RideHead.SIZE + RideUndoLog.CAPACITY) * RECORD_SIZE + 4));
+        if (bytes.length < HEAD_HEADER_SIZE + 4) {
+            return null;
+        }
+        CRC32 check = new CRC32();
+        check.update(bytes, 0, bytes.length - 4);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.getInt(bytes.length - 4) != (int) check.getValue()
+                || buffer.getInt() != HEAD_MAGIC || buffer.getInt() != VERSION) {
+            return null;
+        }
+        long headGeneration = buffer.getLong();
+        long journalLength = buffer.getLong();
+        int rideCount = buffer.getInt();
+        int snapshotPrefix = buffer.getInt();
+        double totalDistance = buffer.getDouble();
+        int count = buffer.getInt();
+        int undoCount = buffer.getInt();
+        int undoCursor = buffer.getInt();
+        buffer.getInt();
+        if (count < 0 || count > rideCount || undoCount < 0 || undoCount > RideUndoLog.CAPACITY
+                || undoCursor < 0 || undoCursor > undoCount
+                || bytes.length != HEAD_HEADER_SIZE + (count + undoCount) * RECORD_SIZE + 4) {
+            return null;
+        }
+
+        // The head is only current if the journal is exactly as long as when it was written, and
+        // belongs to the same snapshot
+        byte[] journalHeader = readFully(journalFile, JOURNAL_HEADER_SIZE);
+        if (journalHeader.length < JOURNAL_HEADER_SIZE
+                || ByteBuffer.wrap(journalHeader).getLong(8) != headGeneration
+                || journalFile.length() != journalLength) {
+            return null;
+        }
+        File snapshotFile = new File(dir, SNAPSHOT_FILE);
+        if (snapshotFile.exists()) {
+            byte[] snapshotHeader = readFully(snapshotFile, MIN_SNAPSHOT_HEADER_SIZE);
+            if (snapshotHeader.length < MIN_SNAPSHOT_HEADER_SIZE
+                    || ByteBuffer.wrap(snapshotHeader).getLong(8) != headGeneration) {
+                return null;
+            }
+        } else if (headGeneration != 0) {
+            return null;
+        }
+
+        long[] ids = new long[count];
+        RideRecord[] records = new RideRecord[count];
+        for (int i = 0; i < count; i++) {
+            buffer.position(HEAD_HEADER_SIZE + i * RECORD_SIZE);
+            records[i] = new RideRecord();
+            ids[i] = decode(buffer, records[i]);
+        }
+        RideUndoLog undoLog = new RideUndoLog();
+        RideRecord values = new RideRecord();
+        for (int i = 0; i < undoCount; i++) {
+            int offset = HEAD_HEADER_SIZE + (count + i) * RECORD_SIZE;
+            buffer.position(offset);
+            long id = decode(buffer, values);
+            byte kind = buffer.get(offset);
+            if (kind != RideUndoLog.EXISTS && kind != RideUndoLog.FIELDS) {
+                return null;
+            }
+            undoLog.add(kind, id, buffer.getShort(offset + 2), values);
+        }
+        undoLog.setCursor(undoCursor);
+        return new RideHead(rideCount, totalDistance, snapshotPrefix, ids, records, undoLog);
+    }
+
+    void close() throws IOException {
+        if (journalFile != null) {
+            journalFile.close();
+            journalFile = null;
+            journal = null;
+        }
+    }
+
+    // Replays every record of the snapshot file and returns its generation.
+    private long loadSnapshot(File snapshot, Replay replay) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(snapshot, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long length = channel.size();
+            if (length < MIN_SNAPSHOT_HEADER_SIZE) {
+                throw new IOException("Truncated " + SNAPSHOT_FILE);
+            }
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            int headerSize = buffer.getInt() == SNAPSHOT_MAGIC ? snapshotHeaderSize(buffer.getInt()) : -1;
+            if (headerSize < 0 || length < headerSize) {
+                throw new IOException("Unrecognized " + SNAPSHOT_FILE);
+            }
+            long snapshotGeneration = buffer.getLong();
+            int count = buffer.getInt();
+            nextKey = headerSize == MIN_SNAPSHOT_HEADER_SIZE ? buffer.getInt() & 0xFFFFFFFFL : buffer.getLong();
+
+            if (length < headerSize + (long) count * RECORD_SIZE) {
+                throw new IOException("Truncated " + SNAPSHOT_FILE);
+            }
+            for (int i = 0; i < count; i++) {
+                // Unlike the journal, the snapshot is only renamed into place once complete,
+                // so a bad record here is real corruption.
+                if (!readRecord(buffer)) {
+                    throw new IOException("Corrupt record " + i + " in " + SNAPSHOT_FILE);
+                }
+                applyRecord(replay);
+            }
+            snapshotCount = count;
+            return snapshotGeneration;
+        } finally {
+            file.close();
+        }
+    }
+
+    // Checks the journal header. Returns false if the journal can't be replayed on top of the
+    // loaded snapshot.
+    private boolean readJournalHeader() throws IOException {
+        if (journal.size() < JOURNAL_HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (journal.read(header, header.position()) < 0) {
+                return false;
+            }
+        }
+        header.flip();
+        if (header.getInt() != JOURNAL_MAGIC) {
+            return false;
+        }
+        int version = header.getInt();
+        if (version < ID_KEYS_VERSION || version > VERSION) {
+            // Never drop rides written in a format this version doesn't understand
+            throw new IOException("Unsupported " + JOURNAL_FILE + " version");
+        }
+        return header.getLong() == generation;
+    }
+
+    // Returns the size of the header of a snapshot of the given version, or -1 if it can't be read.
+    private static int snapshotHeaderSize(int version) {
+        if (version == ID_KEYS_VERSION) {
+            return MIN_SNAPSHOT_HEADER_SIZE;
+        }
+        return version == VERSION ? SNAPSHOT_HEADER_SIZE : -1;
+    }
+
+    // Empties the journal and writes a header for the current generation.
+    private void resetJournal() throws IOException {
+        changedSinceSnapshot = false;
+        journal.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_SIZE);
+        header.putInt(JOURNAL_MAGIC);
+        header.putInt(VERSION);
+        header.putLong(generation);
+        header.flip();
+        while (header.hasRemaining()) {
+            journal.write(header, header.position());
+        }
+        journal.force(true);
+        journalSize = JOURNAL_HEADER_SIZE;
+        recordCount = 0;
+    }
+
+    // Copies the next record into scratch and verifies its CRC.
+    private boolean readRecord(ByteBuffer buffer) {
+        buffer.get(scratch, 0, RECORD_SIZE);
+        return checkRecord(scratch, 0, crc);
+    }
+
+    // Decodes the record in scratch and passes it on to replay.
+    private void applyRecord(Replay replay) throws IOException {
+        byte op = scratch[0];
+        long key = decode(ByteBuffer.wrap(scratch), decoded);
+
+        if (op == OP_DELETE) {
+            replay.delete(key);
+        } else if (op == OP_ADD) {
+            replay.add(key, decoded);
+        } else if (op == OP_EDIT) {
+            replay.edit(key, decoded);
+        } else if (op == OP_RESTORE) {
+            replay.restore(key, decoded);
+        } else {
+            throw new IOException("Unknown journal op " + op);
+        }
+    }
+
+    // Decodes the record at the position of in into ride and returns its key.
+    // The fields of a delete record are all zero.
+    private static long decode(ByteBuffer in, RideRecord ride) throws IOException {
+        in.get();
+        int commentLength = in.get();
+        in.getShort();
+        ride.epochMinute = in.getInt();
+        long key = in.getLong();
+        ride.distance = in.getFloat();
+        ride.avgSpeed = in.getFloat();
+        ride.avgCadence = in.getInt();
+        if (commentLength < 0 || commentLength > RideRecord.MAX_COMMENT_LENGTH) {
+            throw new IOException("Bad comment length " + commentLength);
+        }
+        for (int i = 0; i < commentLength; i++) {
+            ride.comment[i] = in.getChar();
+        }
+        ride.commentLength = commentLength;
+        return key;
+    }
+
+    // Returns true if the CRC at the end of the record at the given offset matches its payload.
+    private static boolean checkRecord(byte[] bytes, int offset, CRC32 crc) {
+        crc.reset();
+        crc.update(bytes, offset, PAYLOAD_SIZE);
+        int end = offset + PAYLOAD_SIZE;
+        int stored = ((bytes[end] & 0xFF) << 24)
+                | ((bytes[end + 1] & 0xFF) << 16)
+                | ((bytes[end + 2] & 0xFF) << 8)
+                | (bytes[end + 3] & 0xFF);
+        return stored == (int) crc.getValue();
+    }
+
+    // Encodes a record into the shared record buffer.
+    private void encode(byte op, long key, RideRecord ride) {
+        encode(op, (short) 0, key, ride);
+    }
+
+    // Same as encode(byte, long, RideRecord), with flags.
+    private void encode(byte op, short flags, long key, RideRecord ride) {
+        record.clear();
+        record.put(op);
+        if (ride == null) {
+            record.put((byte) 0);
+            record.putShort(flags);
+            record.putInt(0);
+            record.putLong(key);
+        } else {
+            record.put((byte) ride.commentLength);
+            record.putShort(flags);
+            record.putInt(ride.epochMinute);
+            record.putLong(key);
+            record.putFloat(ride.distance);
+            record.putFloat(ride.avgSpeed);
+            record.putInt(ride.avgCadence);
+            for (int i = 0; i < ride.commentLength; i++) {
+                record.putChar(ride.comment[i]);
+            }
+        }
+        while (record.position() < PAYLOAD_SIZE) {
+            record.put((byte) 0);
+        }
+
+        crc.reset();
+        crc.update(record.array(), 0, PAYLOAD_SIZE);
+        record.putInt((int) crc.getValue());
+    }
+
+    // Writes a chunk of records at the given position and returns the position after them.
+    private long writeChunk(ByteBuffer chunk, long position) throws IOException {
+        chunk.flip();
+        while (chunk.hasRemaining()) {
+            position += journal.write(chunk, position);
+        }
+        chunk.clear();
+        return position;
+    }
+
+    // Reads up to length bytes from the start of a file.
+    private static byte[] readFully(File file, int length) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) Math.min(length, in.length())];
+            in.readFully(bytes);
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Reads pages of rides straight from the snapshot file, without loading the whole history.
+     * The snapshot lists the rides in order as of the last compaction, so it shows the list while
+     * the store is still loading, but doesn't include later changes from the journal.
+     * Pages can be read from any thread, one at a time.
+     */
+    static final class SnapshotReader implements RidePager.Source, Closeable {
+
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final int headerSize;
+        private final int count;
+        private final CRC32 crc = new CRC32();
+        private final ByteBuffer page = ByteBuffer.allocate(RECORD_SIZE * RidePager.PAGE_SIZE);
+
+        private SnapshotReader(RandomAccessFile file, int headerSize, int count) {
+            this.file = file;
+            this.channel = file.getChannel();
+            this.headerSize = headerSize;
+            this.count = count;
+        }
+
+        // Opens the snapshot in the given directory, or returns null if there is none yet.
+        static SnapshotReader open(File dir) throws IOException {
+            File snapshot = new File(dir, SNAPSHOT_FILE);
+            if (!snapshot.exists()) {
+                return null;
+            }
+            RandomAccessFile file = new RandomAccessFile(snapshot, "r");
+            try {
+                ByteBuffer header = ByteBuffer.allocate(MIN_SNAPSHOT_HEADER_SIZE);
+                FileChannel channel = file.getChannel();
+                while (header.hasRemaining()) {
+                    if (channel.read(header, header.position()) < 0) {
+                        throw new IOException("Truncated " + SNAPSHOT_FILE);
+                    }
+                }
+                header.flip();
+                int headerSize = header.getInt() == SNAPSHOT_MAGIC ? snapshotHeaderSize(header.getInt()) : -1;
+                if (headerSize < 0) {
+                    throw new IOException("Unrecognized " + SNAPSHOT_FILE);
+                }
+                header.getLong();
+                int count = header.getInt();
+                if (channel.size() < headerSize + (long) count * RECORD_SIZE) {
+                    throw new IOException("Truncated " + SNAPSHOT_FILE);
+                }
+                return new SnapshotReader(file, headerSize, count);
+            } catch (IOException e) {
+                file.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+
+        @Override
+        public boolean isInMemory(int position, int count) {
+            return false;
+        }
+
+        @Override
+        public synchronized int read(int position, int max, long[] ids, RideRecord[] records)
+                throws IOException {
+            int n = Math.min(Math.min(max, count - position), RidePager.PAGE_SIZE);
+            if (n <= 0) {
+                return 0;
+            }
+            page.clear();
+            page.limit(n * RECORD_SIZE);
+            long offset = headerSize + (long) position * RECORD_SIZE;
+            while (page.hasRemaining()) {
+                if (channel.read(page, offset + page.position()) < 0) {
+                    throw new IOException("Truncated " + SNAPSHOT_FILE);
+                }
+            }
+
+            for (int i = 0; i < n; i++) {
+                if (!checkRecord(page.array(), i * RECORD_SIZE, crc)) {
+                    throw new IOException("Corrupt record " + (position + i) + " in " + SNAPSHOT_FILE);
+                }
+                page.position(i * RECORD_SIZE);
+                ids[i] = decode(page, records[i]);
+            }
+            return n;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            file.close();
+        }
+    }
+}
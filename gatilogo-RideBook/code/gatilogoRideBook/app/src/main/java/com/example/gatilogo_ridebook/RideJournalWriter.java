@@ -0,0 +1,379 @@
+package com.example.gatilogo_ridebook;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Executor;
+
+/**
+ * RideJournalWriter class
+ *
+ * Writes the changes of a RideStore to its RideJournal.
+ * At first every change is written and forced to disk before the store returns. After start(),
+ * changes are handed to a single writer thread instead, so the store, and the list showing it,
+ * change right away and the disk catches up within a flush window.
+ * While changes wait for the writer they are coalesced by ride ID: a ride edited several times is
+ * written once, an edit of a ride added in the same window goes into its add, and a ride added and
+ * deleted again is not written at all. A ride deleted and restored again is written as an edit,
+ * and one restored and deleted again isn't written either. Each flush writes all waiting changes
+ * and forces them to disk once.
+ * At most CAPACITY changes wait at a time. Past that, submitting a change waits for the writer to
+ * take them, so a writer that falls behind slows down whoever makes the changes instead of letting
+ * them pile up in memory.
+ * A flush can carry a RideHead, which is written after the changes it describes are on disk. If
+ * more changes arrive before the writer takes them, the head is dropped, since it would be stale.
+ */
+final class RideJournalWriter {
+
+    static final int CAPACITY = 512;
+    static final long FLUSH_WINDOW_MILLIS = 200;
+
+    private static final byte OP_NONE = 0;          // A change that was coalesced away
+
+    /**
+     * Told on the main thread when the writer thread could not write changes.
+     */
+    interface Listener {
+        void onWriteFailed(IOException error);
+    }
+
+    private final RideJournal journal;
+    private final Object lock = new Object();
+
+    // Guarded by lock
+    private final LongIntHashMap waitingById = new LongIntHashMap();    // Ride ID to its change in waiting
+    private Batch waiting = new Batch();        // Filled by submit()
+    private Batch writing = new Batch();        // Written by the writer thread
+    private long submitted;                     // Changes submitted so far
+    private long written;                       // Changes written so far, including coalesced ones
+    private boolean flushRequested;
+    private boolean closed;
+    private IOException error;                  // First error since the last sync()
+
+    private int recordCount;                    // Records in the journal since the last compaction
+    private Thread thread;                      // Null while writing through
+    private long flushWindowMillis;
+    private Executor mainThread;
+    private Listener listener;
+
+    RideJournalWriter(RideJournal journal) {
+        this.journal = journal;
+        this.recordCount = journal.getRecordCount();
+    }
+
+    // Hands changes to a writer thread from now on. Write errors are passed to listener on the
+    // main thread.
+    void start(long flushWindowMillis, Executor mainThread, Listener listener) {
+        if (thread != null) {
+            return;
+        }
+        this.flushWindowMillis = flushWindowMillis;
+        this.mainThread = mainThread;
+        this.listener = listener;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "RideJournalWriter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    boolean isWritingBehind() {
+        return thread != null;
+    }
+
+    // Returns the number of changes written or waiting since the last compaction. Changes that
+    // were coalesced are counted too, so this may be more than the records in the journal.
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    // Writes or queues a change. The record is copied and isn't used for deletes.
+    void submit(byte op, long key, RideRecord ride) throws IOException {
+        recordCount++;
+        if (thread == null) {
+            long start = System.nanoTime();
+            journal.append(op, key, ride);
+            RideMetrics.WRITE.recordSince(start);
+            return;
+        }
+
+        synchronized (lock) {
+            int index = waitingById.get(key, -1);
+            if (index >= 0) {
+                coalesce(index, op, key, ride);
+            } else {
+                waitForRoom(false);
+                index = waiting.add(op, key, ride);
+                waitingById.put(key, index);
+            }
+            waiting.submits++;
+            submitted++;
+            lock.notifyAll();
+        }
+    }
+
+    // Writes or queues the adds of count rides, with keys counting up from firstKey.
+    void submitAdds(long firstKey, RideRecord[] rides, int count) throws IOException {
+        if (thread == null) {
+            recordCount += count;
+            long start = System.nanoTime();
+            journal.appendAdds(firstKey, rides, count);
+            RideMetrics.WRITE.recordSince(start);
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            submit(RideJournal.OP_ADD, firstKey + i, rides[i]);
+        }
+    }
+
+    // Replaces the journal with a snapshot of the given rides, after the changes submitted so far.
+    // The source has to stay the same while it's written, so the writer thread needs a copy.
+    // nextKey is the key the next added ride will get.
+    void compact(RidePager.Source rides, long nextKey) throws IOException {
+        recordCount = 0;
+        if (thread == null) {
+            journal.compact(rides, nextKey);
+            return;
+        }
+
+        synchronized (lock) {
+            waitForRoom(true);
+            waiting.compactAt = waiting.size;
+            waiting.compaction = rides;
+            waiting.compactionNextKey = nextKey;
+            // Changes from before the snapshot are in it, so later ones can't be folded into them
+            waitingById.clear();
+            lock.notifyAll();
+        }
+    }
+
+    // Starts writing the waiting changes without waiting for the rest of the flush window, and
+    // then the head, if it isn't null.
+    void flush(RideHead head) throws IOException {
+        if (thread == null) {
+            if (head != null) {
+                journal.writeHead(head);
+            }
+            return;
+        }
+        synchronized (lock) {
+            if (head != null) {
+                waiting.head = head;
+                waiting.headSubmits = waiting.submits;
+            }
+            flushRequested = true;
+            lock.notifyAll();
+        }
+    }
+
+    // Waits until all changes submitted so far are on disk. Throws the first error the writer
+    // thread ran into since the last call.
+    void sync() throws IOException {
+        if (thread == null) {
+            return;
+        }
+        synchronized (lock) {
+            long target = submitted;
+            flushRequested = true;
+            lock.notifyAll();
+            try {
+                while (written < target && error == null) {
+                    lock.wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the journal");
+            }
+            if (error != null) {
+                IOException failure = error;
+                error = null;
+                throw failure;
+            }
+        }
+    }
+
+    // Writes all waiting changes and stops the writer thread.
+    void close() throws IOException {
+        if (thread == null) {
+            return;
+        }
+        try {
+            sync();
+        } finally {
+            synchronized (lock) {
+                closed = true;
+                lock.notifyAll();
+            }
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    // Folds a change into the waiting change of the same ride.
+    private void coalesce(int index, byte op, long key, RideRecord ride) {
+        byte waitingOp = waiting.ops[index];
+        if (op == RideJournal.OP_DELETE
+                && (waitingOp == RideJournal.OP_ADD || waitingOp == RideJournal.OP_RESTORE)) {
+            // Never written, so there is nothing to delete
+            waiting.ops[index] = OP_NONE;
+            waitingById.remove(key);
+        } else if (op == RideJournal.OP_DELETE) {
+            waiting.ops[index] = RideJournal.OP_DELETE;
+        } else if (op == RideJournal.OP_RESTORE) {
+            // The ride is still on disk, since its delete wasn't written
+            waiting.ops[index] = RideJournal.OP_EDIT;
+            waiting.records[index].set(ride);
+        } else {
+            // An edit keeps the op of the waiting add, edit or restore and replaces its fields
+            waiting.records[index].set(ride);
+        }
+    }
+
+    // Waits until the writer thread has taken the waiting changes, if no more fit.
+    // Must be called holding lock.
+    private void waitForRoom(boolean forCompaction) throws IOException {
+        try {
+            while (waiting.size == CAPACITY || (forCompaction && waiting.compaction != null)) {
+                flushRequested = true;
+                lock.notifyAll();
+                lock.wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the journal");
+        }
+    }
+
+    // Runs on the writer thread: waits for changes, lets more of them arrive during the flush
+    // window, and writes them.
+    private void writeLoop() {
+        while (true) {
+            Batch batch;
+            synchronized (lock) {
+                try {
+                    while (waiting.isEmpty() && !closed) {
+                        lock.wait();
+                    }
+                    if (waiting.isEmpty()) {
+                        return;
+                    }
+                    long deadline = System.currentTimeMillis() + flushWindowMillis;
+                    long remaining = flushWindowMillis;
+                    while (!flushRequested && !closed && waiting.size < CAPACITY && remaining > 0) {
+                        lock.wait(remaining);
+                        remaining = deadline - System.currentTimeMillis();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                flushRequested = false;
+                batch = waiting;
+                waiting = writing;
+                writing = batch;
+                waitingById.clear();
+                lock.notifyAll();
+            }
+
+            IOException failure = null;
+            try {
+                write(batch);
+            } catch (IOException e) {
+                failure = e;
+            }
+
+            synchronized (lock) {
+                written += batch.submits;
+                if (failure != null && error == null) {
+                    error = failure;
+                }
+                batch.clear();
+                lock.notifyAll();
+            }
+            if (failure != null) {
+                report(failure);
+            }
+        }
+    }
+
+    // Writes a batch and forces it to disk. Changes from before a compaction don't need to be
+    // written, since the snapshot already has them.
+    private void write(Batch batch) throws IOException {
+        int from = 0;
+        if (batch.compaction != null) {
+            journal.compact(batch.compaction, batch.compactionNextKey);
+            from = batch.compactAt;
+        }
+        long start = System.nanoTime();
+        journal.appendAll(batch.ops, batch.keys, batch.records, from, batch.size);
+        journal.force();
+        RideMetrics.WRITE.recordSince(start);
+        if (batch.head != null && batch.headSubmits == batch.submits) {
+            journal.writeHead(batch.head);
+        }
+    }
+
+    private void report(final IOException failure) {
+        final Listener current = listener;
+        if (current != null) {
+            mainThread.execute(new Runnable() {
+                @Override
+                public void run() {
+                    current.onWriteFailed(failure);
+                }
+            });
+        }
+    }
+
+    /**
+     * Changes waiting for the writer thread, at most one compaction among them, and the head to
+     * write after them.
+     * Two batches take turns, so the writer thread holds one while the other fills up.
+     */
+    private static final class Batch {
+
+        final byte[] ops = new byte[CAPACITY];
+        final long[] keys = new long[CAPACITY];
+        final RideRecord[] records = new RideRecord[CAPACITY];
+        int size;
+        int submits;                    // Changes folded into the batch, coalesced or not
+        int compactAt;                  // Changes before this index are in the compaction
+        RidePager.Source compaction;
+        long compactionNextKey;
+        RideHead head;
+        int headSubmits;                // Changes the head includes
+
+        Batch() {
+            for (int i = 0; i < CAPACITY; i++) {
+                records[i] = new RideRecord();
+            }
+        }
+
+        int add(byte op, long key, RideRecord ride) {
+            ops[size] = op;
+            keys[size] = key;
+            if (ride != null) {
+                records[size].set(ride);
+            }
+            return size++;
+        }
+
+        boolean isEmpty() {
+            return submits == 0 && compaction == null && head == null;
+        }
+
+        void clear() {
+            size = 0;
+            submits = 0;
+            compactAt = 0;
+            compaction = null;
+            head = null;
+            headSubmits = 0;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package com.example.gatilogo_ridebook;
+
+import android.content.res.Resources;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.io.IOException;
+
+/**
+ * RideListAdapter class
+ *
+ * Provides a view for each ride on the ride list.
+ * Row views are recycled by the RecyclerView, and each row keeps its child views in a
+ * RideViewHolder so they are only looked up once.
+ * Rows are read through a RidePager, which holds only the pages of rides around the screen and
+ * reads the next ones as the list is scrolled. Until the RideStore has loaded, the pager reads from
+ * the head and snapshot files and rows that aren't read yet are shown empty for a moment. If those
+ * showed the same rides as the store, only the rows they were missing are rebound once it loads.
+ * Whoever changes the store tells the adapter exactly which rows changed (onRidesInserted,
+ * onRideChanged, onRideRemoved), so only those rows are read again and rebound. When that isn't
+ * known, the adapter compares a RideSnapshot of the rides it shows with one of the rides now.
+ * Once the store is loaded, the adapter can also show only some rides, such as the results of a
+ * search, given by their IDs. Those are read straight from the store's table through a cursor.
+ * It can also show all rides sorted by a field. The pager then reads them through the store's
+ * RideSortIndex for that field, so switching the order only drops the pages read so far.
+ * Each row formats its text into a RideRowText of its own and shows it from there, so binding rows
+ * while the list scrolls allocates nothing, and a row that still shows the same ride is left alone.
+ */
+public class RideListAdapter extends RecyclerView.Adapter<RideListAdapter.RideViewHolder> {
+
+    /**
+     * Receives clicks on rows of the ride list.
+     */
+    interface OnRideClickListener {
+        void onRideClick(long rideId);
+        void onRideLongClick(long rideId);
+    }
+
+    private static final String TAG = "RideListAdapter";
+
+    private final RidePager pager;
+    private final OnRideClickListener listener;
+    private RideStore rideStore;        // Null until the store has loaded
+    private RideTable.Cursor cursor;
+    private long[] filteredIds;         // IDs of the rides shown, or null to show all rides
+    private int sortField = RideSortIndex.ADDED;
+    private boolean sortDescending;
+    private RideSnapshot shown;         // The rides as the rows show them
+    // Read from the resources when the first row is created
+    private RideFormat.Unit distanceUnit;
+    private RideFormat.Unit speedUnit;
+    private RideFormat.Unit cadenceUnit;
+    private final char[] comment = new char[RideRecord.MAX_COMMENT_LENGTH];
+
+    RideListAdapter(RidePager pager, OnRideClickListener listener) {
+        this.pager = pager;
+        this.listener = listener;
+        pager.setListener(pageListener);
+        setHasStableIds(true);
+    }
+
+    // Switches to reading rides from the store once it has loaded.
+    void setStore(RideStore rideStore) {
+        this.rideStore = rideStore;
+        this.cursor = rideStore.getTable().cursor();
+        pager.setSource(rideStore.pageSource(sortField, sortDescending));
+        shown = rideStore.snapshot();
+        notifyDataSetChanged();
+    }
+
+    // Shows all rides sorted by the given RideSortIndex field. Must only be called once the store
+    // has loaded.
+    void setSortOrder(int field, boolean descending) {
+        sortField = field;
+        sortDescending = descending;
+        pager.setSource(rideStore.pageSource(field, descending));
+        shown = rideStore.snapshot();
+        notifyDataSetChanged();
+    }
+
+    int getSortField() {
+        return sortField;
+    }
+
+    boolean isSortDescending() {
+        return sortDescending;
+    }
+
+    // Returns true if rides aren't shown in the order they were added.
+    boolean isSorted() {
+        return sortField != RideSortIndex.ADDED || sortDescending;
+    }
+
+    // Returns the row of the ride with the given ID in the current sort order, or -1 if there is
+    // none. The store must have loaded.
+    int positionOf(long rideId) {
+        return rideStore.positionOf(rideId, sortField, sortDescending);
+    }
+
+    // Same as setStore(), for a store that has the same rides as the pager showed so far, except
+    // for the rows from missingFrom up to missingTo. Only those are rebound.
+    void mergeStore(RideStore rideStore, int missingFrom, int missingTo) {
+        this.rideStore = rideStore;
+        this.cursor = rideStore.getTable().cursor();
+        pager.setSource(rideStore.pageSource());
+        shown = rideStore.snapshot();
+        if (missingTo > missingFrom) {
+            notifyItemRangeChanged(missingFrom, missingTo - missingFrom);
+        }
+    }
+
+    // Tells the pager which rows are on screen as the list scrolls, so it can read ahead.
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        recyclerView.addOnScrollListener(scrollListener);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        recyclerView.removeOnScrollListener(scrollListener);
+    }
+
+    // Inflates a new row and hooks up its click listeners.
+    @NonNull
+    @Override
+    public RideViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.ride_item, parent, false);
+        if (distanceUnit == null) {
+            Resources resources = parent.getResources();
+            distanceUnit = new RideFormat.Unit(resources.getString(R.string.km_string));
+            speedUnit = new RideFormat.Unit(resources.getString(R.string.kmh_string));
+            cadenceUnit = new RideFormat.Unit(resources.getString(R.string.rpm_string));
+        }
+        final RideViewHolder holder = new RideViewHolder(view,
+                new RideRowText(distanceUnit, speedUnit, cadenceUnit));
+
+        view.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                int position = holder.getAdapterPosition();
+                long rideId = position == RecyclerView.NO_POSITION ? 0 : getRideId(position);
+                if (rideId > 0) {
+                    listener.onRideClick(rideId);
+                }
+            }
+        });
+        view.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override
+            public boolean onLongClick(View v) {
+                int position = holder.getAdapterPosition();
+                long rideId = position == RecyclerView.NO_POSITION ? 0 : getRideId(position);
+                if (rideId > 0) {
+                    listener.onRideLongClick(rideId);
+                }
+                return true;
+            }
+        });
+
+        return holder;
+    }
+
+    // Displays data at a specified position in the data set. The time it takes goes to RideMetrics.
+    @Override
+    public void onBindViewHolder(@NonNull RideViewHolder holder, int position) {
+        long start = System.nanoTime();
+        bindRow(holder, position);
+        RideMetrics.BIND.recordSince(start);
+    }
+
+    private void bindRow(RideViewHolder holder, int position) {
+        if (filteredIds != null) {
+            long rideId = filteredIds[position];
+            RideTable.Cursor currentRide = cursor.moveToSlot(rideStore.getTable().slotOf(rideId));
+            // Comments come from the table's pool, so copying one allocates nothing
+            String text = currentRide.getComment();
+            text.getChars(0, text.length(), comment, 0);
+            bind(holder, rideId, currentRide.getEpochMinute(), currentRide.getDistance(),
+                    currentRide.getAvgSpeed(), currentRide.getAvgCadence(), comment, text.length());
+            return;
+        }
+
+        // Get ride at the specified position. Its page may still be on its way.
+        RideRecord currentRide = pager.get(position);
+        if (currentRide == null) {
+            bindPlaceholder(holder);
+            return;
+        }
+        bind(holder, pager.getId(position), currentRide.epochMinute, currentRide.distance,
+                currentRide.avgSpeed, currentRide.avgCadence, currentRide.comment, currentRide.commentLength);
+    }
+
+    // Sets the views details from a ride. The views show the row's own char arrays, so nothing is
+    // allocated, and nothing is set if the row already shows this ride as it is.
+    private static void bind(RideViewHolder holder, long rideId, int epochMinute, float distance,
+                             float avgSpeed, int avgCadence, char[] comment, int commentLength) {
+        RideRowText text = holder.text;
+        if (!text.set(rideId, epochMinute, distance, avgSpeed, avgCadence, comment, commentLength)) {
+            RideMetrics.ROWS_UNCHANGED.increment();
+            return;
+        }
+        RideMetrics.ROWS_FORMATTED.increment();
+        holder.dateView.setText(text.date, 0, text.date.length);
+        holder.timeView.setText(text.time, 0, text.time.length);
+        holder.distanceView.setText(text.distance, 0, text.distanceLength);
+        holder.avgSpeedView.setText(text.avgSpeed, 0, text.avgSpeedLength);
+        holder.avgCadenceView.setText(text.avgCadence, 0, text.avgCadenceLength);
+        holder.commentView.setText(text.comment, 0, text.commentLength);
+
+        // Since comment is optional, do not show comment view if empty.
+        // Recycled rows may have hidden it for a previous ride, so always set the visibility.
+        holder.commentView.setVisibility(text.commentLength == 0 ? View.GONE : View.VISIBLE);
+    }
+
+    // Empties a row whose ride hasn't been read yet.
+    private static void bindPlaceholder(RideViewHolder holder) {
+        holder.text.clear();
+        holder.dateView.setText("");
+        holder.timeView.setText("");
+        holder.distanceView.setText("");
+        holder.avgSpeedView.setText("");
+        holder.avgCadenceView.setText("");
+        holder.commentView.setVisibility(View.GONE);
+    }
+
+    // Rides have stable IDs, which lets the RecyclerView keep track of rows across changes.
+    // Rows that aren't read yet have no ID rather than one made up from their position, which
+    // would belong to another ride once rows move. Their row is rebound with the ride's ID when
+    // its page arrives.
+    @Override
+    public long getItemId(int position) {
+        long rideId = getRideId(position);
+        return rideId > 0 ? rideId : RecyclerView.NO_ID;
+    }
+
+    @Override
+    public int getItemCount() {
+        return filteredIds == null ? pager.size() : filteredIds.length;
+    }
+
+    // Shows only the rides with the given IDs, in that order, or all rides if ids is null.
+    // The IDs must be of existing rides, so the filter has to be set again after rides change.
+    void setFilter(long[] ids) {
+        filteredIds = ids;
+        shown = rideStore.snapshot();
+        notifyDataSetChanged();
+    }
+
+    boolean isFiltered() {
+        return filteredIds != null;
+    }
+
+    // Returns the ID of the ride shown at the given position, or 0 if it hasn't been read yet.
+    long getRideId(int position) {
+        return filteredIds == null ? pager.getId(position) : filteredIds[position];
+    }
+
+    // Rebinds the rows of rides added at the given position of the store.
+    void onRidesInserted(int position, int count) {
+        pager.invalidate(position);
+        shown = rideStore.snapshot();
+        notifyItemRangeInserted(position, count);
+    }
+
+    // Moves the row of a ride whose change moved it to another position in the sort order, and
+    // rebinds it.
+    void onRideMoved(int from, int to) {
+        pager.invalidate(Math.min(from, to));
+        shown = rideStore.snapshot();
+        notifyItemMoved(from, to);
+        notifyItemChanged(to);
+    }
+
+    // Rebinds the rows of rides that changed in ways the caller can't tell one by one. In list
+    // order, the rows are found by comparing snapshots; in a sort order, all rows are rebound.
+    void onRidesChanged() {
+        RideSnapshot now = rideStore.snapshot();
+        pager.invalidate(0);
+        if (isSorted() || shown == null || !now.diff(shown, diffListener)) {
+            notifyDataSetChanged();
+        }
+        shown = now;
+    }
+
+    // Rebinds the row of the ride changed at the given position of the store.
+    void onRideChanged(int position) {
+        pager.invalidate(position);
+        shown = rideStore.snapshot();
+        notifyItemChanged(position);
+    }
+
+    // Removes the row of the ride deleted from the given position of the store.
+    void onRideRemoved(int position) {
+        pager.invalidate(position);
+        shown = rideStore.snapshot();
+        notifyItemRemoved(position);
+    }
+
+    // Passes the rows on screen to the pager after every scroll and layout.
+    private final RecyclerView.OnScrollListener scrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+            RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+            if (filteredIds == null && layoutManager instanceof LinearLayoutManager) {
+                LinearLayoutManager linear = (LinearLayoutManager) layoutManager;
+                pager.setVisibleRange(linear.findFirstVisibleItemPosition(),
+                        linear.findLastVisibleItemPosition());
+            }
+        }
+    };
+
+    // Turns the differences between two snapshots into row notifications.
+    private final RideSnapshot.Diff diffListener = new RideSnapshot.Diff() {
+        @Override
+        public void onRideInserted(int position, long id) {
+            notifyItemInserted(position);
+        }
+
+        @Override
+        public void onRideRemoved(int position, long id) {
+            notifyItemRemoved(position);
+        }
+
+        @Override
+        public void onRideChanged(int position, long id) {
+            notifyItemChanged(position);
+        }
+    };
+
+    // Rebinds rows whose page was read in the background.
+    private final RidePager.Listener pageListener = new RidePager.Listener() {
+        @Override
+        public void onPageLoaded(int position, int count) {
+            int shown = Math.min(count, getItemCount() - position);
+            if (filteredIds == null && shown > 0) {
+                notifyItemRangeChanged(position, shown);
+            }
+        }
+
+        @Override
+        public void onPageFailed(int position, IOException error) {
+            Log.e(TAG, "Could not read rides from position " + position, error);
+        }
+    };
+
+    /**
+     * Keeps references to the views of one row so they are looked up only when the row is created.
+     */
+    static class RideViewHolder extends RecyclerView.ViewHolder {
+
+        final TextView dateView;
+        final TextView timeView;
+        final TextView distanceView;
+        final TextView avgSpeedView;
+        final TextView avgCadenceView;
+        final TextView commentView;
+        final RideRowText text;
+
+        RideViewHolder(View itemView, RideRowText text) {
+            super(itemView);
+            this.text = text;
+
+            // Assign views by their respective ids
+            dateView = itemView.findViewById(R.id.rideDate);
+            timeView = itemView.findViewById(R.id.rideTime);
+            distanceView = itemView.findViewById(R.id.rideDistance);
+            avgSpeedView = itemView.findViewById(R.id.rideAvgSpeedNum);
+            avgCadenceView = itemView.findViewById(R.id.rideAvgCadenceNum);
+            commentView = itemView.findViewById(R.id.rideComment);
+        }
+    }
+}
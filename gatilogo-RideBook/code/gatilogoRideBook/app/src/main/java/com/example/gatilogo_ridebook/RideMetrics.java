@@ -0,0 +1,247 @@
+package com.example.gatilogo_ridebook;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * RideMetrics class
+ *
+ * Counters and latency histograms for the parts of the app where time goes: binding rows of the
+ * ride list, applying changes from the editor, updating statistics and indexes, loading and
+ * writing the journal, and requests to the sync server. They are always on, also in release builds, and shown by
+ * RideMetricsActivity, which can export them as JSON.
+ * Recording costs two calls of System.nanoTime() and a few atomic increments, and allocates
+ * nothing, so it can sit on the hot paths. Each histogram keeps counts in log-scaled buckets: four
+ * per power of two, so any latency from a nanosecond to centuries falls into one of 248 buckets, and
+ * percentiles are accurate to within 25%. Metrics can be recorded from any thread.
+ */
+final class RideMetrics {
+
+    static final Histogram BIND = new Histogram("list.bind");                   // RideListAdapter rows
+    static final Histogram CHANGE = new Histogram("main.change");               // Results of the editor
+    static final Histogram UPDATE = new Histogram("store.update");              // Statistics and indexes of a change
+    static final Histogram LOAD = new Histogram("store.load");                  // RideStore.open()
+    static final Histogram WRITE = new Histogram("journal.write");              // Records written and forced
+    static final Histogram COMPACT = new Histogram("journal.compact");
+    static final Histogram HEAD = new Histogram("journal.head");
+    static final Histogram SYNC = new Histogram("sync.request");             // RideSyncClient round trips
+
+    static final Counter ROWS_FORMATTED = new Counter("list.rowsFormatted");
+    static final Counter ROWS_UNCHANGED = new Counter("list.rowsUnchanged");    // Rebinds that changed nothing
+    static final Counter PAGES_READ = new Counter("pager.pagesRead");
+    static final Counter RECORDS_WRITTEN = new Counter("journal.recordsWritten");
+    static final Counter SYNC_BYTES_SENT = new Counter("sync.bytesSent");
+    static final Counter SYNC_BYTES_RECEIVED = new Counter("sync.bytesReceived");
+
+    private static final Histogram[] HISTOGRAMS = {BIND, CHANGE, UPDATE, LOAD, WRITE, COMPACT, HEAD, SYNC};
+    private static final Counter[] COUNTERS = {ROWS_FORMATTED, ROWS_UNCHANGED, PAGES_READ, RECORDS_WRITTEN,
+            SYNC_BYTES_SENT, SYNC_BYTES_RECEIVED};
+
+    private RideMetrics() {
+    }
+
+    // Starts over with all metrics at zero.
+    static void reset() {
+        for (Histogram histogram : HISTOGRAMS) {
+            histogram.reset();
+        }
+        for (Counter counter : COUNTERS) {
+            counter.reset();
+        }
+    }
+
+    // Returns all metrics as a JSON object. Percentiles and the maximum are in microseconds.
+    static String toJson() {
+        StringBuilder json = new StringBuilder("{\"counters\":{");
+        for (int i = 0; i < COUNTERS.length; i++) {
+            json.append(i == 0 ? "" : ",").append('"').append(COUNTERS[i].name).append("\":")
+                    .append(COUNTERS[i].get());
+        }
+        json.append("},\"histograms\":{");
+        for (int i = 0; i < HISTOGRAMS.length; i++) {
+            Histogram histogram = HISTOGRAMS[i];
+            json.append(i == 0 ? "" : ",").append('"').append(histogram.name).append("\":{")
+                    .append("\"count\":").append(histogram.getCount())
+                    .append(",\"meanMicros\":").append(micros(histogram.getMean()))
+                    .append(",\"p50Micros\":").append(micros(histogram.getPercentile(50)))
+                    .append(",\"p90Micros\":").append(micros(histogram.getPercentile(90)))
+                    .append(",\"p99Micros\":").append(micros(histogram.getPercentile(99)))
+                    .append(",\"maxMicros\":").append(micros(histogram.getMax()))
+                    .append(",\"buckets\":[");
+            // Only buckets that were hit, as [upper bound in nanoseconds, count]
+            boolean first = true;
+            for (int bucket = 0; bucket < Histogram.BUCKET_COUNT; bucket++) {
+                long count = histogram.getBucketCount(bucket);
+                if (count > 0) {
+                    json.append(first ? "" : ",").append('[').append(Histogram.upperBound(bucket))
+                            .append(',').append(count).append(']');
+                    first = false;
+                }
+            }
+            json.append("]}");
+        }
+        return json.append("}}").toString();
+    }
+
+    // Returns all metrics as lines of text for the debug screen.
+    static String toText() {
+        StringBuilder text = new StringBuilder();
+        for (Histogram histogram : HISTOGRAMS) {
+            text.append(histogram.name).append('\n')
+                    .append("  n=").append(histogram.getCount())
+                    .append(" mean=").append(micros(histogram.getMean()))
+                    .append(" p50=").append(micros(histogram.getPercentile(50)))
+                    .append(" p90=").append(micros(histogram.getPercentile(90)))
+                    .append(" p99=").append(micros(histogram.getPercentile(99)))
+                    .append(" max=").append(micros(histogram.getMax())).append(" us\n");
+        }
+        for (Counter counter : COUNTERS) {
+            text.append(counter.name).append(" = ").append(counter.get()).append('\n');
+        }
+        return text.toString();
+    }
+
+    // Rounds nanoseconds to tenths of microseconds.
+    private static double micros(double nanos) {
+        return Math.round(nanos / 100) / 10.0;
+    }
+
+    /**
+     * A count of events, such as rows bound or records written.
+     */
+    static final class Counter {
+
+        final String name;
+        private final AtomicLong count = new AtomicLong();
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        void increment() {
+            count.incrementAndGet();
+        }
+
+        void add(long delta) {
+            count.addAndGet(delta);
+        }
+
+        long get() {
+            return count.get();
+        }
+
+        void reset() {
+            count.set(0);
+        }
+    }
+
+    /**
+     * Counts of latencies in nanoseconds, in log-scaled buckets.
+     * Values below 4 have a bucket each. Above that, every power of two is split into four buckets,
+     * so bucket (e - 1) * 4 + m holds the values from (4 + m) << (e - 2) up to the next bucket,
+     * where e is the position of the highest bit.
+     * Typical use:
+     *   long start = System.nanoTime();
+     *   ...
+     *   RideMetrics.BIND.recordSince(start);
+     */
+    static final class Histogram {
+
+        static final int BUCKET_COUNT = 248;
+
+        final String name;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        Histogram(String name) {
+            this.name = name;
+        }
+
+        // Records the time from start, a value of System.nanoTime(), until now.
+        void recordSince(long start) {
+            record(System.nanoTime() - start);
+        }
+
+        // Records a latency in nanoseconds. Negative values count as 0.
+        void record(long nanos) {
+            nanos = Math.max(0, nanos);
+            buckets.incrementAndGet(bucketOf(nanos));
+            count.incrementAndGet();
+            sum.addAndGet(nanos);
+            long current = max.get();
+            while (nanos > current && !max.compareAndSet(current, nanos)) {
+                current = max.get();
+            }
+        }
+
+        long getCount() {
+            return count.get();
+        }
+
+        long getMax() {
+            return max.get();
+        }
+
+        double getMean() {
+            long n = count.get();
+            return n == 0 ? 0 : (double) sum.get() / n;
+        }
+
+        long getBucketCount(int bucket) {
+            return buckets.get(bucket);
+        }
+
+        // Returns the latency that the given percentage of values doesn't exceed, as the upper bound
+        // of the bucket it falls in, but never more than the largest value. Returns 0 if empty.
+        long getPercentile(double percent) {
+            long n = count.get();
+            if (n == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(n * percent / 100));
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                seen += buckets.get(bucket);
+                if (seen >= rank) {
+                    return Math.min(upperBound(bucket), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        void reset() {
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                buckets.set(bucket, 0);
+            }
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+        }
+
+        // Returns the bucket of a value that isn't negative.
+        static int bucketOf(long value) {
+            if (value < 4) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int mantissa = (int) (value >>> (exponent - 2)) & 3;
+            return (exponent - 1) * 4 + mantissa;
+        }
+
+        // Returns the smallest value of a bucket.
+        static long lowerBound(int bucket) {
+            if (bucket < 4) {
+                return bucket;
+            }
+            int exponent = bucket / 4 + 1;
+            return (long) (4 + bucket % 4) << (exponent - 2);
+        }
+
+        // Returns the largest value of a bucket.
+        static long upperBound(int bucket) {
+            return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : lowerBound(bucket + 1) - 1;
+        }
+    }
+}
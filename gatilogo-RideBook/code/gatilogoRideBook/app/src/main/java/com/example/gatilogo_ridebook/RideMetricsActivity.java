@@ -0,0 +1,63 @@
+package com.example.gatilogo_ridebook;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+/**
+ * RideMetricsActivity class
+ *
+ * Debug screen showing the counters and latency histograms of RideMetrics.
+ * It isn't listed anywhere; a long click on the total distance in MainActivity opens it.
+ * The menu exports the metrics as JSON to any app that takes text, and resets them.
+ */
+public class RideMetricsActivity extends AppCompatActivity {
+
+    private static final String TAG = "RideMetricsActivity";
+
+    private TextView metricsView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_ride_metrics);
+        metricsView = findViewById(R.id.metricsText);
+    }
+
+    // Shows the metrics as they are each time the screen comes back.
+    @Override
+    protected void onResume() {
+        super.onResume();
+        metricsView.setText(RideMetrics.toText());
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.metrics_menu, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int itemId = item.getItemId();
+        if (itemId == R.id.exportMetrics) {
+            String json = RideMetrics.toJson();
+            Log.i(TAG, json);
+            Intent intent = new Intent(Intent.ACTION_SEND);
+            intent.setType("application/json");
+            intent.putExtra(Intent.EXTRA_TEXT, json);
+            startActivity(Intent.createChooser(intent, getString(R.string.export_metrics)));
+            return true;
+        } else if (itemId == R.id.resetMetrics) {
+            RideMetrics.reset();
+            metricsView.setText(RideMetrics.toText());
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+}
@@ -0,0 +1,307 @@
+package com.example.gatilogo_ridebook;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * RidePager class
+ *
+ * Gives the ride list its rides in fixed-size pages read from a Source, such as the RideStore or
+ * the snapshot file on disk.
+ * Only the pages around the rows on screen are kept: the pages ahead in the direction of scrolling
+ * are read before they are needed, and the pages farthest from the screen are dropped once more
+ * than MAX_PAGES are held. Dropped pages are reused for the next reads, so the memory taken by the
+ * pager is the same for 200 rides or 200,000.
+ * Pages that are on disk are read by the loader executor and handed over on the main thread.
+ * A ride that isn't read yet returns null, and the Listener is told once its page arrives.
+ * A page that couldn't be read is kept as failed, so it isn't read again on every bind, and is
+ * read again once it scrolls back onto the screen.
+ * Pages that are in memory, as for the RideStore, are read on the main thread as soon as they are
+ * asked for.
+ */
+final class RidePager {
+
+    static final int PAGE_SIZE = 64;
+    static final int PREFETCH_PAGES = 2;    // Pages read ahead of the screen
+    static final int MAX_PAGES = 6;         // Pages kept in memory, unless more are still being read
+
+    /**
+     * Where the pages are read from.
+     */
+    interface Source {
+        int size();
+
+        // Returns true if the given rides can be read without touching the disk, so they are read
+        // on the main thread.
+        boolean isInMemory(int position, int count);
+
+        // Reads up to count rides starting at the given position into ids and records, and returns
+        // how many were read. The ID of a ride the source doesn't have is set to 0.
+        // Runs on the loader executor, unless the rides are in memory.
+        int read(int position, int count, long[] ids, RideRecord[] records) throws IOException;
+    }
+
+    // Has no rides, for while there is nothing to read from yet
+    static final Source EMPTY = new Source() {
+        @Override
+        public int size() {
+            return 0;
+        }
+
+        @Override
+        public boolean isInMemory(int position, int count) {
+            return true;
+        }
+
+        @Override
+        public int read(int position, int count, long[] ids, RideRecord[] records) {
+            return 0;
+        }
+    };
+
+    /**
+     * Told on the main thread about pages read in the background.
+     */
+    interface Listener {
+        void onPageLoaded(int position, int count);
+        void onPageFailed(int position, IOException error);
+    }
+
+    private final Executor loader;
+    private final Executor mainThread;
+    private final List<Page> pages = new ArrayList<>(MAX_PAGES + PREFETCH_PAGES);
+    private final List<Page> freePages = new ArrayList<>(MAX_PAGES + PREFETCH_PAGES);
+    private Source source;
+    private Listener listener;
+    private int firstVisiblePage;
+    private int lastVisiblePage;
+    private int lastFirstVisible;
+
+    RidePager(Source source, Executor loader, Executor mainThread) {
+        this.source = source;
+        this.loader = loader;
+        this.mainThread = mainThread;
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    // Switches to another source and drops all pages.
+    void setSource(Source source) {
+        this.source = source;
+        invalidate(0);
+    }
+
+    int size() {
+        return source.size();
+    }
+
+    // Returns the ride at the given position, or null if the source doesn't have it or its page
+    // hasn't been read yet, in which case it is read now. The record belongs to the pager and
+    // changes when its page is dropped.
+    RideRecord get(int position) {
+        Page page = request(position / PAGE_SIZE);
+        int offset = position % PAGE_SIZE;
+        if (!page.loaded || offset >= page.count || page.ids[offset] == 0) {
+            return null;
+        }
+        return page.records[offset];
+    }
+
+    // Returns the ID of the ride at the given position, or 0 if get() would return null.
+    long getId(int position) {
+        Page page = request(position / PAGE_SIZE);
+        int offset = position % PAGE_SIZE;
+        return page.loaded && offset < page.count ? page.ids[offset] : 0;
+    }
+
+    // Tells the pager which rows are on screen. Reads the pages ahead of them in the direction of
+    // scrolling and drops the pages farthest from them. Failed pages that just came onto the
+    // screen are read again.
+    void setVisibleRange(int first, int last) {
+        if (first < 0 || last < first) {
+            return;
+        }
+        boolean backwards = first < lastFirstVisible;
+        int previousFirstPage = firstVisiblePage;
+        int previousLastPage = lastVisiblePage;
+        lastFirstVisible = first;
+        firstVisiblePage = first / PAGE_SIZE;
+        lastVisiblePage = last / PAGE_SIZE;
+
+        int pageCount = (size() + PAGE_SIZE - 1) / PAGE_SIZE;
+        for (int index = firstVisiblePage; index <= lastVisiblePage && index < pageCount; index++) {
+            if (index < previousFirstPage || index > previousLastPage) {
+                dropIfFailed(index);
+            }
+            request(index);
+        }
+        for (int i = 1; i <= PREFETCH_PAGES; i++) {
+            int index = backwards ? firstVisiblePage - i : lastVisiblePage + i;
+            if (index >= 0 && index < pageCount) {
+                request(index);
+            }
+        }
+    }
+
+    // Drops the pages holding the given position and all after it, so they are read again.
+    // Called after rides were added, changed or deleted at that position.
+    void invalidate(int position) {
+        for (int i = pages.size() - 1; i >= 0; i--) {
+            Page page = pages.get(i);
+            if ((page.index + 1) * PAGE_SIZE > position) {
+                pages.remove(i);
+                page.resident = false;
+                if (!page.reading) {
+                    freePages.add(page);
+                }
+            }
+        }
+    }
+
+    // Returns the number of pages held, for tests.
+    int pageCount() {
+        return pages.size();
+    }
+
+    // Returns the page with the given index, starting to read it if it isn't held.
+    private Page request(int index) {
+        for (int i = 0; i < pages.size(); i++) {
+            if (pages.get(i).index == index) {
+                return pages.get(i);
+            }
+        }
+
+        final Page page = freePages.isEmpty() ? new Page() : freePages.remove(freePages.size() - 1);
+        page.index = index;
+        page.count = 0;
+        page.loaded = false;
+        page.failed = false;
+        page.reading = true;
+        page.resident = true;
+        pages.add(page);
+        evict();
+
+        if (source.isInMemory(index * PAGE_SIZE, PAGE_SIZE)) {
+            int count = 0;
+            IOException error = null;
+            try {
+                count = source.read(index * PAGE_SIZE, PAGE_SIZE, page.ids, page.records);
+            } catch (IOException e) {
+                error = e;
+            }
+            deliver(page, count, error, false);
+            return page;
+        }
+
+        final Source from = source;
+        final int position = index * PAGE_SIZE;
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                int count = 0;
+                IOException error = null;
+                try {
+                    count = from.read(position, PAGE_SIZE, page.ids, page.records);
+                } catch (IOException e) {
+                    error = e;
+                }
+                final int readCount = count;
+                final IOException readError = error;
+                mainThread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliver(page, readCount, readError, true);
+                    }
+                });
+            }
+        });
+        return page;
+    }
+
+    // Takes a page that has been read. Pages dropped while they were read, for example because the
+    // source changed, are only reused now. The listener is only told about pages that weren't
+    // ready when they were asked for.
+    private void deliver(Page page, int count, IOException error, boolean notify) {
+        page.reading = false;
+        if (!page.resident) {
+            freePages.add(page);
+            return;
+        }
+
+        page.count = count;
+        page.loaded = error == null;
+        if (error == null) {
+            RideMetrics.PAGES_READ.increment();
+        }
+        page.failed = error != null;    // Stays failed until invalidated or scrolled back to, so it isn't read over and over
+        if (notify && listener != null) {
+            if (error != null) {
+                listener.onPageFailed(page.index * PAGE_SIZE, error);
+            } else if (count > 0) {
+                listener.onPageLoaded(page.index * PAGE_SIZE, count);
+            }
+        }
+    }
+
+    // Drops the page with the given index if its read failed, so the next request reads it again.
+    private void dropIfFailed(int index) {
+        for (int i = 0; i < pages.size(); i++) {
+            Page page = pages.get(i);
+            if (page.index == index && page.failed) {
+                pages.remove(i);
+                page.resident = false;
+                freePages.add(page);
+                return;
+            }
+        }
+    }
+
+    // Drops the pages farthest from the screen until no more than MAX_PAGES are held.
+    // Pages still being read can't be reused yet, so they are kept for now.
+    private void evict() {
+        while (pages.size() > MAX_PAGES) {
+            int farthest = -1;
+            int farthestDistance = -1;
+            for (int i = 0; i < pages.size(); i++) {
+                Page page = pages.get(i);
+                int distance = page.index < firstVisiblePage ? firstVisiblePage - page.index
+                        : Math.max(0, page.index - lastVisiblePage);
+                if (!page.reading && distance > farthestDistance) {
+                    farthest = i;
+                    farthestDistance = distance;
+                }
+            }
+            if (farthest < 0) {
+                return;
+            }
+            Page page = pages.remove(farthest);
+            page.resident = false;
+            freePages.add(page);
+        }
+    }
+
+    /**
+     * PAGE_SIZE rides read from the source, starting at position index * PAGE_SIZE.
+     */
+    private static final class Page {
+
+        final long[] ids = new long[PAGE_SIZE];
+        final RideRecord[] records = new RideRecord[PAGE_SIZE];
+        int index;
+        int count;
+        boolean loaded;
+        boolean failed;
+        boolean reading;        // The loader is writing into the page
+        boolean resident;       // The page is in the pages list
+
+        Page() {
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                records[i] = new RideRecord();
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.gatilogo_ridebook;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * RideReader interface
+ *
+ * Reads rides one at a time from a file in some format, such as CSV or GPX.
+ * Readers keep only a fixed-size buffer of the file in memory, so files of any size can be read.
+ */
+interface RideReader extends Closeable {
+
+    // Returned by read() when there are no more rides
+    int END = -1;
+
+    // Reads the next ride into record. Returns RideValidator.OK, END, or the RideValidator error
+    // code of a ride that was skipped; the record is only written on OK.
+    int read(RideRecord record) throws IOException;
+
+    // Returns the line of the file where the last ride that was read starts.
+    long getLine();
+
+    // Returns the RideValidator field of the last error, or -1 if it's not about one field.
+    int getErrorField();
+}
@@ -0,0 +1,207 @@
+package com.example.gatilogo_ridebook;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * RideRecompute class
+ *
+ * Rebuilds every statistic of a RideStore from all of its rides: RideAggregates, RideRollups and
+ * RideBests, for example after a large import or when the way they are computed has changed.
+ * The workers read a RideSnapshot of the rides, split into chunks of CHUNK_SIZE. A few workers take
+ * chunks one after the other and each chunk gets its own Statistics, so the workers never share
+ * anything but a counter. Once all chunks are done, their statistics are merged in the order of
+ * the chunks and swapped into the store on the main thread in one step. If the store changed in
+ * the meantime, the result is dropped and the recompute starts over from a new snapshot.
+ * The listener is told about progress on the main thread, and a recompute can be cancelled, which
+ * leaves the store's statistics as they were.
+ */
+final class RideRecompute {
+
+    static final int CHUNK_SIZE = 4096;
+
+    interface Listener {
+
+        // Called after each chunk, with the rides done so far.
+        void onRecomputeProgress(int done, int total);
+
+        // Called once at the end. applied is false if the recompute was cancelled or failed.
+        void onRecomputeFinished(boolean applied);
+    }
+
+    private final RideStore store;
+    private final Executor workers;
+    private final int parallelism;
+    private final Executor mainThread;
+    private volatile Listener listener;
+    private volatile boolean cancelled;
+    private boolean finished;               // Main thread only
+
+    // Runs at most parallelism chunks at a time on the workers.
+    RideRecompute(RideStore store, Executor workers, int parallelism, Executor mainThread) {
+        this.store = store;
+        this.workers = workers;
+        this.parallelism = Math.max(1, parallelism);
+        this.mainThread = mainThread;
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    // Takes a snapshot of the rides and starts the workers. Must be called on the main thread.
+    void start() {
+        RideSnapshot snapshot = store.snapshot();
+        final Pass pass = new Pass(snapshot, snapshot.getVersion());
+        int workerCount = Math.min(parallelism, pass.chunks.length);
+        if (workerCount == 0) {
+            deliver(pass);
+            return;
+        }
+        pass.running.set(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    work(pass);
+                }
+            });
+        }
+    }
+
+    // Stops the workers after their current page of rides. The store keeps its statistics.
+    void cancel() {
+        cancelled = true;
+    }
+
+    // Returns true once the listener has been told that the recompute is over.
+    boolean isFinished() {
+        return finished;
+    }
+
+    // Runs on a worker: takes chunks until there are none left, and merges all of them if it's the
+    // last worker to stop.
+    private void work(final Pass pass) {
+        try {
+            long[] ids = new long[RidePager.PAGE_SIZE];
+            RideRecord[] page = new RideRecord[RidePager.PAGE_SIZE];
+            for (int i = 0; i < page.length; i++) {
+                page[i] = new RideRecord();
+            }
+            for (int chunk = pass.nextChunk.getAndIncrement(); chunk < pass.chunks.length && !cancelled;
+                 chunk = pass.nextChunk.getAndIncrement()) {
+                pass.chunks[chunk] = compute(pass.rides, chunk, ids, page);
+                if (pass.chunks[chunk] != null) {
+                    final int done = pass.done.addAndGet(pass.chunks[chunk].aggregates.getCount());
+                    final int total = pass.rides.size();
+                    mainThread.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            Listener current = listener;
+                            if (current != null && !finished) {
+                                current.onRecomputeProgress(done, total);
+                            }
+                        }
+                    });
+                }
+            }
+        } catch (IOException e) {
+            pass.failed = true;
+        } catch (RuntimeException e) {
+            pass.failed = true;
+            throw e;
+        } finally {
+            if (pass.running.decrementAndGet() == 0) {
+                if (!cancelled && !pass.failed) {
+                    for (int i = 1; i < pass.chunks.length; i++) {
+                        pass.chunks[0].merge(pass.chunks[i]);
+                    }
+                }
+                deliver(pass);
+            }
+        }
+    }
+
+    // Computes the statistics of one chunk, or returns null if cancelled.
+    private Statistics compute(RidePager.Source rides, int chunk, long[] ids, RideRecord[] page)
+            throws IOException {
+        Statistics statistics = new Statistics();
+        int end = Math.min(rides.size(), (chunk + 1) * CHUNK_SIZE);
+        for (int position = chunk * CHUNK_SIZE; position < end; position += page.length) {
+            if (cancelled) {
+                return null;
+            }
+            int n = rides.read(position, Math.min(page.length, end - position), ids, page);
+            for (int i = 0; i < n; i++) {
+                statistics.add(ids[i], page[i]);
+            }
+        }
+        return statistics;
+    }
+
+    // Swaps the result into the store on the main thread, or starts over if the store changed.
+    private void deliver(final Pass pass) {
+        mainThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean applied = false;
+                if (!cancelled && !pass.failed) {
+                    Statistics result = pass.chunks.length > 0 ? pass.chunks[0] : new Statistics();
+                    if (!store.swapStatistics(pass.version, result)) {
+                        start();
+                        return;
+                    }
+                    applied = true;
+                }
+                finished = true;
+                Listener current = listener;
+                if (current != null) {
+                    current.onRecomputeFinished(applied);
+                }
+            }
+        });
+    }
+
+    /**
+     * One go over a snapshot of the rides.
+     */
+    private static final class Pass {
+
+        final RidePager.Source rides;
+        final int version;                      // Version of the store the snapshot was taken at
+        final Statistics[] chunks;
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final AtomicInteger done = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        volatile boolean failed;
+
+        Pass(RidePager.Source rides, int version) {
+            this.rides = rides;
+            this.version = version;
+            this.chunks = new Statistics[(rides.size() + CHUNK_SIZE - 1) / CHUNK_SIZE];
+        }
+    }
+
+    /**
+     * Statistics of a set of rides, which can be merged with those of another set.
+     */
+    static final class Statistics {
+
+        final RideAggregates aggregates = new RideAggregates();
+        final RideRollups rollups = new RideRollups();
+        final RideBests bests = new RideBests();
+
+        void add(long id, RideRecord ride) {
+            aggregates.add(ride.distance, ride.avgSpeed, ride.avgCadence);
+            rollups.add(ride.epochMinute, ride.distance, ride.avgSpeed);
+            bests.add(id, ride.distance, ride.avgSpeed, ride.avgCadence);
+        }
+
+        void merge(Statistics other) {
+            aggregates.merge(other.aggregates);
+            rollups.merge(other.rollups);
+            bests.merge(other.bests);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.gatilogo_ridebook;
+
+/**
+ * RideRecord class (data structure)
+ *
+ * Mutable holder for the fields of one ride in their packed form: the date and time as minutes
+ * since 1970-01-01 00:00, and the comment as characters.
+ * A single record is reused to move rides between the journal, the ride table and Ride objects
+ * without allocating per ride.
+ */
+final class RideRecord {
+
+    static final int MAX_COMMENT_LENGTH = 20;
+
+    int epochMinute;
+    float distance;
+    float avgSpeed;
+    int avgCadence;
+    final char[] comment = new char[MAX_COMMENT_LENGTH];
+    int commentLength;
+
+    // Copies the fields of a ride into this record.
+    RideRecord set(Ride ride) {
+        String text = ride.getComment();
+        if (text.length() > MAX_COMMENT_LENGTH) {
+            throw new IllegalArgumentException("Comment longer than " + MAX_COMMENT_LENGTH);
+        }
+
+        epochMinute = RideTime.parse(ride.getDate(), ride.getTime());
+        distance = ride.getDistance();
+        avgSpeed = ride.getAvgSpeed();
+        avgCadence = ride.getAvgCadence();
+        text.getChars(0, text.length(), comment, 0);
+        commentLength = text.length();
+        return this;
+    }
+
+    // Copies the fields of another record into this one.
+    RideRecord set(RideRecord other) {
+        epochMinute = other.epochMinute;
+        distance = other.distance;
+        avgSpeed = other.avgSpeed;
+        avgCadence = other.avgCadence;
+        System.arraycopy(other.comment, 0, comment, 0, other.commentLength);
+        commentLength = other.commentLength;
+        return this;
+    }
+
+    // Creates a Ride with the fields of this record.
+    Ride toRide() {
+        return new Ride(
+                RideTime.formatDate(epochMinute),
+                RideTime.formatTime(epochMinute),
+                distance,
+                avgSpeed,
+                avgCadence,
+                new String(comment, 0, commentLength)
+        );
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.gatilogo_ridebook;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.widget.Toast;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+/**
+ * RideRepository class
+ *
+ * Gives every activity of the app the same RideStore.
+ * The store is opened the first time it's asked for and stays open for the life of the process,
+ * so activities can pass ride IDs to each other instead of copies of the rides.
+ * Loading a long history takes a while, so the ride list opens the store in the background with
+ * load() and shows the head file and pages of the snapshot file in the meantime.
+ * Changes are written to disk behind the activities' backs by the store's writer thread, so saving
+ * never blocks the main thread. Activities call flush() when they go into the background.
+ */
+final class RideRepository {
+
+    /**
+     * Receives the store opened by load() on the main thread.
+     */
+    interface Callback {
+        void onStoreLoaded(RideStore store);
+        void onStoreFailed(IOException error);
+    }
+
+    private static final String TAG = "RideRepository";
+
+    private static RideStore store;
+
+    private RideRepository() {
+    }
+
+    // Returns the store of the app, opening it from the app's files directory if needed.
+    // Waits for a load() that is still running.
+    static synchronized RideStore get(Context context) throws IOException {
+        if (store == null) {
+            final Context appContext = context.getApplicationContext();
+            store = RideStore.open(appContext.getFilesDir());
+            final Handler handler = new Handler(Looper.getMainLooper());
+            store.startWriteBehind(RideJournalWriter.FLUSH_WINDOW_MILLIS, new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    handler.post(command);
+                }
+            }, new RideJournalWriter.Listener() {
+                // The change is still shown, but will be lost when the app is closed.
+                @Override
+                public void onWriteFailed(IOException error) {
+                    Log.e(TAG, "Could not save rides", error);
+                    Toast.makeText(appContext, R.string.save_error, Toast.LENGTH_LONG).show();
+                }
+            });
+        }
+        return store;
+    }
+
+    // Starts writing the changes that wait for the store's writer thread, if the store is open.
+    static void flush() {
+        RideStore loaded = peek();
+        if (loaded != null) {
+            try {
+                loaded.flush();
+            } catch (IOException e) {
+                // Only the head file failed. The next start reads the whole store instead.
+                Log.w(TAG, "Could not write head", e);
+            }
+        }
+    }
+
+    // Returns the store if it has been opened already, or null.
+    static synchronized RideStore peek() {
+        return store;
+    }
+
+    // Opens the store on the background executor and passes it to callback on the main thread.
+    static void load(Context context, Executor background, final Executor mainThread,
+                     final Callback callback) {
+        final Context appContext = context.getApplicationContext();
+        background.execute(new Runnable() {
+            @Override
+            public void run() {
+                RideStore loaded = null;
+                IOException error = null;
+                try {
+                    loaded = get(appContext);
+                } catch (IOException e) {
+                    error = e;
+                }
+                final RideStore result = loaded;
+                final IOException failure = error;
+                mainThread.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (failure != null) {
+                            callback.onStoreFailed(failure);
+                        } else {
+                            callback.onStoreLoaded(result);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    // Reads the latest rides and totals of the store, or returns null if its head file is missing
+    // or out of date.
+    static RideHead openHead(Context context) throws IOException {
+        return RideJournal.readHead(context.getApplicationContext().getFilesDir());
+    }
+
+    // Opens the snapshot file of the store for reading pages, or returns null if there is none.
+    static RideJournal.SnapshotReader openSnapshot(Context context) throws IOException {
+        return RideJournal.SnapshotReader.open(context.getApplicationContext().getFilesDir());
+    }
+}
@@ -0,0 +1,303 @@
+package com.example.gatilogo_ridebook;
+
+import java.util.Arrays;
+
+/**
+ * RideRollups class (data structure)
+ *
+ * Answers "ride count, distance and average speed between two days" in O(log n), where n is the
+ * number of days covered.
+ * Rides are bucketed by day, and each statistic is kept in a Fenwick tree (binary indexed tree)
+ * over the day buckets, so adding or removing a ride and summing any range of days both take
+ * O(log n). Week, month and year rollups are day ranges, see RideTime for turning dates into days.
+ * The covered days grow as rides outside the current range are added, but only within the years
+ * 1900 to 2099, so they never take more than about 1.5 MB. The few rides outside those years, such
+ * as ones with a mistyped year, are kept per day in a short list that is scanned for every query.
+ * Rollups of separate sets of rides can be merged, so they can be built in parallel.
+ */
+final class RideRollups {
+
+    private static final int INITIAL_DAYS = 1024;
+    private static final int FIRST_BUCKET_DAY = RideTime.epochDay(1900, 1, 1);
+    private static final int END_BUCKET_DAY = RideTime.epochDay(2100, 1, 1);
+
+    private int firstDay;           // Day (since 1970-01-01) of bucket 0
+    private int days;               // Number of buckets
+    private int[] counts;           // Fenwick trees over the buckets
+    private double[] distances;
+    private double[] distanceSpeeds;
+    private int outlierCount;       // Days outside the bucket years, with their statistics
+    private int[] outlierDays = new int[0];
+    private int[] outlierCounts = new int[0];
+    private double[] outlierDistances = new double[0];
+    private double[] outlierDistanceSpeeds = new double[0];
+
+    RideRollups() {
+        reset(0, 0);
+    }
+
+    // Adds a ride to the bucket of the day it took place on.
+    void add(int epochMinute, float distance, float avgSpeed) {
+        update(RideTime.dayOf(epochMinute), 1, distance, avgSpeed);
+    }
+
+    // Removes a ride that was added with the same values.
+    void remove(int epochMinute, float distance, float avgSpeed) {
+        update(RideTime.dayOf(epochMinute), -1, distance, avgSpeed);
+    }
+
+    // Adds the rides of another instance, in O(n) for the days covered.
+    void merge(RideRollups other) {
+        for (int i = 0; i < other.outlierCount; i++) {
+            updateOutlier(other.outlierDays[i], other.outlierCounts[i], other.outlierDistances[i],
+                    other.outlierDistanceSpeeds[i]);
+        }
+        if (other.days == 0) {
+            return;
+        }
+        ensureDay(other.firstDay);
+        ensureDay(other.firstDay + other.days - 1);
+
+        int[] ownCounts = bucketValues(counts);
+        double[] ownDistances = bucketValues(distances);
+        double[] ownDistanceSpeeds = bucketValues(distanceSpeeds);
+        int[] otherCounts = bucketValues(other.counts);
+        double[] otherDistances = bucketValues(other.distances);
+        double[] otherDistanceSpeeds = bucketValues(other.distanceSpeeds);
+        int offset = other.firstDay - firstDay;
+        for (int i = 1; i <= other.days; i++) {
+            ownCounts[offset + i] += otherCounts[i];
+            ownDistances[offset + i] += otherDistances[i];
+            ownDistanceSpeeds[offset + i] += otherDistanceSpeeds[i];
+        }
+        build(ownCounts);
+        build(ownDistances);
+        build(ownDistanceSpeeds);
+        counts = ownCounts;
+        distances = ownDistances;
+        distanceSpeeds = ownDistanceSpeeds;
+    }
+
+    // Returns the statistics of the rides from fromDay (inclusive) to toDay (exclusive).
+    Period get(int fromDay, int toDay) {
+        Period period = new Period();
+        int from = (int) Math.max((long) fromDay - firstDay, 0);
+        int to = (int) Math.min((long) toDay - firstDay, days);
+        if (days > 0 && from < to) {
+            period.count = prefixCount(to) - prefixCount(from);
+            period.distance = prefix(distances, to) - prefix(distances, from);
+            period.distanceSpeed = prefix(distanceSpeeds, to) - prefix(distanceSpeeds, from);
+        }
+        for (int i = 0; i < outlierCount; i++) {
+            if (outlierDays[i] >= fromDay && outlierDays[i] < toDay) {
+                period.count += outlierCounts[i];
+                period.distance += outlierDistances[i];
+                period.distanceSpeed += outlierDistanceSpeeds[i];
+            }
+        }
+        return period;
+    }
+
+    // Returns the statistics of every month from fromYear-fromMonth up to and including
+    // toYear-toMonth, for example for a bar chart.
+    Period[] getMonths(int fromYear, int fromMonth, int toYear, int toMonth) {
+        int months = Math.max((toYear - fromYear) * 12 + toMonth - fromMonth + 1, 0);
+        Period[] periods = new Period[months];
+        int year = fromYear;
+        int month = fromMonth;
+        int start = RideTime.epochDay(year, month, 1);
+        for (int i = 0; i < months; i++) {
+            if (++month > 12) {
+                month = 1;
+                year++;
+            }
+            int end = RideTime.epochDay(year, month, 1);
+            periods[i] = get(start, end);
+            start = end;
+        }
+        return periods;
+    }
+
+    // Returns the number of day buckets, for tests.
+    int bucketCount() {
+        return days;
+    }
+
+    private void update(int day, int count, float distance, float avgSpeed) {
+        double distanceSpeed = (double) distance * avgSpeed;
+        if (day < FIRST_BUCKET_DAY || day >= END_BUCKET_DAY) {
+            updateOutlier(day, count, count * (double) distance, count * distanceSpeed);
+            return;
+        }
+        ensureDay(day);
+        for (int i = day - firstDay + 1; i <= days; i += i & -i) {
+            counts[i] += count;
+            distances[i] += count * (double) distance;
+            distanceSpeeds[i] += count * distanceSpeed;
+        }
+    }
+
+    // Adds to the statistics of a day outside the bucket years. Days whose rides were all removed
+    // are dropped from the list.
+    private void updateOutlier(int day, int count, double distance, double distanceSpeed) {
+        int i = 0;
+        while (i < outlierCount && outlierDays[i] != day) {
+            i++;
+        }
+        if (i == outlierCount) {
+            if (outlierCount == outlierDays.length) {
+                int capacity = Math.max(4, outlierCount * 2);
+                outlierDays = Arrays.copyOf(outlierDays, capacity);
+                outlierCounts = Arrays.copyOf(outlierCounts, capacity);
+                outlierDistances = Arrays.copyOf(outlierDistances, capacity);
+                outlierDistanceSpeeds = Arrays.copyOf(outlierDistanceSpeeds, capacity);
+            }
+            outlierDays[i] = day;
+            outlierCounts[i] = 0;
+            outlierDistances[i] = 0;
+            outlierDistanceSpeeds[i] = 0;
+            outlierCount++;
+        }
+        outlierCounts[i] += count;
+        outlierDistances[i] += distance;
+        outlierDistanceSpeeds[i] += distanceSpeed;
+
+        if (outlierCounts[i] == 0) {
+            int last = --outlierCount;
+            outlierDays[i] = outlierDays[last];
+            outlierCounts[i] = outlierCounts[last];
+            outlierDistances[i] = outlierDistances[last];
+            outlierDistanceSpeeds[i] = outlierDistanceSpeeds[last];
+        }
+    }
+
+    // Grows the covered days so they include the given day, which is within the bucket years.
+    // The trees are rebuilt from their bucket values in O(n), which happens O(log n) times.
+    private void ensureDay(int day) {
+        if (days == 0) {
+            int first = Math.min(Math.max(day - INITIAL_DAYS / 2, FIRST_BUCKET_DAY),
+                    END_BUCKET_DAY - INITIAL_DAYS);
+            reset(first, INITIAL_DAYS);
+            return;
+        }
+        if (day >= firstDay && day < firstDay + days) {
+            return;
+        }
+
+        int newFirstDay = firstDay;
+        int newEndDay = firstDay + days;
+        while (day < newFirstDay || day >= newEndDay) {
+            // Double towards the side the day is on, but not past the bucket years
+            int size = newEndDay - newFirstDay;
+            if (day < newFirstDay) {
+                newFirstDay = Math.max(newFirstDay - size, FIRST_BUCKET_DAY);
+            } else {
+                newEndDay = Math.min(newEndDay + size, END_BUCKET_DAY);
+            }
+        }
+        int newDays = newEndDay - newFirstDay;
+
+        int[] oldCounts = bucketValues(counts);
+        double[] oldDistances = bucketValues(distances);
+        double[] oldDistanceSpeeds = bucketValues(distanceSpeeds);
+        int offset = firstDay - newFirstDay;
+        int oldDays = days;
+
+        reset(newFirstDay, newDays);
+        System.arraycopy(oldCounts, 1, counts, offset + 1, oldDays);
+        System.arraycopy(oldDistances, 1, distances, offset + 1, oldDays);
+        System.arraycopy(oldDistanceSpeeds, 1, distanceSpeeds, offset + 1, oldDays);
+        build(counts);
+        build(distances);
+        build(distanceSpeeds);
+    }
+
+    private void reset(int firstDay, int days) {
+        this.firstDay = firstDay;
+        this.days = days;
+        counts = new int[days + 1];
+        distances = new double[days + 1];
+        distanceSpeeds = new double[days + 1];
+    }
+
+    private int prefixCount(int end) {
+        int sum = 0;
+        for (int i = end; i > 0; i -= i & -i) {
+            sum += counts[i];
+        }
+        return sum;
+    }
+
+    private static double prefix(double[] tree, int end) {
+        double sum = 0;
+        for (int i = end; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    // Turns bucket values into a Fenwick tree in place, in O(n).
+    private static void build(int[] tree) {
+        for (int i = 1; i < tree.length; i++) {
+            int parent = i + (i & -i);
+            if (parent < tree.length) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    private static void build(double[] tree) {
+        for (int i = 1; i < tree.length; i++) {
+            int parent = i + (i & -i);
+            if (parent < tree.length) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    // Turns a Fenwick tree back into plain bucket values, in O(n).
+    private static int[] bucketValues(int[] tree) {
+        int[] values = tree.clone();
+        for (int i = values.length - 1; i > 0; i--) {
+            int parent = i + (i & -i);
+            if (parent < values.length) {
+                values[parent] -= values[i];
+            }
+        }
+        return values;
+    }
+
+    private static double[] bucketValues(double[] tree) {
+        double[] values = tree.clone();
+        for (int i = values.length - 1; i > 0; i--) {
+            int parent = i + (i & -i);
+            if (parent < values.length) {
+                values[parent] -= values[i];
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Statistics of the rides in a range of days.
+     */
+    static final class Period {
+
+        int count;
+        double distance;
+        double distanceSpeed;
+
+        int getCount() {
+            return count;
+        }
+
+        double getDistance() {
+            return distance;
+        }
+
+        // Average speed where every ride counts in proportion to its distance.
+        double getAverageSpeed() {
+            return distance > 0 ? distanceSpeed / distance : 0;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.gatilogo_ridebook;
+
+/**
+ * RideRowText class (data structure)
+ *
+ * The text of one row of the ride list, formatted into char arrays that belong to the row, so
+ * binding a row allocates nothing. The row's TextViews show the arrays directly.
+ * The text remembers the ride and the values it was formatted from, and is only formatted again
+ * when those change. Rebinding a row that still shows the same ride as it was, which happens for
+ * every row on screen whenever a page is read or the list is told that rides changed, then costs
+ * a comparison and leaves the views alone.
+ */
+final class RideRowText {
+
+    // Decimals shown for distance and speed
+    static final int DECIMALS = 2;
+
+    final char[] date = new char[RideTime.DATE_LENGTH];
+    final char[] time = new char[RideTime.TIME_LENGTH];
+    final char[] distance;
+    final char[] avgSpeed;
+    final char[] avgCadence;
+    final char[] comment = new char[RideRecord.MAX_COMMENT_LENGTH];
+    int distanceLength;
+    int avgSpeedLength;
+    int avgCadenceLength;
+    int commentLength;
+
+    private final RideFormat.Unit distanceUnit;
+    private final RideFormat.Unit speedUnit;
+    private final RideFormat.Unit cadenceUnit;
+    // What the text was formatted from. A ride ID of 0 means there is no text.
+    private long rideId;
+    private int epochMinute;
+    private float distanceValue;
+    private float avgSpeedValue;
+    private int avgCadenceValue;
+
+    RideRowText(RideFormat.Unit distanceUnit, RideFormat.Unit speedUnit, RideFormat.Unit cadenceUnit) {
+        this.distanceUnit = distanceUnit;
+        this.speedUnit = speedUnit;
+        this.cadenceUnit = cadenceUnit;
+        distance = new char[distanceUnit.maxLength()];
+        avgSpeed = new char[speedUnit.maxLength()];
+        avgCadence = new char[cadenceUnit.maxLength()];
+    }
+
+    // Formats the given ride. Returns false, without changing anything, if the text already is
+    // that of this ride with these values.
+    boolean set(long rideId, int epochMinute, float distance, float avgSpeed, int avgCadence,
+                char[] comment, int commentLength) {
+        if (isOf(rideId, epochMinute, distance, avgSpeed, avgCadence, comment, commentLength)) {
+            return false;
+        }
+        this.rideId = rideId;
+        this.epochMinute = epochMinute;
+        distanceValue = distance;
+        avgSpeedValue = avgSpeed;
+        avgCadenceValue = avgCadence;
+
+        RideTime.formatDate(epochMinute, date, 0);
+        RideTime.formatTime(epochMinute, time, 0);
+        distanceLength = distanceUnit.append(this.distance, 0, distance, DECIMALS);
+        avgSpeedLength = speedUnit.append(this.avgSpeed, 0, avgSpeed, DECIMALS);
+        avgCadenceLength = cadenceUnit.append(this.avgCadence, 0, avgCadence);
+        System.arraycopy(comment, 0, this.comment, 0, commentLength);
+        this.commentLength = commentLength;
+        return true;
+    }
+
+    // Forgets the ride, for a row that was emptied, so the next set() formats again.
+    void clear() {
+        rideId = 0;
+    }
+
+    private boolean isOf(long rideId, int epochMinute, float distance, float avgSpeed, int avgCadence,
+                         char[] comment, int commentLength) {
+        if (rideId == 0 || rideId != this.rideId || epochMinute != this.epochMinute
+                || Float.floatToIntBits(distance) != Float.floatToIntBits(distanceValue)
+                || Float.floatToIntBits(avgSpeed) != Float.floatToIntBits(avgSpeedValue)
+                || avgCadence != avgCadenceValue || commentLength != this.commentLength) {
+            return false;
+        }
+        for (int i = 0; i < commentLength; i++) {
+            if (comment[i] != this.comment[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
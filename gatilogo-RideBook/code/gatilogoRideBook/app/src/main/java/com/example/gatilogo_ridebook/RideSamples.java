@@ -0,0 +1,409 @@
+package com.example.gatilogo_ridebook;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+/**
+ * RideSamples class (data structure)
+ *
+ * The sensor samples recorded during one ride, usually one per second: time, speed, cadence and
+ * position. Only time is required; a ride recorded indoors has no position, and one without a
+ * cadence sensor has no cadence.
+ * Each kind of value is kept in a column of its own as variable-length integers. Time, speed and
+ * cadence are stored as differences from the previous sample, zigzag-encoded so small negative
+ * differences stay small. Positions are stored as differences of those differences, since a rider
+ * moves at nearly the same velocity from one second to the next. Most values then take one byte,
+ * and a three-hour ride of about 10,800 samples fits in about 50 KB.
+ * summarize() derives distance, moving time, averages and maxima from all columns in one pass.
+ * Samples never change once built, and the RideStore keeps those of each ride in a file of its own.
+ */
+final class RideSamples {
+
+    // Columns besides time, as flags
+    static final int SPEED = 1;
+    static final int CADENCE = 2;
+    static final int POSITION = 4;
+
+    // A step longer than this is a pause in the recording, not riding
+    static final int MAX_STEP_SECONDS = 10;
+    // Slower than this, in km/h, is standing still
+    static final float MIN_MOVING_SPEED = 1f;
+
+    private static final int MAGIC = 0x5242534D;        // "RBSM"
+    private static final int VERSION = 1;
+    private static final int COLUMN_COUNT = 5;          // time, speed, cadence, latitude, longitude
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+    private static final double E6_TO_RADIANS = Math.PI / 180 / 1e6;
+    // Recompute the cosine of the latitude once it has moved this far, in millionths of a degree
+    private static final int COSINE_STEP_E6 = 10000;
+
+    private final int count;
+    private final int columns;
+    private final byte[] data;              // All columns, one after the other
+    private final int[] columnEnds;
+
+    private RideSamples(int count, int columns, byte[] data, int[] columnEnds) {
+        this.count = count;
+        this.columns = columns;
+        this.data = data;
+        this.columnEnds = columnEnds;
+    }
+
+    // Returns the number of samples.
+    int size() {
+        return count;
+    }
+
+    // Returns the SPEED, CADENCE and POSITION flags of the columns recorded.
+    int getColumns() {
+        return columns;
+    }
+
+    // Returns the number of bytes the encoded columns take.
+    int byteSize() {
+        return data.length;
+    }
+
+    // Decodes all samples once and fills in the summary.
+    Summary summarize(Summary out) {
+        Column time = column(0);
+        Column speeds = column(1);
+        Column cadences = column(2);
+        Column latitudes = column(3);
+        Column longitudes = column(4);
+        boolean hasSpeed = (columns & SPEED) != 0;
+        boolean hasCadence = (columns & CADENCE) != 0;
+        boolean hasPosition = (columns & POSITION) != 0;
+
+        int second = 0;
+        int firstSecond = 0;
+        int speed = 0;                  // Hundredths of a km/h
+        int maxSpeed = 0;
+        int cadence = 0;
+        int maxCadence = 0;
+        long cadenceSum = 0;
+        int pedalingSamples = 0;
+        int latitude = 0;               // Millionths of a degree
+        int longitude = 0;
+        int latitudeStep = 0;
+        int longitudeStep = 0;
+        int cosineLatitude = Integer.MIN_VALUE;
+        double cosine = 1;
+        double distance = 0;            // km
+        double maxSegmentSpeed = 0;
+        int moving = 0;
+
+        for (int i = 0; i < count; i++) {
+            int step = time.next();
+            second += step;
+            int previousSpeed = speed;
+            int previousLatitude = latitude;
+            int previousLongitude = longitude;
+            if (hasSpeed) {
+                speed += unzigzag(speeds.next());
+                maxSpeed = Math.max(maxSpeed, speed);
+            }
+            if (hasCadence) {
+                cadence += unzigzag(cadences.next());
+                if (cadence > 0) {
+                    // Coasting doesn't lower the average cadence
+                    cadenceSum += cadence;
+                    pedalingSamples++;
+                    maxCadence = Math.max(maxCadence, cadence);
+                }
+            }
+            if (hasPosition) {
+                latitudeStep += unzigzag(latitudes.next());
+                longitudeStep += unzigzag(longitudes.next());
+                latitude += latitudeStep;
+                longitude += longitudeStep;
+            }
+            if (i == 0) {
+                firstSecond = second;
+                continue;
+            }
+
+            boolean paused = step > MAX_STEP_SECONDS;
+            double segment = 0;
+            if (hasPosition) {
+                // Over a second of riding, the earth is flat enough
+                if (Math.abs(latitude - cosineLatitude) > COSINE_STEP_E6) {
+                    cosineLatitude = latitude;
+                    cosine = Math.cos(latitude * E6_TO_RADIANS);
+                }
+                double dx = (longitude - previousLongitude) * cosine;
+                double dy = latitude - previousLatitude;
+                segment = Math.sqrt(dx * dx + dy * dy) * E6_TO_RADIANS * EARTH_RADIUS_KM;
+            } else if (hasSpeed && !paused) {
+                segment = previousSpeed / 100.0 * step / 3600;
+            }
+            distance += segment;
+
+            double segmentSpeed = hasSpeed ? previousSpeed / 100.0 : step > 0 ? segment * 3600 / step : 0;
+            if (!paused && step > 0) {
+                maxSegmentSpeed = Math.max(maxSegmentSpeed, segmentSpeed);
+                if (segmentSpeed >= MIN_MOVING_SPEED) {
+                    moving += step;
+                }
+            }
+        }
+
+        out.columns = columns;
+        out.sampleCount = count;
+        out.elapsedSeconds = second - firstSecond;
+        out.movingSeconds = moving;
+        out.distance = distance;
+        out.avgSpeed = moving > 0 ? (float) (distance * 3600 / moving) : 0;
+        out.maxSpeed = hasSpeed ? maxSpeed / 100f : (float) maxSegmentSpeed;
+        out.avgCadence = pedalingSamples > 0 ? (int) ((cadenceSum + pedalingSamples / 2) / pedalingSamples) : 0;
+        out.maxCadence = maxCadence;
+        return out;
+    }
+
+    // Writes the samples to a file, replacing it only once it is complete.
+    void write(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(temp);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            out.writeInt(columns);
+            for (int i = 0; i < COLUMN_COUNT; i++) {
+                out.writeInt(columnEnds[i]);
+            }
+            out.write(data);
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            stream.getFD().sync();
+        } finally {
+            stream.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Could not replace " + file.getName());
+        }
+    }
+
+    // Reads samples written by write().
+    static RideSamples read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unrecognized " + file.getName());
+            }
+            int count = in.readInt();
+            int columns = in.readInt();
+            int[] columnEnds = new int[COLUMN_COUNT];
+            int start = 0;
+            for (int i = 0; i < COLUMN_COUNT; i++) {
+                columnEnds[i] = in.readInt();
+                if (columnEnds[i] < start) {
+                    throw new IOException("Corrupt " + file.getName());
+                }
+                start = columnEnds[i];
+            }
+            if (count < 0 || start > file.length()) {
+                throw new IOException("Corrupt " + file.getName());
+            }
+            byte[] data = new byte[start];
+            in.readFully(data);
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            if (in.readInt() != (int) crc.getValue()) {
+                throw new IOException("Corrupt " + file.getName());
+            }
+            return new RideSamples(count, columns, data, columnEnds);
+        } finally {
+            in.close();
+        }
+    }
+
+    private Column column(int index) {
+        return new Column(data, index == 0 ? 0 : columnEnds[index - 1]);
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads the variable-length integers of one column in order.
+     */
+    private static final class Column {
+
+        private final byte[] data;
+        private int position;
+
+        Column(byte[] data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        // Seven bits per byte, lowest first; a set high bit means more bytes follow.
+        int next() {
+            int b = data[position++];
+            if (b >= 0) {
+                return b;
+            }
+            int value = b & 0x7F;
+            int shift = 7;
+            do {
+                b = data[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+
+    /**
+     * Values derived from the samples of a ride. A summary can be reused for many rides.
+     */
+    static final class Summary {
+
+        int columns;
+        int sampleCount;
+        int elapsedSeconds;         // From the first sample to the last
+        int movingSeconds;          // Without pauses and standing still
+        double distance;            // km
+        float avgSpeed;             // km/h while moving
+        float maxSpeed;
+        int avgCadence;             // rpm while pedaling
+        int maxCadence;
+
+        // Replaces the fields of a ride that the samples tell better than typed-in values.
+        // Distance and speed come from positions or speeds, and cadence from cadences; without
+        // those columns, the typed-in values stay. Values are rounded like typed-in ones.
+        void applyTo(RideRecord record) {
+            if ((columns & (SPEED | POSITION)) != 0) {
+                record.distance = Math.round(distance * 10) / 10f;
+                record.avgSpeed = Math.round(avgSpeed * 10) / 10f;
+            }
+            if ((columns & CADENCE) != 0) {
+                record.avgCadence = avgCadence;
+            }
+        }
+    }
+
+    /**
+     * Builds RideSamples one sample at a time. An encoder can be cleared and reused.
+     */
+    static final class Encoder {
+
+        private final int columns;
+        private final byte[][] data = new byte[COLUMN_COUNT][];
+        private final int[] sizes = new int[COLUMN_COUNT];
+        private int count;
+        private int second;
+        private int speed;
+        private int cadence;
+        private int latitude;
+        private int longitude;
+        private int latitudeStep;
+        private int longitudeStep;
+
+        // Takes the SPEED, CADENCE and POSITION flags of the columns that will be recorded.
+        Encoder(int columns) {
+            this.columns = columns;
+            for (int i = 0; i < COLUMN_COUNT; i++) {
+                data[i] = new byte[64];
+            }
+        }
+
+        // Adds a sample. The second counts from the start of the ride and must not go backwards.
+        // Speed is in km/h, and latitude and longitude in degrees. Values of columns that aren't
+        // recorded are ignored.
+        void add(int second, float speed, int cadence, double latitude, double longitude) {
+            if (second < this.second) {
+                throw new IllegalArgumentException("Sample at second " + second + " after " + this.second);
+            }
+            put(0, second - this.second);
+            this.second = second;
+            if ((columns & SPEED) != 0) {
+                int value = Math.round(Math.max(0, speed) * 100);
+                put(1, zigzag(value - this.speed));
+                this.speed = value;
+            }
+            if ((columns & CADENCE) != 0) {
+                int value = Math.max(0, cadence);
+                put(2, zigzag(value - this.cadence));
+                this.cadence = value;
+            }
+            if ((columns & POSITION) != 0) {
+                int latitudeE6 = (int) Math.round(latitude * 1e6);
+                int longitudeE6 = (int) Math.round(longitude * 1e6);
+                int latitudeNext = latitudeE6 - this.latitude;
+                int longitudeNext = longitudeE6 - this.longitude;
+                put(3, zigzag(latitudeNext - latitudeStep));
+                put(4, zigzag(longitudeNext - longitudeStep));
+                this.latitude = latitudeE6;
+                this.longitude = longitudeE6;
+                latitudeStep = latitudeNext;
+                longitudeStep = longitudeNext;
+            }
+            count++;
+        }
+
+        // Returns the samples added so far.
+        RideSamples build() {
+            int total = 0;
+            int[] columnEnds = new int[COLUMN_COUNT];
+            for (int i = 0; i < COLUMN_COUNT; i++) {
+                total += sizes[i];
+                columnEnds[i] = total;
+            }
+            byte[] bytes = new byte[total];
+            int start = 0;
+            for (int i = 0; i < COLUMN_COUNT; i++) {
+                System.arraycopy(data[i], 0, bytes, start, sizes[i]);
+                start += sizes[i];
+            }
+            return new RideSamples(count, columns, bytes, columnEnds);
+        }
+
+        void clear() {
+            count = 0;
+            second = 0;
+            speed = 0;
+            cadence = 0;
+            latitude = 0;
+            longitude = 0;
+            latitudeStep = 0;
+            longitudeStep = 0;
+            for (int i = 0; i < COLUMN_COUNT; i++) {
+                sizes[i] = 0;
+            }
+        }
+
+        // Appends an unsigned variable-length integer to a column.
+        private void put(int column, int value) {
+            byte[] bytes = data[column];
+            if (bytes.length - sizes[column] < 5) {
+                byte[] grown = new byte[bytes.length * 2];
+                System.arraycopy(bytes, 0, grown, 0, sizes[column]);
+                data[column] = bytes = grown;
+            }
+            int size = sizes[column];
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+            sizes[column] = size;
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package com.example.gatilogo_ridebook;
+
+/**
+ * RideSnapshot class (data structure)
+ *
+ * An immutable copy of the rides of a RideStore at one version. Any thread can read it without
+ * locks while the store goes on changing.
+ * A snapshot is a persistent vector: a trie with 32 children per node over the slots of the
+ * RideTable, whose leaves hold 32 rides each, column by column. A change copies only the leaf of
+ * its slot and the few nodes above it and shares all other nodes with the snapshots before it, so
+ * a snapshot after a change costs O(log n) instead of a copy of all rides. Each node also counts
+ * the live rides below each of its children, which turns a position in the list into a slot in
+ * O(log n).
+ * The store is the single writer and changes the trie through a Builder. Nodes the builder made
+ * since the last snapshot aren't shared yet, so it changes those in place. Building a snapshot
+ * hands them over, and from then on they're copied before they change. All fields of a snapshot
+ * are final, so it can be handed to another thread in any way.
+ * Two snapshots can be compared in time proportional to the leaves that changed between them,
+ * since shared nodes are skipped, so the list can update just the rows that changed.
+ */
+final class RideSnapshot implements RidePager.Source {
+
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    /**
+     * Receives the differences between two snapshots, in list order. Each position is in the list
+     * as it is after the differences reported before it.
+     */
+    interface Diff {
+        void onRideInserted(int position, long id);
+        void onRideRemoved(int position, long id);
+        void onRideChanged(int position, long id);
+    }
+
+    private final Branch root;
+    private final int shift;            // Level of the root: its children are picked by slot >>> shift
+    private final int slotCount;
+    private final int version;
+    private final int layout;           // Changes when the table was compacted and slots moved
+
+    private RideSnapshot(Branch root, int shift, int slotCount, int version, int layout) {
+        this.root = root;
+        this.shift = shift;
+        this.slotCount = slotCount;
+        this.version = version;
+        this.layout = layout;
+    }
+
+    // Returns the store version the snapshot was taken at, see RideStore.getVersion().
+    int getVersion() {
+        return version;
+    }
+
+    @Override
+    public int size() {
+        return root.live;
+    }
+
+    @Override
+    public boolean isInMemory(int position, int count) {
+        return true;
+    }
+
+    @Override
+    public int read(int position, int count, long[] ids, RideRecord[] records) {
+        int n = Math.max(0, Math.min(count, size() - position));
+        if (n == 0) {
+            return 0;
+        }
+        // Find the first slot once, then walk the following live slots in order
+        int slot = slotAt(position);
+        Leaf leaf = leafOf(slot);
+        for (int i = 0; i < n; slot++) {
+            if ((slot & MASK) == 0) {
+                leaf = leafOf(slot);
+                if (leaf == null) {
+                    slot |= MASK;
+                    continue;
+                }
+            }
+            int index = slot & MASK;
+            if (leaf.ids[index] != 0) {
+                ids[i] = leaf.ids[index];
+                leaf.read(index, records[i]);
+                i++;
+            }
+        }
+        return n;
+    }
+
+    // Returns the ID of the ride at the given position in the list.
+    long getId(int position) {
+        if (position < 0 || position >= size()) {
+            throw new IndexOutOfBoundsException("Position " + position + ", size " + size());
+        }
+        int slot = slotAt(position);
+        return leafOf(slot).ids[slot & MASK];
+    }
+
+    // Returns the position of the first ride with an ID greater than the given one, or size() if
+    // there is none. Rides are listed in the order they were added, so IDs grow with the position.
+    int positionAfter(long id) {
+        int low = 0;
+        int high = size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getId(middle) <= id) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Tells diff how to get from the rides of before to the rides of this snapshot. Returns false
+    // without telling anything if the snapshots can't be compared, because the table was compacted
+    // in between.
+    boolean diff(RideSnapshot before, Diff diff) {
+        if (before.layout != layout) {
+            return false;
+        }
+        int level = Math.max(shift, before.shift);
+        compare(before.lift(level), lift(level), level, new int[1], diff);
+        return true;
+    }
+
+    // Returns the root as if the trie had grown to the given level, which puts it at child 0 of
+    // each new level.
+    private Node lift(int level) {
+        Node node = root;
+        for (int current = shift; current < level; current += BITS) {
+            Branch top = new Branch(null);
+            top.children[0] = node;
+            top.counts[0] = node.live;
+            top.live = node.live;
+            node = top;
+        }
+        return node;
+    }
+
+    // Compares two nodes at the same place in the trie. position[0] counts the rides before it.
+    private static void compare(Node before, Node after, int level, int[] position, Diff diff) {
+        if (before == after) {
+            position[0] += after == null ? 0 : after.live;
+        } else if (level == 0) {
+            compareLeaves((Leaf) before, (Leaf) after, position, diff);
+        } else {
+            for (int i = 0; i < WIDTH; i++) {
+                compare(before == null ? null : ((Branch) before).children[i],
+                        after == null ? null : ((Branch) after).children[i], level - BITS, position, diff);
+            }
+        }
+    }
+
+    private static void compareLeaves(Leaf before, Leaf after, int[] position, Diff diff) {
+        for (int i = 0; i < WIDTH; i++) {
+            long beforeId = before == null ? 0 : before.ids[i];
+            long afterId = after == null ? 0 : after.ids[i];
+            if (beforeId != 0 && beforeId == afterId) {
+                if (!before.sameRide(i, after)) {
+                    diff.onRideChanged(position[0], afterId);
+                }
+                position[0]++;
+                continue;
+            }
+            if (beforeId != 0) {
+                diff.onRideRemoved(position[0], beforeId);
+            }
+            if (afterId != 0) {
+                diff.onRideInserted(position[0], afterId);
+                position[0]++;
+            }
+        }
+    }
+
+    // Returns the slot of the ride at the given position, which must be in the snapshot.
+    private int slotAt(int position) {
+        Node node = root;
+        int slot = 0;
+        for (int level = shift; level > 0; level -= BITS) {
+            Branch branch = (Branch) node;
+            int i = 0;
+            while (position >= branch.counts[i]) {
+                position -= branch.counts[i];
+                i++;
+            }
+            slot |= i << level;
+            node = branch.children[i];
+        }
+        Leaf leaf = (Leaf) node;
+        int i = 0;
+        while (leaf.ids[i] == 0 || position-- > 0) {
+            i++;
+        }
+        return slot | i;
+    }
+
+    // Returns the leaf holding the given slot, or null if there is none.
+    private Leaf leafOf(int slot) {
+        if (slot >= slotCount) {
+            return null;
+        }
+        Node node = root;
+        for (int level = shift; level > 0 && node != null; level -= BITS) {
+            node = ((Branch) node).children[(slot >>> level) & MASK];
+        }
+        return (Leaf) node;
+    }
+
+    /**
+     * Changes a trie of rides and builds snapshots of it. Must only be used by one thread.
+     */
+    static final class Builder {
+
+        private Object owner = new Object();    // Nodes with this owner aren't in a snapshot yet
+        private Branch root = new Branch(owner);
+        private int shift = BITS;
+        private int slotCount;
+        private int layout;
+        private RideSnapshot last;              // Last snapshot built, if nothing changed since
+        private final Branch[] path = new Branch[32 / BITS + 1];
+        private int depth;
+
+        // Puts the ride in the given slot of the table into the trie, whether it's new or changed.
+        void set(RideTable table, int slot) {
+            while (slot >= WIDTH << shift) {
+                Branch top = new Branch(owner);
+                top.children[0] = root;
+                top.counts[0] = root.live;
+                top.live = root.live;
+                root = top;
+                shift += BITS;
+            }
+            Leaf leaf = editableLeaf(slot);
+            int index = slot & MASK;
+            boolean added = leaf.ids[index] == 0;
+            leaf.ids[index] = table.getId(slot);
+            leaf.epochMinutes[index] = table.getEpochMinute(slot);
+            leaf.distances[index] = table.getDistance(slot);
+            leaf.avgSpeeds[index] = table.getAvgSpeed(slot);
+            leaf.avgCadences[index] = table.getAvgCadence(slot);
+            leaf.comments[index] = table.getComment(slot);
+            if (added) {
+                count(slot, leaf, 1);
+            }
+            slotCount = Math.max(slotCount, slot + 1);
+            last = null;
+        }
+
+        // Takes the ride in the given slot out of the trie.
+        void remove(int slot) {
+            if (slot >= slotCount) {
+                return;
+            }
+            Leaf leaf = editableLeaf(slot);
+            int index = slot & MASK;
+            if (leaf.ids[index] != 0) {
+                leaf.ids[index] = 0;
+                leaf.comments[index] = null;
+                count(slot, leaf, -1);
+            }
+            last = null;
+        }
+
+        // Replaces the trie with the live slots of the given table, in O(n).
+        // Used when the first snapshot is taken and after the table has been compacted.
+        void rebuild(RideTable table) {
+            owner = new Object();
+            root = new Branch(owner);
+            shift = BITS;
+            slotCount = 0;
+            layout++;
+            last = null;
+            for (int slot = 0; slot < table.slotCount(); slot++) {
+                if (table.isLive(slot)) {
+                    set(table, slot);
+                }
+            }
+        }
+
+        // Returns a snapshot of the trie as it is now, tagged with the given store version.
+        RideSnapshot build(int version) {
+            if (last == null || last.version != version) {
+                last = new RideSnapshot(root, shift, slotCount, version, layout);
+                // Everything made so far is now shared with the snapshot
+                owner = new Object();
+            }
+            return last;
+        }
+
+        // Returns the leaf of the given slot, after copying the nodes on the way to it that are
+        // shared with a snapshot. The branches on the way are left in path.
+        private Leaf editableLeaf(int slot) {
+            if (root.owner != owner) {
+                root = root.copy(owner);
+            }
+            Branch branch = root;
+            depth = 0;
+            for (int level = shift; ; level -= BITS) {
+                path[depth++] = branch;
+                int i = (slot >>> level) & MASK;
+                Node child = branch.children[i];
+                if (level == BITS) {
+                    Leaf leaf = child == null ? new Leaf(owner) : ((Leaf) child).editable(owner);
+                    branch.children[i] = leaf;
+                    return leaf;
+                }
+                Branch next = child == null ? new Branch(owner) : ((Branch) child).editable(owner);
+                branch.children[i] = next;
+                branch = next;
+            }
+        }
+
+        // Adds delta to the live counts of the leaf and of the branches in path.
+        private void count(int slot, Leaf leaf, int delta) {
+            leaf.live += delta;
+            int level = shift;
+            for (int d = 0; d < depth; d++, level -= BITS) {
+                path[d].counts[(slot >>> level) & MASK] += delta;
+                path[d].live += delta;
+            }
+        }
+    }
+
+    private abstract static class Node {
+
+        final Object owner;     // Builder state that may change the node in place
+        int live;               // Live rides below
+
+        Node(Object owner) {
+            this.owner = owner;
+        }
+    }
+
+    private static final class Branch extends Node {
+
+        final Node[] children = new Node[WIDTH];
+        final int[] counts = new int[WIDTH];        // Live rides below each child
+
+        Branch(Object owner) {
+            super(owner);
+        }
+
+        Branch editable(Object owner) {
+            return this.owner == owner ? this : copy(owner);
+        }
+
+        Branch copy(Object owner) {
+            Branch copy = new Branch(owner);
+            System.arraycopy(children, 0, copy.children, 0, WIDTH);
+            System.arraycopy(counts, 0, copy.counts, 0, WIDTH);
+            copy.live = live;
+            return copy;
+        }
+    }
+
+    private static final class Leaf extends Node {
+
+        final long[] ids = new long[WIDTH];         // 0 = no ride
+        final int[] epochMinutes = new int[WIDTH];
+        final float[] distances = new float[WIDTH];
+        final float[] avgSpeeds = new float[WIDTH];
+        final int[] avgCadences = new int[WIDTH];
+        final String[] comments = new String[WIDTH];
+
+        Leaf(Object owner) {
+            super(owner);
+        }
+
+        Leaf editable(Object owner) {
+            if (this.owner == owner) {
+                return this;
+            }
+            Leaf copy = new Leaf(owner);
+            System.arraycopy(ids, 0, copy.ids, 0, WIDTH);
+            System.arraycopy(epochMinutes, 0, copy.epochMinutes, 0, WIDTH);
+            System.arraycopy(distances, 0, copy.distances, 0, WIDTH);
+            System.arraycopy(avgSpeeds, 0, copy.avgSpeeds, 0, WIDTH);
+            System.arraycopy(avgCadences, 0, copy.avgCadences, 0, WIDTH);
+            System.arraycopy(comments, 0, copy.comments, 0, WIDTH);
+            copy.live = live;
+            return copy;
+        }
+
+        void read(int index, RideRecord record) {
+            record.epochMinute = epochMinutes[index];
+            record.distance = distances[index];
+            record.avgSpeed = avgSpeeds[index];
+            record.avgCadence = avgCadences[index];
+            String comment = comments[index];
+            comment.getChars(0, comment.length(), record.comment, 0);
+            record.commentLength = comment.length();
+        }
+
+        // Returns true if the ride at the given index is the same in both leaves.
+        boolean sameRide(int index, Leaf other) {
+            return epochMinutes[index] == other.epochMinutes[index]
+                    && Float.floatToIntBits(distances[index]) == Float.floatToIntBits(other.distances[index])
+                    && Float.floatToIntBits(avgSpeeds[index]) == Float.floatToIntBits(other.avgSpeeds[index])
+                    && avgCadences[index] == other.avgCadences[index]
+                    && comments[index].equals(other.comments[index]);
+        }
+    }
+}
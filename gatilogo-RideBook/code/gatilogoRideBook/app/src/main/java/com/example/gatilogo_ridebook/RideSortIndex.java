@@ -0,0 +1,328 @@
+package com.example.gatilogo_ridebook;
+
+import java.util.Arrays;
+
+/**
+ * RideSortIndex class (data structure)
+ *
+ * Keeps the slots of a RideTable sorted by one field of their rides, so the list can be shown in
+ * that order without sorting it. Rides with the same value are kept in list order.
+ * The index is an order-statistic tree: a treap whose nodes also count the nodes below them, so
+ * the ride at a given rank and the rank of a given ride are both found in O(log n), and adding or
+ * removing a ride costs O(log n) too. A page of rides is read by finding the first one and walking
+ * the tree in order from there. Nodes live in int arrays indexed by slot, which costs
+ * 16 bytes per ride and no objects. A node's priority is a hash of its slot, so the tree has the
+ * expected depth of a random treap without storing a priority or a random generator.
+ * After the table has been compacted, the index is rebuilt by sorting the values once and building
+ * the tree from them in O(n).
+ */
+final class RideSortIndex {
+
+    // Fields the rides can be sorted by. ADDED is the order they were added in, which is the order
+    // of the table itself and needs no index.
+    static final int ADDED = -1;
+    static final int DATE = 0;
+    static final int DISTANCE = 1;
+    static final int SPEED = 2;
+    static final int CADENCE = 3;
+    static final int FIELD_COUNT = 4;
+
+    private final int field;
+    // Node n holds slot n - 1, so 0 can stand for no node
+    private int[] values = new int[17];
+    private int[] lefts = new int[17];
+    private int[] rights = new int[17];
+    private int[] sizes = new int[17];      // Nodes in the subtree, 0 = slot not in the index
+    private int root;
+    private int[] path = new int[64];       // Nodes still to visit while walking the tree in order
+    // The two trees split() leaves behind
+    private int splitLess;
+    private int splitRest;
+
+    RideSortIndex(int field) {
+        if (field < 0 || field >= FIELD_COUNT) {
+            throw new IllegalArgumentException("Bad sort field " + field);
+        }
+        this.field = field;
+    }
+
+    int getField() {
+        return field;
+    }
+
+    int size() {
+        return sizes[root];
+    }
+
+    // Adds the ride in the given slot.
+    void add(RideTable table, int slot) {
+        int node = slot + 1;
+        ensureCapacity(node + 1);
+        if (sizes[node] != 0) {
+            throw new IllegalStateException("Slot " + slot + " is already in the index");
+        }
+        values[node] = value(table, slot);
+        lefts[node] = 0;
+        rights[node] = 0;
+        sizes[node] = 1;
+        split(root, key(node));
+        int rest = splitRest;
+        root = merge(merge(splitLess, node), rest);
+    }
+
+    // Removes the ride in the given slot, with the value it was added with.
+    void remove(int slot) {
+        int node = slot + 1;
+        if (node >= sizes.length || sizes[node] == 0) {
+            throw new IllegalStateException("Slot " + slot + " is not in the index");
+        }
+        root = remove(root, key(node));
+        sizes[node] = 0;
+    }
+
+    // Returns the slot of the ride at the given rank, counted from the smallest value.
+    int slotAt(int rank) {
+        if (rank < 0 || rank >= size()) {
+            throw new IndexOutOfBoundsException("Rank " + rank + ", size " + size());
+        }
+        int node = root;
+        while (true) {
+            int leftSize = sizes[lefts[node]];
+            if (rank < leftSize) {
+                node = lefts[node];
+            } else if (rank == leftSize) {
+                return node - 1;
+            } else {
+                rank -= leftSize + 1;
+                node = rights[node];
+            }
+        }
+    }
+
+    // Copies the slots of count rides into slots, from the given rank on, going up in rank, or down
+    // from the largest value if descending. Costs O(log n + count), where count calls of slotAt()
+    // would cost O(count log n).
+    void slots(int rank, int count, boolean descending, int[] slots) {
+        if (count <= 0) {
+            return;
+        }
+        if (rank < 0 || rank + count > size()) {
+            throw new IndexOutOfBoundsException("Ranks " + rank + " to " + (rank + count) + ", size " + size());
+        }
+        // Going down, the tree is walked as its mirror image
+        int[] before = descending ? rights : lefts;
+        int[] after = descending ? lefts : rights;
+        int top = 0;
+        int node = root;
+        while (true) {
+            int beforeSize = sizes[before[node]];
+            if (rank < beforeSize) {
+                top = push(top, node);
+                node = before[node];
+            } else if (rank == beforeSize) {
+                break;
+            } else {
+                rank -= beforeSize + 1;
+                node = after[node];
+            }
+        }
+        for (int i = 0; ; ) {
+            slots[i] = node - 1;
+            if (++i == count) {
+                return;
+            }
+            if (after[node] != 0) {
+                node = after[node];
+                while (before[node] != 0) {
+                    top = push(top, node);
+                    node = before[node];
+                }
+            } else {
+                node = path[--top];
+            }
+        }
+    }
+
+    // Returns the rank of the ride in the given slot, or -1 if it isn't in the index.
+    int rankOf(int slot) {
+        int node = slot + 1;
+        if (node >= sizes.length || sizes[node] == 0) {
+            return -1;
+        }
+        long key = key(node);
+        int rank = 0;
+        int current = root;
+        while (current != node) {
+            if (key < key(current)) {
+                current = lefts[current];
+            } else {
+                rank += sizes[lefts[current]] + 1;
+                current = rights[current];
+            }
+        }
+        return rank + sizes[lefts[node]];
+    }
+
+    // Replaces all entries with the live slots of the given table, in O(n log n).
+    // Used when the index is first needed and after the table has been compacted.
+    void rebuild(RideTable table) {
+        ensureCapacity(table.slotCount() + 1);
+        Arrays.fill(sizes, 0);
+        long[] keys = new long[table.size()];
+        int count = 0;
+        for (int slot = 0; slot < table.slotCount(); slot++) {
+            if (table.isLive(slot)) {
+                keys[count++] = key(value(table, slot), slot + 1);
+            }
+        }
+        Arrays.sort(keys, 0, count);
+
+        // Build the treap from the sorted nodes along its right spine: a new node takes the nodes
+        // of lower priority off the spine as its left subtree. A node's subtree is complete when it
+        // comes off the spine, so that's when it's counted.
+        int[] spine = new int[count];
+        int top = 0;
+        for (int i = 0; i < count; i++) {
+            int node = (int) keys[i];
+            values[node] = (int) (keys[i] >> 32);
+            int last = 0;
+            while (top > 0 && isAbove(node, spine[top - 1])) {
+                last = spine[--top];
+                sizes[last] = 1 + sizes[lefts[last]] + sizes[rights[last]];
+            }
+            lefts[node] = last;
+            rights[node] = 0;
+            if (top > 0) {
+                rights[spine[top - 1]] = node;
+            }
+            spine[top++] = node;
+        }
+        while (top > 0) {
+            int node = spine[--top];
+            sizes[node] = 1 + sizes[lefts[node]] + sizes[rights[node]];
+        }
+        root = count > 0 ? spine[0] : 0;
+    }
+
+    // Splits the tree below node into the nodes with a smaller key (splitLess) and the rest
+    // (splitRest).
+    private void split(int node, long key) {
+        if (node == 0) {
+            splitLess = 0;
+            splitRest = 0;
+        } else if (key(node) < key) {
+            split(rights[node], key);
+            rights[node] = splitLess;
+            count(node);
+            splitLess = node;
+        } else {
+            split(lefts[node], key);
+            lefts[node] = splitRest;
+            count(node);
+            splitRest = node;
+        }
+    }
+
+    // Joins two trees, where all keys of the first are smaller than those of the second.
+    private int merge(int less, int more) {
+        if (less == 0) {
+            return more;
+        }
+        if (more == 0) {
+            return less;
+        }
+        if (isAbove(less, more)) {
+            rights[less] = merge(rights[less], more);
+            count(less);
+            return less;
+        }
+        lefts[more] = merge(less, lefts[more]);
+        count(more);
+        return more;
+    }
+
+    private int remove(int node, long key) {
+        if (node == 0) {
+            throw new IllegalStateException("Index is corrupt");
+        }
+        long nodeKey = key(node);
+        if (key == nodeKey) {
+            return merge(lefts[node], rights[node]);
+        }
+        if (key < nodeKey) {
+            lefts[node] = remove(lefts[node], key);
+        } else {
+            rights[node] = remove(rights[node], key);
+        }
+        sizes[node]--;
+        return node;
+    }
+
+    private int push(int top, int node) {
+        if (top == path.length) {
+            path = Arrays.copyOf(path, top * 2);
+        }
+        path[top] = node;
+        return top + 1;
+    }
+
+    private void count(int node) {
+        sizes[node] = 1 + sizes[lefts[node]] + sizes[rights[node]];
+    }
+
+    // Returns true if node a belongs above node b in the treap.
+    private static boolean isAbove(int a, int b) {
+        int priorityA = priority(a);
+        int priorityB = priority(b);
+        return priorityA > priorityB || (priorityA == priorityB && a < b);
+    }
+
+    // Mixes the bits of a node number, so neighbouring slots get unrelated priorities.
+    private static int priority(int node) {
+        int h = node * 0x9E3779B9;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > sizes.length) {
+            int length = Math.max(capacity, sizes.length * 2);
+            values = Arrays.copyOf(values, length);
+            lefts = Arrays.copyOf(lefts, length);
+            rights = Arrays.copyOf(rights, length);
+            sizes = Arrays.copyOf(sizes, length);
+        }
+    }
+
+    // Orders nodes by value, then by slot, which is the list order.
+    private long key(int node) {
+        return key(values[node], node);
+    }
+
+    private static long key(int value, int node) {
+        return ((long) value << 32) | (node & 0xFFFFFFFFL);
+    }
+
+    // Returns the value of the sort field as an int that sorts the same way.
+    private int value(RideTable table, int slot) {
+        switch (field) {
+            case DATE:
+                return table.getEpochMinute(slot);
+            case DISTANCE:
+                return sortable(table.getDistance(slot));
+            case SPEED:
+                return sortable(table.getAvgSpeed(slot));
+            default:
+                return table.getAvgCadence(slot);
+        }
+    }
+
+    // Turns a float into an int with the same order: the bits of negative floats are flipped so
+    // they count down from zero.
+    private static int sortable(float value) {
+        int bits = Float.floatToIntBits(value);
+        return bits ^ ((bits >> 31) & 0x7FFFFFFF);
+    }
+}
@@ -0,0 +1,838 @@
+package com.example.gatilogo_ridebook;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * RideStore class
+ *
+ * Holds the rides in a RideTable and keeps them on disk through a RideJournal.
+ * Rides are identified by stable IDs handed out by the store, so a ride can still be found after
+ * other rides were added or deleted.
+ * Every change is applied to the table in memory and then appended to the journal by a
+ * RideJournalWriter, either right away or, after startWriteBehind(), by its own thread. When the
+ * journal has grown past the number of rides it describes, it is compacted into a snapshot.
+ * A ride can also have RideSamples from its sensors, kept in a file per ride in a samples
+ * directory. Its distance, average speed and average cadence are then derived from the samples,
+ * and typed-in values are only kept for what wasn't recorded.
+ * Each flush also writes a RideHead with the latest rides and totals, which lets the list show
+ * them at the next start before the store has loaded.
+ * The store also keeps RideAggregates up to date, so statistics never need a pass over all rides,
+ * a RideTimeIndex that answers queries by date and time, RideRollups for statistics over
+ * ranges of days, RideBests for personal bests, and a CommentIndex for finding rides by their
+ * comment. A RideRecompute can rebuild all statistics in the background and swap them in.
+ * The first time the list is sorted by a field, a RideSortIndex is built for it and kept up to
+ * date from then on, so switching between sort orders later costs nothing.
+ * Adds, edits and deletes are recorded in a RideUndoLog, so the last ones can be undone and redone.
+ * An undone delete puts the ride back with its ID and samples, at its old place in the list. The log
+ * is saved in the head file, so it survives a restart together with the rides. Imports through
+ * addAll() aren't recorded, as they would push every other change out of the log.
+ * RideSync keeps the rides in step with other devices, applying their changes through addAll() and
+ * applySynced().
+ * The store must only be used on the main thread. Other threads read RideSnapshots, immutable
+ * copies of the rides that share everything that didn't change between them.
+ */
+class RideStore {
+
+    // Never compact before this many records, so small histories don't rewrite the snapshot often
+    private static final int MIN_COMPACT_RECORDS = 1024;
+    // Never compact the table before this many deleted slots
+    private static final int MIN_COMPACT_SLOTS = 64;
+    private static final String SAMPLES_DIR = "samples";
+    // Samples of deleted rides, kept while the delete can still be undone
+    private static final String DELETED_SAMPLES_SUFFIX = ".samples.deleted";
+
+    private final RideTable table = new RideTable();
+    private RideAggregates aggregates = new RideAggregates();
+    private final RideTimeIndex timeIndex = new RideTimeIndex();
+    private RideRollups rollups = new RideRollups();
+    private RideBests bests = new RideBests();
+    private boolean bestsStale;         // A ride holding a best was changed or deleted
+    private int version;                // Counts changes, so a recompute can tell it's out of date
+    private final CommentIndex commentIndex = new CommentIndex();
+    // Built when first needed, by RideSortIndex field
+    private final RideSortIndex[] sortIndexes = new RideSortIndex[RideSortIndex.FIELD_COUNT];
+    private RideSnapshot.Builder snapshots;         // Built when the first snapshot is taken
+    private final char[] comment = new char[RideRecord.MAX_COMMENT_LENGTH];
+    private final RideRecord scratch = new RideRecord();
+    private final RideRecord derived = new RideRecord();
+    private final RideRecord previous = new RideRecord();
+    private RideUndoLog undoLog = new RideUndoLog();
+    private final RideSamples.Summary summary = new RideSamples.Summary();
+    private final RideJournal journal;
+    private final File samplesDir;
+    private RideJournalWriter writer;
+    private long nextId = 1;
+    private boolean headDirty;          // The head file may not match the rides
+    // Replaying the journal. The indexes that store slots are only built once it's done, since
+    // adding rides one by one costs O(n) each when they aren't in order.
+    private boolean loading;
+
+    private RideStore(File dir) {
+        this.journal = new RideJournal(dir);
+        this.samplesDir = new File(dir, SAMPLES_DIR);
+        aggregates.setRides(table);
+    }
+
+    // Opens the store kept in the given directory and loads all rides from it.
+    static RideStore open(File dir) throws IOException {
+        long start = System.nanoTime();
+        final RideStore store = new RideStore(dir);
+        store.loading = true;
+        store.journal.load(new RideJournal.Replay() {
+            @Override
+            public void add(long key, RideRecord record) throws IOException {
+                if (key <= 0 || store.table.slotOf(key) >= 0) {
+                    throw new IOException("Journal adds bad or duplicate ride " + key);
+                }
+                store.applyAdd(key, record);
+                store.nextId = Math.max(store.nextId, key + 1);
+            }
+
+            @Override
+            public void edit(long key, RideRecord record) throws IOException {
+                store.applyEdit(store.checkKey(key), record);
+            }
+
+            @Override
+            public void delete(long key) throws IOException {
+                store.applyDelete(store.checkKey(key));
+            }
+
+            @Override
+            public void restore(long key, RideRecord record) throws IOException {
+                if (key <= 0 || store.table.slotOf(key) >= 0) {
+                    throw new IOException("Journal restores bad or existing ride " + key);
+                }
+                store.applyRestore(key, record);
+                store.nextId = Math.max(store.nextId, key + 1);
+            }
+        });
+        // The newest rides may have been deleted before the snapshot, so their IDs aren't in it
+        store.nextId = Math.max(store.nextId, store.journal.getNextKey());
+        store.loading = false;
+        store.rebuildSlotIndexes();
+        store.compactTableIfNeeded();
+        // The undo log is only as current as the head it's kept in
+        RideHead head = RideJournal.readHead(dir);
+        store.headDirty = head == null;
+        if (head != null) {
+            store.undoLog = head.undoLog;
+        }
+        store.deleteUnneededSamples();
+        store.writer = new RideJournalWriter(store.journal);
+        RideMetrics.LOAD.recordSince(start);
+        return store;
+    }
+
+    // Writes changes on a background thread from now on. The caller sees every change right away,
+    // and changes reach the disk within flushWindowMillis, or sooner through flush().
+    // Write errors are passed to listener on the main thread.
+    void startWriteBehind(long flushWindowMillis, Executor mainThread, RideJournalWriter.Listener listener) {
+        writer.start(flushWindowMillis, mainThread, listener);
+    }
+
+    // Starts writing waiting changes to disk without waiting for the flush window, followed by a
+    // new head file if rides changed since the last one.
+    void flush() throws IOException {
+        writer.flush(headDirty ? head() : null);
+        headDirty = false;
+    }
+
+    // Copies the latest rides and the totals into a head. The journal fills in how many rides are
+    // still as in its snapshot when it writes the head.
+    RideHead head() throws IOException {
+        int count = Math.min(RideHead.SIZE, table.size());
+        long[] ids = new long[count];
+        RideRecord[] records = new RideRecord[count];
+        for (int i = 0; i < count; i++) {
+            records[i] = new RideRecord();
+        }
+        pageSource().read(table.size() - count, count, ids, records);
+        return new RideHead(table.size(), aggregates.getTotalDistance(), 0, ids, records, undoLog.copy());
+    }
+
+    // Waits until every change so far is on disk.
+    void sync() throws IOException {
+        writer.sync();
+    }
+
+    // Returns the table holding all rides. Its positions are in the order the rides were added.
+    // It must only be read; changes go through the store.
+    RideTable getTable() {
+        return table;
+    }
+
+    // Returns the rides as they are now, as an immutable snapshot that any thread can read without
+    // locks. After a change this costs O(log n); the first snapshot copies all rides.
+    RideSnapshot snapshot() {
+        if (snapshots == null) {
+            snapshots = new RideSnapshot.Builder();
+            snapshots.rebuild(table);
+        }
+        return snapshots.build(version);
+    }
+
+    // Returns the statistics over all rides. They are updated as rides change.
+    RideAggregates getAggregates() {
+        return aggregates;
+    }
+
+    // Returns the personal bests over all rides. After the ride holding a best was changed or
+    // deleted, they are found again by a pass over all rides.
+    RideBests getBests() {
+        if (bestsStale) {
+            bests.clear();
+            RideTable.Cursor cursor = table.cursor();
+            for (int slot = 0; slot < table.slotCount(); slot++) {
+                if (table.isLive(slot)) {
+                    cursor.moveToSlot(slot);
+                    bests.add(cursor.getId(), cursor.getDistance(), cursor.getAvgSpeed(), cursor.getAvgCadence());
+                }
+            }
+            bestsStale = false;
+        }
+        return bests;
+    }
+
+    // Returns a number that changes whenever rides change.
+    int getVersion() {
+        return version;
+    }
+
+    // Replaces all statistics with ones recomputed from the rides at the given version. Returns
+    // false and keeps the current ones if rides changed since.
+    boolean swapStatistics(int version, RideRecompute.Statistics statistics) {
+        if (version != this.version) {
+            return false;
+        }
+        aggregates = statistics.aggregates;
+        aggregates.setRides(table);
+        rollups = statistics.rollups;
+        bests = statistics.bests;
+        bestsStale = false;
+        return true;
+    }
+
+    // Returns count, distance and average speed per range of days in O(log n).
+    RideRollups getRollups() {
+        return rollups;
+    }
+
+    // Returns the statistics over the rides from fromMinute (inclusive) to toMinute (exclusive).
+    // Unlike getRollups(), this looks at every ride in the range, but also has cadence and min/max.
+    RideAggregates getAggregates(int fromMinute, int toMinute) {
+        RideAggregates range = new RideAggregates();
+        for (int slot : timeIndex.slots(fromMinute, toMinute)) {
+            range.add(table.getDistance(slot), table.getAvgSpeed(slot), table.getAvgCadence(slot));
+        }
+        return range;
+    }
+
+    // Returns the IDs of the rides from fromMinute (inclusive) to toMinute (exclusive),
+    // oldest first. Minutes are counted from 1970-01-01 00:00, see RideTime.
+    long[] rides(int fromMinute, int toMinute) {
+        return toIds(timeIndex.slots(fromMinute, toMinute));
+    }
+
+    // Same as rides(), but newest first.
+    long[] ridesDescending(int fromMinute, int toMinute) {
+        return toIds(timeIndex.slotsDescending(fromMinute, toMinute));
+    }
+
+    // Returns the IDs of the rides whose comment contains the given text, ignoring case, in list
+    // order. An empty text matches all rides.
+    long[] search(String text) {
+        return search(text, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    // Same as search(String), but only returns rides from fromMinute (inclusive) to toMinute
+    // (exclusive).
+    long[] search(String text, int fromMinute, int toMinute) {
+        long[] candidates = commentIndex.find(text);
+        if (candidates == null) {
+            long[] ids = rides(fromMinute, toMinute);
+            Arrays.sort(ids);
+            return ids;
+        }
+        boolean exact = CommentIndex.isExact(text);
+        if (exact && fromMinute == Integer.MIN_VALUE && toMinute == Integer.MAX_VALUE) {
+            return candidates;
+        }
+        int count = 0;
+        for (long id : candidates) {
+            int slot = table.slotOf(id);
+            int epochMinute = table.getEpochMinute(slot);
+            if (epochMinute >= fromMinute && epochMinute < toMinute
+                    && (exact || CommentIndex.contains(table.getComment(slot), text))) {
+                candidates[count++] = id;
+            }
+        }
+        return count == candidates.length ? candidates : Arrays.copyOf(candidates, count);
+    }
+
+    // Returns the ID of the first ride at or after the given minute, or -1 if there is none.
+    long firstRideFrom(int epochMinute) {
+        int slot = timeIndex.firstFrom(epochMinute);
+        return slot < 0 ? -1 : table.getId(slot);
+    }
+
+    // Returns the ID of the last ride before the given minute, or -1 if there is none.
+    long lastRideBefore(int epochMinute) {
+        int slot = timeIndex.lastBefore(epochMinute);
+        return slot < 0 ? -1 : table.getId(slot);
+    }
+
+    int size() {
+        return table.size();
+    }
+
+    // Returns the position of the ride with the given ID when sorted by the given RideSortIndex
+    // field, or -1 if there is none. Descending order is the exact reverse of ascending order.
+    int positionOf(long id, int field, boolean descending) {
+        if (field == RideSortIndex.ADDED) {
+            int position = positionOf(id);
+            return descending && position >= 0 ? table.size() - 1 - position : position;
+        }
+        int slot = table.slotOf(id);
+        int rank = slot < 0 ? -1 : sortIndex(field).rankOf(slot);
+        return descending && rank >= 0 ? table.size() - 1 - rank : rank;
+    }
+
+    // Returns the ID of the ride at the given position in the list.
+    long getId(int position) {
+        return table.getId(table.slotAt(position));
+    }
+
+    // Returns the position in the list of the ride with the given ID, or -1 if there is none.
+    int positionOf(long id) {
+        int slot = table.slotOf(id);
+        return slot < 0 ? -1 : table.positionOf(slot);
+    }
+
+    // Returns the position of the first ride with an ID greater than the given one, or size() if
+    // there is none. Rides are listed in the order they were added, so IDs grow with the position.
+    int positionAfter(long id) {
+        int low = 0;
+        int high = table.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getId(middle) <= id) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Creates a Ride object for the ride with the given ID, or returns null if there is none.
+    Ride getRide(long id) {
+        int slot = table.slotOf(id);
+        return slot < 0 ? null : table.toRide(slot);
+    }
+
+    // Copies the ride with the given ID into a record. Returns false if there is no such ride.
+    boolean read(long id, RideRecord record) {
+        int slot = table.slotOf(id);
+        if (slot < 0) {
+            return false;
+        }
+        table.read(slot, record);
+        return true;
+    }
+
+    // Reads the samples of the ride with the given ID, or returns null if it has none.
+    RideSamples getSamples(long id) throws IOException {
+        File file = samplesFile(id);
+        return table.slotOf(id) >= 0 && file.exists() ? RideSamples.read(file) : null;
+    }
+
+    // Gives the ride with the given ID the samples, replacing the ones it had, and derives its
+    // distance, average speed and average cadence from them. Returns false if there is no such ride.
+    boolean setSamples(long id, RideSamples samples) throws IOException {
+        int slot = table.slotOf(id);
+        if (slot < 0) {
+            return false;
+        }
+        if (!samplesDir.isDirectory() && !samplesDir.mkdirs()) {
+            throw new IOException("Could not create " + samplesDir);
+        }
+        samples.write(samplesFile(id));
+        table.read(slot, derived);
+        samples.summarize(summary).applyTo(derived);
+        applyEdit(slot, derived);
+        headDirty = true;
+        writer.submit(RideJournal.OP_EDIT, id, derived);
+        compactIfNeeded();
+        return true;
+    }
+
+    // Returns a source for a RidePager that reads pages of rides from the table.
+    // Like the store itself, it must only be used on the main thread.
+    RidePager.Source pageSource() {
+        return new RidePager.Source() {
+            @Override
+            public int size() {
+                return table.size();
+            }
+
+            @Override
+            public boolean isInMemory(int position, int count) {
+                return true;
+            }
+
+            @Override
+            public int read(int position, int count, long[] ids, RideRecord[] records) {
+                int n = Math.min(count, table.size() - position);
+                // Find the first slot once, then walk the following live slots in order
+                int slot = n > 0 ? table.slotAt(position) : 0;
+                for (int i = 0; i < n; i++, slot++) {
+                    while (!table.isLive(slot)) {
+                        slot++;
+                    }
+                    ids[i] = table.getId(slot);
+                    table.read(slot, records[i]);
+                }
+                return Math.max(n, 0);
+            }
+        };
+    }
+
+    // Same as pageSource(), but reads the rides sorted by the given RideSortIndex field. The index
+    // is built the first time a field is asked for, after which a page costs O(log n) plus its rides.
+    RidePager.Source pageSource(final int field, final boolean descending) {
+        if (field == RideSortIndex.ADDED && !descending) {
+            return pageSource();
+        }
+        final RideSortIndex index = field == RideSortIndex.ADDED ? null : sortIndex(field);
+        return new RidePager.Source() {
+            @Override
+            public int size() {
+                return table.size();
+            }
+
+            @Override
+            public boolean isInMemory(int position, int count) {
+                return true;
+            }
+
+            private int[] slots = new int[RidePager.PAGE_SIZE];
+
+            @Override
+            public int read(int position, int count, long[] ids, RideRecord[] records) {
+                int n = Math.max(0, Math.min(count, table.size() - position));
+                if (slots.length < n) {
+                    slots = new int[n];
+                }
+                if (index != null) {
+                    index.slots(position, n, descending, slots);
+                }
+                for (int i = 0; i < n; i++) {
+                    int slot = index != null ? slots[i] : table.slotAt(table.size() - 1 - (position + i));
+                    ids[i] = table.getId(slot);
+                    table.read(slot, records[i]);
+                }
+                return n;
+            }
+        };
+    }
+
+    // Adds a ride at the end of the list and returns its new ID.
+    long add(Ride ride) throws IOException {
+        return add(scratch.set(ride));
+    }
+
+    // Same as add(Ride), but takes the ride from a record.
+    long add(RideRecord record) throws IOException {
+        long id = nextId++;
+        applyAdd(id, record);
+        undoLog.recordExists(id, record);
+        headDirty = true;
+        writer.submit(RideJournal.OP_ADD, id, record);
+        compactIfNeeded();
+        return id;
+    }
+
+    // Adds the first count records at the end of the list and returns the ID of the first one;
+    // the others get the IDs that follow. The journal is forced to disk once for all of them.
+    long addAll(RideRecord[] records, int count) throws IOException {
+        long firstId = nextId;
+        for (int i = 0; i < count; i++) {
+            applyAdd(nextId++, records[i]);
+        }
+        if (count > 0) {
+            headDirty = true;
+            writer.submitAdds(firstId, records, count);
+            compactIfNeeded();
+        }
+        return firstId;
+    }
+
+    // Replaces the ride with the given ID. Returns false if there is no such ride.
+    boolean edit(long id, Ride ride) throws IOException {
+        return edit(id, scratch.set(ride));
+    }
+
+    // Same as edit(long, Ride), but takes the ride from a record. If the ride has samples, the
+    // values derived from them replace the typed-in ones.
+    boolean edit(long id, RideRecord record) throws IOException {
+        int slot = table.slotOf(id);
+        if (slot < 0) {
+            return false;
+        }
+        record = withSamples(id, record);
+        undoLog.recordEdit(id, table.read(slot, previous), record);
+        change(slot, id, record);
+        return true;
+    }
+
+    // Deletes the ride with the given ID. Returns false if there is no such ride.
+    boolean delete(long id) throws IOException {
+        int slot = table.slotOf(id);
+        if (slot < 0) {
+            return false;
+        }
+        undoLog.recordExists(id, table.read(slot, previous));
+        remove(slot, id);
+        return true;
+    }
+
+    // Applies a change that came from another device through RideSync: gives the ride with the
+    // given ID the fields of record, putting it back if it was deleted, or deletes it if record is
+    // null. Values derived from samples aren't applied, as samples stay on the device that recorded
+    // them. Such changes aren't recorded in the undo log, which is cleared instead, since the
+    // changes in it may no longer apply. Returns false if there was nothing to change.
+    boolean applySynced(long id, RideRecord record) throws IOException {
+        int slot = table.slotOf(id);
+        if (slot < 0 && (record == null || id <= 0 || id >= nextId)) {
+            return false;
+        }
+        undoLog.clear();
+        if (record == null) {
+            remove(slot, id);
+        } else if (slot < 0) {
+            restore(id, record);
+        } else {
+            change(slot, id, record);
+        }
+        return true;
+    }
+
+    // Returns true if there is a change that undo() can take back.
+    boolean canUndo() {
+        return undoLog.canUndo();
+    }
+
+    // Returns true if there is a change that redo() can make again.
+    boolean canRedo() {
+        return undoLog.canRedo();
+    }
+
+    // Takes back the last add, edit or delete that wasn't undone yet and returns the ID of its ride.
+    // Costs about as much as the change itself.
+    long undo() throws IOException {
+        return apply(undoLog.undo());
+    }
+
+    // Takes back the delete of the given ride, but only if it is the change undo() would take back,
+    // so a later change is never undone in its place. Returns true if the ride is back.
+    boolean undoDelete(long id) throws IOException {
+        if (!undoLog.canUndo()) {
+            return false;
+        }
+        int entry = undoLog.entry(undoLog.getCursor() - 1);
+        if (undoLog.getKind(entry) != RideUndoLog.EXISTS || undoLog.getId(entry) != id
+                || table.slotOf(id) >= 0) {
+            return false;
+        }
+        apply(undoLog.undo());
+        return true;
+    }
+
+    // Makes the last change taken back by undo() again and returns the ID of its ride.
+    long redo() throws IOException {
+        return apply(undoLog.redo());
+    }
+
+    // Writes all waiting changes and the head file, and closes the journal.
+    void close() throws IOException {
+        try {
+            flush();
+            writer.close();
+        } finally {
+            journal.close();
+        }
+    }
+
+    private void applyAdd(long id, RideRecord record) {
+        long start = System.nanoTime();
+        int slot = table.add(id, record);
+        commentIndex.add(id, record.comment, record.commentLength);
+        aggregates.add(record.distance, record.avgSpeed, record.avgCadence);
+        rollups.add(record.epochMinute, record.distance, record.avgSpeed);
+        bests.add(id, record.distance, record.avgSpeed, record.avgCadence);
+        addToSlotIndexes(slot);
+        version++;
+        RideMetrics.UPDATE.recordSince(start);
+    }
+
+    // Applies an entry of the undo log to its ride. This turns the entry into its own inverse, so
+    // applying it again takes the change back again.
+    private long apply(int entry) throws IOException {
+        long id = undoLog.getId(entry);
+        int slot = table.slotOf(id);
+        if (undoLog.getKind(entry) == RideUndoLog.EXISTS) {
+            if (slot >= 0) {
+                // The entry takes the ride, for putting it back
+                undoLog.swap(entry, table.read(slot, previous));
+                remove(slot, id);
+            } else {
+                restore(id, undoLog.getValues(entry));
+            }
+        } else {
+            if (slot < 0) {
+                throw new IllegalStateException("Undo log refers to missing ride " + id);
+            }
+            undoLog.swap(entry, table.read(slot, previous));
+            change(slot, id, withSamples(id, previous));
+        }
+        return id;
+    }
+
+    // Returns the record with the values derived from the samples of the given ride, if it has any.
+    private RideRecord withSamples(long id, RideRecord record) throws IOException {
+        RideSamples samples = getSamples(id);
+        if (samples == null) {
+            return record;
+        }
+        record = derived.set(record);
+        samples.summarize(summary).applyTo(record);
+        return record;
+    }
+
+    private void restore(long id, RideRecord record) throws IOException {
+        applyRestore(id, record);
+        headDirty = true;
+        writer.submit(RideJournal.OP_RESTORE, id, record);
+        restoreSamples(id);
+        compactIfNeeded();
+    }
+
+    private void change(int slot, long id, RideRecord record) throws IOException {
+        applyEdit(slot, record);
+        headDirty = true;
+        writer.submit(RideJournal.OP_EDIT, id, record);
+        compactIfNeeded();
+    }
+
+    private void remove(int slot, long id) throws IOException {
+        applyDelete(slot);
+        headDirty = true;
+        writer.submit(RideJournal.OP_DELETE, id, null);
+        deleteSamples(id);
+        compactTableIfNeeded();
+        compactIfNeeded();
+    }
+
+    private void applyEdit(int slot, RideRecord record) {
+        long start = System.nanoTime();
+        removeFromIndexes(slot);
+        table.set(slot, record);
+        commentIndex.add(table.getId(slot), record.comment, record.commentLength);
+        aggregates.add(record.distance, record.avgSpeed, record.avgCadence);
+        rollups.add(record.epochMinute, record.distance, record.avgSpeed);
+        bests.add(table.getId(slot), record.distance, record.avgSpeed, record.avgCadence);
+        addToSlotIndexes(slot);
+        version++;
+        RideMetrics.UPDATE.recordSince(start);
+    }
+
+    private void applyDelete(int slot) {
+        long start = System.nanoTime();
+        removeFromIndexes(slot);
+        table.remove(slot);
+        if (snapshots != null && !loading) {
+            snapshots.remove(slot);
+        }
+        version++;
+        RideMetrics.UPDATE.recordSince(start);
+    }
+
+    // Puts a deleted ride back at its place in the list. If other rides had to move to make room,
+    // everything that stores slots is rebuilt.
+    private void applyRestore(long id, RideRecord record) {
+        long start = System.nanoTime();
+        int layout = table.getLayout();
+        int slot = table.restore(id, record);
+        commentIndex.add(id, record.comment, record.commentLength);
+        aggregates.add(record.distance, record.avgSpeed, record.avgCadence);
+        rollups.add(record.epochMinute, record.distance, record.avgSpeed);
+        bests.add(id, record.distance, record.avgSpeed, record.avgCadence);
+        if (table.getLayout() != layout) {
+            if (!loading) {
+                rebuildSlotIndexes();
+            }
+        } else {
+            addToSlotIndexes(slot);
+        }
+        version++;
+        RideMetrics.UPDATE.recordSince(start);
+    }
+
+    // Takes the ride in the given slot out of the statistics and indexes.
+    private void removeFromIndexes(int slot) {
+        int epochMinute = table.getEpochMinute(slot);
+        float distance = table.getDistance(slot);
+        float avgSpeed = table.getAvgSpeed(slot);
+        aggregates.remove(distance, avgSpeed, table.getAvgCadence(slot));
+        rollups.remove(epochMinute, distance, avgSpeed);
+        String text = table.getComment(slot);
+        text.getChars(0, text.length(), comment, 0);
+        commentIndex.remove(table.getId(slot), comment, text.length());
+        bestsStale |= bests.isHeldBy(table.getId(slot));
+        if (loading) {
+            return;
+        }
+        timeIndex.remove(epochMinute, slot);
+        for (RideSortIndex index : sortIndexes) {
+            if (index != null) {
+                index.remove(slot);
+            }
+        }
+    }
+
+    // Adds the ride in the given slot to the indexes and the snapshot trie, which store slots.
+    private void addToSlotIndexes(int slot) {
+        if (loading) {
+            return;
+        }
+        timeIndex.add(table.getEpochMinute(slot), slot);
+        for (RideSortIndex index : sortIndexes) {
+            if (index != null) {
+                index.add(table, slot);
+            }
+        }
+        if (snapshots != null) {
+            snapshots.set(table, slot);
+        }
+    }
+
+    // Returns the index for the given field, building it if it's the first time it's needed.
+    private RideSortIndex sortIndex(int field) {
+        if (sortIndexes[field] == null) {
+            RideSortIndex index = new RideSortIndex(field);
+            index.rebuild(table);
+            sortIndexes[field] = index;
+        }
+        return sortIndexes[field];
+    }
+
+    // Rewrites the snapshot once the journal holds more records than there are rides, which keeps
+    // the cost of compaction amortized O(1) per change.
+    private void compactIfNeeded() throws IOException {
+        int records = writer.getRecordCount();
+        if (records >= MIN_COMPACT_RECORDS && records >= table.size()) {
+            // The writer thread needs a snapshot of the rides, since they go on changing
+            writer.compact(writer.isWritingBehind() ? snapshot() : pageSource(), nextId);
+        }
+    }
+
+    // Squeezes deleted slots out of the table once there are more of them than rides, which keeps
+    // the cost amortized O(1) per delete. The indexes and the snapshot trie store slots, so they're
+    // rebuilt.
+    private void compactTableIfNeeded() {
+        int deleted = table.deletedCount();
+        if (deleted >= MIN_COMPACT_SLOTS && deleted >= table.size()) {
+            table.compact();
+            rebuildSlotIndexes();
+        }
+    }
+
+    private void rebuildSlotIndexes() {
+        timeIndex.rebuild(table);
+        for (RideSortIndex index : sortIndexes) {
+            if (index != null) {
+                index.rebuild(table);
+            }
+        }
+        if (snapshots != null) {
+            snapshots.rebuild(table);
+        }
+    }
+
+    private File samplesFile(long id) {
+        return new File(samplesDir, id + ".samples");
+    }
+
+    private File deletedSamplesFile(long id) {
+        return new File(samplesDir, id + DELETED_SAMPLES_SUFFIX);
+    }
+
+    // Moves the samples of a deleted ride aside, so undoing the delete can bring them back.
+    private void deleteSamples(long id) throws IOException {
+        File samples = samplesFile(id);
+        if (samples.exists()) {
+            File deleted = deletedSamplesFile(id);
+            if ((deleted.exists() && !deleted.delete()) || !samples.renameTo(deleted)) {
+                throw new IOException("Could not delete " + samples.getName());
+            }
+        }
+    }
+
+    private void restoreSamples(long id) throws IOException {
+        File deleted = deletedSamplesFile(id);
+        if (deleted.exists() && !deleted.renameTo(samplesFile(id))) {
+            throw new IOException("Could not restore " + deleted.getName());
+        }
+    }
+
+    // Deletes the samples of deleted rides that the undo log can't bring back any more.
+    private void deleteUnneededSamples() {
+        File[] files = samplesDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        LongIntHashMap needed = new LongIntHashMap();
+        for (int i = 0; i < undoLog.size(); i++) {
+            int entry = undoLog.entry(i);
+            if (undoLog.getKind(entry) == RideUndoLog.EXISTS) {
+                needed.put(undoLog.getId(entry), 1);
+            }
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(DELETED_SAMPLES_SUFFIX)) {
+                continue;
+            }
+            long id;
+            try {
+                id = Long.parseLong(name.substring(0, name.length() - DELETED_SAMPLES_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (needed.get(id, 0) == 0 || table.slotOf(id) >= 0) {
+                file.delete();
+            }
+        }
+    }
+
+    // Makes sure a replayed record refers to an existing ride and returns its slot.
+    private int checkKey(long key) throws IOException {
+        int slot = table.slotOf(key);
+        if (slot < 0) {
+            throw new IOException("Journal refers to missing ride " + key);
+        }
+        return slot;
+    }
+
+    private long[] toIds(int[] slots) {
+        long[] ids = new long[slots.length];
+        for (int i = 0; i < slots.length; i++) {
+            ids[i] = table.getId(slots[i]);
+        }
+        return ids;
+    }
+}
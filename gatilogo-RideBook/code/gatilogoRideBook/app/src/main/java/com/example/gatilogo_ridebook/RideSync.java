@@ -0,0 +1,352 @@
+package com.example.gatilogo_ridebook;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * RideSync class
+ *
+ * Keeps the rides of a RideStore in step with the same account on other devices, through a sync
+ * server reached with a RideSyncClient. One run sends what changed here since the last run and
+ * then applies what changed elsewhere.
+ * A RideSyncLog remembers the latest version of every ride with its RideClock. A run first compares
+ * the store with the log on the main thread; rides whose fields changed get a new version, counted
+ * on this device's entry of their clock. Only those are sent, in batches of up to BATCH_SIZE
+ * RideChanges compressed with Deflater. The server keeps the latest version of every ride and
+ * numbers the versions it accepts, and the run reads everything after the last number it saw,
+ * again in batches.
+ * A version that came after the one here replaces it, and one that came before is ignored. When
+ * both were changed concurrently, RideChange.winsOver() picks one the same way on every device and
+ * on the server, so all of them end up with the same rides without asking the rider.
+ * The log is saved after every run, also one that failed. Batches the server acknowledged aren't
+ * sent again and the feed is read on from where it stopped, so an interrupted run is resumed by
+ * the next one.
+ * Like a RideTransfer, a run happens on a background thread, and everything that touches the store
+ * is done on the main thread through the given executor, while the background thread waits.
+ * A RideSync is run once; the next run needs a new one with the same log.
+ *
+ * Push body, after inflating: magic (int)   device (int)   count (int)   count changes
+ * Feed body, after inflating: magic (int)   last sequence number (long)   more (boolean)
+ *                             count (int)   count changes
+ */
+final class RideSync implements Runnable {
+
+    interface Listener {
+
+        // Called on the main thread after changes from other devices were applied to the store.
+        void onRidesChanged();
+
+        // Called once at the end on the main thread. error is null if the run got through.
+        void onSyncFinished(RideSync sync, int sent, int received, IOException error);
+    }
+
+    static final int BATCH_SIZE = 1000;
+    static final int PUSH_MAGIC = 0x52425055;   // "RBPU"
+    static final int FEED_MAGIC = 0x52424644;   // "RBFD"
+
+    private final RideStore store;
+    private final Executor mainThread;
+    private final RideSyncLog log;
+    private final File logFile;
+    private final RideSyncClient client;
+    private volatile Listener listener;
+
+    // Reused for every batch
+    private final RideChange[] changes = new RideChange[BATCH_SIZE];
+    private final int[] entries = new int[BATCH_SIZE];
+    private final long[] pageIds = new long[RidePager.PAGE_SIZE];
+    private final RideRecord[] page = new RideRecord[RidePager.PAGE_SIZE];
+    private final RideRecord[] added = new RideRecord[BATCH_SIZE];
+    private final RideRecord scratch = new RideRecord();
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+    private RideSnapshot rides;     // The rides as they were when they were compared with the log
+    private int sent;
+    private int received;
+
+    RideSync(RideStore store, Executor mainThread, RideSyncLog log, File logFile, RideSyncClient client) {
+        this.store = store;
+        this.mainThread = mainThread;
+        this.log = log;
+        this.logFile = logFile;
+        this.client = client;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            changes[i] = new RideChange();
+        }
+        for (int i = 0; i < page.length; i++) {
+            page[i] = new RideRecord();
+        }
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void run() {
+        IOException error = null;
+        try {
+            onMainThread(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    compare();
+                    return null;
+                }
+            });
+            push();
+            pull();
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            try {
+                log.write(logFile);
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+            deflater.end();
+        }
+
+        final IOException finalError = error;
+        mainThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                Listener current = listener;
+                if (current != null) {
+                    current.onSyncFinished(RideSync.this, sent, received, finalError);
+                }
+            }
+        });
+    }
+
+    // Runs on the main thread. Gives every ride that changed since it was last compared a new
+    // version, and takes a snapshot of the rides for push() to read.
+    private void compare() {
+        RideTable table = store.getTable();
+        for (int slot = 0; slot < table.slotCount(); slot++) {
+            if (table.isLive(slot)) {
+                table.read(slot, scratch);
+                refresh(table.getId(slot), scratch);
+            }
+        }
+        for (int entry = 0; entry < log.size(); entry++) {
+            long id = log.getRideId(entry);
+            if (!log.isDeleted(entry) && id != 0 && table.slotOf(id) < 0) {
+                newVersion(entry, 0, true);
+            }
+        }
+        rides = store.snapshot();
+    }
+
+    // Runs on the main thread. Gives the ride with the given ID and fields a new version if they
+    // aren't the ones in the log.
+    private int refresh(long id, RideRecord record) {
+        long hash = RideChange.hash(record);
+        int entry = log.entryOfRide(id);
+        if (entry < 0) {
+            entry = log.add(log.keyOf(id), id);
+            newVersion(entry, hash, false);
+        } else if (log.isDeleted(entry) || log.getHash(entry) != hash) {
+            newVersion(entry, hash, false);
+        }
+        return entry;
+    }
+
+    private void newVersion(int entry, long hash, boolean deleted) {
+        log.set(entry, RideClock.increment(log.getClock(entry), log.getDevice()), hash, deleted, true);
+    }
+
+    // Sends the versions the server hasn't acknowledged yet: deletes from the log, then rides from
+    // the snapshot, in list order.
+    private void push() throws IOException {
+        int count = 0;
+        for (int entry = 0; entry < log.size(); entry++) {
+            if (log.isDirty(entry) && log.isDeleted(entry)) {
+                entries[count++] = entry;
+                if (count == BATCH_SIZE) {
+                    count = pushBatch(count);
+                }
+            }
+        }
+        for (int position = 0; position < rides.size(); position += page.length) {
+            int n = rides.read(position, page.length, pageIds, page);
+            for (int i = 0; i < n; i++) {
+                int entry = log.entryOfRide(pageIds[i]);
+                if (log.isDirty(entry) && !log.isDeleted(entry)) {
+                    changes[count].record.set(page[i]);
+                    entries[count++] = entry;
+                    if (count == BATCH_SIZE) {
+                        count = pushBatch(count);
+                    }
+                }
+            }
+        }
+        if (count > 0) {
+            pushBatch(count);
+        }
+        rides = null;
+    }
+
+    // Sends the first count entries, whose fields are in changes, and marks them as acknowledged.
+    // Returns 0, the number of entries left to send.
+    private int pushBatch(int count) throws IOException {
+        buffer.reset();
+        deflater.reset();
+        DeflaterOutputStream deflated = new DeflaterOutputStream(buffer, deflater, 8192);
+        DataOutputStream out = new DataOutputStream(deflated);
+        out.writeInt(PUSH_MAGIC);
+        out.writeInt(log.getDevice());
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            int entry = entries[i];
+            RideChange change = changes[i];
+            change.key = log.getKey(entry);
+            change.clock = log.getClock(entry);
+            change.deleted = log.isDeleted(entry);
+            change.write(out);
+        }
+        out.flush();
+        deflated.finish();
+        byte[] body = buffer.toByteArray();
+        client.push(body, body.length);
+        for (int i = 0; i < count; i++) {
+            log.clearDirty(entries[i]);
+        }
+        sent += count;
+        return 0;
+    }
+
+    // Reads the server's feed in batches and applies each on the main thread.
+    private void pull() throws IOException {
+        boolean more = true;
+        while (more) {
+            byte[] body = client.pull(log.getDevice(), log.getCursor(), BATCH_SIZE);
+            DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(body)));
+            if (in.readInt() != FEED_MAGIC) {
+                throw new IOException("Not a change feed");
+            }
+            final long last = in.readLong();
+            more = in.readBoolean();
+            final int count = in.readInt();
+            if (count < 0 || count > BATCH_SIZE || last < log.getCursor()) {
+                throw new IOException("Bad change feed batch of " + count + " changes up to " + last);
+            }
+            for (int i = 0; i < count; i++) {
+                changes[i].read(in);
+            }
+            onMainThread(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    apply(count);
+                    log.setCursor(last);
+                    return null;
+                }
+            });
+            received += count;
+        }
+    }
+
+    // Runs on the main thread. Applies the first count changes to the store and the log.
+    private void apply(int count) throws IOException {
+        int addedCount = 0;
+        boolean changed = false;
+        for (int i = 0; i < count; i++) {
+            RideChange change = changes[i];
+            int entry = log.entryOfKey(change.key);
+            if (entry < 0) {
+                entry = log.add(change.key, 0);
+                log.set(entry, change.clock, change.hash(), change.deleted, false);
+                if (!change.deleted) {
+                    addedCount = addLater(entry, change.record, addedCount);
+                }
+                continue;
+            }
+            // The ride may have changed here since compare()
+            long id = log.getRideId(entry);
+            if (id != 0 && !log.isDeleted(entry)) {
+                if (store.read(id, scratch)) {
+                    refresh(id, scratch);
+                } else {
+                    newVersion(entry, 0, true);
+                }
+            }
+
+            long[] clock = log.getClock(entry);
+            int order = RideClock.compare(change.clock, clock);
+            if (order == RideClock.BEFORE || order == RideClock.EQUAL) {
+                continue;
+            }
+            boolean concurrent = order == RideClock.CONCURRENT;
+            if (concurrent && !change.winsOver(clock, log.isDeleted(entry), log.getHash(entry))) {
+                // This version stays, and is sent with the merged clock so the server takes it
+                log.set(entry, RideClock.merge(change.clock, clock), log.getHash(entry), log.isDeleted(entry), true);
+                continue;
+            }
+            log.set(entry, concurrent ? RideClock.merge(change.clock, clock) : change.clock, change.hash(),
+                    change.deleted, concurrent);
+            if (change.deleted) {
+                changed |= store.applySynced(id, null);
+            } else if (id != 0 && store.applySynced(id, change.record)) {
+                changed = true;
+            } else {
+                addedCount = addLater(entry, change.record, addedCount);
+            }
+        }
+
+        if (addedCount > 0) {
+            long firstId = store.addAll(added, addedCount);
+            for (int i = 0; i < addedCount; i++) {
+                log.setRideId(entries[i], firstId + i);
+            }
+            changed = true;
+        }
+        Listener current = listener;
+        if (changed && current != null) {
+            current.onRidesChanged();
+        }
+    }
+
+    // Keeps a ride that doesn't exist here for adding it with the others of the batch.
+    private int addLater(int entry, RideRecord record, int addedCount) {
+        if (added[addedCount] == null) {
+            added[addedCount] = new RideRecord();
+        }
+        added[addedCount].set(record);
+        entries[addedCount] = entry;
+        return addedCount + 1;
+    }
+
+    // Runs the task on the main thread and waits for it.
+    private <T> T onMainThread(Callable<T> task) throws IOException {
+        FutureTask<T> future = new FutureTask<>(task);
+        mainThread.execute(future);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Sync interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.gatilogo_ridebook;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * RideSyncClient class
+ *
+ * Talks to the sync server over HTTP for RideSync. It only moves the bodies, which RideSync has
+ * already compressed, and counts the bytes sent and received.
+ * The server has two endpoints below its base URL:
+ *   POST push                               takes a batch of changes, answers with any 2xx code
+ *   GET  changes?device=&since=&limit=      answers with the next batch of its change feed
+ * Pushing the same batch twice does no harm, as the server keeps the latest version of each ride,
+ * so a request that failed halfway can simply be sent again.
+ */
+final class RideSyncClient {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+    private static final String CONTENT_TYPE = "application/x-ridebook-sync";
+
+    private final String baseUrl;
+    private long bytesSent;
+    private long bytesReceived;
+
+    RideSyncClient(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+    }
+
+    // Sends the first length bytes of body to the push endpoint.
+    void push(byte[] body, int length) throws IOException {
+        long start = System.nanoTime();
+        HttpURLConnection connection = open("push");
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(length);
+            connection.setRequestProperty("Content-Type", CONTENT_TYPE);
+            OutputStream out = connection.getOutputStream();
+            try {
+                out.write(body, 0, length);
+            } finally {
+                out.close();
+            }
+            bytesSent += length;
+            RideMetrics.SYNC_BYTES_SENT.add(length);
+            checkResponse(connection);
+            drain(connection.getInputStream());
+        } finally {
+            connection.disconnect();
+        }
+        RideMetrics.SYNC.recordSince(start);
+    }
+
+    // Reads up to limit changes from the server's feed that came after the sequence number since,
+    // leaving out those the given device pushed itself. Returns the body of the answer.
+    byte[] pull(int device, long since, int limit) throws IOException {
+        long start = System.nanoTime();
+        HttpURLConnection connection = open("changes?device=" + device + "&since=" + since + "&limit=" + limit);
+        try {
+            connection.setRequestProperty("Accept", CONTENT_TYPE);
+            checkResponse(connection);
+            byte[] body = drain(connection.getInputStream());
+            bytesReceived += body.length;
+            RideMetrics.SYNC_BYTES_RECEIVED.add(body.length);
+            RideMetrics.SYNC.recordSince(start);
+            return body;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    // Returns the number of body bytes sent so far.
+    long getBytesSent() {
+        return bytesSent;
+    }
+
+    // Returns the number of body bytes received so far.
+    long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setUseCaches(false);
+        return connection;
+    }
+
+    private static void checkResponse(HttpURLConnection connection) throws IOException {
+        int code = connection.getResponseCode();
+        if (code < 200 || code >= 300) {
+            throw new IOException("Sync server answered " + code + " " + connection.getResponseMessage());
+        }
+    }
+
+    private static byte[] drain(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                body.write(buffer, 0, n);
+            }
+            return body.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
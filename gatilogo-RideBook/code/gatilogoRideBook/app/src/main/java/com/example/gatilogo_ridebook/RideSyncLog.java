@@ -0,0 +1,252 @@
+package com.example.gatilogo_ridebook;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * RideSyncLog class (data structure)
+ *
+ * What RideSync knows about every ride it has seen: one entry per ride, holding only its latest
+ * version, so the log never grows with the number of changes.
+ * Ride IDs are only valid on one device, so each ride also has a sync key, made of the device
+ * that added it and the ride's ID there. An entry maps the key to the ride's ID on this device,
+ * and keeps the RideClock of its latest version, a hash of its fields, and whether it was deleted
+ * or has changes the server hasn't acknowledged yet (dirty). Deleted rides keep their entry, so a
+ * delete can be sent and isn't undone by an older version arriving later.
+ * Entries are stored column by column, with a LongIntHashMap from keys and from ride IDs to
+ * entries. The log also keeps the device ID and how far the server's change feed has been read.
+ * It is saved to a file of its own, written to a temporary file and renamed into place.
+ *
+ * File layout (big endian):
+ *   magic (int)   version (int)   device (int)   cursor (long)   entry count (int)
+ *   per entry: key (long)   ride ID (long)   hash (long)   flags (byte)   clock length (byte)
+ *              clock (longs)
+ *   CRC32 of everything before (int)
+ */
+final class RideSyncLog {
+
+    private static final int MAGIC = 0x5242534C;    // "RBSL"
+    private static final int VERSION = 1;
+    private static final byte DELETED = 1;
+    private static final byte DIRTY = 2;
+
+    private final int device;
+    private long cursor;        // Sequence number of the last change read from the server's feed
+    private int size;
+    private long[] keys = new long[16];
+    private long[] rideIds = new long[16];       // 0 while a deleted ride never existed here
+    private long[] hashes = new long[16];
+    private long[][] clocks = new long[16][];
+    private byte[] flags = new byte[16];
+    private final LongIntHashMap byKey = new LongIntHashMap();
+    private final LongIntHashMap byRideId = new LongIntHashMap();
+
+    // Creates an empty log for a device with the given ID, which must be positive.
+    RideSyncLog(int device) {
+        if (device <= 0) {
+            throw new IllegalArgumentException("Device must be positive: " + device);
+        }
+        this.device = device;
+    }
+
+    // Reads the log saved in the given file, or creates an empty one with a new random device ID
+    // if there is no such file.
+    static RideSyncLog open(File file) throws IOException {
+        if (!file.exists()) {
+            int device = 0;
+            SecureRandom random = new SecureRandom();
+            while (device <= 0) {
+                device = random.nextInt() & Integer.MAX_VALUE;
+            }
+            return new RideSyncLog(device);
+        }
+        CRC32 crc = new CRC32();
+        DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(file)), crc));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a sync log: " + file);
+            }
+            RideSyncLog log = new RideSyncLog(in.readInt());
+            log.cursor = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int entry = log.add(in.readLong(), in.readLong());
+                long hash = in.readLong();
+                byte flags = in.readByte();
+                long[] clock = new long[in.readUnsignedByte()];
+                for (int j = 0; j < clock.length; j++) {
+                    clock[j] = in.readLong();
+                }
+                log.set(entry, clock, hash, (flags & DELETED) != 0, (flags & DIRTY) != 0);
+            }
+            int expected = (int) crc.getValue();
+            if (in.readInt() != expected) {
+                throw new IOException("Sync log is corrupt: " + file);
+            }
+            return log;
+        } catch (EOFException | IllegalArgumentException e) {
+            throw new IOException("Sync log is corrupt: " + file, e);
+        } finally {
+            in.close();
+        }
+    }
+
+    // Saves the log to the given file.
+    void write(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        CRC32 crc = new CRC32();
+        FileOutputStream stream = new FileOutputStream(temp);
+        DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(stream), crc));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(device);
+            out.writeLong(cursor);
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeLong(keys[i]);
+                out.writeLong(rideIds[i]);
+                out.writeLong(hashes[i]);
+                out.writeByte(flags[i]);
+                out.writeByte(clocks[i].length);
+                for (long entry : clocks[i]) {
+                    out.writeLong(entry);
+                }
+            }
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            stream.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    int getDevice() {
+        return device;
+    }
+
+    long getCursor() {
+        return cursor;
+    }
+
+    void setCursor(long cursor) {
+        this.cursor = cursor;
+    }
+
+    // Returns the number of entries, including those of deleted rides.
+    int size() {
+        return size;
+    }
+
+    // Returns the sync key for a ride added on this device with the given ID.
+    long keyOf(long rideId) {
+        if (rideId <= 0 || rideId > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("No sync key for ride " + rideId);
+        }
+        return (long) device << 32 | rideId;
+    }
+
+    // Returns the entry with the given sync key, or -1 if there is none.
+    int entryOfKey(long key) {
+        return byKey.get(key, -1);
+    }
+
+    // Returns the entry of the ride with the given ID on this device, or -1 if there is none.
+    int entryOfRide(long rideId) {
+        return byRideId.get(rideId, -1);
+    }
+
+    // Adds an entry for a ride that wasn't in the log yet, with an empty clock, and returns it.
+    // The ride ID is 0 if the ride doesn't exist on this device.
+    int add(long key, long rideId) {
+        if (byKey.get(key, -1) >= 0) {
+            throw new IllegalArgumentException("Ride " + key + " is already in the log");
+        }
+        if (size == keys.length) {
+            int capacity = size * 2;
+            keys = copyOf(keys, capacity);
+            rideIds = copyOf(rideIds, capacity);
+            hashes = copyOf(hashes, capacity);
+            long[][] grownClocks = new long[capacity][];
+            System.arraycopy(clocks, 0, grownClocks, 0, size);
+            clocks = grownClocks;
+            byte[] grownFlags = new byte[capacity];
+            System.arraycopy(flags, 0, grownFlags, 0, size);
+            flags = grownFlags;
+        }
+        int entry = size++;
+        keys[entry] = key;
+        clocks[entry] = RideClock.EMPTY;
+        byKey.put(key, entry);
+        setRideId(entry, rideId);
+        return entry;
+    }
+
+    // Sets the version of a ride that an entry holds.
+    void set(int entry, long[] clock, long hash, boolean deleted, boolean dirty) {
+        clocks[entry] = clock;
+        hashes[entry] = hash;
+        flags[entry] = (byte) ((deleted ? DELETED : 0) | (dirty ? DIRTY : 0));
+    }
+
+    // Marks the latest version of a ride as acknowledged by the server.
+    void clearDirty(int entry) {
+        flags[entry] &= ~DIRTY;
+    }
+
+    void setRideId(int entry, long rideId) {
+        if (rideIds[entry] != 0) {
+            byRideId.remove(rideIds[entry]);
+        }
+        rideIds[entry] = rideId;
+        if (rideId != 0) {
+            byRideId.put(rideId, entry);
+        }
+    }
+
+    long getKey(int entry) {
+        return keys[entry];
+    }
+
+    long getRideId(int entry) {
+        return rideIds[entry];
+    }
+
+    long[] getClock(int entry) {
+        return clocks[entry];
+    }
+
+    long getHash(int entry) {
+        return hashes[entry];
+    }
+
+    boolean isDeleted(int entry) {
+        return (flags[entry] & DELETED) != 0;
+    }
+
+    boolean isDirty(int entry) {
+        return (flags[entry] & DIRTY) != 0;
+    }
+
+    private static long[] copyOf(long[] array, int length) {
+        long[] copy = new long[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+}
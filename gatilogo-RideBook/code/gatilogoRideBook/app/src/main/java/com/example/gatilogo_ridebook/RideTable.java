@@ -0,0 +1,392 @@
+package com.example.gatilogo_ridebook;
+
+/**
+ * RideTable class (data structure)
+ *
+ * Stores rides column by column in primitive arrays instead of as Ride objects.
+ * The columns take 28 bytes per ride: its ID, its date and time packed into minutes since
+ * 1970-01-01 00:00, distance, average speed, average cadence, and a reference into a shared
+ * CommentPool. With the Fenwick tree and the hash index below, and the room the arrays keep for
+ * growing, the whole table takes 56 to 112 bytes per ride, not counting the comment text, as
+ * memoryBytes() tells. The indexes RideStore keeps over the table come on top of that.
+ *
+ * Every ride has a stable, positive 64-bit ID and lives in a slot that doesn't change while the
+ * ride exists. A hash index finds the slot of an ID in O(1). Deleting a ride only marks its slot
+ * as empty (a tombstone), and empty slots are squeezed out by compact() once there are enough of
+ * them, so a delete is amortized O(1).
+ * Slots are kept in the order the rides were added. The position of a ride in the list counts only
+ * live slots, and a Fenwick tree over the live slots turns positions into slots and back in
+ * O(log n). Rides can be read through a Cursor, so nothing is allocated per ride.
+ * A deleted ride can be put back with restore(), in the slot between its neighbours in the list.
+ */
+final class RideTable {
+
+    private int slots;          // Slots in use, live or deleted
+    private int size;           // Live rides
+    private int layout;         // Changes whenever rides move to other slots
+    private long[] ids = new long[16];      // 0 = deleted
+    private int[] epochMinutes = new int[16];
+    private float[] distances = new float[16];
+    private float[] avgSpeeds = new float[16];
+    private int[] avgCadences = new int[16];
+    private int[] commentRefs = new int[16];
+    private int[] liveTree = new int[17];   // Fenwick tree counting live slots
+
+    private final LongIntHashMap slotsById = new LongIntHashMap();
+    private final CommentPool comments = new CommentPool();
+
+    // Returns the number of rides in the table.
+    int size() {
+        return size;
+    }
+
+    // Returns the number of slots in use, including deleted ones.
+    int slotCount() {
+        return slots;
+    }
+
+    // Returns the number of deleted slots that compact() would free.
+    int deletedCount() {
+        return slots - size;
+    }
+
+    // Returns the bytes taken by the columns, the Fenwick tree and the hash index, but not by the
+    // comments in the CommentPool.
+    long memoryBytes() {
+        return ids.length * 28L + liveTree.length * 4L + slotsById.memoryBytes();
+    }
+
+    // Returns a number that changes whenever rides move to other slots, after which anything that
+    // stores slots has to be rebuilt.
+    int getLayout() {
+        return layout;
+    }
+
+    // Appends a ride with the given ID and returns its slot.
+    int add(long id, RideRecord record) {
+        if (id <= 0 || slotsById.get(id, -1) >= 0) {
+            throw new IllegalArgumentException("Bad or duplicate ride ID " + id);
+        }
+        if (slots == ids.length) {
+            resize(slots * 2);
+        }
+
+        int slot = slots++;
+        ids[slot] = id;
+        write(slot, record, comments.acquire(record.comment, record.commentLength));
+        slotsById.put(id, slot);
+        updateLive(slot, 1);
+        size++;
+        return slot;
+    }
+
+    // Puts back a deleted ride with the given ID, at its place in the list, and returns its slot.
+    // Slots are in ID order, so the ride goes between the live rides with the next smaller and
+    // larger IDs. It reuses a deleted slot between them if there is one, which is O(log n), and
+    // otherwise the rides after it are moved up a slot in O(n), which changes the layout.
+    int restore(long id, RideRecord record) {
+        if (id <= 0 || slotsById.get(id, -1) >= 0) {
+            throw new IllegalArgumentException("Bad or duplicate ride ID " + id);
+        }
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ids[slotAt(middle)] < id) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int before = low > 0 ? slotAt(low - 1) : -1;
+        int after = low < size ? slotAt(low) : slots;
+        if (after == slots && before == slots - 1) {
+            return add(id, record);
+        }
+
+        int slot = before + 1;
+        if (slot == after) {
+            if (slots == ids.length) {
+                resize(slots * 2);
+            }
+            int moved = slots - slot;
+            System.arraycopy(ids, slot, ids, slot + 1, moved);
+            System.arraycopy(epochMinutes, slot, epochMinutes, slot + 1, moved);
+            System.arraycopy(distances, slot, distances, slot + 1, moved);
+            System.arraycopy(avgSpeeds, slot, avgSpeeds, slot + 1, moved);
+            System.arraycopy(avgCadences, slot, avgCadences, slot + 1, moved);
+            System.arraycopy(commentRefs, slot, commentRefs, slot + 1, moved);
+            slots++;
+            for (int i = slot + 1; i < slots; i++) {
+                if (ids[i] != 0) {
+                    slotsById.put(ids[i], i);
+                }
+            }
+            ids[slot] = id;
+            rebuildLiveTree();
+            layout++;
+        } else {
+            ids[slot] = id;
+            updateLive(slot, 1);
+        }
+        write(slot, record, comments.acquire(record.comment, record.commentLength));
+        slotsById.put(id, slot);
+        size++;
+        return slot;
+    }
+
+    // Replaces the ride in the given slot.
+    void set(int slot, RideRecord record) {
+        checkSlot(slot);
+        // Acquire before releasing, so an unchanged comment stays in the pool
+        int commentRef = comments.acquire(record.comment, record.commentLength);
+        comments.release(commentRefs[slot]);
+        write(slot, record, commentRef);
+    }
+
+    // Deletes the ride in the given slot. Its slot stays empty until the next compact().
+    void remove(int slot) {
+        checkSlot(slot);
+        comments.release(commentRefs[slot]);
+        commentRefs[slot] = CommentPool.EMPTY;
+        slotsById.remove(ids[slot]);
+        ids[slot] = 0;
+        updateLive(slot, -1);
+        size--;
+    }
+
+    // Moves all rides to the front, dropping deleted slots. Rides keep their order but get new
+    // slots, so anything that stores slots has to be rebuilt afterwards.
+    void compact() {
+        int to = 0;
+        for (int from = 0; from < slots; from++) {
+            if (ids[from] != 0) {
+                ids[to] = ids[from];
+                epochMinutes[to] = epochMinutes[from];
+                distances[to] = distances[from];
+                avgSpeeds[to] = avgSpeeds[from];
+                avgCadences[to] = avgCadences[from];
+                commentRefs[to] = commentRefs[from];
+                slotsById.put(ids[to], to);
+                to++;
+            }
+        }
+        for (int slot = to; slot < slots; slot++) {
+            ids[slot] = 0;
+        }
+        slots = to;
+        rebuildLiveTree();
+        layout++;
+    }
+
+    // Returns the slot of the ride with the given ID, or -1 if there is none.
+    int slotOf(long id) {
+        return slotsById.get(id, -1);
+    }
+
+    // Returns the slot of the ride at the given position in the list.
+    int slotAt(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Position " + position + ", size " + size);
+        }
+        // Walk down the Fenwick tree to the slot holding the (position + 1)-th live ride
+        int slot = 0;
+        int remaining = position + 1;
+        for (int step = Integer.highestOneBit(ids.length); step > 0; step >>= 1) {
+            int next = slot + step;
+            if (next <= ids.length && liveTree[next] < remaining) {
+                slot = next;
+                remaining -= liveTree[next];
+            }
+        }
+        return slot;
+    }
+
+    // Returns the position in the list of the ride in the given slot.
+    int positionOf(int slot) {
+        checkSlot(slot);
+        int position = 0;
+        for (int i = slot; i > 0; i -= i & -i) {
+            position += liveTree[i];
+        }
+        return position;
+    }
+
+    boolean isLive(int slot) {
+        return slot >= 0 && slot < slots && ids[slot] != 0;
+    }
+
+    long getId(int slot) {
+        checkSlot(slot);
+        return ids[slot];
+    }
+
+    int getEpochMinute(int slot) {
+        checkSlot(slot);
+        return epochMinutes[slot];
+    }
+
+    float getDistance(int slot) {
+        checkSlot(slot);
+        return distances[slot];
+    }
+
+    float getAvgSpeed(int slot) {
+        checkSlot(slot);
+        return avgSpeeds[slot];
+    }
+
+    int getAvgCadence(int slot) {
+        checkSlot(slot);
+        return avgCadences[slot];
+    }
+
+    String getComment(int slot) {
+        checkSlot(slot);
+        return comments.get(commentRefs[slot]);
+    }
+
+    // Copies the ride in the given slot into a record.
+    RideRecord read(int slot, RideRecord record) {
+        checkSlot(slot);
+        record.epochMinute = epochMinutes[slot];
+        record.distance = distances[slot];
+        record.avgSpeed = avgSpeeds[slot];
+        record.avgCadence = avgCadences[slot];
+        String comment = comments.get(commentRefs[slot]);
+        comment.getChars(0, comment.length(), record.comment, 0);
+        record.commentLength = comment.length();
+        return record;
+    }
+
+    // Creates a Ride object for the given slot.
+    Ride toRide(int slot) {
+        return read(slot, new RideRecord()).toRide();
+    }
+
+    // Returns a cursor for reading rides of this table.
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    private void write(int slot, RideRecord record, int commentRef) {
+        epochMinutes[slot] = record.epochMinute;
+        distances[slot] = record.distance;
+        avgSpeeds[slot] = record.avgSpeed;
+        avgCadences[slot] = record.avgCadence;
+        commentRefs[slot] = commentRef;
+    }
+
+    private void resize(int capacity) {
+        ids = copyOf(ids, capacity);
+        epochMinutes = copyOf(epochMinutes, capacity);
+        distances = copyOf(distances, capacity);
+        avgSpeeds = copyOf(avgSpeeds, capacity);
+        avgCadences = copyOf(avgCadences, capacity);
+        commentRefs = copyOf(commentRefs, capacity);
+        liveTree = new int[capacity + 1];
+        rebuildLiveTree();
+    }
+
+    // Adds delta to the live count of the given slot.
+    private void updateLive(int slot, int delta) {
+        for (int i = slot + 1; i < liveTree.length; i += i & -i) {
+            liveTree[i] += delta;
+        }
+    }
+
+    // Rebuilds the Fenwick tree from the IDs in O(n).
+    private void rebuildLiveTree() {
+        for (int i = 1; i < liveTree.length; i++) {
+            liveTree[i] = i <= slots && ids[i - 1] != 0 ? 1 : 0;
+        }
+        for (int i = 1; i < liveTree.length; i++) {
+            int parent = i + (i & -i);
+            if (parent < liveTree.length) {
+                liveTree[parent] += liveTree[i];
+            }
+        }
+    }
+
+    private void checkSlot(int slot) {
+        if (!isLive(slot)) {
+            throw new IndexOutOfBoundsException("No ride in slot " + slot);
+        }
+    }
+
+    private static long[] copyOf(long[] array, int length) {
+        long[] copy = new long[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+    private static int[] copyOf(int[] array, int length) {
+        int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+    private static float[] copyOf(float[] array, int length) {
+        float[] copy = new float[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+        return copy;
+    }
+
+    /**
+     * Flyweight view of one ride of the table.
+     * The same cursor is moved from ride to ride, so reading rides doesn't create Ride objects.
+     */
+    final class Cursor {
+
+        private int slot = -1;
+
+        // Moves to the ride at the given position in the list.
+        Cursor moveTo(int position) {
+            slot = slotAt(position);
+            return this;
+        }
+
+        // Moves to the ride in the given slot.
+        Cursor moveToSlot(int slot) {
+            checkSlot(slot);
+            this.slot = slot;
+            return this;
+        }
+
+        int getSlot() {
+            return slot;
+        }
+
+        long getId() {
+            return ids[slot];
+        }
+
+        int getEpochMinute() {
+            return epochMinutes[slot];
+        }
+
+        String getDate() {
+            return RideTime.formatDate(epochMinutes[slot]);
+        }
+
+        String getTime() {
+            return RideTime.formatTime(epochMinutes[slot]);
+        }
+
+        float getDistance() {
+            return distances[slot];
+        }
+
+        float getAvgSpeed() {
+            return avgSpeeds[slot];
+        }
+
+        int getAvgCadence() {
+            return avgCadences[slot];
+        }
+
+        String getComment() {
+            return comments.get(commentRefs[slot]);
+        }
+    }
+}
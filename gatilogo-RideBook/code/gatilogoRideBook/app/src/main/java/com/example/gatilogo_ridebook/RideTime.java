@@ -0,0 +1,123 @@
+package com.example.gatilogo_ridebook;
+
+/**
+ * RideTime class (utility)
+ *
+ * Converts between the "yyyy-MM-dd" / "HH:mm" strings shown to users and a packed
+ * number of minutes since 1970-01-01 00:00.
+ * Dates are treated as plain calendar values (no time zone), so the conversion is pure integer
+ * arithmetic and does not need Calendar or java.time.
+ */
+final class RideTime {
+
+    static final int MINUTES_PER_DAY = 24 * 60;
+    static final int DATE_LENGTH = 10;      // "yyyy-MM-dd"
+    static final int TIME_LENGTH = 5;       // "HH:mm"
+
+    private RideTime() {
+    }
+
+    // Returns the number of days between 1970-01-01 and the given date.
+    // Based on the "days_from_civil" algorithm by Howard Hinnant.
+    static int epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    // Packs a date and time into minutes since 1970-01-01 00:00.
+    static int epochMinute(int year, int month, int day, int hour, int minute) {
+        return epochDay(year, month, day) * MINUTES_PER_DAY + hour * 60 + minute;
+    }
+
+    // Parses a "yyyy-MM-dd" date and a "HH:mm" time into minutes since 1970-01-01 00:00.
+    static int parse(String date, String time) {
+        int year = parseNumber(date, 0, 4);
+        int month = parseNumber(date, 5, 7);
+        int day = parseNumber(date, 8, 10);
+        int hour = parseNumber(time, 0, 2);
+        int minute = parseNumber(time, 3, 5);
+        return epochMinute(year, month, day, hour, minute);
+    }
+
+    // Returns the day (since 1970-01-01) that contains the given minute.
+    static int dayOf(int epochMinute) {
+        int day = epochMinute / MINUTES_PER_DAY;
+        // Round towards negative infinity for dates before 1970
+        if (epochMinute % MINUTES_PER_DAY < 0) {
+            day--;
+        }
+        return day;
+    }
+
+    // Formats the date part of the given minute as "yyyy-MM-dd".
+    static String formatDate(int epochMinute) {
+        char[] chars = new char[DATE_LENGTH];
+        formatDate(epochMinute, chars, 0);
+        return new String(chars);
+    }
+
+    // Same as formatDate(int), but writes the DATE_LENGTH chars into chars at offset, so nothing is
+    // allocated. Returns the offset after them.
+    static int formatDate(int epochMinute, char[] chars, int offset) {
+        // Inverse of epochDay(), "civil_from_days" by Howard Hinnant
+        int z = dayOf(epochMinute) + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int dayOfEra = z - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        writeDigits(chars, offset, year, 4);
+        chars[offset + 4] = '-';
+        writeDigits(chars, offset + 5, month, 2);
+        chars[offset + 7] = '-';
+        writeDigits(chars, offset + 8, day, 2);
+        return offset + DATE_LENGTH;
+    }
+
+    // Formats the time part of the given minute as "HH:mm".
+    static String formatTime(int epochMinute) {
+        char[] chars = new char[TIME_LENGTH];
+        formatTime(epochMinute, chars, 0);
+        return new String(chars);
+    }
+
+    // Same as formatTime(int), but writes the TIME_LENGTH chars into chars at offset. Returns the
+    // offset after them.
+    static int formatTime(int epochMinute, char[] chars, int offset) {
+        int minuteOfDay = epochMinute - dayOf(epochMinute) * MINUTES_PER_DAY;
+
+        writeDigits(chars, offset, minuteOfDay / 60, 2);
+        chars[offset + 2] = ':';
+        writeDigits(chars, offset + 3, minuteOfDay % 60, 2);
+        return offset + TIME_LENGTH;
+    }
+
+    // Reads the decimal number in text[start, end).
+    private static int parseNumber(String text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Invalid date or time: " + text);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // Writes value as a zero-padded decimal number of the given width.
+    private static void writeDigits(char[] chars, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.gatilogo_ridebook;
+
+import java.util.Arrays;
+
+/**
+ * RideTimeIndex class (data structure)
+ *
+ * Keeps the slots of a RideTable sorted by the date and time of their rides.
+ * Each entry packs the ride's minute since 1970-01-01 00:00 into the upper 32 bits of a long and
+ * its slot into the lower 32 bits, and the entries are kept in one sorted long array.
+ * Range queries and "first ride from" lookups are a binary search followed by a scan of the
+ * matching entries, so they cost O(log n + k). Changes move part of the array with one
+ * System.arraycopy.
+ */
+final class RideTimeIndex {
+
+    private long[] keys = new long[16];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    // Adds the ride in the given slot.
+    void add(int epochMinute, int slot) {
+        long key = key(epochMinute, slot);
+        int index = lowerBound(key);
+        if (size == keys.length) {
+            long[] larger = new long[size * 2];
+            System.arraycopy(keys, 0, larger, 0, size);
+            keys = larger;
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        keys[index] = key;
+        size++;
+    }
+
+    // Removes the ride in the given slot, which must have been added with the same minute.
+    void remove(int epochMinute, int slot) {
+        long key = key(epochMinute, slot);
+        int index = lowerBound(key);
+        if (index == size || keys[index] != key) {
+            throw new IllegalStateException("Slot " + slot + " is not in the index");
+        }
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        size--;
+    }
+
+    // Replaces all entries with the live slots of the given table, in O(n log n).
+    // Used after the table has been compacted and its slots have changed.
+    void rebuild(RideTable table) {
+        if (keys.length < table.size()) {
+            keys = new long[Math.max(16, Integer.highestOneBit(table.size()) * 2)];
+        }
+        size = 0;
+        for (int slot = 0; slot < table.slotCount(); slot++) {
+            if (table.isLive(slot)) {
+                keys[size++] = key(table.getEpochMinute(slot), slot);
+            }
+        }
+        Arrays.sort(keys, 0, size);
+    }
+
+    // Returns the slots of rides from fromMinute (inclusive) to toMinute (exclusive), oldest first.
+    int[] slots(int fromMinute, int toMinute) {
+        int start = lowerBound(key(fromMinute, 0));
+        int end = Math.max(start, lowerBound(key(toMinute, 0)));
+        int[] slots = new int[end - start];
+        for (int i = start; i < end; i++) {
+            slots[i - start] = (int) keys[i];
+        }
+        return slots;
+    }
+
+    // Returns the slots of rides from fromMinute (inclusive) to toMinute (exclusive), newest first.
+    int[] slotsDescending(int fromMinute, int toMinute) {
+        int start = lowerBound(key(fromMinute, 0));
+        int end = Math.max(start, lowerBound(key(toMinute, 0)));
+        int[] slots = new int[end - start];
+        for (int i = end - 1; i >= start; i--) {
+            slots[end - 1 - i] = (int) keys[i];
+        }
+        return slots;
+    }
+
+    // Returns the slot of the first ride at or after the given minute, or -1 if there is none.
+    int firstFrom(int epochMinute) {
+        int index = lowerBound(key(epochMinute, 0));
+        return index < size ? (int) keys[index] : -1;
+    }
+
+    // Returns the slot of the last ride before the given minute, or -1 if there is none.
+    int lastBefore(int epochMinute) {
+        int index = lowerBound(key(epochMinute, 0));
+        return index > 0 ? (int) keys[index - 1] : -1;
+    }
+
+    // Returns the index of the first entry that is not less than key.
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (keys[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static long key(int epochMinute, int slot) {
+        return ((long) epochMinute << 32) | (slot & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.gatilogo_ridebook;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+/**
+ * RideTransfer class
+ *
+ * Base of RideImporter and RideExporter, which move rides between a RideStore and a file.
+ * A transfer is run on a background thread, while everything that touches the store is done on
+ * the main thread through the given executor. Rides go through RideBatch objects, so memory use
+ * doesn't depend on the size of the file.
+ * A Listener is told about progress on the main thread. It can be replaced while the transfer is
+ * running, for example when an activity is recreated.
+ */
+abstract class RideTransfer implements Runnable {
+
+    interface Listener {
+
+        // Called after a batch of rides was added at the end of the list.
+        void onRidesAdded(int position, int count);
+
+        // Called for each line of an imported file that was skipped.
+        void onLineRejected(long line, int field, int error);
+
+        // Called once at the end. error is null if the whole file was read or written.
+        void onTransferFinished(RideTransfer transfer, int rides, int rejected, IOException error);
+    }
+
+    final RideStore store;
+    final Executor mainThread;
+    private volatile Listener listener;
+    private volatile boolean cancelled;
+    private volatile boolean finished;
+
+    RideTransfer(RideStore store, Executor mainThread) {
+        this.store = store;
+        this.mainThread = mainThread;
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    Listener getListener() {
+        return listener;
+    }
+
+    // Stops the transfer after the current batch. Rides imported so far are kept.
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    // Returns true once the listener has been told that the transfer is over.
+    boolean isFinished() {
+        return finished;
+    }
+
+    // Tells the listener on the main thread that the transfer is over.
+    void finish(final int rides, final int rejected, final IOException error) {
+        mainThread.execute(new Runnable() {
+            @Override
+            public void run() {
+                finished = true;
+                Listener current = listener;
+                if (current != null) {
+                    current.onTransferFinished(RideTransfer.this, rides, rejected, error);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.gatilogo_ridebook;
+
+/**
+ * RideUndoLog class (data structure)
+ *
+ * The last CAPACITY changes made to the rides of a RideStore, for undo and redo.
+ * Each entry only holds what it takes to turn a change around: an add or delete holds the ride,
+ * and an edit holds the old values of the fields that changed, with a mask of which ones.
+ * Entries are their own inverse. Applying one swaps its values with those of the ride, so
+ * after an undo the same entry holds what's needed to redo the change, and nothing is copied.
+ * Entries live in a ring of preallocated records, so recording, undoing and redoing are O(1)
+ * and the log never takes more memory than its capacity. Once full, the oldest entry is dropped.
+ * Recording a new change drops the entries that were undone, as they can't be redone any more.
+ */
+final class RideUndoLog {
+
+    static final int CAPACITY = 64;
+
+    // Kinds of entries
+    static final byte EXISTS = 1;       // Deletes the ride if it exists, or puts it back
+    static final byte FIELDS = 2;       // Swaps the fields in the mask with those of the ride
+
+    // Bits of the field mask
+    static final int EPOCH_MINUTE = 1;
+    static final int DISTANCE = 1 << 1;
+    static final int AVG_SPEED = 1 << 2;
+    static final int AVG_CADENCE = 1 << 3;
+    static final int COMMENT = 1 << 4;
+    static final int ALL_FIELDS = EPOCH_MINUTE | DISTANCE | AVG_SPEED | AVG_CADENCE | COMMENT;
+
+    private final byte[] kinds = new byte[CAPACITY];
+    private final long[] ids = new long[CAPACITY];
+    private final int[] masks = new int[CAPACITY];
+    private final RideRecord[] values = new RideRecord[CAPACITY];
+    private final RideRecord swapped = new RideRecord();
+    private int first;                  // Index of the oldest entry in the ring
+    private int count;                  // Entries in the ring
+    private int cursor;                 // Entries that can be undone; the others can be redone
+
+    RideUndoLog() {
+        for (int i = 0; i < CAPACITY; i++) {
+            values[i] = new RideRecord();
+        }
+    }
+
+    // Records that the ride with the given ID was added or deleted, with the ride.
+    void recordExists(long id, RideRecord ride) {
+        add(EXISTS, id, ALL_FIELDS, ride);
+    }
+
+    // Records that the ride with the given ID was edited from before to after. Nothing is recorded
+    // if no field changed.
+    void recordEdit(long id, RideRecord before, RideRecord after) {
+        int mask = changedFields(before, after);
+        if (mask != 0) {
+            add(FIELDS, id, mask, before);
+        }
+    }
+
+    // Adds an entry after those that can be undone, dropping the others.
+    void add(byte kind, long id, int mask, RideRecord ride) {
+        count = cursor;
+        if (count == CAPACITY) {
+            first = (first + 1) % CAPACITY;
+            count--;
+        }
+        int entry = (first + count) % CAPACITY;
+        kinds[entry] = kind;
+        ids[entry] = id;
+        masks[entry] = mask;
+        values[entry].set(ride);
+        count++;
+        cursor = count;
+    }
+
+    boolean canUndo() {
+        return cursor > 0;
+    }
+
+    boolean canRedo() {
+        return cursor < count;
+    }
+
+    // Returns the entry the next undo applies, which must exist, and moves the cursor before it.
+    int undo() {
+        if (!canUndo()) {
+            throw new IllegalStateException("Nothing to undo");
+        }
+        cursor--;
+        return entry(cursor);
+    }
+
+    // Returns the entry the next redo applies, which must exist, and moves the cursor after it.
+    int redo() {
+        if (!canRedo()) {
+            throw new IllegalStateException("Nothing to redo");
+        }
+        cursor++;
+        return entry(cursor - 1);
+    }
+
+    // Returns the number of entries, undone or not.
+    int size() {
+        return count;
+    }
+
+    // Returns the number of entries that can be undone.
+    int getCursor() {
+        return cursor;
+    }
+
+    // Sets how many entries can be undone, for a log read back from disk.
+    void setCursor(int cursor) {
+        if (cursor < 0 || cursor > count) {
+            throw new IllegalArgumentException("Cursor " + cursor + ", size " + count);
+        }
+        this.cursor = cursor;
+    }
+
+    // Returns the entry at the given index, counted from the oldest.
+    int entry(int index) {
+        return (first + index) % CAPACITY;
+    }
+
+    byte getKind(int entry) {
+        return kinds[entry];
+    }
+
+    long getId(int entry) {
+        return ids[entry];
+    }
+
+    int getMask(int entry) {
+        return masks[entry];
+    }
+
+    // Returns the values of an entry. Only the fields in its mask mean anything.
+    RideRecord getValues(int entry) {
+        return values[entry];
+    }
+
+    // Swaps the fields in the mask of the entry between the entry and the ride.
+    void swap(int entry, RideRecord ride) {
+        int mask = masks[entry];
+        RideRecord held = values[entry];
+        swapped.set(held);
+        copyFields(mask, ride, held);
+        copyFields(mask, swapped, ride);
+    }
+
+    void clear() {
+        first = 0;
+        count = 0;
+        cursor = 0;
+    }
+
+    // Returns a copy that can be handed to another thread.
+    RideUndoLog copy() {
+        RideUndoLog copy = new RideUndoLog();
+        for (int i = 0; i < count; i++) {
+            int entry = entry(i);
+            copy.add(kinds[entry], ids[entry], masks[entry], values[entry]);
+        }
+        copy.cursor = cursor;
+        return copy;
+    }
+
+    // Returns the mask of the fields that differ between two rides.
+    static int changedFields(RideRecord a, RideRecord b) {
+        int mask = 0;
+        if (a.epochMinute != b.epochMinute) {
+            mask |= EPOCH_MINUTE;
+        }
+        if (Float.floatToIntBits(a.distance) != Float.floatToIntBits(b.distance)) {
+            mask |= DISTANCE;
+        }
+        if (Float.floatToIntBits(a.avgSpeed) != Float.floatToIntBits(b.avgSpeed)) {
+            mask |= AVG_SPEED;
+        }
+        if (a.avgCadence != b.avgCadence) {
+            mask |= AVG_CADENCE;
+        }
+        boolean sameComment = a.commentLength == b.commentLength;
+        for (int i = 0; sameComment && i < a.commentLength; i++) {
+            sameComment = a.comment[i] == b.comment[i];
+        }
+        if (!sameComment) {
+            mask |= COMMENT;
+        }
+        return mask;
+    }
+
+    private static void copyFields(int mask, RideRecord from, RideRecord to) {
+        if ((mask & EPOCH_MINUTE) != 0) {
+            to.epochMinute = from.epochMinute;
+        }
+        if ((mask & DISTANCE) != 0) {
+            to.distance = from.distance;
+        }
+        if ((mask & AVG_SPEED) != 0) {
+            to.avgSpeed = from.avgSpeed;
+        }
+        if ((mask & AVG_CADENCE) != 0) {
+            to.avgCadence = from.avgCadence;
+        }
+        if ((mask & COMMENT) != 0) {
+            System.arraycopy(from.comment, 0, to.comment, 0, from.commentLength);
+            to.commentLength = from.commentLength;
+        }
+    }
+}
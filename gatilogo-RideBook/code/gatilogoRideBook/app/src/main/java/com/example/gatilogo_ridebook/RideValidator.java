@@ -0,0 +1,124 @@
+package com.example.gatilogo_ridebook;
+
+import java.nio.CharBuffer;
+
+/**
+ * RideValidator class
+ *
+ * Checks the fields of a ride read from a file and packs them into a RideRecord.
+ * It follows the rules of AddEditRideActivity.validateRide: date, time, distance, average speed
+ * and average cadence must not be empty, and the comment must not be longer than 20 characters.
+ * On top of that, every field has to parse, and numbers can't be negative.
+ * Fields are collected as characters into buffers that are reused for every ride, and RideCodec
+ * checks and parses them straight from those characters, so no String is created per field.
+ */
+final class RideValidator {
+
+    // Fields of a ride, in the order of a CSV line
+    static final int DATE = 0;
+    static final int TIME = 1;
+    static final int DISTANCE = 2;
+    static final int AVG_SPEED = 3;
+    static final int AVG_CADENCE = 4;
+    static final int COMMENT = 5;
+    static final int FIELD_COUNT = 6;
+
+    // Results of validate()
+    static final int OK = 0;
+    static final int EMPTY_FIELD = 1;
+    static final int COMMENT_TOO_LONG = 2;
+    static final int BAD_DATE = 3;
+    static final int BAD_TIME = 4;
+    static final int BAD_NUMBER = 5;
+    static final int BAD_FORMAT = 6;
+    static final int OUT_OF_RANGE = 7;
+
+    // Longer fields are never valid, so only this many characters are kept
+    private static final int MAX_FIELD_LENGTH = 32;
+    // Stands in for a field that didn't fit, and fails to parse as anything
+    private static final String TOO_LONG = "?";
+
+    private final char[][] values = new char[FIELD_COUNT][MAX_FIELD_LENGTH];
+    private final int[] lengths = new int[FIELD_COUNT];
+    private final CharBuffer[] views = new CharBuffer[FIELD_COUNT];
+    private final CharSequence[] fields = new CharSequence[FIELD_COUNT];
+    private int errorField = -1;
+
+    RideValidator() {
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            views[i] = CharBuffer.wrap(values[i]);
+        }
+    }
+
+    // Empties all fields before the next ride.
+    void clear() {
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            lengths[i] = 0;
+        }
+        errorField = -1;
+    }
+
+    // Appends characters to a field. The length keeps counting past what fits in the buffer.
+    void append(int field, char[] chars, int offset, int length) {
+        int stored = Math.min(length, MAX_FIELD_LENGTH - lengths[field]);
+        if (stored > 0) {
+            System.arraycopy(chars, offset, values[field], lengths[field], stored);
+        }
+        lengths[field] += length;
+    }
+
+    void append(int field, char c) {
+        if (lengths[field] < MAX_FIELD_LENGTH) {
+            values[field][lengths[field]] = c;
+        }
+        lengths[field]++;
+    }
+
+    // Returns the field that made the last validate() fail, or -1.
+    int getErrorField() {
+        return errorField;
+    }
+
+    // Checks the collected fields and, if they are valid, writes the ride into record.
+    // Returns OK or the reason the ride was rejected; getErrorField() tells which field.
+    int validate(RideRecord record) {
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            CharBuffer view = views[field];
+            view.clear();
+            if (lengths[field] <= MAX_FIELD_LENGTH) {
+                view.limit(lengths[field]);
+                fields[field] = view;
+            } else {
+                // A comment that long is reported as too long, anything else as not parsing
+                fields[field] = field == COMMENT ? view : TOO_LONG;
+            }
+        }
+        int result = RideCodec.decode(fields, record);
+        errorField = RideCodec.fieldOf(result);
+        return RideCodec.errorOf(result);
+    }
+
+    // Returns a short English description of an error code, for logs.
+    static String describe(int error) {
+        switch (error) {
+            case OK:
+                return "ok";
+            case EMPTY_FIELD:
+                return "empty field";
+            case COMMENT_TOO_LONG:
+                return "comment longer than " + RideRecord.MAX_COMMENT_LENGTH + " characters";
+            case BAD_DATE:
+                return "date is not yyyy-MM-dd";
+            case BAD_TIME:
+                return "time is not HH:mm";
+            case BAD_NUMBER:
+                return "not a number";
+            case BAD_FORMAT:
+                return "wrong number of fields";
+            case OUT_OF_RANGE:
+                return "date or number out of range";
+            default:
+                return "error " + error;
+        }
+    }
+}
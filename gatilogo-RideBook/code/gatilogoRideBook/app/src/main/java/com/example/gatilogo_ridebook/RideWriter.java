@@ -0,0 +1,17 @@
+package com.example.gatilogo_ridebook;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * RideWriter interface
+ *
+ * Writes rides one at a time to a file in some format, such as CSV or GPX.
+ */
+interface RideWriter extends Closeable {
+
+    void write(RideRecord record) throws IOException;
+
+    // Writes whatever the format needs after the last ride and flushes the output.
+    void finish() throws IOException;
+}
@@ -0,0 +1,83 @@
+package com.example.gatilogo_ridebook;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for CommentIndex and RideStore.search.
+ */
+public class CommentIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Ride ride(int day, String comment) {
+        return new Ride(String.format("2019-09-%02d", day), "07:30", 10f, 20f, 80, comment);
+    }
+
+    @Test
+    public void search_matchesSubstringsIgnoringCase() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        long work = store.add(ride(1, "To Work"));
+        long home = store.add(ride(2, "home from work"));
+        long hills = store.add(ride(3, "hills"));
+        long none = store.add(ride(4, ""));
+
+        assertArrayEquals(new long[]{work, home}, store.search("work"));
+        assertArrayEquals(new long[]{work, home}, store.search("WOR"));
+        assertArrayEquals(new long[]{home, hills}, store.search("h"));
+        assertArrayEquals(new long[]{work}, store.search("o "));
+        assertArrayEquals(new long[]{hills}, store.search("ls"));
+        assertArrayEquals(new long[0], store.search("walk"));
+        assertArrayEquals(new long[]{work, home, hills, none}, store.search(""));
+
+        // Both trigrams of "abcd" are in this comment, but not next to each other
+        long apart = store.add(ride(5, "abc bcd"));
+        assertArrayEquals(new long[0], store.search("abcd"));
+        assertArrayEquals(new long[]{apart}, store.search("c b"));
+        store.close();
+    }
+
+    @Test
+    public void search_followsChanges() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        long first = store.add(ride(1, "rain"));
+        long second = store.add(ride(2, "rain again"));
+        long third = store.add(ride(3, "sun"));
+
+        assertTrue(store.edit(first, ride(1, "sunny")));
+        assertTrue(store.delete(second));
+        assertArrayEquals(new long[0], store.search("rain"));
+        assertArrayEquals(new long[]{first, third}, store.search("sun"));
+        assertArrayEquals(new long[]{first}, store.search("sunn"));
+
+        // Combined with a date range
+        int from = RideTime.parse("2019-09-02", "00:00");
+        assertArrayEquals(new long[]{third}, store.search("sun", from, Integer.MAX_VALUE));
+        assertArrayEquals(new long[]{third}, store.search("", from, Integer.MAX_VALUE));
+        store.close();
+
+        RideStore reopened = RideStore.open(folder.getRoot());
+        assertArrayEquals(new long[]{first, third}, reopened.search("SU"));
+        reopened.close();
+    }
+
+    @Test
+    public void index_dropsEmptyTrigrams() {
+        CommentIndex index = new CommentIndex();
+        char[] comment = "aaaa".toCharArray();
+        index.add(1, comment, 4);
+        index.add(2, comment, 4);
+        assertEquals(3, index.trigramCount());
+        index.remove(1, comment, 4);
+        assertArrayEquals(new long[]{2}, index.find("aaa"));
+        index.remove(2, comment, 4);
+        assertEquals(0, index.trigramCount());
+        assertArrayEquals(new long[0], index.find("a"));
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.gatilogo_ridebook;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for RideAggregates.
+ */
+public class RideAggregatesTest {
+
+    // Adds a ride to the table and the statistics, like RideStore does.
+    private static void add(RideTable table, RideAggregates aggregates, long id, float distance,
+                            float avgSpeed, int avgCadence) {
+        table.add(id, new RideRecord().set(new Ride("2019-09-11", "20:36", distance, avgSpeed, avgCadence, "")));
+        aggregates.add(distance, avgSpeed, avgCadence);
+    }
+
+    // Removes a ride from the statistics and then the table, like RideStore does.
+    private static void remove(RideTable table, RideAggregates aggregates, long id) {
+        int slot = table.slotOf(id);
+        aggregates.remove(table.getDistance(slot), table.getAvgSpeed(slot), table.getAvgCadence(slot));
+        table.remove(slot);
+    }
+
+    // Returns the bytes allocated by the current thread so far.
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    public void averages_areWeighted() {
+        RideAggregates aggregates = new RideAggregates();
+        aggregates.add(10f, 20f, 60);       // 0.5 h
+        aggregates.add(30f, 30f, 90);       // 1 h
+
+        assertEquals(2, aggregates.getCount());
+        assertEquals(40.0, aggregates.getTotalDistance(), 1e-9);
+        assertEquals((10.0 * 20 + 30.0 * 30) / 40, aggregates.getAverageSpeed(), 1e-9);
+        assertEquals((0.5 * 60 + 1.0 * 90) / 1.5, aggregates.getAverageCadence(), 1e-9);
+    }
+
+    @Test
+    public void minMax_followRemovals() {
+        RideTable table = new RideTable();
+        RideAggregates aggregates = new RideAggregates();
+        aggregates.setRides(table);
+        add(table, aggregates, 1, 1f, 10f, 50);
+        add(table, aggregates, 2, 20f, 25f, 80);
+        add(table, aggregates, 3, 100f, 40f, 100);
+
+        assertEquals(1f, aggregates.getMinDistance(), 0);
+        assertEquals(100f, aggregates.getMaxDistance(), 0);
+
+        remove(table, aggregates, 3);
+        remove(table, aggregates, 1);
+        add(table, aggregates, 4, 5f, 12f, 55);
+        assertEquals(5f, aggregates.getMinDistance(), 0);
+        assertEquals(20f, aggregates.getMaxDistance(), 0);
+        assertEquals(25f, aggregates.getMaxAvgSpeed(), 0);
+        assertEquals(55, aggregates.getMinAvgCadence());
+
+        remove(table, aggregates, 2);
+        remove(table, aggregates, 4);
+        assertEquals(0, aggregates.getMaxDistance(), 0);
+    }
+
+    @Test
+    public void merge_keepsMinMax() {
+        RideAggregates first = new RideAggregates();
+        first.add(10f, 20f, 60);
+        RideAggregates second = new RideAggregates();
+        second.add(3f, 30f, 90);
+        second.add(40f, 15f, 70);
+        RideAggregates all = new RideAggregates();
+        all.merge(first);
+        all.merge(second);
+
+        assertEquals(3, all.getCount());
+        assertEquals(3f, all.getMinDistance(), 0);
+        assertEquals(40f, all.getMaxDistance(), 0);
+        assertEquals(15f, all.getMinAvgSpeed(), 0);
+        assertEquals(90, all.getMaxAvgCadence());
+    }
+
+    @Test
+    public void updates_allocateNothing() {
+        RideAggregates aggregates = new RideAggregates();
+        aggregates.add(1f, 10f, 50);
+        aggregates.add(100f, 40f, 100);
+        for (int i = 0; i < 100000; i++) {
+            aggregates.add(50f, 20f, 80);
+            aggregates.remove(50f, 20f, 80);
+        }
+
+        // Asking for the allocated bytes allocates a little itself, and so may the JIT now and then.
+        // Less than a byte per iteration means no update allocates an object.
+        long start = allocatedBytes();
+        long overhead = allocatedBytes() - start;
+        start = allocatedBytes();
+        for (int i = 0; i < 1000000; i++) {
+            aggregates.add(i % 90 + 5, 20f, 80);
+            aggregates.remove(i % 90 + 5, 20f, 80);
+        }
+        long allocated = allocatedBytes() - start - overhead;
+        assertTrue(allocated + " bytes allocated", allocated < 1000000);
+        assertEquals(2, aggregates.getCount());
+        assertEquals(100f, aggregates.getMaxDistance(), 0);
+    }
+
+    @Test
+    public void totals_doNotDrift() {
+        RideAggregates aggregates = new RideAggregates();
+        aggregates.add(1e7f, 30f, 80);
+        for (int i = 0; i < 100000; i++) {
+            aggregates.add(0.1f, 30f, 80);
+        }
+        aggregates.remove(1e7f, 30f, 80);
+
+        assertEquals(100000 * (double) 0.1f, aggregates.getTotalDistance(), 1e-6);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.gatilogo_ridebook;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for RideCodec.
+ */
+public class RideCodecTest {
+
+    // Returns the bytes allocated by the current thread so far.
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // Returns the fields of a ride as StringBuilders, like the Editables of the editor.
+    private static CharSequence[] fields(String date, String time, String distance, String avgSpeed,
+                                         String avgCadence, String comment) {
+        return new CharSequence[] {
+                new StringBuilder(date), new StringBuilder(time), new StringBuilder(distance),
+                new StringBuilder(avgSpeed), new StringBuilder(avgCadence), new StringBuilder(comment)
+        };
+    }
+
+    private static String decode(CharSequence[] fields) {
+        int result = RideCodec.decode(fields, new RideRecord());
+        return RideCodec.fieldOf(result) + ":" + RideCodec.errorOf(result);
+    }
+
+    @Test
+    public void decode_readsRide() {
+        RideRecord record = new RideRecord();
+        int result = RideCodec.decode(fields(" 2019-09-11", "20:36 ", "\t12.5", "20", " 85 ", " hills "), record);
+        assertEquals(RideValidator.OK, result);
+        assertEquals(-1, RideCodec.fieldOf(result));
+        assertEquals(RideTime.parse("2019-09-11", "20:36"), record.epochMinute);
+        assertEquals(12.5f, record.distance, 0);
+        assertEquals(20f, record.avgSpeed, 0);
+        assertEquals(85, record.avgCadence);
+        // The comment is kept as typed
+        assertEquals(" hills ", new String(record.comment, 0, record.commentLength));
+
+        assertEquals(RideValidator.OK, RideCodec.decode(fields("2020-2-29", "0:00", "0", "0.0", "0", ""), record));
+        assertEquals(0, record.commentLength);
+    }
+
+    @Test
+    public void decode_reportsFieldAndError() {
+        assertEquals("1:" + RideValidator.EMPTY_FIELD, decode(fields("2019-09-11", "  ", "", "20", "85", "")));
+        assertEquals("5:" + RideValidator.COMMENT_TOO_LONG,
+                decode(fields("x", "20:36", "12.5", "20", "85", "a comment that is too long")));
+        assertEquals("0:" + RideValidator.BAD_DATE, decode(fields("2019-02-29", "20:36", "12.5", "20", "85", "")));
+        assertEquals("0:" + RideValidator.BAD_DATE, decode(fields("19-09-11", "20:36", "12.5", "20", "85", "")));
+        assertEquals("1:" + RideValidator.BAD_TIME, decode(fields("2019-09-11", "24:00", "12.5", "20", "85", "")));
+        assertEquals("1:" + RideValidator.BAD_TIME, decode(fields("2019-09-11", "20:6", "12.5", "20", "85", "")));
+        assertEquals("2:" + RideValidator.BAD_NUMBER, decode(fields("2019-09-11", "20:36", "12,5", "20", "85", "")));
+        assertEquals("3:" + RideValidator.BAD_NUMBER, decode(fields("2019-09-11", "20:36", "12.5", "2e1", "85", "")));
+        assertEquals("4:" + RideValidator.BAD_NUMBER, decode(fields("2019-09-11", "20:36", "12.5", "20", "85.5", "")));
+        assertEquals("2:" + RideValidator.OUT_OF_RANGE, decode(fields("2019-09-11", "20:36", "-1", "20", "85", "")));
+        assertEquals("3:" + RideValidator.OUT_OF_RANGE,
+                decode(fields("2019-09-11", "20:36", "12.5", "1" + new String(new char[60]).replace('\0', '0'), "85", "")));
+        assertEquals("4:" + RideValidator.OUT_OF_RANGE, decode(fields("2019-09-11", "20:36", "12.5", "20", "-85", "")));
+    }
+
+    @Test
+    public void decode_keepsDatesRideTimeCanHold() {
+        RideRecord record = new RideRecord();
+        assertEquals(RideValidator.OK, RideCodec.decode(fields("0000-01-01", "00:00", "1", "1", "1", ""), record));
+        assertEquals("0000-01-01", RideTime.formatDate(record.epochMinute));
+        assertEquals("00:00", RideTime.formatTime(record.epochMinute));
+        assertEquals(RideValidator.OK, RideCodec.decode(fields("6053-01-23", "02:07", "1", "1", "1", ""), record));
+        assertEquals(Integer.MAX_VALUE, record.epochMinute);
+        assertEquals("6053-01-23", RideTime.formatDate(record.epochMinute));
+        assertEquals("02:07", RideTime.formatTime(record.epochMinute));
+
+        assertEquals("0:" + RideValidator.OUT_OF_RANGE, decode(fields("6053-01-23", "02:08", "1", "1", "1", "")));
+        assertEquals("0:" + RideValidator.OUT_OF_RANGE, decode(fields("6100-01-01", "00:00", "1", "1", "1", "")));
+        assertEquals("0:" + RideValidator.OUT_OF_RANGE, decode(fields("9999-12-31", "23:59", "1", "1", "1", "")));
+    }
+
+    @Test
+    public void parsers_readRangesOfText() {
+        String text = "on 2020-12-31 at 7:05.";
+        assertEquals(20201231, RideCodec.parseYearMonthDay(text, 3, 13));
+        assertEquals(RideTime.epochDay(2020, 12, 31), RideCodec.parseDate(text, 3, 13));
+        assertEquals(7 * 60 + 5, RideCodec.parseTime(text, 17, 21));
+        assertEquals(-1, RideCodec.parseYearMonthDay(text, 3, 14));
+        assertEquals(-1, RideCodec.parseTime(text, 17, 22));
+        assertEquals(2, RideCodec.trimStart("  x "));
+        assertEquals(3, RideCodec.trimEnd("  x "));
+        assertTrue(RideCodec.isBlank(" \t"));
+        assertFalse(RideCodec.isBlank(" a"));
+    }
+
+    @Test
+    public void decode_allocatesNothing() {
+        CharSequence[] valid = fields("2019-09-11", "20:36", "12.5", "20.25", "85", "hills");
+        CharSequence[] invalid = fields("2019-09-11", "20:36", "12.5", "fast", "85", "hills");
+        RideRecord record = new RideRecord();
+        for (int i = 0; i < 20000; i++) {
+            RideCodec.decode(valid, record);
+            RideCodec.decode(invalid, record);
+        }
+
+        // Asking for the allocated bytes allocates a little itself, and so may the JIT now and then.
+        // Less than a byte per iteration means no decode allocates an object.
+        long start = allocatedBytes();
+        long overhead = allocatedBytes() - start;
+        start = allocatedBytes();
+        int failed = 0;
+        for (int i = 0; i < 100000; i++) {
+            RideCodec.decode(valid, record);
+            if (RideCodec.decode(invalid, record) != RideValidator.OK) {
+                failed++;
+            }
+        }
+        long allocated = allocatedBytes() - start - overhead;
+        assertTrue(allocated + " bytes allocated", allocated < 100000);
+        assertEquals(100000, failed);
+        assertEquals(20.25f, record.avgSpeed, 0);
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.gatilogo_ridebook;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for RideFormat and RideRowText.
+ */
+public class RideFormatTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static String number(double value, int decimals) {
+        char[] out = new char[RideFormat.MAX_NUMBER_LENGTH];
+        return new String(out, 0, RideFormat.appendNumber(out, 0, value, decimals));
+    }
+
+    // Returns the bytes allocated by the current thread so far.
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    public void appendNumber_roundsToFixedDecimals() {
+        assertEquals("12.0", number(12, 2));
+        assertEquals("12.5", number(12.5f, 2));
+        assertEquals("12.75", number(12.75f, 2));
+        assertEquals("0.1", number(0.1f, 2));
+        assertEquals("-3.25", number(-3.25f, 2));
+        assertEquals("0.0", number(-0.001, 1));
+        assertEquals("100", number(99.6, 0));
+        assertEquals("1.0E20", number(1e20, 1));
+
+        // Same as String.format(), apart from the zeros it keeps
+        Random random = new Random(20);
+        for (int i = 0; i < 10000; i++) {
+            double value = Math.round((random.nextDouble() - 0.5) * 2e6) / 100.0;
+            assertEquals(String.format(Locale.US, "%.1f", value), number(value, 1));
+        }
+
+        char[] out = new char[RideFormat.MAX_NUMBER_LENGTH];
+        assertEquals(String.format(Locale.GERMANY, "%.1f", 1234.56),
+                new String(out, 0, RideFormat.appendNumber(out, 0, 1234.56, 1, ',')));
+        assertEquals("-42", new String(out, 0, RideFormat.appendInt(out, 0, -42)));
+        RideFormat.Unit unit = new RideFormat.Unit("%s km/h");
+        out = new char[unit.maxLength()];
+        assertEquals("20.5 km/h", new String(out, 0, unit.append(out, 0, 20.5, 2)));
+        assertEquals("ca. 90", new String(out, 0, new RideFormat.Unit("ca. %1$s").append(out, 0, 90)));
+    }
+
+    @Test
+    public void toPlainString_readsBackThroughTheCodec() {
+        assertEquals("12.5", RideFormat.toPlainString(12.5f));
+        assertEquals("0.0005", RideFormat.toPlainString(5.0E-4f));
+        assertEquals("15000000.0", RideFormat.toPlainString(1.5E7f));
+        assertEquals("0.0", RideFormat.toPlainString(0f));
+
+        Random random = new Random(23);
+        for (int i = 0; i < 10000; i++) {
+            float value = (float) Math.pow(10, random.nextDouble() * 20 - 10);
+            String text = RideFormat.toPlainString(value);
+            assertEquals(-1, text.indexOf('E'));
+            assertEquals(value, RideCodec.parseFloat(text, 0, text.length()), 0);
+        }
+    }
+
+    @Test
+    public void rowText_isOnlyFormattedWhenTheRideChanged() {
+        RideRowText text = new RideRowText(new RideFormat.Unit("%s km"), new RideFormat.Unit("%s km/h"),
+                new RideFormat.Unit("%s rpm"));
+        char[] comment = "hills".toCharArray();
+        assertTrue(text.set(7, RideTime.parse("2019-09-11", "20:36"), 12.5f, 20, 85, comment, 5));
+        assertEquals("2019-09-11", new String(text.date));
+        assertEquals("20:36", new String(text.time));
+        assertEquals("12.5 km", new String(text.distance, 0, text.distanceLength));
+        assertEquals("20.0 km/h", new String(text.avgSpeed, 0, text.avgSpeedLength));
+        assertEquals("85 rpm", new String(text.avgCadence, 0, text.avgCadenceLength));
+        assertEquals("hills", new String(text.comment, 0, text.commentLength));
+
+        assertFalse(text.set(7, RideTime.parse("2019-09-11", "20:36"), 12.5f, 20, 85, comment, 5));
+        assertTrue(text.set(7, RideTime.parse("2019-09-11", "20:36"), 12.5f, 20, 85, comment, 4));
+        assertTrue(text.set(8, RideTime.parse("2019-09-11", "20:36"), 12.5f, 20, 85, comment, 4));
+        text.clear();
+        assertTrue(text.set(8, RideTime.parse("2019-09-11", "20:36"), 12.5f, 20, 85, comment, 4));
+    }
+
+    @Test
+    public void scrolling_allocatesNothingPerRow() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        RideRecord[] records = new RideRecord[5000];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = new RideRecord().set(new Ride(String.format("2019-%02d-%02d", 1 + i % 12, 1 + i % 28),
+                    "08:00", i * 0.37f, 20 + i % 7, i % 90, "ride " + i));
+        }
+        store.addAll(records, records.length);
+        RidePager pager = new RidePager(store.pageSource(), DIRECT, DIRECT);
+        RideFormat.Unit unit = new RideFormat.Unit("%s km");
+        // A few rows, recycled as the list scrolls
+        RideRowText[] rows = new RideRowText[12];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new RideRowText(unit, unit, unit);
+        }
+
+        // Asking for the allocated bytes allocates a little itself, and so may the JIT now and then.
+        // Less than a byte per row means no row allocates an object.
+        long start = allocatedBytes();
+        long overhead = allocatedBytes() - start;
+        long allocated = 0;
+        int formatted = 0;
+        for (int pass = 0; pass < 3; pass++) {
+            // The first pass fills the pager's pool of pages
+            long before = allocatedBytes();
+            for (int position = 0; position < store.size(); position++) {
+                pager.setVisibleRange(position, position + rows.length - 1);
+                RideRecord ride = pager.get(position);
+                if (rows[position % rows.length].set(pager.getId(position), ride.epochMinute, ride.distance,
+                        ride.avgSpeed, ride.avgCadence, ride.comment, ride.commentLength)) {
+                    formatted++;
+                }
+            }
+            allocated = allocatedBytes() - before - overhead;
+        }
+        assertEquals(3 * store.size(), formatted);
+        assertTrue(allocated + " bytes allocated", allocated < store.size());
+        store.close();
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.gatilogo_ridebook;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for RideHead and the head file written next to the journal.
+ */
+public class RideHeadTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Long enough that only flush() or close() start a write during a test
+    private static final long NEVER = 60 * 60 * 1000;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final RideJournalWriter.Listener FAIL = new RideJournalWriter.Listener() {
+        @Override
+        public void onWriteFailed(IOException error) {
+            throw new AssertionError(error);
+        }
+    };
+
+    private static void addRides(RideStore store, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            store.add(new Ride("2019-09-11", "20:36", i, 20.5f, i, "ride " + i));
+        }
+    }
+
+    private static RideRecord[] newRecords(int count) {
+        RideRecord[] records = new RideRecord[count];
+        for (int i = 0; i < count; i++) {
+            records[i] = new RideRecord();
+        }
+        return records;
+    }
+
+    @Test
+    public void close_writesLatestRidesAndTotals() throws IOException {
+        assertNull(RideJournal.readHead(folder.getRoot()));
+        RideStore store = RideStore.open(folder.getRoot());
+        addRides(store, 100);
+        store.close();
+
+        RideHead head = RideJournal.readHead(folder.getRoot());
+        assertNotNull(head);
+        assertEquals(100, head.rideCount);
+        assertEquals(RideHead.SIZE, head.ids.length);
+        assertEquals(36, head.firstPosition());
+        assertEquals(4950, head.totalDistance, 0.001);
+        assertEquals(0, head.snapshotPrefix);
+
+        RideStore reopened = RideStore.open(folder.getRoot());
+        for (int i = 0; i < head.ids.length; i++) {
+            assertEquals(reopened.getId(36 + i), head.ids[i]);
+            assertEquals(36 + i, head.records[i].avgCadence);
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void head_isDroppedOnceTheJournalChanges() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        store.startWriteBehind(NEVER, DIRECT, FAIL);
+        addRides(store, 10);
+        store.flush();
+        store.sync();
+        assertEquals(10, RideJournal.readHead(folder.getRoot()).rideCount);
+        store.delete(store.getId(0));
+        store.sync();
+        // The journal is longer than when the head was written
+        assertNull(RideJournal.readHead(folder.getRoot()));
+
+        // A head submitted with changes still waiting is written after them
+        store.add(new Ride("2019-09-12", "08:00", 5, 20.5f, 10, ""));
+        store.flush();
+        store.close();
+        RideHead head = RideJournal.readHead(folder.getRoot());
+        assertNotNull(head);
+        assertEquals(10, head.rideCount);
+        assertEquals(10, head.records[9].avgCadence);
+    }
+
+    @Test
+    public void source_readsOldRidesFromSnapshotAndLatestFromHead() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        // The journal is compacted into a snapshot after 1024 records
+        addRides(store, 1100);
+        store.close();
+
+        RideHead head = RideJournal.readHead(folder.getRoot());
+        assertEquals(1100, head.rideCount);
+        assertEquals(1024, head.snapshotPrefix);
+        assertEquals(1036, head.firstPosition());
+
+        RideJournal.SnapshotReader snapshot = RideJournal.SnapshotReader.open(folder.getRoot());
+        RidePager.Source source = head.source(snapshot);
+        assertEquals(1100, source.size());
+        assertFalse(source.isInMemory(960, RidePager.PAGE_SIZE));
+        assertTrue(source.isInMemory(1088, RidePager.PAGE_SIZE));
+
+        long[] ids = new long[RidePager.PAGE_SIZE];
+        RideRecord[] records = newRecords(RidePager.PAGE_SIZE);
+        assertEquals(RidePager.PAGE_SIZE, source.read(1000, RidePager.PAGE_SIZE, ids, records));
+        RideStore reopened = RideStore.open(folder.getRoot());
+        for (int i = 0; i < RidePager.PAGE_SIZE; i++) {
+            int position = 1000 + i;
+            if (position >= 1024 && position < 1036) {
+                // Neither file has these yet
+                assertEquals(0, ids[i]);
+            } else {
+                assertEquals(reopened.getId(position), ids[i]);
+                assertEquals(position, records[i].avgCadence);
+            }
+        }
+        snapshot.close();
+        reopened.close();
+    }
+
+    @Test
+    public void editAfterSnapshot_leavesNoStablePrefix() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        addRides(store, 1100);
+        store.edit(store.getId(5), new Ride("2019-09-12", "08:00", 1, 20.5f, 1, ""));
+        store.close();
+
+        // The snapshot no longer shows ride 5 as it is
+        RideHead head = RideJournal.readHead(folder.getRoot());
+        assertEquals(0, head.snapshotPrefix);
+
+        // Until the next compaction, even after reopening
+        RideStore reopened = RideStore.open(folder.getRoot());
+        reopened.add(new Ride("2019-09-12", "09:00", 1, 20.5f, 1, ""));
+        reopened.close();
+        head = RideJournal.readHead(folder.getRoot());
+        assertEquals(1101, head.rideCount);
+        assertEquals(0, head.snapshotPrefix);
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.gatilogo_ridebook;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for writing a RideStore's changes in the background with RideJournalWriter.
+ */
+public class RideJournalWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Long enough that only flush(), sync() or a full queue start a write during a test
+    private static final long NEVER = 60 * 60 * 1000;
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final RideJournalWriter.Listener FAIL = new RideJournalWriter.Listener() {
+        @Override
+        public void onWriteFailed(IOException error) {
+            throw new AssertionError(error);
+        }
+    };
+
+    private static Ride ride(int i) {
+        return new Ride("2019-09-11", "20:36", i, 20.5f, i, "ride " + i);
+    }
+
+    private File journalFile() {
+        return new File(folder.getRoot(), RideJournal.JOURNAL_FILE);
+    }
+
+    @Test
+    public void changesToOneRide_areCoalesced() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        store.startWriteBehind(NEVER, DIRECT, FAIL);
+        long kept = store.add(ride(1));
+        for (int i = 2; i <= 5; i++) {
+            store.edit(kept, ride(i));
+        }
+        long dropped = store.add(ride(6));
+        store.edit(dropped, ride(7));
+        store.delete(dropped);
+
+        // The store sees every change right away
+        assertEquals(1, store.size());
+        assertEquals(5, store.getRide(kept).getAvgCadence());
+        long header = journalFile().length();
+
+        // One record: the add of the first ride with the fields of its last edit
+        store.sync();
+        assertEquals(header + RideJournal.RECORD_SIZE, journalFile().length());
+
+        // Changes to rides that are already written are coalesced with each other
+        store.edit(kept, ride(8));
+        store.edit(kept, ride(9));
+        store.delete(kept);
+        store.close();
+        assertEquals(header + 2 * RideJournal.RECORD_SIZE, journalFile().length());
+
+        RideStore reopened = RideStore.open(folder.getRoot());
+        assertEquals(0, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    public void fullQueue_waitsForWriter() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        store.startWriteBehind(NEVER, DIRECT, FAIL);
+        int count = RideJournalWriter.CAPACITY * 3 + 7;
+        for (int i = 0; i < count; i++) {
+            store.add(ride(i));
+        }
+        store.close();
+
+        RideStore reopened = RideStore.open(folder.getRoot());
+        assertEquals(count, reopened.size());
+        assertEquals(count - 1, reopened.getRide(reopened.getId(count - 1)).getAvgCadence());
+        reopened.close();
+    }
+
+    @Test
+    public void compaction_happensOnWriterThread() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        store.startWriteBehind(NEVER, DIRECT, FAIL);
+        RideRecord[] records = new RideRecord[RideBatch.CAPACITY];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = new RideRecord().set(ride(i));
+        }
+        for (int batch = 0; batch < 3; batch++) {
+            store.addAll(records, records.length);
+        }
+        // Changes after the compaction are folded together again
+        long id = store.getId(0);
+        store.edit(id, ride(1000));
+        store.edit(id, ride(1001));
+        store.close();
+
+        assertTrue(new File(folder.getRoot(), RideJournal.SNAPSHOT_FILE).exists());
+        RideStore reopened = RideStore.open(folder.getRoot());
+        assertEquals(3 * RideBatch.CAPACITY, reopened.size());
+        assertEquals(1001, reopened.getRide(id).getAvgCadence());
+        assertEquals(RideBatch.CAPACITY - 1,
+                reopened.getRide(reopened.getId(3 * RideBatch.CAPACITY - 1)).getAvgCadence());
+        reopened.close();
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.gatilogo_ridebook;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for RideMetrics.
+ */
+public class RideMetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Returns the bytes allocated by the current thread so far.
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    public void buckets_coverEveryValueInOrder() {
+        for (int bucket = 0; bucket < RideMetrics.Histogram.BUCKET_COUNT; bucket++) {
+            long lower = RideMetrics.Histogram.lowerBound(bucket);
+            long upper = RideMetrics.Histogram.upperBound(bucket);
+            assertEquals(bucket, RideMetrics.Histogram.bucketOf(lower));
+            assertEquals(bucket, RideMetrics.Histogram.bucketOf(upper));
+            if (bucket > 0) {
+                assertEquals(RideMetrics.Histogram.upperBound(bucket - 1) + 1, lower);
+            }
+            // Within 25% of the value
+            assertTrue(upper - lower <= lower / 4 + 1);
+        }
+        assertEquals(0, RideMetrics.Histogram.lowerBound(0));
+        assertEquals(Long.MAX_VALUE, RideMetrics.Histogram.upperBound(RideMetrics.Histogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    public void histogram_reportsPercentiles() {
+        RideMetrics.Histogram histogram = new RideMetrics.Histogram("test");
+        assertEquals(0, histogram.getPercentile(50));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        histogram.record(-5);
+        assertEquals(1001, histogram.getCount());
+        assertEquals(1000000, histogram.getMax());
+        assertEquals(500500000.0 / 1001, histogram.getMean(), 0.001);
+
+        long p50 = histogram.getPercentile(50);
+        long p99 = histogram.getPercentile(99);
+        assertTrue(p50 >= 500000 && p50 <= 500000 * 5 / 4);
+        assertTrue(p99 >= 990000 && p99 <= 1000000);
+        assertEquals(1000000, histogram.getPercentile(100));
+        assertEquals(0, histogram.getPercentile(0));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void json_holdsAllMetrics() throws IOException {
+        RideMetrics.reset();
+        RideStore store = RideStore.open(folder.getRoot());
+        store.add(new Ride("2019-09-11", "20:36", 12.5f, 20, 85, "hills"));
+        store.close();
+        RideMetrics.ROWS_FORMATTED.add(3);
+
+        String json = RideMetrics.toJson();
+        assertTrue(json.startsWith("{\"counters\":{\"list.rowsFormatted\":3,"));
+        assertTrue(json.contains("\"store.load\":{\"count\":1,"));
+        assertTrue(json.contains("\"store.update\":{\"count\":1,"));
+        assertTrue(json.contains("\"list.bind\":{\"count\":0,\"meanMicros\":0.0,\"p50Micros\":0.0,"
+                + "\"p90Micros\":0.0,\"p99Micros\":0.0,\"maxMicros\":0.0,\"buckets\":[]}"));
+        assertTrue(json.endsWith("}}"));
+        assertTrue(RideMetrics.toText().contains("list.rowsFormatted = 3\n"));
+
+        RideMetrics.reset();
+        assertEquals(0, RideMetrics.ROWS_FORMATTED.get());
+        assertEquals(0, RideMetrics.LOAD.getCount());
+    }
+
+    @Test
+    public void recording_allocatesNothing() {
+        RideMetrics.Histogram histogram = new RideMetrics.Histogram("test");
+        RideMetrics.Counter counter = new RideMetrics.Counter("test");
+        // Warm up, so the calls are compiled
+        for (int i = 0; i < 100000; i++) {
+            histogram.recordSince(System.nanoTime() - i);
+            counter.increment();
+        }
+
+        // Asking for the allocated bytes allocates a little itself, and so may the JIT now and then.
+        // Less than a byte per iteration means no call allocates an object.
+        long start = allocatedBytes();
+        long overhead = allocatedBytes() - start;
+        long before = allocatedBytes();
+        for (int i = 0; i < 1000000; i++) {
+            histogram.recordSince(System.nanoTime() - i);
+            histogram.record(i * 37L);
+            counter.increment();
+            counter.add(2);
+        }
+        long allocated = allocatedBytes() - before - overhead;
+        assertTrue(allocated + " bytes allocated", allocated < 1000000);
+        assertEquals(3100000, counter.get());
+    }
+}
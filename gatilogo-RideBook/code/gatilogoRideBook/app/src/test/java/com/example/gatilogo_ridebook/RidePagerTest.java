@@ -0,0 +1,227 @@
+package com.example.gatilogo_ridebook;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for RidePager and reading pages of the snapshot file.
+ */
+public class RidePagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Holds background work until the test runs it
+    private static class QueueExecutor implements Executor {
+        final List<Runnable> queue = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            queue.add(command);
+        }
+
+        void runAll() {
+            while (!queue.isEmpty()) {
+                queue.remove(0).run();
+            }
+        }
+    }
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static class Recorder implements RidePager.Listener {
+        final List<String> loaded = new ArrayList<>();
+
+        @Override
+        public void onPageLoaded(int position, int count) {
+            loaded.add(position + "+" + count);
+        }
+
+        @Override
+        public void onPageFailed(int position, IOException error) {
+            loaded.add(position + "!");
+        }
+    }
+
+    // Reads the store like a file, so its pages are read on the loader
+    private static RidePager.Source onDisk(final RideStore store) {
+        final RidePager.Source rides = store.pageSource();
+        return new RidePager.Source() {
+            @Override
+            public int size() {
+                return rides.size();
+            }
+
+            @Override
+            public boolean isInMemory(int position, int count) {
+                return false;
+            }
+
+            @Override
+            public int read(int position, int count, long[] ids, RideRecord[] records) throws IOException {
+                return rides.read(position, count, ids, records);
+            }
+        };
+    }
+
+    private static void addRides(RideStore store, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            store.add(new Ride("2019-09-11", "20:36", i, 20.5f, i, "ride " + i));
+        }
+    }
+
+    @Test
+    public void storeSource_keepsFewPagesWhileScrolling() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        addRides(store, 3000);
+        RidePager pager = new RidePager(store.pageSource(), new QueueExecutor(), DIRECT);
+        Recorder recorder = new Recorder();
+        pager.setListener(recorder);
+
+        for (int first = 0; first + 10 < store.size(); first += 7) {
+            pager.setVisibleRange(first, first + 10);
+            for (int position = first; position <= first + 10; position++) {
+                RideRecord ride = pager.get(position);
+                assertEquals(position, ride.avgCadence);
+                assertEquals(store.getId(position), pager.getId(position));
+            }
+            assertTrue(pager.pageCount() <= RidePager.MAX_PAGES);
+        }
+        // Pages read on the main thread are ready right away, so nobody needs to be told
+        assertTrue(recorder.loaded.isEmpty());
+
+        // Changed rides are read again
+        long id = store.getId(2990);
+        store.delete(store.getId(5));
+        pager.invalidate(5);
+        assertEquals(id, pager.getId(2989));
+        assertEquals(6, pager.get(5).avgCadence);
+        store.close();
+    }
+
+    @Test
+    public void backgroundSource_tellsListenerAndDropsOldReads() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        addRides(store, 300);
+        QueueExecutor loader = new QueueExecutor();
+        RidePager pager = new RidePager(onDisk(store), loader, DIRECT);
+        Recorder recorder = new Recorder();
+        pager.setListener(recorder);
+
+        assertNull(pager.get(0));
+        assertEquals(0, pager.getId(1));
+        loader.runAll();
+        assertEquals("0+64", recorder.loaded.get(0));
+        assertEquals(3, pager.get(3).avgCadence);
+
+        // Scrolling forwards reads ahead; the last page is short
+        pager.setVisibleRange(200, 210);
+        loader.runAll();
+        assertTrue(recorder.loaded.contains("192+64"));
+        assertTrue(recorder.loaded.contains("256+44"));
+        assertEquals(299, pager.get(299).avgCadence);
+
+        // A read that finishes after the source changed is dropped
+        recorder.loaded.clear();
+        pager.invalidate(0);
+        assertNull(pager.get(100));
+        pager.setSource(RidePager.EMPTY);
+        loader.runAll();
+        assertTrue(recorder.loaded.isEmpty());
+        assertEquals(0, pager.pageCount());
+        assertEquals(0, pager.size());
+        store.close();
+    }
+
+    @Test
+    public void failedPage_isReadAgainWhenScrolledBackTo() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        addRides(store, 300);
+        final RidePager.Source rides = onDisk(store);
+        final boolean[] failing = {true};
+        RidePager.Source source = new RidePager.Source() {
+            @Override
+            public int size() {
+                return rides.size();
+            }
+
+            @Override
+            public boolean isInMemory(int position, int count) {
+                return false;
+            }
+
+            @Override
+            public int read(int position, int count, long[] ids, RideRecord[] records) throws IOException {
+                if (failing[0]) {
+                    throw new IOException("Disk error");
+                }
+                return rides.read(position, count, ids, records);
+            }
+        };
+        QueueExecutor loader = new QueueExecutor();
+        RidePager pager = new RidePager(source, loader, DIRECT);
+        Recorder recorder = new Recorder();
+        pager.setListener(recorder);
+
+        pager.setVisibleRange(0, 10);
+        loader.runAll();
+        assertTrue(recorder.loaded.contains("0!"));
+        failing[0] = false;
+
+        // Binding and scrolling within the page doesn't read it over and over
+        assertNull(pager.get(0));
+        pager.setVisibleRange(5, 15);
+        assertTrue(loader.queue.isEmpty());
+        assertNull(pager.get(0));
+
+        // Coming back to it does
+        pager.setVisibleRange(200, 210);
+        loader.runAll();
+        pager.setVisibleRange(0, 10);
+        loader.runAll();
+        assertTrue(recorder.loaded.contains("0+64"));
+        assertEquals(3, pager.get(3).avgCadence);
+        store.close();
+    }
+
+    @Test
+    public void snapshotReader_readsPagesOfCompactedRides() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        // The journal is compacted into a snapshot after 1024 records
+        addRides(store, 1100);
+        store.close();
+
+        RideJournal.SnapshotReader snapshot = RideJournal.SnapshotReader.open(folder.getRoot());
+        assertNotNull(snapshot);
+        assertEquals(1024, snapshot.size());
+        QueueExecutor loader = new QueueExecutor();
+        RidePager pager = new RidePager(snapshot, loader, DIRECT);
+        pager.setVisibleRange(1000, 1023);
+        loader.runAll();
+
+        RideStore reopened = RideStore.open(folder.getRoot());
+        for (int position = 1000; position < 1024; position++) {
+            RideRecord ride = pager.get(position);
+            assertEquals(reopened.getId(position), pager.getId(position));
+            assertEquals(position, ride.avgCadence);
+            assertEquals("ride " + position, new String(ride.comment, 0, ride.commentLength));
+        }
+        snapshot.close();
+        reopened.close();
+
+        assertNull(RideJournal.SnapshotReader.open(folder.newFolder()));
+    }
+}
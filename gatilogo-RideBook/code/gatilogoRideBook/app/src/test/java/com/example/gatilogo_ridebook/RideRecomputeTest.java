@@ -0,0 +1,188 @@
+package com.example.gatilogo_ridebook;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for RideRecompute and merging partial statistics.
+ */
+public class RideRecomputeTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Stands in for the main thread: runs what was posted to it when the test pumps it
+    private static class MainThread implements Executor {
+        final LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+
+        @Override
+        public void execute(Runnable command) {
+            queue.add(command);
+        }
+
+        void runUntil(Recorder recorder) throws InterruptedException {
+            while (recorder.applied == null) {
+                Runnable command = queue.poll(10, TimeUnit.SECONDS);
+                assertTrue("Recompute hangs", command != null);
+                command.run();
+            }
+        }
+    }
+
+    // Holds work until the test runs it
+    private static class QueueExecutor implements Executor {
+        final List<Runnable> queue = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable command) {
+            queue.add(command);
+        }
+
+        void runAll() {
+            while (!queue.isEmpty()) {
+                queue.remove(0).run();
+            }
+        }
+    }
+
+    private static class Recorder implements RideRecompute.Listener {
+        int lastDone;
+        int total;
+        Boolean applied;
+
+        @Override
+        public void onRecomputeProgress(int done, int total) {
+            lastDone = Math.max(lastDone, done);
+            this.total = total;
+        }
+
+        @Override
+        public void onRecomputeFinished(boolean applied) {
+            this.applied = applied;
+        }
+    }
+
+    private static void addRides(RideStore store, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            store.add(new Ride(String.format("2019-%02d-%02d", 1 + i % 12, 1 + i % 28), "20:36",
+                    1 + i % 97, 10 + i % 23, 60 + i % 41, ""));
+        }
+    }
+
+    @Test
+    public void parallelRecompute_matchesIncrementalStatistics() throws Exception {
+        RideStore store = RideStore.open(folder.getRoot());
+        addRides(store, 20000);
+        RideAggregates incremental = store.getAggregates();
+        RideRollups.Period[] months = store.getRollups().getMonths(2019, 1, 2019, 12);
+        RideBests bests = store.getBests();
+        long longest = bests.getLongestId();
+
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        MainThread mainThread = new MainThread();
+        RideRecompute recompute = new RideRecompute(store, workers, 4, mainThread);
+        Recorder recorder = new Recorder();
+        recompute.setListener(recorder);
+        recompute.start();
+        mainThread.runUntil(recorder);
+        workers.shutdown();
+
+        assertTrue(recorder.applied);
+        assertTrue(recompute.isFinished());
+        assertEquals(20000, recorder.lastDone);
+        assertEquals(20000, recorder.total);
+
+        RideAggregates recomputed = store.getAggregates();
+        assertTrue(incremental != recomputed);
+        assertEquals(incremental.getCount(), recomputed.getCount());
+        assertEquals(incremental.getTotalDistance(), recomputed.getTotalDistance(), 1e-6);
+        assertEquals(incremental.getAverageSpeed(), recomputed.getAverageSpeed(), 1e-9);
+        assertEquals(incremental.getAverageCadence(), recomputed.getAverageCadence(), 1e-9);
+        assertEquals(incremental.getMinDistance(), recomputed.getMinDistance(), 0);
+        assertEquals(incremental.getMaxAvgCadence(), recomputed.getMaxAvgCadence());
+        RideRollups.Period[] recomputedMonths = store.getRollups().getMonths(2019, 1, 2019, 12);
+        for (int i = 0; i < months.length; i++) {
+            assertEquals(months[i].getCount(), recomputedMonths[i].getCount());
+            assertEquals(months[i].getDistance(), recomputedMonths[i].getDistance(), 1e-6);
+        }
+        // The first of the rides with the longest distance holds the best
+        assertEquals(longest, store.getBests().getLongestId());
+        assertEquals(97, store.getBests().getLongestDistance(), 0);
+        assertEquals(store.getId(96), longest);
+        store.close();
+    }
+
+    @Test
+    public void changeDuringRecompute_startsOver() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        addRides(store, 10000);
+        QueueExecutor workers = new QueueExecutor();
+        QueueExecutor mainThread = new QueueExecutor();
+        RideRecompute recompute = new RideRecompute(store, workers, 2, mainThread);
+        Recorder recorder = new Recorder();
+        recompute.setListener(recorder);
+        recompute.start();
+        assertEquals(2, workers.queue.size());
+
+        // The rides change while the workers run, so their result is dropped
+        store.add(new Ride("2020-01-01", "08:00", 200, 40, 95, ""));
+        workers.runAll();
+        mainThread.runAll();
+        assertNull(recorder.applied);
+        workers.runAll();
+        mainThread.runAll();
+        assertTrue(recorder.applied);
+        assertEquals(10001, recorder.total);
+        assertEquals(10001, store.getAggregates().getCount());
+        assertEquals(store.getId(10000), store.getBests().getFastestId());
+        store.close();
+    }
+
+    @Test
+    public void cancel_keepsStatistics() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        addRides(store, 10000);
+        RideAggregates before = store.getAggregates();
+        QueueExecutor workers = new QueueExecutor();
+        QueueExecutor mainThread = new QueueExecutor();
+        RideRecompute recompute = new RideRecompute(store, workers, 3, mainThread);
+        Recorder recorder = new Recorder();
+        recompute.setListener(recorder);
+        recompute.start();
+        recompute.cancel();
+        workers.runAll();
+        mainThread.runAll();
+        assertFalse(recorder.applied);
+        assertSame(before, store.getAggregates());
+        store.close();
+    }
+
+    @Test
+    public void bests_areFoundAgainAfterTheHolderIsDeleted() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        long first = store.add(new Ride("2019-09-11", "08:00", 50, 20, 80, ""));
+        long second = store.add(new Ride("2019-09-12", "08:00", 50, 25, 90, ""));
+        long third = store.add(new Ride("2019-09-13", "08:00", 40, 30, 70, ""));
+        assertEquals(first, store.getBests().getLongestId());
+        assertEquals(third, store.getBests().getFastestId());
+        assertEquals(second, store.getBests().getHighestCadenceId());
+
+        store.delete(first);
+        assertEquals(second, store.getBests().getLongestId());
+        store.edit(third, new Ride("2019-09-13", "08:00", 40, 10, 70, ""));
+        assertEquals(second, store.getBests().getFastestId());
+        store.close();
+    }
+}
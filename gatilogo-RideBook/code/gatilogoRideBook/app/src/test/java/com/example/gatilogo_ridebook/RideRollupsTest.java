@@ -0,0 +1,99 @@
+package com.example.gatilogo_ridebook;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for RideRollups.
+ */
+public class RideRollupsTest {
+
+    @Test
+    public void rangeSums_matchLinearScan() {
+        Random random = new Random(42);
+        int[] minutes = new int[5000];
+        float[] distances = new float[minutes.length];
+        RideRollups rollups = new RideRollups();
+
+        // Spread rides over about 30 years so the covered days have to grow both ways
+        int start = RideTime.epochDay(2005, 1, 1);
+        for (int i = 0; i < minutes.length; i++) {
+            minutes[i] = (start + random.nextInt(11000)) * RideTime.MINUTES_PER_DAY + random.nextInt(1440);
+            distances[i] = random.nextInt(1000) / 10f;
+            rollups.add(minutes[i], distances[i], 25f);
+        }
+        for (int i = 0; i < minutes.length; i += 3) {
+            rollups.remove(minutes[i], distances[i], 25f);
+        }
+
+        for (int query = 0; query < 200; query++) {
+            int from = start - 100 + random.nextInt(11200);
+            int to = from + random.nextInt(400);
+            int count = 0;
+            double distance = 0;
+            for (int i = 0; i < minutes.length; i++) {
+                int day = RideTime.dayOf(minutes[i]);
+                if (i % 3 != 0 && day >= from && day < to) {
+                    count++;
+                    distance += distances[i];
+                }
+            }
+
+            RideRollups.Period period = rollups.get(from, to);
+            assertEquals(count, period.getCount());
+            assertEquals(distance, period.getDistance(), 1e-6);
+            assertEquals(count > 0 ? 25.0 : 0, period.getAverageSpeed(), 1e-6);
+        }
+    }
+
+    @Test
+    public void outlierYears_keepBucketsBounded() {
+        int minute = RideTime.parse("2019-06-01", "10:00");
+        int early = RideTime.parse("0001-01-01", "08:00");
+        int late = RideTime.parse("6000-12-31", "18:00");
+        RideRollups rollups = new RideRollups();
+        rollups.add(minute, 10f, 20f);
+        rollups.add(early, 5f, 15f);
+        rollups.add(late, 7f, 25f);
+        RideRollups other = new RideRollups();
+        other.add(late, 3f, 25f);
+        other.add(RideTime.parse("1900-01-01", "00:00"), 1f, 10f);
+        other.add(RideTime.parse("2099-12-31", "23:59"), 1f, 10f);
+        rollups.merge(other);
+
+        assertTrue(rollups.bucketCount() + " buckets", rollups.bucketCount() <= 200 * 366);
+        assertEquals(6, rollups.get(Integer.MIN_VALUE, Integer.MAX_VALUE).getCount());
+        assertEquals(5.0, rollups.get(RideTime.dayOf(early), RideTime.dayOf(early) + 1).getDistance(), 0);
+        RideRollups.Period lateDay = rollups.get(RideTime.dayOf(late), RideTime.dayOf(late) + 1);
+        assertEquals(2, lateDay.getCount());
+        assertEquals(25.0, lateDay.getAverageSpeed(), 1e-9);
+
+        rollups.remove(early, 5f, 15f);
+        rollups.remove(late, 7f, 25f);
+        assertEquals(0, rollups.get(RideTime.dayOf(early), RideTime.dayOf(early) + 1).getCount());
+        assertEquals(1, rollups.get(RideTime.dayOf(late), RideTime.dayOf(late) + 1).getCount());
+
+        RideRollups single = new RideRollups();
+        single.add(early, 5f, 15f);
+        single.add(late, 7f, 25f);
+        assertEquals(0, single.bucketCount());
+    }
+
+    @Test
+    public void months_coverWholeMonths() {
+        RideRollups rollups = new RideRollups();
+        rollups.add(RideTime.parse("2019-01-31", "23:59"), 10f, 20f);
+        rollups.add(RideTime.parse("2019-02-01", "00:00"), 5f, 20f);
+        rollups.add(RideTime.parse("2019-12-31", "12:00"), 7f, 20f);
+
+        RideRollups.Period[] months = rollups.getMonths(2019, 1, 2020, 1);
+        assertEquals(13, months.length);
+        assertEquals(10.0, months[0].getDistance(), 0);
+        assertEquals(5.0, months[1].getDistance(), 0);
+        assertEquals(1, months[11].getCount());
+        assertEquals(0, months[12].getCount());
+    }
+}
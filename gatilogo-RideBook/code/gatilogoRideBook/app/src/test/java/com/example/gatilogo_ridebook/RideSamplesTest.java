@@ -0,0 +1,139 @@
+package com.example.gatilogo_ridebook;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for RideSamples and the samples the RideStore keeps for its rides.
+ */
+public class RideSamplesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final int ALL = RideSamples.SPEED | RideSamples.CADENCE | RideSamples.POSITION;
+
+    // Three hours at 1 Hz heading north-east, with a ten-minute stop in the middle
+    private static RideSamples threeHours(int columns) {
+        Random random = new Random(42);
+        RideSamples.Encoder encoder = new RideSamples.Encoder(columns);
+        double latitude = 47.5;
+        double longitude = 8.5;
+        float speed = 25;
+        for (int second = 0; second < 3 * 3600; second++) {
+            if (second >= 5400 && second < 6000) {
+                // Standing still, without pedaling
+                encoder.add(second, 0, 0, latitude, longitude);
+                continue;
+            }
+            speed = Math.max(5, Math.min(45, speed + (float) random.nextGaussian() * 0.3f));
+            double meters = speed / 3.6;
+            latitude += meters * 0.7071 / 111195;
+            longitude += meters * 0.7071 / (111195 * Math.cos(Math.toRadians(latitude)));
+            encoder.add(second, speed, 80 + random.nextInt(11), latitude, longitude);
+        }
+        return encoder.build();
+    }
+
+    @Test
+    public void threeHourRide_isSmallAndSummarizedInOnePass() {
+        RideSamples samples = threeHours(ALL);
+        assertEquals(10800, samples.size());
+        assertTrue("Takes " + samples.byteSize() + " bytes", samples.byteSize() < 64 * 1024);
+
+        RideSamples.Summary summary = samples.summarize(new RideSamples.Summary());
+        assertEquals(10799, summary.elapsedSeconds);
+        assertEquals(10799 - 600, summary.movingSeconds, 2);
+        assertEquals(85, summary.avgCadence);
+        assertEquals(90, summary.maxCadence);
+        assertTrue(summary.maxSpeed <= 45);
+
+        // Speeds alone give about the same distance as positions
+        RideSamples.Summary bySpeed = threeHours(RideSamples.SPEED).summarize(new RideSamples.Summary());
+        assertEquals(bySpeed.distance, summary.distance, summary.distance * 0.01);
+        assertEquals(bySpeed.distance * 3600 / bySpeed.movingSeconds, bySpeed.avgSpeed, 0.01);
+        assertEquals(0, bySpeed.avgCadence);
+    }
+
+    @Test
+    public void summary_keepsTypedValuesForColumnsNotRecorded() {
+        RideSamples.Encoder encoder = new RideSamples.Encoder(RideSamples.CADENCE);
+        for (int second = 0; second < 60; second += 2) {
+            encoder.add(second, 0, second < 30 ? 70 : 0, 0, 0);
+        }
+        RideRecord record = new RideRecord();
+        record.distance = 12.5f;
+        record.avgSpeed = 20;
+        record.avgCadence = 90;
+        encoder.build().summarize(new RideSamples.Summary()).applyTo(record);
+        assertEquals(12.5f, record.distance, 0);
+        assertEquals(20, record.avgSpeed, 0);
+        assertEquals(70, record.avgCadence);
+
+        // The encoder can be reused, but time must not go backwards
+        encoder.clear();
+        encoder.add(5, 0, 60, 0, 0);
+        try {
+            encoder.add(4, 0, 60, 0, 0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void store_derivesRideFromSamplesAndKeepsThem() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        long id = store.add(new Ride("2019-09-11", "08:00", 1, 1, 1, "long ride"));
+        long other = store.add(new Ride("2019-09-12", "08:00", 10, 20, 80, ""));
+        RideSamples samples = threeHours(ALL);
+        assertTrue(store.setSamples(id, samples));
+        assertFalse(store.setSamples(99, samples));
+        assertNull(store.getSamples(other));
+
+        RideSamples.Summary summary = samples.summarize(new RideSamples.Summary());
+        Ride ride = store.getRide(id);
+        assertEquals(Math.round(summary.distance * 10) / 10f, ride.getDistance(), 0);
+        assertEquals(85, ride.getAvgCadence());
+        assertEquals("long ride", ride.getComment());
+        assertEquals(ride.getDistance() + 10, store.getAggregates().getTotalDistance(), 0.01);
+
+        // Typed-in values don't replace the derived ones
+        store.edit(id, new Ride("2019-09-11", "09:00", 2, 2, 2, "edited"));
+        ride = store.getRide(id);
+        assertEquals(85, ride.getAvgCadence());
+        assertEquals("09:00", ride.getTime());
+        store.close();
+
+        RideStore reopened = RideStore.open(folder.getRoot());
+        RideSamples read = reopened.getSamples(id);
+        assertEquals(samples.size(), read.size());
+        assertEquals(summary.distance, read.summarize(new RideSamples.Summary()).distance, 0);
+        assertEquals(85, reopened.getRide(id).getAvgCadence());
+
+        reopened.delete(id);
+        assertNull(reopened.getSamples(id));
+        assertFalse(new File(new File(folder.getRoot(), "samples"), id + ".samples").exists());
+        reopened.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptSamples_areRejected() throws IOException {
+        File file = folder.newFile("ride.samples");
+        threeHours(RideSamples.SPEED).write(file);
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        out.seek(100);
+        int b = out.read();
+        out.seek(100);
+        out.write(b ^ 1);
+        out.close();
+        RideSamples.read(file);
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.gatilogo_ridebook;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for RideSnapshot.
+ */
+public class RideSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Ride ride(int i) {
+        return new Ride(String.format("2019-%02d-%02d", 1 + i % 12, 1 + i % 28), "08:00", i % 50, 20, 80, "ride " + i);
+    }
+
+    private static List<Long> ids(RidePager.Source source) throws IOException {
+        long[] ids = new long[source.size()];
+        RideRecord[] records = new RideRecord[ids.length];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = new RideRecord();
+        }
+        assertEquals(ids.length, source.read(0, ids.length, ids, records));
+        List<Long> list = new ArrayList<>();
+        for (long id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+
+    @Test
+    public void snapshot_keepsItsRides() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        for (int i = 0; i < 3000; i++) {
+            store.add(ride(i));
+        }
+        RideSnapshot before = store.snapshot();
+        List<Long> beforeIds = ids(before);
+        long edited = store.getId(1500);
+        store.edit(edited, new Ride("2020-01-01", "09:00", 99, 30, 90, "changed"));
+        store.delete(store.getId(10));
+        store.add(ride(3000));
+
+        assertEquals(3000, before.size());
+        assertEquals(beforeIds, ids(before));
+        assertEquals(ids(store.pageSource()), ids(store.snapshot()));
+        RideRecord[] record = {new RideRecord()};
+        before.read(before.positionAfter(edited - 1), 1, new long[1], record);
+        assertEquals(1500 % 50, record[0].distance, 0);
+        store.snapshot().read(store.positionOf(edited), 1, new long[1], record);
+        assertEquals(99, record[0].distance, 0);
+        assertSame(store.snapshot(), store.snapshot());
+        store.close();
+    }
+
+    @Test
+    public void diff_turnsOneSnapshotIntoTheOther() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        for (int i = 0; i < 2000; i++) {
+            store.add(ride(i));
+        }
+        RideSnapshot before = store.snapshot();
+        Random random = new Random(18);
+        for (int i = 0; i < 100; i++) {
+            long id = store.getId(random.nextInt(store.size()));
+            if (random.nextBoolean()) {
+                store.delete(id);
+            } else {
+                store.edit(id, ride(random.nextInt(1000)));
+            }
+        }
+        for (int i = 0; i < 40; i++) {
+            store.add(ride(i));
+        }
+        RideSnapshot after = store.snapshot();
+
+        // Applying the differences to the old list of IDs gives the new one
+        final List<Long> list = ids(before);
+        final int[] changed = new int[1];
+        assertTrue(after.diff(before, new RideSnapshot.Diff() {
+            @Override
+            public void onRideInserted(int position, long id) {
+                list.add(position, id);
+            }
+
+            @Override
+            public void onRideRemoved(int position, long id) {
+                assertEquals(id, (long) list.remove(position));
+            }
+
+            @Override
+            public void onRideChanged(int position, long id) {
+                assertEquals(id, (long) list.get(position));
+                changed[0]++;
+            }
+        }));
+        assertEquals(ids(after), list);
+        assertTrue(changed[0] > 0);
+        store.close();
+    }
+
+    @Test
+    public void compaction_startsANewLayout() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        for (int i = 0; i < 300; i++) {
+            store.add(ride(i));
+        }
+        RideSnapshot before = store.snapshot();
+        for (int i = 0; i < 200; i++) {
+            store.delete(store.getId(0));
+        }
+        RideSnapshot after = store.snapshot();
+        assertEquals(100, after.size());
+        assertEquals(ids(store.pageSource()), ids(after));
+        assertFalse(after.diff(before, null));
+        assertEquals(300, before.size());
+        store.close();
+    }
+
+    @Test
+    public void readers_seeConsistentSnapshots() throws Exception {
+        final RideStore store = RideStore.open(folder.getRoot());
+        for (int i = 0; i < 5000; i++) {
+            store.add(ride(i));
+        }
+        final AtomicReference<RideSnapshot> published = new AtomicReference<>(store.snapshot());
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!done.get()) {
+                        RideSnapshot snapshot = published.get();
+                        List<Long> ids = ids(snapshot);
+                        for (int i = 1; i < ids.size(); i++) {
+                            assertTrue(ids.get(i - 1) < ids.get(i));
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            }
+        });
+        reader.start();
+        Random random = new Random(5);
+        for (int i = 0; i < 3000; i++) {
+            long id = store.getId(random.nextInt(store.size()));
+            if (i % 3 == 0) {
+                store.delete(id);
+            } else if (i % 3 == 1) {
+                store.edit(id, ride(i));
+            } else {
+                store.add(ride(i));
+            }
+            published.set(store.snapshot());
+        }
+        done.set(true);
+        reader.join();
+        assertNull(failure.get());
+        assertEquals(ids(store.pageSource()), ids(store.snapshot()));
+        store.close();
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.gatilogo_ridebook;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for RideSortIndex and sorted pages of rides.
+ */
+public class RideSortIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Ride ride(Random random) {
+        return new Ride(String.format("2019-%02d-%02d", 1 + random.nextInt(12), 1 + random.nextInt(28)),
+                "08:00", random.nextInt(50), random.nextInt(40), 60 + random.nextInt(30), "");
+    }
+
+    // Returns the IDs of all rides of the store sorted by distance the slow way, ties in list order
+    private static List<Long> sortedByDistance(final RideStore store) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < store.size(); i++) {
+            ids.add(store.getId(i));
+        }
+        Collections.sort(ids, new Comparator<Long>() {
+            @Override
+            public int compare(Long a, Long b) {
+                int byDistance = Float.compare(store.getRide(a).getDistance(), store.getRide(b).getDistance());
+                return byDistance != 0 ? byDistance : a.compareTo(b);
+            }
+        });
+        return ids;
+    }
+
+    private static void assertOrder(RideStore store, List<Long> expected) throws IOException {
+        RidePager.Source source = store.pageSource(RideSortIndex.DISTANCE, false);
+        long[] ids = new long[expected.size()];
+        RideRecord[] records = new RideRecord[expected.size()];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = new RideRecord();
+        }
+        assertEquals(expected.size(), source.read(0, expected.size(), ids, records));
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals((long) expected.get(i), ids[i]);
+            assertEquals(i, store.positionOf(ids[i], RideSortIndex.DISTANCE, false));
+            assertEquals(ids.length - 1 - i, store.positionOf(ids[i], RideSortIndex.DISTANCE, true));
+        }
+    }
+
+    @Test
+    public void sortedPages_followChanges() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        Random random = new Random(17);
+        for (int i = 0; i < 500; i++) {
+            store.add(ride(random));
+        }
+        assertOrder(store, sortedByDistance(store));
+
+        // The index is kept up to date from now on, including across table compaction
+        for (int i = 0; i < 2000; i++) {
+            long id = store.getId(random.nextInt(store.size()));
+            int change = random.nextInt(3);
+            if (change == 0) {
+                store.add(ride(random));
+            } else if (change == 1) {
+                store.edit(id, ride(random));
+            } else {
+                store.delete(id);
+            }
+        }
+        assertOrder(store, sortedByDistance(store));
+        store.close();
+    }
+
+    @Test
+    public void descending_isTheReverse() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        long slow = store.add(new Ride("2019-03-01", "08:00", 10, 15, 70, ""));
+        long fast = store.add(new Ride("2019-01-01", "08:00", 10, 35, 90, ""));
+        long middle = store.add(new Ride("2019-02-01", "08:00", 10, 25, 80, ""));
+
+        long[] ids = new long[3];
+        RideRecord[] records = {new RideRecord(), new RideRecord(), new RideRecord()};
+        store.pageSource(RideSortIndex.SPEED, true).read(0, 3, ids, records);
+        assertArrayEquals(new long[]{fast, middle, slow}, ids);
+        store.pageSource(RideSortIndex.DATE, false).read(0, 3, ids, records);
+        assertArrayEquals(new long[]{fast, middle, slow}, ids);
+        store.pageSource(RideSortIndex.ADDED, true).read(1, 2, ids, records);
+        assertEquals(fast, ids[0]);
+        assertEquals(slow, ids[1]);
+        assertEquals(90, records[0].avgCadence);
+
+        // Equal distances keep the list order
+        store.pageSource(RideSortIndex.DISTANCE, false).read(0, 3, ids, records);
+        assertArrayEquals(new long[]{slow, fast, middle}, ids);
+        store.close();
+    }
+
+    @Test
+    public void rankAndSlot_areInverse() {
+        RideTable table = new RideTable();
+        RideRecord record = new RideRecord();
+        RideSortIndex index = new RideSortIndex(RideSortIndex.CADENCE);
+        for (int i = 0; i < 1000; i++) {
+            record.set(new Ride("2019-01-01", "08:00", 1, 1, (i * 37) % 101, ""));
+            index.add(table, table.add(i + 1, record));
+        }
+        RideSortIndex rebuilt = new RideSortIndex(RideSortIndex.CADENCE);
+        rebuilt.rebuild(table);
+        assertEquals(1000, index.size());
+        assertEquals(1000, rebuilt.size());
+        int last = -1;
+        for (int rank = 0; rank < 1000; rank++) {
+            int slot = index.slotAt(rank);
+            assertEquals(slot, rebuilt.slotAt(rank));
+            assertEquals(rank, index.rankOf(slot));
+            assertTrue(table.getAvgCadence(slot) >= last);
+            last = table.getAvgCadence(slot);
+        }
+        // A page walked in order has the same slots as looked up one by one
+        int[] slots = new int[100];
+        index.slots(450, 100, false, slots);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(index.slotAt(450 + i), slots[i]);
+        }
+        index.slots(0, 100, true, slots);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(index.slotAt(999 - i), slots[i]);
+        }
+        index.remove(index.slotAt(0));
+        assertEquals(-1, index.rankOf(rebuilt.slotAt(0)));
+        assertEquals(999, index.size());
+    }
+}
@@ -0,0 +1,267 @@
+package com.example.gatilogo_ridebook;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for RideStore and the RideJournal file format.
+ */
+public class RideStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final RideJournal.Replay IGNORE = new RideJournal.Replay() {
+        @Override
+        public void add(long key, RideRecord record) {
+        }
+
+        @Override
+        public void edit(long key, RideRecord record) {
+        }
+
+        @Override
+        public void delete(long key) {
+        }
+
+        @Override
+        public void restore(long key, RideRecord record) {
+        }
+    };
+
+    private static Ride ride(int day, float distance, String comment) {
+        return new Ride(String.format("2019-09-%02d", day), "07:30", distance, 20.5f, 85, comment);
+    }
+
+    @Test
+    public void changes_surviveReopen() throws IOException {
+        File dir = folder.getRoot();
+        RideStore store = RideStore.open(dir);
+        long first = store.add(ride(1, 10f, "first"));
+        long second = store.add(ride(2, 20f, ""));
+        long third = store.add(ride(3, 30f, "third"));
+        assertTrue(store.edit(second, ride(4, 25f, "edited")));
+        assertTrue(store.delete(first));
+        assertFalse(store.delete(first));
+        store.close();
+
+        RideStore reopened = RideStore.open(dir);
+        assertEquals(2, reopened.size());
+        assertEquals(second, reopened.getId(0));
+        assertEquals(third, reopened.getId(1));
+        assertEquals("2019-09-04", reopened.getRide(second).getDate());
+        assertEquals("07:30", reopened.getRide(second).getTime());
+        assertEquals(25f, reopened.getRide(second).getDistance(), 0);
+        assertEquals("edited", reopened.getRide(second).getComment());
+        assertEquals("third", reopened.getRide(third).getComment());
+        assertNull(reopened.getRide(first));
+
+        // IDs are never handed out twice
+        assertTrue(reopened.add(ride(5, 1f, "")) > third);
+        reopened.close();
+    }
+
+    @Test
+    public void records_readAndWrite() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        long id = store.add(ride(1, 10f, "record"));
+        RideRecord record = new RideRecord();
+        assertTrue(store.read(id, record));
+        assertEquals("record", new String(record.comment, 0, record.commentLength));
+
+        record.distance = 12f;
+        assertTrue(store.edit(id, record));
+        assertEquals(12f, store.getRide(id).getDistance(), 0);
+        assertEquals(12f, store.getAggregates().getTotalDistance(), 0);
+
+        long copy = store.add(record);
+        assertEquals(24f, store.getAggregates().getTotalDistance(), 0);
+        assertTrue(store.delete(copy));
+        assertFalse(store.read(copy, record));
+        store.close();
+    }
+
+    @Test
+    public void tornRecord_isDropped() throws IOException {
+        File dir = folder.getRoot();
+        RideStore store = RideStore.open(dir);
+        store.add(ride(1, 10f, "kept"));
+        store.add(ride(2, 20f, "torn"));
+        store.close();
+
+        // Simulate a crash in the middle of writing the last record
+        RandomAccessFile journal = new RandomAccessFile(new File(dir, RideJournal.JOURNAL_FILE), "rw");
+        journal.setLength(journal.length() - RideJournal.RECORD_SIZE / 2);
+        journal.close();
+
+        RideStore reopened = RideStore.open(dir);
+        assertEquals(1, reopened.size());
+        assertEquals("kept", reopened.getRide(reopened.getId(0)).getComment());
+
+        // Appends continue after the last good record
+        reopened.add(ride(3, 30f, "after"));
+        reopened.close();
+        reopened = RideStore.open(dir);
+        assertEquals(2, reopened.size());
+        assertEquals("after", reopened.getRide(reopened.getId(1)).getComment());
+        reopened.close();
+    }
+
+    @Test
+    public void compaction_keepsRides() throws IOException {
+        File dir = folder.getRoot();
+        RideStore store = RideStore.open(dir);
+        for (int i = 0; i < 3000; i++) {
+            store.add(ride(1 + i % 28, i, "ride " + i));
+        }
+        // Deleting most rides also squeezes the deleted slots out of the table
+        for (int i = 0; i < 2000; i++) {
+            store.delete(store.getId(0));
+        }
+        assertEquals("ride 2000", store.getRide(store.getId(0)).getComment());
+        assertTrue(store.getTable().deletedCount() < store.size());
+        store.close();
+
+        assertTrue(new File(dir, RideJournal.SNAPSHOT_FILE).exists());
+        assertTrue(new File(dir, RideJournal.JOURNAL_FILE).length() < 3000L * RideJournal.RECORD_SIZE);
+
+        RideStore reopened = RideStore.open(dir);
+        assertEquals(1000, reopened.size());
+        assertEquals("ride 2000", reopened.getRide(reopened.getId(0)).getComment());
+        assertEquals(2999f, reopened.getRide(reopened.getId(999)).getDistance(), 0);
+        assertEquals(999, reopened.positionOf(reopened.getId(999)));
+        reopened.close();
+    }
+
+    @Test
+    public void compaction_neverReusesIds() throws IOException {
+        File dir = folder.getRoot();
+        RideStore store = RideStore.open(dir);
+        long newest = 0;
+        for (int i = 0; i < 1023; i++) {
+            newest = store.add(ride(1 + i % 28, i, "ride " + i));
+        }
+        // The delete is the 1024th record, which compacts the journal without the newest ride
+        store.delete(newest);
+        store.close();
+        assertTrue(new File(dir, RideJournal.SNAPSHOT_FILE).exists());
+        assertTrue(new File(dir, RideJournal.JOURNAL_FILE).length() < RideJournal.RECORD_SIZE);
+
+        RideStore reopened = RideStore.open(dir);
+        assertEquals(1022, reopened.size());
+        long id = reopened.add(ride(1, 1, "new"));
+        assertTrue(id > newest);
+        reopened.close();
+
+        // Again with the added ride in the journal
+        reopened = RideStore.open(dir);
+        assertTrue(reopened.add(ride(2, 2, "newer")) > id);
+        reopened.close();
+    }
+
+    @Test
+    public void snapshot_keepsNextIdAbove32Bits() throws IOException {
+        File dir = folder.getRoot();
+        long next = (1L << 32) + 5;
+        RideJournal journal = new RideJournal(dir);
+        journal.load(IGNORE);
+        journal.compact(RidePager.EMPTY, next);
+        journal.close();
+
+        journal = new RideJournal(dir);
+        journal.load(IGNORE);
+        assertEquals(next, journal.getNextKey());
+        journal.close();
+
+        RideStore store = RideStore.open(dir);
+        assertEquals(next, store.add(ride(1, 1, "")));
+        store.close();
+        store = RideStore.open(dir);
+        assertEquals(next + 1, store.add(ride(2, 2, "")));
+        store.close();
+    }
+
+    @Test
+    public void version2Snapshot_isStillRead() throws IOException {
+        File dir = folder.getRoot();
+        RideStore store = RideStore.open(dir);
+        long newest = 0;
+        for (int i = 0; i < 1023; i++) {
+            newest = store.add(ride(1 + i % 28, i, "ride " + i));
+        }
+        store.delete(newest);
+        store.close();
+
+        // Turn the snapshot back into version 2, which kept the next key as an int
+        File snapshot = new File(dir, RideJournal.SNAPSHOT_FILE);
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(snapshot.toPath()));
+        long nextKey = bytes.getLong(20);
+        ByteBuffer old = ByteBuffer.allocate(bytes.capacity() - 4);
+        old.put(bytes.array(), 0, 20);
+        old.putInt(4, 2);
+        old.putInt((int) nextKey);
+        old.put(bytes.array(), 28, bytes.capacity() - 28);
+        Files.write(snapshot.toPath(), old.array());
+
+        RidePager.Source reader = RideJournal.SnapshotReader.open(dir);
+        long[] ids = new long[RidePager.PAGE_SIZE];
+        RideRecord[] records = new RideRecord[RidePager.PAGE_SIZE];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = new RideRecord();
+        }
+        assertEquals(RidePager.PAGE_SIZE, reader.read(1022 - RidePager.PAGE_SIZE, RidePager.PAGE_SIZE, ids, records));
+        ((RideJournal.SnapshotReader) reader).close();
+
+        RideStore reopened = RideStore.open(dir);
+        assertEquals(1022, reopened.size());
+        assertEquals(reopened.getId(1021), ids[RidePager.PAGE_SIZE - 1]);
+        assertEquals(1021f, reopened.getRide(ids[RidePager.PAGE_SIZE - 1]).getDistance(), 0);
+        assertTrue(reopened.add(ride(1, 1, "new")) > newest);
+        reopened.close();
+    }
+
+    @Test
+    public void reopen_indexesRidesOutOfOrder() throws IOException {
+        File dir = folder.getRoot();
+        RideStore store = RideStore.open(dir);
+        // Newest first, as after importing an export sorted by date
+        for (int i = 0; i < 600; i++) {
+            store.add(ride(28 - i % 28, i, "ride " + i));
+        }
+        store.delete(store.getId(0));
+        store.edit(store.getId(0), ride(1, 1, "edited"));
+        store.close();
+
+        RideStore reopened = RideStore.open(dir);
+        assertEquals(599, reopened.size());
+        long[] ids = reopened.rides(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        assertEquals(599, ids.length);
+        for (int i = 1; i < ids.length; i++) {
+            int previous = RideTime.parse(reopened.getRide(ids[i - 1]).getDate(), "00:00");
+            assertTrue(previous <= RideTime.parse(reopened.getRide(ids[i]).getDate(), "00:00"));
+        }
+        assertEquals(reopened.getId(0), reopened.firstRideFrom(RideTime.parse("2019-09-01", "00:00")));
+        assertEquals(-1, reopened.lastRideBefore(RideTime.parse("2019-09-01", "00:00")));
+        reopened.close();
+    }
+
+    @Test
+    public void rideTime_roundTrips() {
+        int minute = RideTime.parse("2019-09-11", "20:36");
+        assertEquals("2019-09-11", RideTime.formatDate(minute));
+        assertEquals("20:36", RideTime.formatTime(minute));
+        assertEquals(0, RideTime.parse("1970-01-01", "00:00"));
+        assertEquals("1969-12-31", RideTime.formatDate(-1));
+        assertEquals("23:59", RideTime.formatTime(-1));
+        assertEquals("2000-02-29", RideTime.formatDate(RideTime.parse("2000-02-29", "12:00")));
+    }
+}
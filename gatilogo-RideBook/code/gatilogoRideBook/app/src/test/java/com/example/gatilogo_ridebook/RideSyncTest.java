@@ -0,0 +1,466 @@
+package com.example.gatilogo_ridebook;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for RideSync, RideSyncLog and RideClock, against a sync server running in the
+ * test on a local port.
+ */
+public class RideSyncTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private StandInServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StandInServer();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop();
+    }
+
+    /**
+     * A device: a store, its sync log and a client, each in a folder of its own.
+     */
+    private final class Device {
+
+        final File dir;
+        final File logFile;
+        final RideSyncClient client = new RideSyncClient(server.url());
+        RideStore store;
+        IOException error;
+        int sent;
+        int received;
+
+        Device(String name) throws IOException {
+            dir = folder.newFolder(name);
+            logFile = new File(dir, "rides.sync");
+            store = RideStore.open(dir);
+        }
+
+        // Runs a sync to the end, reading the log back from its file like a new process would.
+        Device sync() throws IOException {
+            RideSync sync = new RideSync(store, DIRECT, RideSyncLog.open(logFile), logFile, client);
+            sync.setListener(new RideSync.Listener() {
+                @Override
+                public void onRidesChanged() {
+                }
+
+                @Override
+                public void onSyncFinished(RideSync sync, int sent, int received, IOException error) {
+                    Device.this.sent = sent;
+                    Device.this.received = received;
+                    Device.this.error = error;
+                }
+            });
+            sync.run();
+            return this;
+        }
+    }
+
+    private static Ride ride(int i) {
+        return new Ride(String.format("2019-%02d-%02d", 1 + i % 12, 1 + i % 28), "08:00", i % 50, 20, i % 90, "ride " + i);
+    }
+
+    // Returns every ride of the store as "date time distance speed cadence comment", sorted, since
+    // IDs and the order of the list differ between devices.
+    private static List<String> rides(RideStore store) {
+        List<String> rides = new ArrayList<>();
+        RideTable.Cursor cursor = store.getTable().cursor();
+        for (int i = 0; i < store.size(); i++) {
+            cursor.moveTo(i);
+            rides.add(cursor.getDate() + " " + cursor.getTime() + " " + cursor.getDistance() + " "
+                    + cursor.getAvgSpeed() + " " + cursor.getAvgCadence() + " " + cursor.getComment());
+        }
+        Collections.sort(rides);
+        return rides;
+    }
+
+    @Test
+    public void clock_ordersVersions() {
+        long[] a = RideClock.increment(RideClock.EMPTY, 7);
+        long[] b = RideClock.increment(a, 3);
+        long[] c = RideClock.increment(a, 7);
+        assertEquals(RideClock.EQUAL, RideClock.compare(a, a.clone()));
+        assertEquals(RideClock.BEFORE, RideClock.compare(a, b));
+        assertEquals(RideClock.AFTER, RideClock.compare(c, a));
+        assertEquals(RideClock.CONCURRENT, RideClock.compare(b, c));
+        long[] merged = RideClock.merge(b, c);
+        assertEquals(RideClock.AFTER, RideClock.compare(merged, b));
+        assertEquals(RideClock.AFTER, RideClock.compare(merged, c));
+        assertEquals(3, RideClock.sum(merged));
+        assertEquals(3, RideClock.deviceOf(merged[0]));
+        assertEquals(2, RideClock.counterOf(merged[1]));
+    }
+
+    @Test
+    public void log_survivesARestart() throws IOException {
+        File file = new File(folder.getRoot(), "rides.sync");
+        RideSyncLog log = RideSyncLog.open(file);
+        assertTrue(log.getDevice() > 0);
+        int entry = log.add(log.keyOf(5), 5);
+        log.set(entry, RideClock.increment(RideClock.EMPTY, log.getDevice()), 42, false, true);
+        int deleted = log.add(99L << 32 | 1, 0);
+        log.set(deleted, RideClock.increment(RideClock.EMPTY, 99), 0, true, false);
+        log.setCursor(17);
+        log.write(file);
+
+        RideSyncLog read = RideSyncLog.open(file);
+        assertEquals(log.getDevice(), read.getDevice());
+        assertEquals(17, read.getCursor());
+        assertEquals(2, read.size());
+        assertEquals(entry, read.entryOfRide(5));
+        assertEquals(42, read.getHash(entry));
+        assertTrue(read.isDirty(entry));
+        assertArrayEquals(log.getClock(entry), read.getClock(entry));
+        assertEquals(deleted, read.entryOfKey(99L << 32 | 1));
+        assertTrue(read.isDeleted(deleted));
+        assertFalse(read.isDirty(deleted));
+    }
+
+    @Test
+    public void sync_bringsDevicesTogether() throws IOException {
+        Device phone = new Device("phone");
+        Device tablet = new Device("tablet");
+        for (int i = 0; i < 2500; i++) {
+            phone.store.add(ride(i));
+        }
+        tablet.store.add(ride(5000));
+
+        phone.sync();
+        assertNull(phone.error);
+        assertEquals(2500, phone.sent);
+        tablet.sync();
+        assertNull(tablet.error);
+        assertEquals(1, tablet.sent);
+        assertEquals(2500, tablet.received);
+        phone.sync();
+        assertEquals(1, phone.received);
+        assertEquals(rides(phone.store), rides(tablet.store));
+        assertEquals(2501, phone.store.size());
+
+        // Only what changed is sent again
+        phone.store.edit(phone.store.getId(10), ride(6000));
+        phone.store.delete(phone.store.getId(20));
+        tablet.store.add(ride(7000));
+        tablet.store.delete(tablet.store.getId(2500));
+        phone.sync();
+        assertEquals(2, phone.sent);
+        tablet.sync();
+        assertEquals(2, tablet.sent);
+        assertEquals(2, tablet.received);
+        phone.sync();
+        assertEquals(2, phone.received);
+        assertEquals(rides(phone.store), rides(tablet.store));
+        assertEquals(2500, tablet.store.size());
+
+        // Nothing is sent when nothing changed, also after a restart
+        phone.store.close();
+        phone.store = RideStore.open(phone.dir);
+        phone.sync();
+        assertEquals(0, phone.sent);
+        assertEquals(0, phone.received);
+        phone.store.close();
+        tablet.store.close();
+    }
+
+    @Test
+    public void concurrentChanges_endTheSameOnEveryDevice() throws IOException {
+        Device phone = new Device("phone");
+        Device tablet = new Device("tablet");
+        for (int i = 0; i < 10; i++) {
+            phone.store.add(ride(i));
+        }
+        phone.sync();
+        tablet.sync();
+        RideRecord record = new RideRecord();
+
+        // Both edit ride 1, the tablet in two synced versions; one deletes ride 2 and the other
+        // edits it
+        long phoneRide1 = phone.store.getId(1);
+        phone.store.edit(phoneRide1, ride(100));
+        phone.store.delete(phone.store.getId(2));
+        long tabletRide1 = tablet.store.getId(1);
+        long tabletRide2 = tablet.store.getId(2);
+        tablet.store.edit(tabletRide1, ride(200));
+        tablet.store.edit(tabletRide2, ride(201));
+        tablet.sync();
+        tablet.store.edit(tabletRide1, ride(300));
+        tablet.sync();
+        phone.sync();
+        tablet.sync();
+        phone.sync();
+
+        assertEquals(rides(phone.store), rides(tablet.store));
+        assertEquals(10, phone.store.size());
+        // The tablet's ride 1 has more versions, and the edit of ride 2 beats the delete
+        assertTrue(phone.store.read(phoneRide1, record));
+        assertEquals(new RideRecord().set(ride(300)).epochMinute, record.epochMinute);
+        assertTrue(tablet.store.read(tabletRide2, record));
+        assertEquals(new RideRecord().set(ride(201)).distance, record.distance, 0);
+
+        // Changed again while nobody syncs, then synced in the other order
+        phone.store.edit(phone.store.getId(5), ride(400));
+        tablet.store.edit(tablet.store.getId(5), ride(500));
+        phone.sync();
+        tablet.sync();
+        phone.sync();
+        assertEquals(rides(phone.store), rides(tablet.store));
+        // One version each, so the larger hash wins on both
+        long phoneHash = RideChange.hash(new RideRecord().set(ride(400)));
+        long tabletHash = RideChange.hash(new RideRecord().set(ride(500)));
+        Ride winner = phoneHash >= tabletHash ? ride(400) : ride(500);
+        assertTrue(phone.store.read(phone.store.getId(5), record));
+        assertEquals(new RideRecord().set(winner).avgCadence, record.avgCadence);
+        phone.store.close();
+        tablet.store.close();
+    }
+
+    @Test
+    public void interruptedSync_isResumed() throws IOException {
+        Device phone = new Device("phone");
+        Device tablet = new Device("tablet");
+        RideRecord[] records = new RideRecord[5500];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = new RideRecord().set(ride(i));
+        }
+        phone.store.addAll(records, records.length);
+
+        // The connection drops after three of six batches
+        server.failAfter(3);
+        phone.sync();
+        assertNotNull(phone.error);
+        assertEquals(3 * RideSync.BATCH_SIZE, phone.sent);
+        phone.sync();
+        assertNull(phone.error);
+        assertEquals(records.length - 3 * RideSync.BATCH_SIZE, phone.sent);
+        assertEquals(6, server.pushes);
+
+        // Same for reading the feed
+        server.failAfter(2);
+        tablet.sync();
+        assertNotNull(tablet.error);
+        assertEquals(2 * RideSync.BATCH_SIZE, tablet.received);
+        assertEquals(2 * RideSync.BATCH_SIZE, tablet.store.size());
+        tablet.sync();
+        assertNull(tablet.error);
+        assertEquals(records.length - 2 * RideSync.BATCH_SIZE, tablet.received);
+        assertEquals(rides(phone.store), rides(tablet.store));
+        phone.store.close();
+        tablet.store.close();
+    }
+
+    @Test
+    public void largeAccount_isSyncedInFewBytesPerRide() throws IOException {
+        Device phone = new Device("phone");
+        Device tablet = new Device("tablet");
+        int count = 100000;
+        RideRecord[] records = new RideRecord[count];
+        for (int i = 0; i < count; i++) {
+            records[i] = new RideRecord().set(ride(i));
+        }
+        phone.store.addAll(records, count);
+
+        long start = System.nanoTime();
+        phone.sync();
+        tablet.sync();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        assertNull(phone.error);
+        assertNull(tablet.error);
+        assertEquals(count, tablet.store.size());
+        assertEquals(rides(phone.store), rides(tablet.store));
+
+        long sentPerRide = phone.client.getBytesSent() / count;
+        long receivedPerRide = tablet.client.getBytesReceived() / count;
+        String measured = count / seconds + " rides/s, " + sentPerRide + " bytes per ride sent, "
+                + receivedPerRide + " received";
+        // A ride takes about 55 bytes before compression
+        assertTrue(measured, sentPerRide <= 16);
+        assertTrue(measured, receivedPerRide <= 16);
+        assertTrue(measured, count / seconds > 1000);
+
+        // Another sync sends nothing and receives next to nothing
+        long sentBefore = phone.client.getBytesSent();
+        long receivedBefore = phone.client.getBytesReceived();
+        phone.sync();
+        assertEquals(sentBefore, phone.client.getBytesSent());
+        assertTrue(phone.client.getBytesReceived() - receivedBefore < 100);
+        phone.store.close();
+        tablet.store.close();
+    }
+
+    /**
+     * Stand-in for the sync server on a local port. It keeps the latest version of every ride with
+     * the number it was accepted under, resolving concurrent versions like the devices do.
+     */
+    private static final class StandInServer {
+
+        private final HttpServer http;
+        private final Map<Long, RideChange> rides = new HashMap<>();
+        private final Map<Long, Long> sequenceOf = new HashMap<>();
+        private final Map<Long, Integer> pushedBy = new HashMap<>();
+        private final TreeMap<Long, Long> feed = new TreeMap<>();
+        private long sequence;
+        private int requestsLeft = Integer.MAX_VALUE;
+        int pushes;
+
+        StandInServer() throws IOException {
+            http = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            http.createContext("/push", new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    if (fail(exchange)) {
+                        return;
+                    }
+                    push(exchange.getRequestBody());
+                    pushes++;
+                    exchange.sendResponseHeaders(204, -1);
+                    exchange.close();
+                }
+            });
+            http.createContext("/changes", new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    if (fail(exchange)) {
+                        return;
+                    }
+                    Map<String, Long> query = new HashMap<>();
+                    for (String parameter : exchange.getRequestURI().getQuery().split("&")) {
+                        String[] pair = parameter.split("=");
+                        query.put(pair[0], Long.parseLong(pair[1]));
+                    }
+                    byte[] body = changes((int) (long) query.get("device"), query.get("since"),
+                            (int) (long) query.get("limit"));
+                    exchange.sendResponseHeaders(200, body.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(body);
+                    out.close();
+                }
+            });
+            http.start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + http.getAddress().getPort() + "/";
+        }
+
+        void stop() {
+            http.stop(0);
+        }
+
+        // Answers every request after the next count with an error.
+        synchronized void failAfter(int count) {
+            requestsLeft = count;
+        }
+
+        private synchronized boolean fail(HttpExchange exchange) throws IOException {
+            if (requestsLeft-- > 0) {
+                return false;
+            }
+            requestsLeft = Integer.MAX_VALUE;
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return true;
+        }
+
+        private synchronized void push(InputStream body) throws IOException {
+            DataInputStream in = new DataInputStream(new InflaterInputStream(body));
+            assertEquals(RideSync.PUSH_MAGIC, in.readInt());
+            int device = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                RideChange change = new RideChange();
+                change.read(in);
+                RideChange current = rides.get(change.key);
+                int order = current == null ? RideClock.AFTER : RideClock.compare(change.clock, current.clock);
+                if (order == RideClock.BEFORE || order == RideClock.EQUAL) {
+                    continue;
+                }
+                int by = device;
+                if (order == RideClock.CONCURRENT) {
+                    long[] merged = RideClock.merge(change.clock, current.clock);
+                    if (!change.winsOver(current.clock, current.deleted, current.hash())) {
+                        change = current;
+                    }
+                    change.clock = merged;
+                    // The device that pushed doesn't have the merged version yet
+                    by = 0;
+                }
+                Long previous = sequenceOf.get(change.key);
+                if (previous != null) {
+                    feed.remove(previous);
+                }
+                rides.put(change.key, change);
+                sequenceOf.put(change.key, ++sequence);
+                pushedBy.put(change.key, by);
+                feed.put(sequence, change.key);
+            }
+        }
+
+        private synchronized byte[] changes(int device, long since, int limit) throws IOException {
+            List<RideChange> batch = new ArrayList<>();
+            long last = since;
+            boolean more = false;
+            for (Map.Entry<Long, Long> entry : feed.tailMap(since, false).entrySet()) {
+                if (batch.size() == limit) {
+                    more = true;
+                    break;
+                }
+                last = entry.getKey();
+                if (pushedBy.get(entry.getValue()) != device) {
+                    batch.add(rides.get(entry.getValue()));
+                }
+            }
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(body));
+            out.writeInt(RideSync.FEED_MAGIC);
+            out.writeLong(last);
+            out.writeBoolean(more);
+            out.writeInt(batch.size());
+            for (RideChange change : batch) {
+                change.write(out);
+            }
+            out.close();
+            return body.toByteArray();
+        }
+    }
+}
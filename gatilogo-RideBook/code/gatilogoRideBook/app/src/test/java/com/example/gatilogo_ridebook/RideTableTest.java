@@ -0,0 +1,118 @@
+package com.example.gatilogo_ridebook;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for RideTable and its CommentPool.
+ */
+public class RideTableTest {
+
+    private static RideRecord record(int epochMinute, float distance, String comment) {
+        return new RideRecord().set(new Ride(
+                RideTime.formatDate(epochMinute), RideTime.formatTime(epochMinute),
+                distance, 25f, 80, comment));
+    }
+
+    @Test
+    public void rows_keepInsertionOrder() {
+        RideTable table = new RideTable();
+        table.add(11, record(0, 1f, "a"));
+        table.add(12, record(60, 2f, "b"));
+        table.add(13, record(120, 3f, "c"));
+        table.remove(table.slotOf(12));
+        table.set(table.slotOf(11), record(30, 4f, "d"));
+
+        RideTable.Cursor cursor = table.cursor();
+        assertEquals(2, table.size());
+        assertEquals(30, cursor.moveTo(0).getEpochMinute());
+        assertEquals(4f, cursor.getDistance(), 0);
+        assertEquals("d", cursor.getComment());
+        assertEquals("c", cursor.moveTo(1).getComment());
+        assertEquals(13, cursor.getId());
+        assertEquals("1970-01-01", cursor.getDate());
+        assertEquals("02:00", cursor.getTime());
+        assertEquals(-1, table.slotOf(12));
+    }
+
+    @Test
+    public void memory_staysWithinStatedBytesPerRide() {
+        RideTable table = new RideTable();
+        RideRecord record = record(0, 1f, "");
+        double least = Double.MAX_VALUE;
+        double most = 0;
+        for (int id = 1; id <= 300000; id++) {
+            table.add(id, record);
+            if (id >= 1000) {
+                double perRide = table.memoryBytes() / (double) id;
+                least = Math.min(least, perRide);
+                most = Math.max(most, perRide);
+            }
+        }
+        // 28 bytes of columns and 4 of the Fenwick tree for every slot, and 12 bytes for every
+        // entry of the hash index, which is at most half full. Arrays double when they are full.
+        assertEquals(56, least, 0.01);
+        assertEquals(112, most, 0.01);
+    }
+
+    @Test
+    public void positions_skipDeletedSlots() {
+        RideTable table = new RideTable();
+        for (int id = 1; id <= 100; id++) {
+            table.add(id, record(id, id, ""));
+        }
+        for (int id = 1; id <= 100; id += 3) {
+            table.remove(table.slotOf(id));
+        }
+
+        assertEquals(66, table.size());
+        assertEquals(34, table.deletedCount());
+        for (int position = 0; position < table.size(); position++) {
+            int slot = table.slotAt(position);
+            assertEquals(position, table.positionOf(slot));
+            assertTrue(table.getId(slot) % 3 != 1);
+        }
+
+        long idAt50 = table.getId(table.slotAt(50));
+        table.compact();
+        assertEquals(0, table.deletedCount());
+        assertEquals(66, table.slotCount());
+        assertEquals(idAt50, table.getId(table.slotAt(50)));
+        assertEquals(50, table.slotOf(idAt50));
+        assertEquals(idAt50, table.getDistance(50), 0);
+    }
+
+    @Test
+    public void comments_areSharedAndReleased() {
+        CommentPool pool = new CommentPool();
+        int first = pool.acquire("morning");
+        int second = pool.acquire("morning");
+        assertEquals(first, second);
+        assertEquals(CommentPool.EMPTY, pool.acquire(""));
+        assertEquals(1, pool.size());
+
+        pool.release(first);
+        assertEquals("morning", pool.get(second));
+        pool.release(second);
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void commentPool_survivesChurn() {
+        CommentPool pool = new CommentPool();
+        int[] refs = new int[2000];
+        for (int i = 0; i < refs.length; i++) {
+            refs[i] = pool.acquire("c" + i);
+        }
+        // Free every other comment, then look the rest up again
+        for (int i = 0; i < refs.length; i += 2) {
+            pool.release(refs[i]);
+        }
+        for (int i = 1; i < refs.length; i += 2) {
+            assertEquals(refs[i], pool.acquire("c" + i));
+            assertEquals("c" + i, pool.get(refs[i]));
+        }
+        assertEquals(refs.length / 2, pool.size());
+    }
+}
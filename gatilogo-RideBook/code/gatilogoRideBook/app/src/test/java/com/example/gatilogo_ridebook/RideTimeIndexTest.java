@@ -0,0 +1,59 @@
+package com.example.gatilogo_ridebook;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for RideTimeIndex and the time queries of RideStore.
+ */
+public class RideTimeIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void rangeQueries_followSortedTime() {
+        RideTimeIndex index = new RideTimeIndex();
+        index.add(300, 0);
+        index.add(100, 1);
+        index.add(200, 2);
+        index.add(100, 3);
+
+        assertArrayEquals(new int[] {1, 3, 2}, index.slots(100, 300));
+        assertArrayEquals(new int[] {0, 2, 3, 1}, index.slotsDescending(0, 1000));
+        assertArrayEquals(new int[0], index.slots(301, 1000));
+        assertEquals(2, index.firstFrom(101));
+        assertEquals(-1, index.firstFrom(301));
+        assertEquals(3, index.lastBefore(200));
+    }
+
+    @Test
+    public void store_keepsIndexAcrossEdits() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        long first = store.add(new Ride("2019-09-01", "08:00", 10f, 20f, 80, ""));
+        long second = store.add(new Ride("2019-09-15", "08:00", 20f, 20f, 80, ""));
+        long third = store.add(new Ride("2019-10-01", "08:00", 30f, 20f, 80, ""));
+
+        int september = RideTime.parse("2019-09-01", "00:00");
+        int october = RideTime.parse("2019-10-01", "00:00");
+        assertArrayEquals(new long[] {first, second}, store.rides(september, october));
+
+        // Move the first ride into October
+        store.edit(first, new Ride("2019-10-02", "08:00", 10f, 20f, 80, ""));
+        assertArrayEquals(new long[] {second}, store.rides(september, october));
+        assertArrayEquals(new long[] {first, third}, store.ridesDescending(october, Integer.MAX_VALUE));
+        assertEquals(second, store.firstRideFrom(september + 1));
+        assertEquals(second, store.lastRideBefore(october));
+
+        store.delete(second);
+        assertArrayEquals(new long[] {third, first}, store.rides(october, Integer.MAX_VALUE));
+        assertEquals(-1, store.lastRideBefore(october));
+        assertEquals(40.0, store.getAggregates(october, Integer.MAX_VALUE).getTotalDistance(), 1e-9);
+        store.close();
+    }
+}
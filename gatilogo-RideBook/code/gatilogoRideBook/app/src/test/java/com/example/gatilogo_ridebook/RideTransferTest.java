@@ -0,0 +1,141 @@
+package com.example.gatilogo_ridebook;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for CSV import and export through RideImporter and RideExporter.
+ */
+public class RideTransferTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Runs main thread work right away, so a transfer can be run on the test thread
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static class Recorder implements RideTransfer.Listener {
+        final List<Integer> batches = new ArrayList<>();
+        final List<String> rejected = new ArrayList<>();
+        int rides = -1;
+        IOException error;
+
+        @Override
+        public void onRidesAdded(int position, int count) {
+            batches.add(count);
+        }
+
+        @Override
+        public void onLineRejected(long line, int field, int error) {
+            rejected.add(line + ":" + field + ":" + error);
+        }
+
+        @Override
+        public void onTransferFinished(RideTransfer transfer, int rides, int rejected, IOException error) {
+            this.rides = rides;
+            this.error = error;
+        }
+    }
+
+    @Test
+    public void csvImport_reportsBadLines() throws IOException {
+        String csv = "date,time,distance,avg_speed,avg_cadence,comment\r\n"
+                + "2019-09-11,20:36,12.5,21.3,85,to work\r\n"
+                + "\r\n"
+                + "2019-09-12,07:05,,20,80,\n"
+                + "2019-09-13,7:05,3,20,80,\"a \"\"quoted\"\", comment\"\n"
+                + "2019-02-30,07:05,3,20,80,\n"
+                + "2019-09-14,07:05,3,20,80,this comment is too long\n"
+                + "2019-09-15,07:05,3.x,20,80,\n"
+                + "2019-09-16,07:05,3\n"
+                + "2019-09-17,07:05,1e3,20,80";
+        RideStore store = RideStore.open(folder.getRoot());
+        Recorder recorder = new Recorder();
+        RideImporter importer = new RideImporter(store, DIRECT, new RideCsvReader(new StringReader(csv)));
+        importer.setListener(recorder);
+        importer.run();
+
+        assertNull(recorder.error);
+        assertEquals(2, recorder.rides);
+        assertEquals(2, store.size());
+        assertEquals("to work", store.getRide(store.getId(0)).getComment());
+        assertEquals(12.5f, store.getRide(store.getId(0)).getDistance(), 0);
+        assertEquals("a \"quoted\", comment", store.getRide(store.getId(1)).getComment());
+        assertEquals("07:05", store.getRide(store.getId(1)).getTime());
+
+        assertEquals(6, recorder.rejected.size());
+        assertEquals("4:2:" + RideValidator.EMPTY_FIELD, recorder.rejected.get(0));
+        assertEquals("6:0:" + RideValidator.BAD_DATE, recorder.rejected.get(1));
+        assertEquals("7:5:" + RideValidator.COMMENT_TOO_LONG, recorder.rejected.get(2));
+        assertEquals("8:2:" + RideValidator.BAD_NUMBER, recorder.rejected.get(3));
+        assertEquals("9:-1:" + RideValidator.BAD_FORMAT, recorder.rejected.get(4));
+        assertEquals("10:2:" + RideValidator.BAD_NUMBER, recorder.rejected.get(5));
+        store.close();
+    }
+
+    @Test
+    public void csv_roundTripsInBatches() throws IOException {
+        int count = RideBatch.CAPACITY * 2 + 10;
+        RideStore store = RideStore.open(folder.newFolder("from"));
+        for (int i = 0; i < count; i++) {
+            store.add(new Ride("2019-09-11", "20:36", i + 0.25f, 20.5f, 80 + i % 10, "ride " + i));
+        }
+
+        StringWriter csv = new StringWriter();
+        Recorder exported = new Recorder();
+        RideExporter exporter = new RideExporter(store, DIRECT, new RideCsvWriter(csv));
+        exporter.setListener(exported);
+        exporter.run();
+        assertEquals(count, exported.rides);
+        store.close();
+
+        File to = folder.newFolder("to");
+        RideStore copy = RideStore.open(to);
+        Recorder imported = new Recorder();
+        RideImporter importer = new RideImporter(copy, DIRECT,
+                new RideCsvReader(new StringReader(csv.toString())));
+        importer.setListener(imported);
+        importer.run();
+
+        assertEquals(count, imported.rides);
+        assertTrue(imported.rejected.isEmpty());
+        assertEquals(3, imported.batches.size());
+        assertEquals(RideBatch.CAPACITY, (int) imported.batches.get(0));
+        Ride last = copy.getRide(copy.getId(count - 1));
+        assertEquals(count - 1 + 0.25f, last.getDistance(), 0);
+        assertEquals("ride " + (count - 1), last.getComment());
+        copy.close();
+
+        // The batched journal writes survive a reopen
+        RideStore reopened = RideStore.open(to);
+        assertEquals(count, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    public void codec_parsesNumbers() {
+        String text = "-12.750|0.1|123456789012345678901.5|+7|2147483648";
+        assertEquals(-12.75f, RideCodec.parseFloat(text, 0, 6), 0);
+        assertEquals(0.1f, RideCodec.parseFloat(text, 8, 11), 0);
+        assertEquals(123456789012345678901.5f, RideCodec.parseFloat(text, 12, 35), 0);
+        assertEquals(7, RideCodec.parseInt(text, 36, 38));
+        assertEquals(Long.MIN_VALUE, RideCodec.parseInt(text, 39, 49));
+        assertTrue(Float.isNaN(RideCodec.parseFloat(text, 7, 8)));
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.gatilogo_ridebook;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for RideUndoLog and undo and redo in RideStore.
+ */
+public class RideUndoLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static Ride ride(int i) {
+        return new Ride(String.format("2019-%02d-%02d", 1 + i % 12, 1 + i % 28), "08:00", i % 50, 20, i % 90, "ride " + i);
+    }
+
+    // Returns every ride of the store as "id date distance cadence comment", in list order.
+    private static List<String> rides(RideStore store) {
+        List<String> rides = new ArrayList<>();
+        RideTable.Cursor cursor = store.getTable().cursor();
+        for (int i = 0; i < store.size(); i++) {
+            cursor.moveTo(i);
+            rides.add(cursor.getId() + " " + cursor.getDate() + " " + cursor.getDistance() + " "
+                    + cursor.getAvgCadence() + " " + cursor.getComment());
+        }
+        return rides;
+    }
+
+    @Test
+    public void undo_takesBackDeleteEditAndAdd() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        for (int i = 0; i < 100; i++) {
+            store.addAll(new RideRecord[] {new RideRecord().set(ride(i))}, 1);
+        }
+        assertFalse(store.canUndo());
+        List<String> before = rides(store);
+        long deleted = store.getId(40);
+        long edited = store.getId(60);
+        double total = store.getAggregates().getTotalDistance();
+
+        store.delete(deleted);
+        store.edit(edited, new Ride("2020-05-05", "10:00", 99, 30, 95, "edited"));
+        long added = store.add(ride(100));
+        List<String> after = rides(store);
+
+        assertEquals(added, store.undo());
+        assertEquals(edited, store.undo());
+        assertEquals(deleted, store.undo());
+        assertFalse(store.canUndo());
+        assertEquals(before, rides(store));
+        assertEquals(40, store.positionOf(deleted));
+        assertEquals(total, store.getAggregates().getTotalDistance(), 0.001);
+        assertEquals(before.size(), store.rides(Integer.MIN_VALUE, Integer.MAX_VALUE).length);
+        assertArrayEquals(new long[] {deleted}, store.search("ride 40"));
+
+        assertEquals(deleted, store.redo());
+        assertEquals(edited, store.redo());
+        assertEquals(added, store.redo());
+        assertFalse(store.canRedo());
+        assertEquals(after, rides(store));
+
+        // A new change drops what could be redone
+        store.undo();
+        store.delete(store.getId(0));
+        assertFalse(store.canRedo());
+        store.close();
+    }
+
+    @Test
+    public void undoDelete_onlyTakesBackThatDelete() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        long kept = store.add(ride(0));
+        long deleted = store.add(ride(1));
+        store.delete(deleted);
+        long added = store.add(ride(2));
+
+        // A later change is in the way, and other rides weren't deleted
+        assertFalse(store.undoDelete(deleted));
+        assertFalse(store.undoDelete(kept));
+        assertEquals(2, store.size());
+        assertEquals(added, store.getId(1));
+
+        assertEquals(added, store.undo());
+        assertFalse(store.undoDelete(kept));
+        assertTrue(store.undoDelete(deleted));
+        assertEquals(deleted, store.getId(1));
+        // Undoing the add of the ride doesn't count as undoing its delete
+        assertFalse(store.undoDelete(deleted));
+        assertEquals(2, store.size());
+        store.close();
+    }
+
+    @Test
+    public void undo_putsRidesBackAfterTheTableWasCompacted() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        for (int i = 0; i < 300; i++) {
+            store.add(ride(i));
+        }
+        // Build a sort index and a snapshot, which store slots
+        store.positionOf(store.getId(0), RideSortIndex.DISTANCE, false);
+        store.snapshot();
+        List<String> before = new ArrayList<>(rides(store));
+        for (int i = 0; i < 200; i++) {
+            store.delete(store.getId(i % 3 == 0 ? 0 : store.size() - 1));
+        }
+        assertEquals(100, store.size());
+
+        // Only the last deletes are still in the log
+        int undone = 0;
+        while (store.canUndo()) {
+            store.undo();
+            undone++;
+        }
+        assertEquals(RideUndoLog.CAPACITY, undone);
+        List<String> restored = rides(store);
+        assertEquals(100 + RideUndoLog.CAPACITY, restored.size());
+        assertTrue(before.containsAll(restored));
+        for (int i = 1; i < store.size(); i++) {
+            assertTrue(store.getId(i - 1) < store.getId(i));
+        }
+        assertEquals(restored.size(), store.snapshot().size());
+        for (int i = 0; i < store.size(); i++) {
+            long id = store.getId(i);
+            assertEquals(id, store.snapshot().getId(i));
+            assertTrue(store.positionOf(id, RideSortIndex.DISTANCE, false) >= 0);
+        }
+        store.close();
+
+        RideStore reopened = RideStore.open(folder.getRoot());
+        assertEquals(restored, rides(reopened));
+        reopened.close();
+    }
+
+    @Test
+    public void log_keepsTheLastChangesOnly() {
+        RideUndoLog log = new RideUndoLog();
+        RideRecord record = new RideRecord().set(ride(1));
+        for (int i = 1; i <= 100; i++) {
+            log.recordExists(i, record);
+        }
+        assertEquals(RideUndoLog.CAPACITY, log.size());
+        assertEquals(100, log.getId(log.undo()));
+        assertEquals(99, log.getId(log.undo()));
+        assertEquals(99, log.getId(log.redo()));
+
+        // An edit keeps only the fields that changed, and swapping turns it around
+        RideRecord after = new RideRecord().set(ride(1));
+        after.distance = 42;
+        log.recordEdit(7, record, after);
+        assertFalse(log.canRedo());
+        int entry = log.undo();
+        assertEquals(RideUndoLog.DISTANCE, log.getMask(entry));
+        log.swap(entry, after);
+        assertEquals(record.distance, after.distance, 0);
+        assertEquals(42, log.getValues(entry).distance, 0);
+
+        // An edit that changes nothing isn't recorded, so it doesn't drop what can be redone
+        log.recordEdit(8, record, new RideRecord().set(ride(1)));
+        assertEquals(7, log.getId(log.redo()));
+    }
+
+    @Test
+    public void undo_survivesARestartWithSamples() throws IOException {
+        RideStore store = RideStore.open(folder.getRoot());
+        store.startWriteBehind(60 * 60 * 1000, DIRECT, null);
+        long first = store.add(ride(1));
+        long id = store.add(ride(2));
+        store.add(ride(3));
+        RideSamples.Encoder encoder = new RideSamples.Encoder(RideSamples.CADENCE);
+        for (int second = 0; second < 60; second += 2) {
+            encoder.add(second, 0, 70, 0, 0);
+        }
+        store.setSamples(id, encoder.build());
+        // Deleted and restored before the writer ran, which is written as an edit
+        store.delete(first);
+        store.undo();
+        store.delete(id);
+        List<String> deleted = rides(store);
+        store.close();
+        File samplesDir = new File(folder.getRoot(), "samples");
+        assertFalse(new File(samplesDir, id + ".samples").exists());
+
+        RideStore reopened = RideStore.open(folder.getRoot());
+        assertEquals(deleted, rides(reopened));
+        assertTrue(reopened.canUndo());
+        assertEquals(id, reopened.undo());
+        assertEquals(1, reopened.positionOf(id));
+        assertEquals(70, reopened.getRide(id).getAvgCadence());
+        assertTrue(reopened.getSamples(id) != null);
+        assertEquals(id, reopened.redo());
+        reopened.close();
+
+        // The samples of a ride whose delete can no longer be undone are cleaned up
+        reopened = RideStore.open(folder.getRoot());
+        assertTrue(new File(samplesDir, id + ".samples.deleted").exists());
+        for (int i = 0; i < RideUndoLog.CAPACITY; i++) {
+            reopened.add(ride(i));
+        }
+        reopened.close();
+        RideStore.open(folder.getRoot()).close();
+        assertFalse(new File(samplesDir, id + ".samples.deleted").exists());
+    }
+}
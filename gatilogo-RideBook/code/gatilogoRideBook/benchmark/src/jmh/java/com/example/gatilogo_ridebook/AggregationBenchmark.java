@@ -0,0 +1,80 @@
+package com.example.gatilogo_ridebook;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AggregationBenchmark class
+ *
+ * Cost of the total distance shown under the list and of other statistics, for histories of
+ * different sizes: a pass over a list of Ride objects, like updateTotalDistance used to do,
+ * against the incrementally kept RideAggregates and the RideRollups range sums.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AggregationBenchmark {
+
+    @Param({RideHistory.SMALL, RideHistory.LARGE, RideHistory.HUGE})
+    public int rides;
+
+    private List<Ride> list;
+    private RideAggregates aggregates;
+    private RideRollups rollups;
+    private int firstDay;
+    private int lastDay;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        list = RideHistory.rides(rides);
+        aggregates = new RideAggregates();
+        rollups = new RideRollups();
+        RideRecord[] records = RideHistory.records(rides);
+        for (RideRecord record : records) {
+            aggregates.add(record.distance, record.avgSpeed, record.avgCadence);
+            rollups.add(record.epochMinute, record.distance, record.avgSpeed);
+        }
+        firstDay = RideTime.dayOf(records[0].epochMinute);
+        lastDay = RideTime.dayOf(records[rides - 1].epochMinute);
+    }
+
+    // What updateTotalDistance did on every change
+    @Benchmark
+    public float listTotalDistance() {
+        float total = 0;
+        for (Ride ride : list) {
+            total += ride.getDistance();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double aggregatesTotalDistance() {
+        return aggregates.getTotalDistance();
+    }
+
+    // The work done for one added and one deleted ride
+    @Benchmark
+    public double aggregatesAddRemove() {
+        aggregates.add(12.5f, 21.3f, 85);
+        aggregates.remove(12.5f, 21.3f, 85);
+        return aggregates.getAverageSpeed();
+    }
+
+    // Count, distance and average speed over the middle half of the history
+    @Benchmark
+    public int rollupsRange() {
+        int quarter = (lastDay - firstDay) / 4;
+        return rollups.get(firstDay + quarter, lastDay - quarter).getCount();
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.gatilogo_ridebook;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DateTimeParsingBenchmark class
+ *
+ * Cost of turning the date and time fields of a ride into a packed minute: the split() and
+ * Integer.parseInt() code AddEditRideActivity used to have, RideTime.parse() on Strings, and the
+ * RideCodec parsers used by the editor and imports, which read characters without creating Strings.
+ * Each invocation parses the same 1024 generated rides.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DateTimeParsingBenchmark {
+
+    private static final int COUNT = 1024;
+
+    private final String[] dates = new String[COUNT];
+    private final String[] times = new String[COUNT];
+    private final String[] distances = new String[COUNT];
+
+    @Setup
+    public void setUp() {
+        RideRecord[] records = RideHistory.records(COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            dates[i] = RideTime.formatDate(records[i].epochMinute);
+            times[i] = RideTime.formatTime(records[i].epochMinute);
+            distances[i] = Float.toString(records[i].distance);
+        }
+    }
+
+    // The way AddEditRideActivity used to read the date and time fields
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public int splitDateTime() {
+        int sum = 0;
+        for (int i = 0; i < COUNT; i++) {
+            String[] date = dates[i].trim().split("-");
+            String[] time = times[i].trim().split(":");
+            sum += RideTime.epochMinute(Integer.parseInt(date[0]), Integer.parseInt(date[1]),
+                    Integer.parseInt(date[2]), Integer.parseInt(time[0]), Integer.parseInt(time[1]));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public int rideTimeParse() {
+        int sum = 0;
+        for (int i = 0; i < COUNT; i++) {
+            sum += RideTime.parse(dates[i], times[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public int codecDateTime() {
+        int sum = 0;
+        for (int i = 0; i < COUNT; i++) {
+            sum += RideCodec.parseDate(dates[i], 0, dates[i].length()) * RideTime.MINUTES_PER_DAY
+                    + RideCodec.parseTime(times[i], 0, times[i].length());
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public float floatParseFloat() {
+        float sum = 0;
+        for (int i = 0; i < COUNT; i++) {
+            sum += Float.parseFloat(distances[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public float codecParseFloat() {
+        float sum = 0;
+        for (int i = 0; i < COUNT; i++) {
+            sum += RideCodec.parseFloat(distances[i], 0, distances[i].length());
+        }
+        return sum;
+    }
+}
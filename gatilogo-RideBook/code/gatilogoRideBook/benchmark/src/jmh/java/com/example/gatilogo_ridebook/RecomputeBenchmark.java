@@ -0,0 +1,89 @@
+package com.example.gatilogo_ridebook;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RecomputeBenchmark class
+ *
+ * Cost of rebuilding all statistics of a store with RideRecompute, with one worker against one
+ * per processor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RecomputeBenchmark {
+
+    @Param({RideHistory.LARGE, RideHistory.HUGE})
+    public int rides;
+
+    @Param({"1", "0"})          // 0 = one worker per processor
+    public int workers;
+
+    private File dir;
+    private RideStore store;
+    private ExecutorService pool;
+    private final LinkedBlockingQueue<Runnable> mainQueue = new LinkedBlockingQueue<>();
+    private final Executor mainThread = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            mainQueue.add(command);
+        }
+    };
+    private boolean finished;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = File.createTempFile("recompute", "");
+        dir.delete();
+        dir.mkdirs();
+        store = RideHistory.store(dir, rides);
+        int parallelism = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        pool = Executors.newFixedThreadPool(parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pool.shutdown();
+        store.close();
+        RideHistory.delete(dir);
+    }
+
+    @Benchmark
+    public double recompute() throws InterruptedException {
+        int parallelism = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        RideRecompute recompute = new RideRecompute(store, pool, parallelism, mainThread);
+        finished = false;
+        recompute.setListener(new RideRecompute.Listener() {
+            @Override
+            public void onRecomputeProgress(int done, int total) {
+            }
+
+            @Override
+            public void onRecomputeFinished(boolean applied) {
+                finished = true;
+            }
+        });
+        recompute.start();
+        while (!finished) {
+            mainQueue.take().run();
+        }
+        return store.getAggregates().getTotalDistance();
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.gatilogo_ridebook;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RideCodecBenchmark class
+ *
+ * Cost of checking and reading all fields of a ride as the editor does when it saves: the
+ * ArrayList of empty fields, split(), Integer.parseInt() and Float.parseFloat() code that
+ * AddEditRideActivity used to have, against RideCodec.decode(). The fields are StringBuilders,
+ * which like the Editable of an EditText have to be copied by toString() before String code can
+ * read them. The last 1 in 8 rides have a mistake in the distance field, which both reject.
+ * Each invocation reads the same 1024 generated rides.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RideCodecBenchmark {
+
+    private static final int COUNT = 1024;
+
+    private final CharSequence[][] rides = new CharSequence[COUNT][];
+    private final RideRecord record = new RideRecord();
+
+    @Setup
+    public void setUp() {
+        RideRecord[] records = RideHistory.records(COUNT);
+        for (int i = 0; i < COUNT; i++) {
+            RideRecord ride = records[i];
+            rides[i] = new CharSequence[] {
+                    new StringBuilder(RideTime.formatDate(ride.epochMinute)),
+                    new StringBuilder(RideTime.formatTime(ride.epochMinute)),
+                    new StringBuilder(i < COUNT - COUNT / 8 ? Float.toString(ride.distance) : "12,5"),
+                    new StringBuilder(Float.toString(ride.avgSpeed)),
+                    new StringBuilder(Integer.toString(ride.avgCadence)),
+                    new StringBuilder().append(ride.comment, 0, ride.commentLength)
+            };
+        }
+    }
+
+    // validateRide and readRide as AddEditRideActivity had them, returning NaN where they threw
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public float splitAndParse() {
+        float sum = 0;
+        for (int i = 0; i < COUNT; i++) {
+            CharSequence[] fields = rides[i];
+            ArrayList<CharSequence> emptyFields = new ArrayList<>();
+            for (int field = RideValidator.DATE; field < RideValidator.COMMENT; field++) {
+                if (fields[field].length() == 0) {
+                    emptyFields.add(fields[field]);
+                }
+            }
+            if (!emptyFields.isEmpty() || fields[RideValidator.COMMENT].toString().length() > 20) {
+                continue;
+            }
+            try {
+                String[] date = fields[RideValidator.DATE].toString().trim().split("-");
+                String[] time = fields[RideValidator.TIME].toString().trim().split(":");
+                record.epochMinute = RideTime.epochMinute(Integer.parseInt(date[0]), Integer.parseInt(date[1]),
+                        Integer.parseInt(date[2]), Integer.parseInt(time[0]), Integer.parseInt(time[1]));
+                record.distance = Float.parseFloat(fields[RideValidator.DISTANCE].toString());
+                record.avgSpeed = Float.parseFloat(fields[RideValidator.AVG_SPEED].toString());
+                record.avgCadence = Integer.parseInt(fields[RideValidator.AVG_CADENCE].toString());
+                String comment = fields[RideValidator.COMMENT].toString();
+                comment.getChars(0, comment.length(), record.comment, 0);
+                record.commentLength = comment.length();
+                sum += record.distance;
+            } catch (NumberFormatException e) {
+                sum += Float.NaN;
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public float decode() {
+        float sum = 0;
+        for (int i = 0; i < COUNT; i++) {
+            if (RideCodec.decode(rides[i], record) == RideValidator.OK) {
+                sum += record.distance;
+            } else {
+                sum += Float.NaN;
+            }
+        }
+        return sum;
+    }
+}
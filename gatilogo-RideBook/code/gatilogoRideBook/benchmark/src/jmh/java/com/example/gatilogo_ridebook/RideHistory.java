@@ -0,0 +1,102 @@
+package com.example.gatilogo_ridebook;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * RideHistory class
+ *
+ * Generates synthetic ride histories for the benchmarks. The same size always gives the same rides.
+ * Rides start on 2015-01-01 and are spread out so that a history covers about four rides a week,
+ * with distances, speeds and cadences in the ranges of real commutes and long rides.
+ */
+final class RideHistory {
+
+    // History sizes used by the benchmarks, as strings for JMH's @Param
+    static final String SMALL = "1000";
+    static final String LARGE = "100000";
+    static final String HUGE = "1000000";
+
+    private static final String[] COMMENTS = {
+            "", "", "", "to work", "home", "hills", "long ride", "rain", "group ride", "recovery",
+            "intervals", "headwind all the way", "new tires", "race"
+    };
+    private static final int START_DAY = RideTime.epochDay(2015, 1, 1);
+
+    private RideHistory() {
+    }
+
+    // Fills the given records with rides, oldest first.
+    static void generate(RideRecord[] records) {
+        Random random = new Random(records.length);
+        int minute = START_DAY * RideTime.MINUTES_PER_DAY;
+        for (RideRecord record : records) {
+            // 1 to 3 days later, between 06:00 and 20:00
+            int day = RideTime.dayOf(minute) + 1 + random.nextInt(2);
+            minute = day * RideTime.MINUTES_PER_DAY + 6 * 60 + random.nextInt(14 * 60);
+            record.epochMinute = minute;
+            record.distance = Math.round((2 + random.nextFloat() * random.nextFloat() * 150) * 10) / 10f;
+            record.avgSpeed = Math.round(Math.max(8, 22 + random.nextGaussian() * 4) * 10) / 10f;
+            record.avgCadence = 60 + random.nextInt(40);
+            String comment = COMMENTS[random.nextInt(COMMENTS.length)];
+            comment.getChars(0, comment.length(), record.comment, 0);
+            record.commentLength = comment.length();
+        }
+    }
+
+    // Returns count generated rides as records.
+    static RideRecord[] records(int count) {
+        RideRecord[] records = new RideRecord[count];
+        for (int i = 0; i < count; i++) {
+            records[i] = new RideRecord();
+        }
+        generate(records);
+        return records;
+    }
+
+    // Returns count generated rides as Ride objects, like the list the app used to keep.
+    static List<Ride> rides(int count) {
+        List<Ride> rides = new ArrayList<>(count);
+        for (RideRecord record : records(count)) {
+            rides.add(record.toRide());
+        }
+        return rides;
+    }
+
+    // Opens a store in the given empty directory and adds count generated rides to it.
+    static RideStore store(File dir, int count) throws IOException {
+        RideStore store = RideStore.open(dir);
+        RideRecord[] records = records(count);
+        RideRecord[] batch = new RideRecord[RideBatch.CAPACITY];
+        for (int start = 0; start < count; start += batch.length) {
+            int size = Math.min(batch.length, count - start);
+            System.arraycopy(records, start, batch, 0, size);
+            store.addAll(batch, size);
+        }
+        return store;
+    }
+
+    // Deletes a directory created for store().
+    static void delete(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    // Returns a table holding count generated rides.
+    static RideTable table(int count) {
+        RideTable table = new RideTable();
+        RideRecord[] records = records(count);
+        for (int i = 0; i < count; i++) {
+            table.add(i + 1, records[i]);
+        }
+        return table;
+    }
+}
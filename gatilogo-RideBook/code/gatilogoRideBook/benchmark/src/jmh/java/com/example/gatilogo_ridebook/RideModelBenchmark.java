@@ -0,0 +1,73 @@
+package com.example.gatilogo_ridebook;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RideModelBenchmark class
+ *
+ * Cost of creating a Ride and of moving it around: Java serialization, as used for intent extras
+ * before, against packing it into a RideRecord and back.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RideModelBenchmark {
+
+    private Ride ride;
+    private byte[] serialized;
+    private final RideRecord record = new RideRecord();
+
+    @Setup
+    public void setUp() throws IOException {
+        ride = newRide();
+        serialized = serialize();
+        record.set(ride);
+    }
+
+    @Benchmark
+    public Ride newRide() {
+        return new Ride("2019-09-11", "20:36", 12.5f, 21.3f, 85, "to work");
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(ride);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized));
+        try {
+            return in.readObject();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Benchmark
+    public RideRecord packRecord() {
+        return record.set(ride);
+    }
+
+    @Benchmark
+    public Ride unpackRecord() {
+        return record.toRide();
+    }
+}
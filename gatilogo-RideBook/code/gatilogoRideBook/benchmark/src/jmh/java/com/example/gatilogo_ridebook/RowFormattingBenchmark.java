@@ -0,0 +1,78 @@
+package com.example.gatilogo_ridebook;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RowFormattingBenchmark class
+ *
+ * Cost of producing the text of one row of the ride list, without the views: the strings that
+ * RideArrayAdapter.getView built from a Ride, against the same strings read through a
+ * RideTable.Cursor as RideListAdapter does. Resources.getString(id, args) is String.format() with
+ * the format from strings.xml, so that's what is called here.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RowFormattingBenchmark {
+
+    private static final String KM = "%s km";
+    private static final String KMH = "%s km/h";
+    private static final String RPM = "%s rpm";
+
+    @Param({RideHistory.SMALL, RideHistory.LARGE})
+    public int rides;
+
+    private List<Ride> list;
+    private RideTable.Cursor cursor;
+    private int position;
+
+    @Setup
+    public void setUp() {
+        list = RideHistory.rides(rides);
+        cursor = RideHistory.table(rides).cursor();
+    }
+
+    // The body of RideArrayAdapter.getView, minus inflating and finding the views
+    @Benchmark
+    public void rideRow(Blackhole sink) {
+        Ride ride = list.get(nextPosition());
+        Locale locale = Locale.getDefault();
+        sink.consume(ride.getDate());
+        sink.consume(ride.getTime());
+        sink.consume(String.format(locale, KM, Float.toString(ride.getDistance())));
+        sink.consume(String.format(locale, KMH, Float.toString(ride.getAvgSpeed())));
+        sink.consume(String.format(locale, RPM, Integer.toString(ride.getAvgCadence())));
+        sink.consume(ride.getComment().equals(""));
+    }
+
+    // The body of RideListAdapter.onBindViewHolder
+    @Benchmark
+    public void cursorRow(Blackhole sink) {
+        cursor.moveTo(nextPosition());
+        Locale locale = Locale.getDefault();
+        sink.consume(cursor.getDate());
+        sink.consume(cursor.getTime());
+        sink.consume(String.format(locale, KM, Float.toString(cursor.getDistance())));
+        sink.consume(String.format(locale, KMH, Float.toString(cursor.getAvgSpeed())));
+        sink.consume(String.format(locale, RPM, Integer.toString(cursor.getAvgCadence())));
+        sink.consume(cursor.getComment().isEmpty());
+    }
+
+    // Walks through the list like scrolling does
+    private int nextPosition() {
+        position = position + 1 == rides ? 0 : position + 1;
+        return position;
+    }
+}
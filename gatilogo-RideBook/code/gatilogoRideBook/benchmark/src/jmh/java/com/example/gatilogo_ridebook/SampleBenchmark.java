@@ -0,0 +1,68 @@
+package com.example.gatilogo_ridebook;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SampleBenchmark class
+ *
+ * Cost of encoding a three-hour ride of 1 Hz samples into RideSamples, and of deriving its
+ * summary. Divide byteSize() by the time of summarize to get the decoding speed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SampleBenchmark {
+
+    private static final int SAMPLES = 3 * 3600;
+
+    private final float[] speeds = new float[SAMPLES];
+    private final int[] cadences = new int[SAMPLES];
+    private final double[] latitudes = new double[SAMPLES];
+    private final double[] longitudes = new double[SAMPLES];
+    private final RideSamples.Encoder encoder = new RideSamples.Encoder(
+            RideSamples.SPEED | RideSamples.CADENCE | RideSamples.POSITION);
+    private final RideSamples.Summary summary = new RideSamples.Summary();
+    private RideSamples samples;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(SAMPLES);
+        float speed = 25;
+        double latitude = 47.5;
+        double longitude = 8.5;
+        for (int i = 0; i < SAMPLES; i++) {
+            speed = Math.max(5, Math.min(45, speed + (float) random.nextGaussian() * 0.3f));
+            latitude += speed / 3.6 * 0.7071 / 111195;
+            longitude += speed / 3.6 * 0.7071 / 75000;
+            speeds[i] = speed;
+            cadences[i] = 80 + random.nextInt(11);
+            latitudes[i] = latitude;
+            longitudes[i] = longitude;
+        }
+        samples = encode();
+    }
+
+    @Benchmark
+    public RideSamples encode() {
+        encoder.clear();
+        for (int i = 0; i < SAMPLES; i++) {
+            encoder.add(i, speeds[i], cadences[i], latitudes[i], longitudes[i]);
+        }
+        return encoder.build();
+    }
+
+    @Benchmark
+    public double summarize() {
+        return samples.summarize(summary).distance;
+    }
+}
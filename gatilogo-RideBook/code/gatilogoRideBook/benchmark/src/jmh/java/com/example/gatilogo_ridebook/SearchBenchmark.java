@@ -0,0 +1,70 @@
+package com.example.gatilogo_ridebook;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SearchBenchmark class
+ *
+ * Cost of finding rides by comment: a contains() scan over a list of Ride objects against
+ * RideStore.search(), which uses the CommentIndex.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchBenchmark {
+
+    @Param({RideHistory.SMALL, RideHistory.LARGE})
+    public int rides;
+
+    @Param({"h", "wo", "rain", "headwind", "snow"})
+    public String query;
+
+    private List<Ride> list;
+    private File dir;
+    private RideStore store;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        list = RideHistory.rides(rides);
+        dir = File.createTempFile("search", "");
+        dir.delete();
+        dir.mkdirs();
+        store = RideHistory.store(dir, rides);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        RideHistory.delete(dir);
+    }
+
+    @Benchmark
+    public int listScan() {
+        int matches = 0;
+        for (Ride ride : list) {
+            if (ride.getComment().toLowerCase().contains(query)) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public long[] indexSearch() {
+        return store.search(query);
+    }
+}
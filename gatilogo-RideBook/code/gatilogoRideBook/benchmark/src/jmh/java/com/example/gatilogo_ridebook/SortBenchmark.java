@@ -0,0 +1,83 @@
+package com.example.gatilogo_ridebook;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SortBenchmark class
+ *
+ * Cost of the list in a sort order: building a RideSortIndex the first time a field is sorted by,
+ * reading a page of rides through it, and keeping all indexes up to date when a ride is edited.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SortBenchmark {
+
+    @Param({RideHistory.LARGE, RideHistory.HUGE})
+    public int rides;
+
+    private File dir;
+    private RideStore store;
+    private RidePager.Source sorted;
+    private final long[] ids = new long[RidePager.PAGE_SIZE];
+    private final RideRecord[] page = new RideRecord[RidePager.PAGE_SIZE];
+    private final RideRecord record = new RideRecord();
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = File.createTempFile("sort", "");
+        dir.delete();
+        dir.mkdirs();
+        store = RideHistory.store(dir, rides);
+        for (int i = 0; i < page.length; i++) {
+            page[i] = new RideRecord();
+        }
+        for (int field = 0; field < RideSortIndex.FIELD_COUNT; field++) {
+            sorted = store.pageSource(field, true);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        RideHistory.delete(dir);
+    }
+
+    @Benchmark
+    public int buildIndex() {
+        RideSortIndex index = new RideSortIndex(RideSortIndex.DISTANCE);
+        index.rebuild(store.getTable());
+        return index.size();
+    }
+
+    @Benchmark
+    public long readPage() throws IOException {
+        next = (next + 7919) % (rides - page.length);
+        sorted.read(next, page.length, ids, page);
+        return ids[0];
+    }
+
+    // Moves a ride in all four indexes and in the statistics
+    @Benchmark
+    public boolean editRide() throws IOException {
+        next = (next + 7919) % rides;
+        long id = store.getId(next);
+        store.read(id, record);
+        record.distance += 0.5f;
+        return store.edit(id, record);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.gatilogo_ridebook;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StartupBenchmark class
+ *
+ * What the ride list waits for before its first frame: loading the whole RideStore against
+ * reading the head file and the first page of rides it shows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StartupBenchmark {
+
+    @Param({RideHistory.SMALL, RideHistory.LARGE})
+    public int rides;
+
+    private File dir;
+    private final long[] ids = new long[RidePager.PAGE_SIZE];
+    private final RideRecord[] page = new RideRecord[RidePager.PAGE_SIZE];
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = File.createTempFile("startup", "");
+        dir.delete();
+        dir.mkdirs();
+        RideHistory.store(dir, rides).close();
+        for (int i = 0; i < page.length; i++) {
+            page[i] = new RideRecord();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        RideHistory.delete(dir);
+    }
+
+    @Benchmark
+    public int openStore() throws IOException {
+        RideStore store = RideStore.open(dir);
+        int size = store.size();
+        store.close();
+        return size;
+    }
+
+    @Benchmark
+    public int readHead() throws IOException {
+        RideHead head = RideJournal.readHead(dir);
+        RidePager.Source source = head.source(null);
+        return source.read(head.firstPosition(), RidePager.PAGE_SIZE, ids, page);
+    }
+}